@@ -0,0 +1,83 @@
+package com.example.leicameasurement.data.database;
+
+import android.database.Cursor;
+
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * AppDatabase 迁移测试
+ * 按 app/schemas 中导出的旧版本表结构建库并写入外业数据，执行迁移后由 MigrationTestHelper
+ * 对照目标版本的表结构校验，同时检查已有数据保留
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigrationTest {
+
+    private static final String TEST_DB = "migration-test";
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(
+            InstrumentationRegistry.getInstrumentation(), AppDatabase.class);
+
+    @Test
+    public void migrate2To3_addsWalCheckpointAndKeepsPoints() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 2);
+        insertTaskWithPoint(db);
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 3, true, AppDatabase.MIGRATION_2_3);
+        assertDetailPointKept(db);
+        try (Cursor cursor = db.query("SELECT COUNT(*) FROM wal_checkpoint")) {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(0, cursor.getInt(0));
+        }
+        db.close();
+    }
+
+    @Test
+    public void migrate3To4_replacesTaskIndexAndKeepsPoints() throws IOException {
+        SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 3);
+        insertTaskWithPoint(db);
+        db.execSQL("INSERT INTO wal_checkpoint (id, appliedSequence) VALUES (1, 42)");
+        db.close();
+
+        db = helper.runMigrationsAndValidate(TEST_DB, 4, true, AppDatabase.MIGRATION_3_4);
+        assertDetailPointKept(db);
+        try (Cursor cursor = db.query("SELECT appliedSequence FROM wal_checkpoint WHERE id = 1")) {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(42, cursor.getLong(0));
+        }
+        try (Cursor cursor = db.query(
+                "SELECT name FROM sqlite_master WHERE type = 'index' AND name = 'index_detail_points_taskId'")) {
+            assertFalse("旧的单列索引应已删除", cursor.moveToFirst());
+        }
+        db.close();
+    }
+
+    private static void insertTaskWithPoint(SupportSQLiteDatabase db) {
+        db.execSQL("INSERT INTO traverse_tasks (taskId, name, status, creationTime) "
+                + "VALUES (1, '导线一', 'ACTIVE', 1700000000000)");
+        db.execSQL("INSERT INTO detail_points (pointId, taskId, pointName, x, y, z, horizontalAngle, "
+                + "verticalAngle, slopeDistance, prismHeight, measureMode, timestamp) "
+                + "VALUES (7, 1, 'P7', 135.25, 188.5, 12.75, 1.2, 1.5, 37.1, 1.8, 'STANDARD', 1700000001000)");
+    }
+
+    private static void assertDetailPointKept(SupportSQLiteDatabase db) {
+        try (Cursor cursor = db.query("SELECT pointName, x, taskId FROM detail_points WHERE pointId = 7")) {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("P7", cursor.getString(0));
+            assertEquals(135.25, cursor.getDouble(1), 0);
+            assertEquals(1, cursor.getLong(2));
+        }
+    }
+}
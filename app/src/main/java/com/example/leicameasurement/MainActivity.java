@@ -8,7 +8,11 @@ import androidx.fragment.app.Fragment;
 import com.example.leicameasurement.ui.fragment.DataFragment; // Will be created in the next steps
 import com.example.leicameasurement.ui.fragment.HomeFragment; // Will be created in the next steps
 import com.example.leicameasurement.ui.fragment.TraverseFragment;
+import com.example.leicameasurement.infrastructure.DependencyInjector;
+import com.example.leicameasurement.infrastructure.LogManager;
+import com.example.leicameasurement.infrastructure.TraceRing;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
+import java.io.File;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -21,6 +25,13 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        // 日志同时写入应用私有目录的滚动文件（单个 1MB，保留 5 个）
+        LogManager.enableFileSink(new File(getFilesDir(), "logs"), 1024 * 1024, 5);
+        // 崩溃时把跟踪环写入同一目录
+        TraceRing.installCrashHandler(new File(getFilesDir(), "logs"));
+        // 启动时在后台重放上次崩溃前未写入数据库的观测
+        DependencyInjector.provideWalLogManager(this);
+
         BottomNavigationView bottomNav = findViewById(R.id.bottom_navigation);
         bottomNav.setOnItemSelectedListener(navListener);
 
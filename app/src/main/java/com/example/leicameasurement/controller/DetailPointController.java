@@ -2,11 +2,15 @@ package com.example.leicameasurement.controller;
 
 import com.example.leicameasurement.calculation.DetailPointCalculator;
 import com.example.leicameasurement.data.repository.DetailPointRepository;
+import com.example.leicameasurement.data.wal.RoomObservationStore;
+import com.example.leicameasurement.data.wal.WalLogManager;
+import com.example.leicameasurement.data.wal.WalObservation;
 import com.example.leicameasurement.device.adapter.InstrumentAdapter;
 import com.example.leicameasurement.device.protocol.InstrumentException;
 import com.example.leicameasurement.infrastructure.LogManager;
 import com.example.leicameasurement.data.entity.DetailPoint;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -21,15 +25,18 @@ public class DetailPointController {
     private final DetailPointCalculator calculator;
     private final DetailPointRepository repository;
     private final AppStateManager appStateManager;
+    private final WalLogManager walLogManager;
 
     public DetailPointController(InstrumentAdapter instrument,
                                  DetailPointCalculator calculator,
                                  DetailPointRepository repository,
-                                 AppStateManager appStateManager) {
+                                 AppStateManager appStateManager,
+                                 WalLogManager walLogManager) {
         this.instrument = instrument;
         this.calculator = calculator;
         this.repository = repository;
         this.appStateManager = appStateManager;
+        this.walLogManager = walLogManager;
     }
 
     /**
@@ -37,8 +44,8 @@ public class DetailPointController {
      * @param prismHeight 棱镜高
      * @param mode 测量模式
      * @param pointNumber 点号（可选）
-     * @return 测量结果详情
-     * @throws InstrumentException 测量异常
+     * @return 测量结果详情（与写入数据库的内容一致，时间戳为 WAL 落盘时间；pointId 在批次提交时才分配）
+     * @throws InstrumentException 测量异常，或未选择任务
      */
     public DetailPoint measureDetailPoint(double prismHeight,
                                           InstrumentAdapter.MeasureMode mode,
@@ -51,6 +58,12 @@ public class DetailPointController {
             throw new InstrumentException("仪器未连接，无法进行测量");
         }
 
+        // 没有所属任务的点无法写入数据库，测量前拒绝
+        Long taskId = appStateManager.getCurrentTaskId().getValue();
+        if (taskId == null || taskId <= 0) {
+            throw new InstrumentException("未选择任务，无法保存碎步点");
+        }
+
         try {
             // 执行测量
             double[] measurement = instrument.measureDetailPoint(prismHeight, mode);
@@ -65,8 +78,8 @@ public class DetailPointController {
             double stationZ = appStateManager.getCurrentStationZValue();
             double instrumentHeight = appStateManager.getCurrentInstrumentHeightValue();
 
-            LogManager.d(TAG, String.format("测站信息：X=%.3f, Y=%.3f, Z=%.3f, 仪器高=%.3f",
-                    stationX, stationY, stationZ, instrumentHeight));
+            LogManager.d(TAG, "测站信息：X=%.3f, Y=%.3f, Z=%.3f, 仪器高=%.3f",
+                    stationX, stationY, stationZ, instrumentHeight);
 
             // 修复：根据实际的calculateAbsoluteCoordinates方法签名调整参数
             // 假设方法需要6个参数：测站X,Y,Z, 水平角, 垂直角, 斜距
@@ -74,17 +87,15 @@ public class DetailPointController {
                     stationX, stationY, stationZ,
                     measurement[0], measurement[1], measurement[2]);
 
-            // 创建碎步点实体 - 使用构造函数而不是setter方法
-            DetailPoint detailPoint = new DetailPoint();
-            // 假设DetailPoint有相应的字段，这里需要根据实际的DetailPoint类调整
-            // 如果DetailPoint没有这些setter，可能需要使用构造函数或其他方式
+            // 观测先写入 WAL 并落盘，再由 WAL 写入数据库（崩溃后启动时重放）
+            String pointName = pointNumber != null ? pointNumber : generatePointNumber();
+            WalObservation observation = WalObservation.of(WalObservation.Kind.DETAIL,
+                    taskId, pointName, measurement, prismHeight, coordinates, mode);
+            DetailPoint detailPoint = RoomObservationStore.toDetailPoint(walLogManager.log(observation));
 
-            // 临时解决方案：先保存基本数据
-            // repository.saveDetailPoint(detailPoint);
-
-            LogManager.i(TAG, String.format("碎步点测量成功：点号=%s, X=%.3f, Y=%.3f, Z=%.3f",
-                    pointNumber != null ? pointNumber : generatePointNumber(),
-                    coordinates[0], coordinates[1], coordinates[2]));
+            LogManager.i(TAG, "碎步点测量成功：点号=%s, X=%.3f, Y=%.3f, Z=%.3f",
+                    pointName,
+                    coordinates[0], coordinates[1], coordinates[2]);
 
             return detailPoint;
 
@@ -182,9 +193,37 @@ public class DetailPointController {
      * @return 碎步点列表
      */
     public List<DetailPoint> getDetailPointsByTask(String taskId) {
-        // 临时返回空列表，需要根据实际的repository实现调整
-        return new ArrayList<>();
-        // return repository.getDetailPointsByTask(taskId);
+        try {
+            return repository.getPointsForTask(Long.parseLong(taskId));
+        } catch (NumberFormatException | IOException e) {
+            LogManager.e(TAG, "读取碎步点失败：" + taskId + ", error: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * 查找离指定坐标最近的碎步点（放样、重复测量检查），不要在主线程调用
+     * @param taskId 任务ID
+     * @param count 数量
+     * @param maxDistance 搜索半径（米）
+     * @return 由近到远的碎步点列表
+     */
+    public List<DetailPoint> findNearestDetailPoints(String taskId, double x, double y,
+                                                     int count, double maxDistance) {
+        try {
+            return repository.findNearestPoints(Long.parseLong(taskId), x, y, count, maxDistance);
+        } catch (NumberFormatException | IOException e) {
+            LogManager.e(TAG, "查找附近碎步点失败：" + taskId + ", error: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * 写入缓冲中的全部碎步点（结束任务前调用，不要在主线程调用）
+     * @throws IOException 写入失败
+     */
+    public void flushDetailPoints() throws IOException {
+        repository.flushNow();
     }
 
     /**
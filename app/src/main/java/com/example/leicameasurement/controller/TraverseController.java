@@ -4,9 +4,12 @@ import com.example.leicameasurement.calculation.TraverseCalculator;
 import com.example.leicameasurement.data.entity.TraverseStation;
 import com.example.leicameasurement.data.repository.TraverseRepository;
 import com.example.leicameasurement.data.wal.WalLogManager;
+import com.example.leicameasurement.data.wal.WalObservation;
 import com.example.leicameasurement.device.adapter.InstrumentAdapter;
 import com.example.leicameasurement.device.protocol.InstrumentException;
 
+import java.io.IOException;
+
 /**
  * 导线测量流程（测站→后视→前视→平差）
  */
@@ -16,6 +19,7 @@ public class TraverseController {
     private final TraverseCalculator calculator;
     private final TraverseRepository repository;
     private final WalLogManager walLogManager;
+    private TraverseStation station;
 
     public TraverseController(InstrumentAdapter instrument, TraverseCalculator calculator, TraverseRepository repository, WalLogManager walLogManager) {
         this.instrument = instrument;
@@ -30,27 +34,47 @@ public class TraverseController {
         } catch (InstrumentException e) {
             throw new RuntimeException(e);
         }
+        this.station = station;
     }
 
     public void measureBacksight(double prismHeight) {
+        double[] backsightData;
         try {
-            double[] backsightData = instrument.measureBacksight(prismHeight);
+            backsightData = instrument.measureBacksight(prismHeight);
         } catch (InstrumentException e) {
             throw new RuntimeException(e);
         }
-        // walLogManager.log(backsightData);
+        log(WalObservation.Kind.BACKSIGHT, backsightData, prismHeight, InstrumentAdapter.MeasureMode.PRECISION);
         // double azimuth = calculator.calculateBacksightAzimuth(station, backsightData);
         // repository.saveBacksight(azimuth);
     }
 
     public void measureForesight(double prismHeight) {
+        double[] foresightData;
         try {
-            double[] foresightData = instrument.measureForepoint(prismHeight);
+            foresightData = instrument.measureForepoint(prismHeight);
         } catch (InstrumentException e) {
             throw new RuntimeException(e);
         }
-        // walLogManager.log(foresightData);
+        log(WalObservation.Kind.FORESIGHT, foresightData, prismHeight, InstrumentAdapter.MeasureMode.STANDARD);
         // double[] coordinates = calculator.calculateForesightCoordinates(station, foresightData);
         // repository.saveForesight(coordinates);
     }
+
+    /**
+     * 原始观测先写入 WAL，再进入后续计算
+     */
+    private void log(WalObservation.Kind kind, double[] data, double prismHeight, InstrumentAdapter.MeasureMode mode) {
+        if (data == null) {
+            return;
+        }
+        long taskId = station == null ? 0 : station.taskId;
+        // 后视/前视观测以当前测站名标识
+        String pointName = station == null ? null : station.stationName;
+        try {
+            walLogManager.log(WalObservation.of(kind, taskId, pointName, data, prismHeight, null, mode));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
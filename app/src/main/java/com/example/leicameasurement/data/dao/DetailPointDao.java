@@ -4,6 +4,7 @@ import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.Query;
 import com.example.leicameasurement.data.entity.DetailPoint;
+import com.example.leicameasurement.data.entity.PointCoordinate;
 import java.util.List;
 
 /**
@@ -15,6 +16,45 @@ public interface DetailPointDao {
     @Insert
     void insert(DetailPoint point);
 
+    /**
+     * @return 与 points 一一对应的 pointId
+     */
+    @Insert
+    long[] insertAll(List<DetailPoint> points);
+
     @Query("SELECT * FROM detail_points WHERE taskId = :taskId")
     List<DetailPoint> getPointsForTask(long taskId);
+
+    /**
+     * 键集分页：按 (timestamp, pointId) 升序取键之后的 limit 个点
+     * timestamp >= 条件让 SQLite 直接在复合索引上定位起点，不需要像 OFFSET 那样逐行跳过
+     * 从头开始时传 Long.MIN_VALUE, Long.MIN_VALUE
+     */
+    @Query("SELECT * FROM detail_points WHERE taskId = :taskId"
+            + " AND timestamp >= :timestamp AND (timestamp > :timestamp OR pointId > :pointId)"
+            + " ORDER BY timestamp, pointId LIMIT :limit")
+    List<DetailPoint> getPageAfter(long taskId, long timestamp, long pointId, int limit);
+
+    /**
+     * 键集分页：按 (timestamp, pointId) 降序取键之前的 limit 个点（向前翻页）
+     */
+    @Query("SELECT * FROM detail_points WHERE taskId = :taskId"
+            + " AND timestamp <= :timestamp AND (timestamp < :timestamp OR pointId < :pointId)"
+            + " ORDER BY timestamp DESC, pointId DESC LIMIT :limit")
+    List<DetailPoint> getPageBefore(long taskId, long timestamp, long pointId, int limit);
+
+    @Query("SELECT COUNT(*) FROM detail_points WHERE taskId = :taskId")
+    int countPointsForTask(long taskId);
+
+    /**
+     * 空间索引的数据来源：任务全部点的平面坐标
+     */
+    @Query("SELECT pointId, x, y FROM detail_points WHERE taskId = :taskId")
+    List<PointCoordinate> getCoordinatesForTask(long taskId);
+
+    /**
+     * 按点号取点（空间索引查询结果回表），一次不超过 SQLite 的参数上限 999 个
+     */
+    @Query("SELECT * FROM detail_points WHERE pointId IN (:pointIds)")
+    List<DetailPoint> getPointsByIds(long[] pointIds);
 }
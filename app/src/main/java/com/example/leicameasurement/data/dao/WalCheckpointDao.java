@@ -0,0 +1,20 @@
+package com.example.leicameasurement.data.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import com.example.leicameasurement.data.entity.WalCheckpoint;
+
+/**
+ * WAL 检查点DAO
+ */
+@Dao
+public interface WalCheckpointDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void save(WalCheckpoint checkpoint);
+
+    @Query("SELECT appliedSequence FROM wal_checkpoint WHERE id = 1")
+    Long getAppliedSequence();
+}
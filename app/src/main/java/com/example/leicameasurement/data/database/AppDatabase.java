@@ -6,6 +6,10 @@ import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.example.leicameasurement.infrastructure.ThreadExecutor;
 
 // ✅ [已修复] 导入项目中所有已知的 DAO 接口
 import com.example.leicameasurement.data.dao.DetailPointDao;
@@ -14,6 +18,7 @@ import com.example.leicameasurement.data.dao.ProjectDao;
 import com.example.leicameasurement.data.dao.StationDao;
 import com.example.leicameasurement.data.dao.TraverseStationDao;
 import com.example.leicameasurement.data.dao.TraverseTaskDao;
+import com.example.leicameasurement.data.dao.WalCheckpointDao;
 // 注意：如果 MeasurementParam 有对应的 DAO，也需要在这里导入
 
 // ✅ [已修复] 导入项目中所有已知的 Entity 类
@@ -23,6 +28,7 @@ import com.example.leicameasurement.data.entity.Project;
 import com.example.leicameasurement.data.entity.Station;
 import com.example.leicameasurement.data.entity.TraverseStation;
 import com.example.leicameasurement.data.entity.TraverseTask;
+import com.example.leicameasurement.data.entity.WalCheckpoint;
 
 // 导入 Converters，但你的项目结构显示 Converters 在 database 包下，我已更正路径
 
@@ -30,7 +36,8 @@ import com.example.leicameasurement.data.entity.TraverseTask;
 /**
  * 应用程序的 Room 数据库主类。
  * ✅ [关键修复] 在 entities 数组中注册了项目里所有的实体类。
- * ✅ [关键修复] 数据库版本号增加到 2，因为我们改变了数据库结构（增加了表）。
+ * 数据库版本 4，版本 2 起每次结构变化都有增量迁移（MIGRATION_2_3、MIGRATION_3_4），
+ * 各版本的表结构见 app/schemas，迁移由 androidTest 中的 MigrationTest 检查。
  */
 @Database(entities = {
         Project.class,
@@ -38,8 +45,9 @@ import com.example.leicameasurement.data.entity.TraverseTask;
         MeasurementPoint.class,
         DetailPoint.class,
         TraverseStation.class,
-        TraverseTask.class
-}, version = 2, exportSchema = false) // 版本号增加到 2
+        TraverseTask.class,
+        WalCheckpoint.class
+}, version = 4, exportSchema = true) // 版本 4：碎步点复合索引；表结构导出到 app/schemas，用于编写和检查迁移
 @TypeConverters({Converters.class})
 public abstract class AppDatabase extends RoomDatabase {
 
@@ -50,19 +58,52 @@ public abstract class AppDatabase extends RoomDatabase {
     public abstract DetailPointDao detailPointDao();
     public abstract TraverseStationDao traverseStationDao();
     public abstract TraverseTaskDao traverseTaskDao();
+    public abstract WalCheckpointDao walCheckpointDao();
     // 注意：如果 MeasurementParam 有对应的 DAO，也需要在这里添加
 
     private static volatile AppDatabase INSTANCE;
 
+    /**
+     * 版本 2 → 3：增加 WAL 检查点表，已有数据保留
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `wal_checkpoint` ("
+                    + "`id` INTEGER NOT NULL, `appliedSequence` INTEGER NOT NULL, PRIMARY KEY(`id`))");
+        }
+    };
+
+    /**
+     * 版本 3 → 4：碎步点的 taskId 单列索引换成 (taskId, timestamp, pointId) 复合索引，用于键集分页
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_detail_points_taskId_timestamp_pointId` "
+                    + "ON `detail_points` (`taskId`, `timestamp`, `pointId`)");
+            db.execSQL("DROP INDEX IF EXISTS `index_detail_points_taskId`");
+        }
+    };
+
+    /**
+     * 应用唯一的数据库（导线任务、测站、碎步点、WAL 检查点都在这里）
+     * 使用预写日志（WAL）模式：存储线程写入时读查询仍可在其他连接上进行；
+     * 读查询走 ThreadExecutor.getDatabaseReadExecutor()，Room 的异步事务走存储线程，保持单写入者
+     * 版本 2 起的每次结构变化都有增量迁移，升级时保留外业数据
+     */
     public static AppDatabase getDatabase(final Context context) {
         if (INSTANCE == null) {
             synchronized (AppDatabase.class) {
                 if (INSTANCE == null) {
                     INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
                                     AppDatabase.class, "survey_database")
-                            // 数据库结构发生变化，需要添加迁移策略。这里使用最简单的破坏性迁移。
-                            // 这会清除所有旧数据，在开发阶段是安全的。
-                            .fallbackToDestructiveMigration()
+                            .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+                            .setQueryExecutor(ThreadExecutor.getDatabaseReadExecutor())
+                            .setTransactionExecutor(ThreadExecutor.getStorageExecutor())
+                            .addMigrations(MIGRATION_2_3, MIGRATION_3_4)
+                            // 只有开发期的版本 1 没有迁移路径，其余版本缺少迁移时直接报错而不是清空数据
+                            .fallbackToDestructiveMigrationFrom(1)
                             .build();
                 }
             }
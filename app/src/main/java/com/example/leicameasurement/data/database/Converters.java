@@ -6,6 +6,7 @@ import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -40,34 +41,82 @@ public class Converters {
         return gson.toJson(someObjects);
     }
 
-    // --- ✅ 新增：List<Integer> 转换器 ---
+    // --- 数值列表/数组：紧凑二进制 BLOB（格式见 NumericArrayCodec） ---
+    // 旧版本以 Gson JSON 文本保存 List<Integer>/List<Double>，读取时按首字节识别并兼容
+
     @TypeConverter
-    public static List<Integer> stringToIntegerList(String data) {
+    public static List<Integer> blobToIntegerList(byte[] data) {
         if (data == null) {
             return Collections.emptyList();
         }
-        Type listType = new TypeToken<List<Integer>>() {}.getType();
-        return gson.fromJson(data, listType);
+        if (NumericArrayCodec.isEncoded(data)) {
+            return NumericArrayCodec.decodeIntList(data);
+        }
+        List<Integer> values = legacyJson(data, new TypeToken<List<Integer>>() {}.getType());
+        return values == null ? Collections.<Integer>emptyList() : values;
     }
 
     @TypeConverter
-    public static String integerListToString(List<Integer> someObjects) {
-        return gson.toJson(someObjects);
+    public static byte[] integerListToBlob(List<Integer> values) {
+        return values == null ? null : NumericArrayCodec.encodeInts(values);
     }
 
-    // --- ✅ 新增：List<Double> 转换器 ---
     @TypeConverter
-    public static List<Double> stringToDoubleList(String data) {
+    public static List<Double> blobToDoubleList(byte[] data) {
         if (data == null) {
             return Collections.emptyList();
         }
-        Type listType = new TypeToken<List<Double>>() {}.getType();
-        return gson.fromJson(data, listType);
+        if (NumericArrayCodec.isEncoded(data)) {
+            return NumericArrayCodec.decodeDoubleList(data);
+        }
+        List<Double> values = legacyJson(data, new TypeToken<List<Double>>() {}.getType());
+        return values == null ? Collections.<Double>emptyList() : values;
     }
 
     @TypeConverter
-    public static String doubleListToString(List<Double> someObjects) {
-        return gson.toJson(someObjects);
+    public static byte[] doubleListToBlob(List<Double> values) {
+        return values == null ? null : NumericArrayCodec.encodeDoubles(values);
+    }
+
+    // 基本类型数组：实体保存观测集（多测回角度、扫描断面）时不需要装箱
+
+    @TypeConverter
+    public static double[] blobToDoubleArray(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (NumericArrayCodec.isEncoded(data)) {
+            return NumericArrayCodec.decodeDoubles(data);
+        }
+        return legacyJson(data, double[].class);
+    }
+
+    @TypeConverter
+    public static byte[] doubleArrayToBlob(double[] values) {
+        return values == null ? null : NumericArrayCodec.encodeDoubles(values);
+    }
+
+    @TypeConverter
+    public static int[] blobToIntArray(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (NumericArrayCodec.isEncoded(data)) {
+            return NumericArrayCodec.decodeInts(data);
+        }
+        return legacyJson(data, int[].class);
+    }
+
+    @TypeConverter
+    public static byte[] intArrayToBlob(int[] values) {
+        return values == null ? null : NumericArrayCodec.encodeInts(values);
+    }
+
+    /**
+     * 旧版 JSON 行：TEXT 值按 BLOB 读取时得到其 UTF-8 字节
+     */
+    private static <T> T legacyJson(byte[] data, Type type) {
+        return gson.fromJson(new String(data, StandardCharsets.UTF_8), type);
     }
 
     // 如果你有枚举类型，也需要添加转换器，例如：
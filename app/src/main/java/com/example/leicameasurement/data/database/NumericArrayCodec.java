@@ -0,0 +1,142 @@
+package com.example.leicameasurement.data.database;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 数值数组的紧凑二进制编码（Converters 存为 BLOB 列）
+ *
+ * 格式（小端）：[版本 1B][元素类型 1B][元素...]，double 每个 8 字节，int 每个 4 字节，
+ * 元素个数由长度推出。版本字节取 0x01，不会与 JSON 文本的首字符（'['、'n'、空白）混淆，
+ * 据此区分旧版 Gson 写入的 JSON 行
+ */
+public final class NumericArrayCodec {
+
+    public static final byte FORMAT_VERSION = 1;
+    static final byte TYPE_DOUBLE = 'D';
+    static final byte TYPE_INT = 'I';
+    static final int HEADER_BYTES = 2;
+
+    private NumericArrayCodec() {
+    }
+
+    /**
+     * @return true=本格式编码的数据；false=旧版 JSON 文本（或其他未知内容）
+     */
+    public static boolean isEncoded(byte[] data) {
+        return data != null && data.length >= HEADER_BYTES && data[0] == FORMAT_VERSION;
+    }
+
+    // ==================== double ====================
+
+    public static byte[] encodeDoubles(double[] values) {
+        ByteBuffer buffer = allocate(TYPE_DOUBLE, values.length, Double.BYTES);
+        buffer.asDoubleBuffer().put(values);
+        return buffer.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException 列表中有 null 元素
+     */
+    public static byte[] encodeDoubles(List<Double> values) {
+        ByteBuffer buffer = allocate(TYPE_DOUBLE, values.size(), Double.BYTES);
+        for (int i = 0; i < values.size(); i++) {
+            Double value = values.get(i);
+            if (value == null) {
+                throw new IllegalArgumentException("数值列表第 " + i + " 个元素为 null");
+            }
+            buffer.putDouble(HEADER_BYTES + i * Double.BYTES, value);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException 不是本格式的 double 数组
+     */
+    public static double[] decodeDoubles(byte[] data) {
+        ByteBuffer buffer = body(data, TYPE_DOUBLE, Double.BYTES);
+        double[] values = new double[buffer.remaining() / Double.BYTES];
+        buffer.asDoubleBuffer().get(values);
+        return values;
+    }
+
+    public static List<Double> decodeDoubleList(byte[] data) {
+        double[] values = decodeDoubles(data);
+        List<Double> list = new ArrayList<>(values.length);
+        for (double value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    // ==================== int ====================
+
+    public static byte[] encodeInts(int[] values) {
+        ByteBuffer buffer = allocate(TYPE_INT, values.length, Integer.BYTES);
+        buffer.asIntBuffer().put(values);
+        return buffer.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException 列表中有 null 元素
+     */
+    public static byte[] encodeInts(List<Integer> values) {
+        ByteBuffer buffer = allocate(TYPE_INT, values.size(), Integer.BYTES);
+        for (int i = 0; i < values.size(); i++) {
+            Integer value = values.get(i);
+            if (value == null) {
+                throw new IllegalArgumentException("数值列表第 " + i + " 个元素为 null");
+            }
+            buffer.putInt(HEADER_BYTES + i * Integer.BYTES, value);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException 不是本格式的 int 数组
+     */
+    public static int[] decodeInts(byte[] data) {
+        ByteBuffer buffer = body(data, TYPE_INT, Integer.BYTES);
+        int[] values = new int[buffer.remaining() / Integer.BYTES];
+        buffer.asIntBuffer().get(values);
+        return values;
+    }
+
+    public static List<Integer> decodeIntList(byte[] data) {
+        int[] values = decodeInts(data);
+        List<Integer> list = new ArrayList<>(values.length);
+        for (int value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    // ==================== 内部 ====================
+
+    private static ByteBuffer allocate(byte type, int count, int elementBytes) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + count * elementBytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(FORMAT_VERSION).put(type);
+        return buffer;
+    }
+
+    /**
+     * @return 定位到元素部分的小端缓冲区
+     */
+    private static ByteBuffer body(byte[] data, byte type, int elementBytes) {
+        if (!isEncoded(data)) {
+            throw new IllegalArgumentException("不是二进制数值数组（版本 "
+                    + (data == null || data.length == 0 ? "无" : String.valueOf(data[0])) + "）");
+        }
+        if (data[1] != type) {
+            throw new IllegalArgumentException("元素类型不符：期望 " + (char) type + "，实际 " + (char) data[1]);
+        }
+        if ((data.length - HEADER_BYTES) % elementBytes != 0) {
+            throw new IllegalArgumentException("数据长度 " + data.length + " 不是完整的元素序列");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(HEADER_BYTES);
+        return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
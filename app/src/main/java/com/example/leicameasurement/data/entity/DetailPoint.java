@@ -10,13 +10,14 @@ import com.example.leicameasurement.device.adapter.InstrumentAdapter;
 
 /**
  * 碎步点实体（点号/X/Y/Z/所属任务）
+ * 复合索引 (taskId, timestamp, pointId) 同时服务外键和按任务分页（见 DetailPointDao.getPageAfter）
  */
 @Entity(tableName = "detail_points",
         foreignKeys = @ForeignKey(entity = TraverseTask.class,
                 parentColumns = "taskId",
                 childColumns = "taskId",
                 onDelete = ForeignKey.CASCADE),
-        indices = {@Index("taskId")})
+        indices = {@Index({"taskId", "timestamp", "pointId"})})
 public class DetailPoint {
 
     @PrimaryKey(autoGenerate = true)
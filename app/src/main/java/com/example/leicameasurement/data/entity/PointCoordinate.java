@@ -0,0 +1,19 @@
+package com.example.leicameasurement.data.entity;
+
+/**
+ * 碎步点的平面坐标投影（pointId/x/y），用于建立空间索引时只读取需要的列
+ */
+public class PointCoordinate {
+
+    public long pointId;
+
+    public double x;
+
+    public double y;
+
+    public PointCoordinate(long pointId, double x, double y) {
+        this.pointId = pointId;
+        this.x = x;
+        this.y = y;
+    }
+}
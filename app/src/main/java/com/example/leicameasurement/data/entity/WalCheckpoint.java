@@ -0,0 +1,24 @@
+package com.example.leicameasurement.data.entity;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * WAL 检查点（单行）：已应用到数据库的最后一个 WAL 序号
+ */
+@Entity(tableName = "wal_checkpoint")
+public class WalCheckpoint {
+
+    /** 固定为 1，表中只有一行 */
+    public static final int SINGLETON_ID = 1;
+
+    @PrimaryKey
+    public int id;
+
+    public long appliedSequence;
+
+    public WalCheckpoint(int id, long appliedSequence) {
+        this.id = id;
+        this.appliedSequence = appliedSequence;
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.leicameasurement.data.repository;
+
+import com.example.leicameasurement.data.dao.DetailPointDao;
+import com.example.leicameasurement.data.entity.DetailPoint;
+import com.example.leicameasurement.infrastructure.LogManager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * 碎步点分页加载（键集分页）：按 (timestamp, pointId) 顺序逐页加载一个任务的点，
+ * 内存中最多保留 maxPages 页，滚动时在一端加载新页、从另一端丢弃旧页
+ * 每页以上一页最后一个点为键查询（DetailPointDao.getPageAfter/getPageBefore），
+ * 翻到第几页都只读取一页的行
+ *
+ * 查询在 ioExecutor 上执行，结果在 resultExecutor（主线程）上合并并回调 Listener；
+ * 构造后调用 refresh() 开始加载；除构造外的所有方法都只能在 resultExecutor 的线程上调用
+ */
+public class DetailPointPager {
+
+    private static final String TAG = "DetailPointPager";
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int DEFAULT_MAX_PAGES = 5;
+
+    /**
+     * 已加载条目的变化，位置相对当前窗口（与 RecyclerView.Adapter 的 notifyItemRange* 对应）
+     */
+    public interface Listener {
+        void onItemsInserted(int position, int count);
+
+        void onItemsRemoved(int position, int count);
+
+        default void onLoadFailed(RuntimeException e) {
+        }
+    }
+
+    /**
+     * 一页数据的来源，默认为 DetailPointDao
+     */
+    interface PageSource {
+        /**
+         * @return 键之后按升序的至多 limit 个点
+         */
+        List<DetailPoint> loadAfter(long taskId, long timestamp, long pointId, int limit);
+
+        /**
+         * @return 键之前按降序的至多 limit 个点
+         */
+        List<DetailPoint> loadBefore(long taskId, long timestamp, long pointId, int limit);
+    }
+
+    private final long taskId;
+    private final PageSource source;
+    private final Executor ioExecutor;
+    private final Executor resultExecutor;
+    private final int pageSize;
+    private final int maxPages;
+    private final int prefetchDistance;
+    private Listener listener;
+
+    // 以下字段只在 resultExecutor 线程上访问
+    private final ArrayDeque<List<DetailPoint>> pages = new ArrayDeque<>();
+    private int itemCount;
+    private boolean startReached = true;
+    private boolean endReached = true;
+    private boolean appending;
+    private boolean prepending;
+    private int generation;  // refresh/close 后丢弃之前发出的加载结果
+
+    /**
+     * @param pageSize 每页点数
+     * @param maxPages 内存中最多保留的页数（至少 2）
+     */
+    public DetailPointPager(DetailPointDao dao, long taskId, Executor ioExecutor, Executor resultExecutor,
+                            int pageSize, int maxPages) {
+        this(new PageSource() {
+            @Override
+            public List<DetailPoint> loadAfter(long task, long timestamp, long pointId, int limit) {
+                return dao.getPageAfter(task, timestamp, pointId, limit);
+            }
+
+            @Override
+            public List<DetailPoint> loadBefore(long task, long timestamp, long pointId, int limit) {
+                return dao.getPageBefore(task, timestamp, pointId, limit);
+            }
+        }, taskId, ioExecutor, resultExecutor, pageSize, maxPages);
+    }
+
+    DetailPointPager(PageSource source, long taskId, Executor ioExecutor, Executor resultExecutor,
+                     int pageSize, int maxPages) {
+        this.source = source;
+        this.taskId = taskId;
+        this.ioExecutor = ioExecutor;
+        this.resultExecutor = resultExecutor;
+        this.pageSize = Math.max(1, pageSize);
+        this.maxPages = Math.max(2, maxPages);
+        this.prefetchDistance = Math.max(1, this.pageSize / 2);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public long getTaskId() {
+        return taskId;
+    }
+
+    // ==================== 窗口 ====================
+
+    /**
+     * @return 当前已加载的点数
+     */
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * 取已加载的点；靠近窗口两端时在后台加载相邻的页
+     */
+    public DetailPoint getItem(int position) {
+        if (position < 0 || position >= itemCount) {
+            throw new IndexOutOfBoundsException("position " + position + ", count " + itemCount);
+        }
+        DetailPoint item = null;
+        int offset = position;
+        for (List<DetailPoint> page : pages) {
+            if (offset < page.size()) {
+                item = page.get(offset);
+                break;
+            }
+            offset -= page.size();
+        }
+        if (item == null) {
+            throw new IllegalStateException("分页窗口与计数不一致");
+        }
+        // 先取出条目再触发加载，结果同步合并时窗口的变化不影响本次返回
+        if (position >= itemCount - prefetchDistance) {
+            loadAfter();
+        }
+        if (position < prefetchDistance) {
+            loadBefore();
+        }
+        return item;
+    }
+
+    /**
+     * @return true=已加载到任务的第一个/最后一个点
+     */
+    public boolean isStartReached() {
+        return startReached;
+    }
+
+    public boolean isEndReached() {
+        return endReached;
+    }
+
+    public int getLoadedPageCount() {
+        return pages.size();
+    }
+
+    // ==================== 加载 ====================
+
+    /**
+     * 丢弃已加载的页，从任务的第一个点重新加载
+     */
+    public void refresh() {
+        generation++;
+        appending = false;
+        prepending = false;
+        int removed = itemCount;
+        pages.clear();
+        itemCount = 0;
+        startReached = true;
+        endReached = false;
+        if (removed > 0 && listener != null) {
+            listener.onItemsRemoved(0, removed);
+        }
+        loadAfter();
+    }
+
+    /**
+     * 停止加载并释放已加载的页，之后到达的结果被丢弃
+     */
+    public void close() {
+        generation++;
+        pages.clear();
+        itemCount = 0;
+        startReached = true;
+        endReached = true;
+        listener = null;
+    }
+
+    private void loadAfter() {
+        if (appending || endReached) {
+            return;
+        }
+        appending = true;
+        List<DetailPoint> last = pages.peekLast();
+        DetailPoint key = last == null ? null : last.get(last.size() - 1);
+        long timestamp = key == null ? Long.MIN_VALUE : key.timestamp;
+        long pointId = key == null ? Long.MIN_VALUE : key.pointId;
+        int expected = generation;
+        ioExecutor.execute(() -> {
+            try {
+                List<DetailPoint> page = source.loadAfter(taskId, timestamp, pointId, pageSize);
+                resultExecutor.execute(() -> onAppended(expected, page));
+            } catch (RuntimeException e) {
+                resultExecutor.execute(() -> onFailed(expected, true, e));
+            }
+        });
+    }
+
+    private void loadBefore() {
+        if (prepending || startReached) {
+            return;
+        }
+        prepending = true;
+        DetailPoint key = pages.peekFirst().get(0);
+        long timestamp = key.timestamp;
+        long pointId = key.pointId;
+        int expected = generation;
+        ioExecutor.execute(() -> {
+            try {
+                List<DetailPoint> page = new ArrayList<>(source.loadBefore(taskId, timestamp, pointId, pageSize));
+                Collections.reverse(page);
+                resultExecutor.execute(() -> onPrepended(expected, page));
+            } catch (RuntimeException e) {
+                resultExecutor.execute(() -> onFailed(expected, false, e));
+            }
+        });
+    }
+
+    private void onAppended(int expected, List<DetailPoint> page) {
+        if (expected != generation) {
+            return;
+        }
+        appending = false;
+        if (page.size() < pageSize) {
+            endReached = true;
+        }
+        if (page.isEmpty()) {
+            return;
+        }
+        int position = itemCount;
+        pages.addLast(page);
+        itemCount += page.size();
+        if (listener != null) {
+            listener.onItemsInserted(position, page.size());
+        }
+        if (pages.size() > maxPages) {
+            List<DetailPoint> dropped = pages.pollFirst();
+            itemCount -= dropped.size();
+            startReached = false;
+            if (listener != null) {
+                listener.onItemsRemoved(0, dropped.size());
+            }
+        }
+    }
+
+    private void onPrepended(int expected, List<DetailPoint> page) {
+        if (expected != generation) {
+            return;
+        }
+        prepending = false;
+        if (page.size() < pageSize) {
+            startReached = true;
+        }
+        if (page.isEmpty()) {
+            return;
+        }
+        pages.addFirst(page);
+        itemCount += page.size();
+        if (listener != null) {
+            listener.onItemsInserted(0, page.size());
+        }
+        if (pages.size() > maxPages) {
+            List<DetailPoint> dropped = pages.pollLast();
+            itemCount -= dropped.size();
+            endReached = false;
+            if (listener != null) {
+                listener.onItemsRemoved(itemCount, dropped.size());
+            }
+        }
+    }
+
+    private void onFailed(int expected, boolean append, RuntimeException e) {
+        if (expected != generation) {
+            return;
+        }
+        // 失败后允许再次触发加载（下一次 getItem 时重试）
+        if (append) {
+            appending = false;
+        } else {
+            prepending = false;
+        }
+        LogManager.e(TAG, "任务 " + taskId + " 的碎步点分页加载失败", e);
+        if (listener != null) {
+            listener.onLoadFailed(e);
+        }
+    }
+}
@@ -1,8 +1,681 @@
 package com.example.leicameasurement.data.repository;
 
+import android.database.sqlite.SQLiteConstraintException;
+
+import com.example.leicameasurement.data.database.AppDatabase;
+import com.example.leicameasurement.data.entity.DetailPoint;
+import com.example.leicameasurement.data.entity.PointCoordinate;
+import com.example.leicameasurement.data.entity.WalCheckpoint;
+import com.example.leicameasurement.data.spatial.PointGrid;
+import com.example.leicameasurement.infrastructure.LogManager;
+import com.example.leicameasurement.infrastructure.ThreadExecutor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
- * 碎步点数据仓库
+ * 碎步点数据仓库（延迟批量写入）
+ * 测量线程只把点放入有界缓冲区；攒够 batchSize 条或距第一条超过 flushDelayMs 时，
+ * 在存储线程上用一个事务批量插入（同时更新 WAL 检查点）
+ * 缓冲区满时 save() 阻塞；批次写入失败时保留在缓冲区头部，稍后重试：
+ * 暂时性错误（如存储空间不足）不丢弃任何点，连续失败 MAX_BATCH_ATTEMPTS 次后缓冲区满时 save() 直接报错而不是一直等待；
+ * 行本身引起的错误（约束冲突）改为逐条写入，仍失败的点先记入 RejectionLog 再移出缓冲（见 getRejectedPoints()），
+ * 移出由下一次 save() 或 flushNow() 以 IOException 报告
+ *
+ * 按坐标查询（范围/近邻）使用内存中的网格索引（PointGrid），首次查询某任务时从数据库建立，
+ * 之后每个批次提交后增量加入新点
  */
 public class DetailPointRepository {
-    // Implementation to be added
+
+    private static final String TAG = "DetailPointRepository";
+
+    public static final int DEFAULT_BATCH_SIZE = 200;
+    public static final long DEFAULT_FLUSH_DELAY_MS = 500;
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final double DEFAULT_GRID_CELL_SIZE = 5.0;  // 米，任务点数很少时使用
+
+    // 按点号回表时每次查询的点数，低于 SQLite 的参数上限 999
+    private static final int ID_QUERY_CHUNK = 900;
+
+    // 暂时性错误连续达到该次数后，缓冲区满时 save() 直接报错
+    static final int MAX_BATCH_ATTEMPTS = 3;
+
+    /**
+     * 在一个事务内写入一批点并把 WAL 检查点更新为 walSequence（0 表示不更新）
+     */
+    interface BatchWriter {
+        void write(List<DetailPoint> points, long walSequence);
+
+        /**
+         * @return true=错误由某一行本身引起（如约束冲突），重试不会成功；false=暂时性错误
+         */
+        default boolean isRowError(RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 移出缓冲的点的持久记录：之后的批次会把 WAL 检查点推进到这些点之后，
+     * 重放不会再回到它们，因此必须先持久记录（WAL 据此保留所在的段）
+     */
+    public interface RejectionLog {
+
+        /**
+         * 持久记录一个无法写入的点，返回后该点才会移出缓冲
+         * @param walSequence 点的 WAL 序号（大于 0）
+         * @throws IOException 记录失败，点留在缓冲区稍后重试
+         */
+        void record(DetailPoint point, long walSequence, RuntimeException cause) throws IOException;
+    }
+
+    private static final class Pending {
+        final DetailPoint point;  // null 表示只推进检查点
+        final long walSequence;
+
+        Pending(DetailPoint point, long walSequence) {
+            this.point = point;
+            this.walSequence = walSequence;
+        }
+    }
+
+    private final AppDatabase database;
+    private final BatchWriter writer;
+    private final Executor storageExecutor;
+    private final ScheduledExecutorService scheduler;
+    private final int batchSize;
+    private final long flushDelayMs;
+    private final int capacity;
+
+    // 以下字段由 lock 保护
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<Pending> buffer = new ArrayDeque<>();
+    private boolean flushQueued = false;
+    private boolean timerArmed = false;
+    private long batchCount;
+    private long failedBatchCount;
+    private final List<DetailPoint> rejectedPoints = new ArrayList<>();
+    private int unreportedRejections;  // 尚未通过 save()/flushNow() 报告的移出条数
+    private RuntimeException lastRejection;
+    private int headBatchFailures;     // 缓冲头部批次连续的暂时性失败次数
+    private RuntimeException writeFailure;  // 连续失败达到上限后的最近一次错误，写入成功后清除
+
+    private volatile RejectionLog rejectionLog;
+
+    // 同一时刻只有一个线程在写批次，保证按缓冲顺序提交
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    // 空间索引只缓存最近查询的一个任务，由 spatialLock 保护
+    // 建立索引和增量加入都在 flushLock 内进行，与批次提交互斥，不会遗漏或重复
+    private final Object spatialLock = new Object();
+    private long indexedTaskId;
+    private PointGrid spatialIndex;
+
+    public DetailPointRepository(AppDatabase database) {
+        this(database, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_DELAY_MS, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param batchSize 每个事务最多写入的点数，缓冲达到该数量时立即写入
+     * @param flushDelayMs 缓冲中第一条点最多等待的时间
+     * @param capacity 缓冲区容量
+     */
+    public DetailPointRepository(AppDatabase database, int batchSize, long flushDelayMs, int capacity) {
+        this(database, roomWriter(database), ThreadExecutor.getStorageExecutor(),
+                ThreadExecutor.getScheduledExecutor(), batchSize, flushDelayMs, capacity);
+    }
+
+    DetailPointRepository(AppDatabase database, BatchWriter writer, Executor storageExecutor,
+                          ScheduledExecutorService scheduler, int batchSize, long flushDelayMs, int capacity) {
+        this.database = database;
+        this.writer = writer;
+        this.storageExecutor = storageExecutor;
+        this.scheduler = scheduler;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushDelayMs = Math.max(1, flushDelayMs);
+        this.capacity = Math.max(this.batchSize, capacity);
+    }
+
+    private static BatchWriter roomWriter(AppDatabase database) {
+        return new BatchWriter() {
+            @Override
+            public void write(List<DetailPoint> points, long walSequence) {
+                database.runInTransaction(() -> {
+                    if (!points.isEmpty()) {
+                        long[] ids = database.detailPointDao().insertAll(points);
+                        for (int i = 0; i < ids.length; i++) {
+                            points.get(i).pointId = ids[i];
+                        }
+                    }
+                    if (walSequence > 0) {
+                        database.walCheckpointDao().save(
+                                new WalCheckpoint(WalCheckpoint.SINGLETON_ID, walSequence));
+                    }
+                });
+            }
+
+            @Override
+            public boolean isRowError(RuntimeException e) {
+                return e instanceof SQLiteConstraintException;
+            }
+        };
+    }
+
+    /**
+     * 设置移出缓冲的点的持久记录；未设置时移出的点只保留在 getRejectedPoints() 中
+     */
+    public void setRejectionLog(RejectionLog rejectionLog) {
+        this.rejectionLog = rejectionLog;
+    }
+
+    // ==================== 写入 ====================
+
+    /**
+     * 保存碎步点（延迟批量写入）
+     */
+    public void save(DetailPoint point) throws IOException {
+        save(point, 0);
+    }
+
+    /**
+     * 保存来自 WAL 的碎步点，点写入时检查点一并推进到 walSequence
+     * @param point 碎步点，null 表示该 WAL 记录没有要写入的行，只推进检查点
+     * @param walSequence WAL 序号（须按递增顺序提交），0 表示不是来自 WAL
+     * @throws InterruptedIOException 等待缓冲区空间时被中断
+     * @throws IOException 之前有点无法写入、已移出缓冲（只报告一次），或缓冲区已满且数据库连续写入失败；
+     *                     两种情况下本次的点都没有放入缓冲
+     */
+    public void save(DetailPoint point, long walSequence) throws IOException {
+        lock.lock();
+        try {
+            checkRejectionsLocked();
+            while (buffer.size() >= capacity) {
+                if (writeFailure != null) {
+                    throw new IOException("碎步点写入缓冲已满，数据库连续写入失败：" + writeFailure.getMessage(),
+                            writeFailure);
+                }
+                notFull.await();
+                checkRejectionsLocked();
+            }
+            buffer.addLast(new Pending(point, walSequence));
+            if (buffer.size() >= batchSize) {
+                queueFlushLocked();
+            } else if (!timerArmed && !flushQueued) {
+                timerArmed = true;
+                scheduler.schedule(this::onTimer, flushDelayMs, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待写入缓冲时被中断");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onTimer() {
+        lock.lock();
+        try {
+            timerArmed = false;
+            if (!buffer.isEmpty()) {
+                queueFlushLocked();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void queueFlushLocked() {
+        if (flushQueued) {
+            return;
+        }
+        flushQueued = true;
+        storageExecutor.execute(() -> {
+            lock.lock();
+            try {
+                flushQueued = false;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                drain();
+            } catch (RuntimeException e) {
+                LogManager.e(TAG, "碎步点批量写入失败，稍后重试", e);
+                lock.lock();
+                try {
+                    if (!timerArmed) {
+                        timerArmed = true;
+                        scheduler.schedule(this::onTimer, flushDelayMs, TimeUnit.MILLISECONDS);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * 把缓冲中的点全部写入，每 batchSize 条一个事务
+     * @throws RuntimeException 写入失败，未写入的点留在缓冲区
+     */
+    private void drain() {
+        flushLock.lock();
+        try {
+            List<DetailPoint> points = new ArrayList<>(batchSize);
+            while (true) {
+                points.clear();
+                long walSequence = 0;
+                int taken = 0;
+                lock.lock();
+                try {
+                    Iterator<Pending> it = buffer.iterator();
+                    while (it.hasNext() && taken < batchSize) {
+                        Pending pending = it.next();
+                        if (pending.point != null) {
+                            points.add(pending.point);
+                        }
+                        walSequence = Math.max(walSequence, pending.walSequence);
+                        taken++;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (taken == 0) {
+                    return;
+                }
+                try {
+                    writer.write(points, walSequence);
+                } catch (RuntimeException e) {
+                    boolean rowError = writer.isRowError(e);
+                    lock.lock();
+                    try {
+                        failedBatchCount++;
+                        if (!rowError) {
+                            recordWriteFailureLocked(e);
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                    if (!rowError) {
+                        throw e;
+                    }
+                    writeIndividually(taken);
+                    continue;
+                }
+                indexCommitted(points);
+                lock.lock();
+                try {
+                    for (int i = 0; i < taken; i++) {
+                        buffer.pollFirst();
+                    }
+                    batchCount++;
+                    headBatchFailures = 0;
+                    writeFailure = null;
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 暂时性失败计数，达到上限后唤醒等待缓冲空间的 save() 让它报错（在 lock 内调用）
+     */
+    private void recordWriteFailureLocked(RuntimeException e) {
+        if (++headBatchFailures >= MAX_BATCH_ATTEMPTS) {
+            writeFailure = e;
+            notFull.signalAll();
+        }
+    }
+
+    /**
+     * 逐条写入缓冲头部的 count 条（每条一个事务），因行本身出错的点先记入 RejectionLog 再移出缓冲
+     * 遇到暂时性错误或记录失败时停止，出错的点留在缓冲头部稍后重试（在 flushLock 内调用）
+     * 全部处理完才唤醒等待缓冲空间的 save()，使移出的点一次报告
+     */
+    private void writeIndividually(int count) {
+        List<DetailPoint> rejected = new ArrayList<>();
+        int rejectedCount = 0;
+        RuntimeException lastFailure = null;
+        try {
+            for (int i = 0; i < count; i++) {
+                Pending pending;
+                lock.lock();
+                try {
+                    pending = buffer.peekFirst();
+                } finally {
+                    lock.unlock();
+                }
+                List<DetailPoint> points = pending.point == null
+                        ? Collections.emptyList() : Collections.singletonList(pending.point);
+                boolean written;
+                try {
+                    writer.write(points, pending.walSequence);
+                    indexCommitted(points);
+                    written = true;
+                } catch (RuntimeException e) {
+                    if (!writer.isRowError(e)) {
+                        lock.lock();
+                        try {
+                            failedBatchCount++;
+                            recordWriteFailureLocked(e);
+                        } finally {
+                            lock.unlock();
+                        }
+                        throw e;
+                    }
+                    try {
+                        reject(pending, e);
+                    } catch (UncheckedIOException recordFailure) {
+                        lock.lock();
+                        try {
+                            recordWriteFailureLocked(recordFailure);
+                        } finally {
+                            lock.unlock();
+                        }
+                        throw recordFailure;
+                    }
+                    written = false;
+                    if (pending.point != null) {
+                        rejected.add(pending.point);
+                    }
+                    rejectedCount++;
+                    lastFailure = e;
+                }
+                lock.lock();
+                try {
+                    buffer.pollFirst();
+                    if (written) {
+                        batchCount++;
+                        headBatchFailures = 0;
+                        writeFailure = null;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } finally {
+            lock.lock();
+            try {
+                rejectedPoints.addAll(rejected);
+                if (rejectedCount > 0) {
+                    unreportedRejections += rejectedCount;
+                    lastRejection = lastFailure;
+                }
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 持久记录一个将要移出缓冲的点（WAL 序号为 0 的点不来自 WAL，只保留在内存中）
+     * @throws UncheckedIOException 记录失败，点不移出
+     */
+    private void reject(Pending pending, RuntimeException cause) {
+        String name = pending.point == null ? "-" : pending.point.pointName;
+        RejectionLog log = rejectionLog;
+        if (log != null && pending.walSequence > 0) {
+            try {
+                log.record(pending.point, pending.walSequence, cause);
+            } catch (IOException e) {
+                throw new UncheckedIOException("碎步点 " + name + " 无法写入数据库，且记录失败", e);
+            }
+        }
+        LogManager.e(TAG, "碎步点 " + name + "（WAL #" + pending.walSequence + "）无法写入数据库，已移出缓冲", cause);
+    }
+
+    /**
+     * 报告上次检查之后移出缓冲的点（在 lock 内调用）
+     */
+    private void checkRejectionsLocked() throws IOException {
+        if (unreportedRejections == 0) {
+            return;
+        }
+        int rejected = unreportedRejections;
+        unreportedRejections = 0;
+        throw new IOException(rejected + " 个碎步点无法写入数据库，已移出缓冲：" + lastRejection.getMessage(),
+                lastRejection);
+    }
+
+    // ==================== 屏障 ====================
+
+    /**
+     * 在存储线程上写入调用前缓冲的全部点（不阻塞调用方）
+     * @return 写入完成时完成；写入失败时异常完成
+     */
+    public CompletableFuture<Void> flush() {
+        return CompletableFuture.runAsync(this::drain, storageExecutor);
+    }
+
+    /**
+     * 在调用线程上写入调用前缓冲的全部点，返回时这些点已提交（任务结束、重放时使用）
+     * 不要在主线程调用
+     * @throws IOException 写入失败，或有点无法写入、已移出缓冲（只报告一次）
+     */
+    public void flushNow() throws IOException {
+        try {
+            drain();
+        } catch (RuntimeException e) {
+            throw new IOException("碎步点写入失败：" + e.getMessage(), e);
+        }
+        lock.lock();
+        try {
+            checkRejectionsLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ==================== 查询 ====================
+
+    /**
+     * @return 任务的全部碎步点（先写入缓冲中的点）
+     */
+    public List<DetailPoint> getPointsForTask(long taskId) throws IOException {
+        flushNow();
+        return database.detailPointDao().getPointsForTask(taskId);
+    }
+
+    // ==================== 空间查询 ====================
+
+    /**
+     * 矩形范围内的点（含边界），用于地图视口加载
+     * @param limit 最多返回的点数
+     */
+    public List<DetailPoint> findPointsInWindow(long taskId, double minX, double minY,
+                                                double maxX, double maxY, int limit) throws IOException {
+        PointGrid grid = spatialIndexFor(taskId);
+        long[] ids;
+        synchronized (spatialLock) {
+            ids = grid.queryWindow(minX, minY, maxX, maxY, limit);
+        }
+        return loadByIds(ids);
+    }
+
+    /**
+     * 距 (x, y) 最近的 k 个点，由近到远（放样、找最近的已测点）
+     * @param maxDistance 搜索半径，Double.POSITIVE_INFINITY 表示不限
+     */
+    public List<DetailPoint> findNearestPoints(long taskId, double x, double y, int k,
+                                               double maxDistance) throws IOException {
+        PointGrid grid = spatialIndexFor(taskId);
+        long[] ids;
+        synchronized (spatialLock) {
+            ids = grid.nearest(x, y, k, maxDistance);
+        }
+        return loadByIds(ids);
+    }
+
+    /**
+     * 重复测量检查
+     * @param tolerance 平面距离容差（米）
+     * @return 容差内最近的已测点，没有时返回 null
+     */
+    public DetailPoint findDuplicate(long taskId, double x, double y, double tolerance) throws IOException {
+        List<DetailPoint> nearest = findNearestPoints(taskId, x, y, 1, tolerance);
+        return nearest.isEmpty() ? null : nearest.get(0);
+    }
+
+    /**
+     * @return 任务的空间索引，不是当前缓存的任务时从数据库重新建立
+     */
+    private PointGrid spatialIndexFor(long taskId) throws IOException {
+        flushNow();
+        synchronized (spatialLock) {
+            if (spatialIndex != null && indexedTaskId == taskId) {
+                return spatialIndex;
+            }
+        }
+        flushLock.lock();
+        try {
+            synchronized (spatialLock) {
+                if (spatialIndex != null && indexedTaskId == taskId) {
+                    return spatialIndex;
+                }
+            }
+            long startNanos = System.nanoTime();
+            List<PointCoordinate> coordinates = database.detailPointDao().getCoordinatesForTask(taskId);
+            double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for (PointCoordinate coordinate : coordinates) {
+                minX = Math.min(minX, coordinate.x);
+                minY = Math.min(minY, coordinate.y);
+                maxX = Math.max(maxX, coordinate.x);
+                maxY = Math.max(maxY, coordinate.y);
+            }
+            // 网格边长按已有点的分布确定，之后增量加入的点沿用
+            PointGrid grid = new PointGrid(PointGrid.suggestCellSize(coordinates.size(),
+                    maxX - minX, maxY - minY, DEFAULT_GRID_CELL_SIZE));
+            for (PointCoordinate coordinate : coordinates) {
+                grid.add(coordinate.pointId, coordinate.x, coordinate.y);
+            }
+            synchronized (spatialLock) {
+                indexedTaskId = taskId;
+                spatialIndex = grid;
+            }
+            LogManager.i(TAG, "任务 %d 空间索引：%d 个点，%d 个网格，耗时 %d ms", taskId, grid.size(),
+                    grid.getCellCount(), (System.nanoTime() - startNanos) / 1_000_000);
+            return grid;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 批次提交后把新点加入空间索引（在 flushLock 内调用）
+     */
+    private void indexCommitted(List<DetailPoint> points) {
+        synchronized (spatialLock) {
+            if (spatialIndex == null) {
+                return;
+            }
+            for (DetailPoint point : points) {
+                if (point.taskId == indexedTaskId && point.pointId > 0) {
+                    spatialIndex.add(point.pointId, point.x, point.y);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按点号回表，结果顺序与 ids 一致
+     */
+    private List<DetailPoint> loadByIds(long[] ids) {
+        Map<Long, DetailPoint> byId = new HashMap<>(ids.length * 2);
+        for (int from = 0; from < ids.length; from += ID_QUERY_CHUNK) {
+            long[] chunk = Arrays.copyOfRange(ids, from, Math.min(ids.length, from + ID_QUERY_CHUNK));
+            for (DetailPoint point : database.detailPointDao().getPointsByIds(chunk)) {
+                byId.put(point.pointId, point);
+            }
+        }
+        List<DetailPoint> points = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            DetailPoint point = byId.get(id);
+            if (point != null) {
+                points.add(point);
+            }
+        }
+        return points;
+    }
+
+    // ==================== 分页 ====================
+
+    /**
+     * 创建任务碎步点的分页加载器，查询在 Room 的读线程上执行，不与批量写入排队
+     * 要包含缓冲中的点，在 flush() 完成后再 refresh()
+     * @param resultExecutor 分页结果的合并线程（界面使用主线程）
+     */
+    public DetailPointPager createPager(long taskId, Executor resultExecutor) {
+        return new DetailPointPager(database.detailPointDao(), taskId, database.getQueryExecutor(), resultExecutor,
+                DetailPointPager.DEFAULT_PAGE_SIZE, DetailPointPager.DEFAULT_MAX_PAGES);
+    }
+
+    // ==================== 统计 ====================
+
+    /**
+     * @return 缓冲中尚未写入的条数
+     */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return buffer.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 已提交的批次数（每批一个事务）
+     */
+    public long getBatchCount() {
+        lock.lock();
+        try {
+            return batchCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 逐条写入仍失败、已移出缓冲的碎步点（按移出顺序），可导出或人工补录
+     */
+    public List<DetailPoint> getRejectedPoints() {
+        lock.lock();
+        try {
+            return new ArrayList<>(rejectedPoints);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 写入失败的批次数
+     */
+    public long getFailedBatchCount() {
+        lock.lock();
+        try {
+            return failedBatchCount;
+        } finally {
+            lock.unlock();
+        }
+    }
 }
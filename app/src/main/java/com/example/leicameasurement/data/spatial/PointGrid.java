@@ -0,0 +1,349 @@
+package com.example.leicameasurement.data.spatial;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 平面点的均匀网格索引：按 cellSize 把平面划分为正方形网格，每个网格记录落在其中的点
+ * 坐标和点号存放在基本类型数组中，支持逐点增量加入、矩形范围查询和 k 近邻查询
+ *
+ * 范围查询只检查与矩形相交的网格；近邻查询从查询点所在网格一圈圈向外扩展，
+ * 已找到的第 k 近距离不超过未检查区域的最近距离时停止；要查的格数超过已占用网格数时
+ * （如个别远离其余点的离群点使占用范围很大），改为遍历剩余的已占用网格
+ * 非线程安全，由调用方加锁
+ */
+public class PointGrid {
+
+    /**
+     * 一个网格中点的下标（指向坐标数组）
+     */
+    private static final class Cell {
+        int[] items = new int[4];
+        int count;
+
+        void add(int index) {
+            if (count == items.length) {
+                items = Arrays.copyOf(items, count * 2);
+            }
+            items[count++] = index;
+        }
+    }
+
+    // 自动选择网格边长时每个网格的平均点数
+    private static final int TARGET_POINTS_PER_CELL = 8;
+
+    private final double cellSize;
+    private final Map<Long, Cell> cells = new HashMap<>();
+
+    private long[] ids = new long[64];
+    private double[] xs = new double[64];
+    private double[] ys = new double[64];
+    private int size;
+
+    // 已占用网格的行列范围，近邻查询扩展到范围外即停止
+    private int minCol = Integer.MAX_VALUE;
+    private int maxCol = Integer.MIN_VALUE;
+    private int minRow = Integer.MAX_VALUE;
+    private int maxRow = Integer.MIN_VALUE;
+
+    /**
+     * @param cellSize 网格边长（与坐标同单位），取点的典型间距的数倍为宜
+     */
+    public PointGrid(double cellSize) {
+        if (!(cellSize > 0) || Double.isInfinite(cellSize)) {
+            throw new IllegalArgumentException("网格边长必须为正数: " + cellSize);
+        }
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * 按点的分布范围选择网格边长，使每个网格平均约 TARGET_POINTS_PER_CELL 个点
+     * @param defaultSize 点数太少或范围退化时使用的边长
+     */
+    public static double suggestCellSize(int count, double width, double height, double defaultSize) {
+        double area = Math.max(width, 0) * Math.max(height, 0);
+        if (count < TARGET_POINTS_PER_CELL || !(area > 0) || Double.isInfinite(area)) {
+            return defaultSize;
+        }
+        return Math.sqrt(area * TARGET_POINTS_PER_CELL / count);
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCellCount() {
+        return cells.size();
+    }
+
+    // ==================== 写入 ====================
+
+    /**
+     * 加入一个点；坐标不是有限数的点被忽略
+     * @param id 点号（DetailPoint.pointId）
+     */
+    public void add(long id, double x, double y) {
+        if (!Double.isFinite(x) || !Double.isFinite(y)) {
+            return;
+        }
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+        }
+        ids[size] = id;
+        xs[size] = x;
+        ys[size] = y;
+        int col = column(x);
+        int row = row(y);
+        Cell cell = cells.get(key(col, row));
+        if (cell == null) {
+            cell = new Cell();
+            cells.put(key(col, row), cell);
+        }
+        cell.add(size);
+        size++;
+        minCol = Math.min(minCol, col);
+        maxCol = Math.max(maxCol, col);
+        minRow = Math.min(minRow, row);
+        maxRow = Math.max(maxRow, row);
+    }
+
+    // ==================== 查询 ====================
+
+    /**
+     * 矩形范围查询（含边界）
+     * @param limit 最多返回的点数
+     * @return 范围内的点号，顺序不定
+     */
+    public long[] queryWindow(double minX, double minY, double maxX, double maxY, int limit) {
+        if (size == 0 || limit <= 0 || !(minX <= maxX) || !(minY <= maxY)) {
+            return new long[0];
+        }
+        int col0 = Math.max(column(minX), minCol);
+        int col1 = Math.min(column(maxX), maxCol);
+        int row0 = Math.max(row(minY), minRow);
+        int row1 = Math.min(row(maxY), maxRow);
+        if (col0 > col1 || row0 > row1) {
+            return new long[0];
+        }
+        WindowHits hits = new WindowHits(minX, minY, maxX, maxY, limit);
+        long cellsInWindow = (long) (col1 - col0 + 1) * (row1 - row0 + 1);
+        if (cellsInWindow > cells.size()) {
+            // 大窗口：遍历已占用的网格比逐格查表少
+            for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+                long key = entry.getKey();
+                int col = (int) (key >> 32);
+                int row = (int) key;
+                if (col >= col0 && col <= col1 && row >= row0 && row <= row1 && !hits.scan(entry.getValue())) {
+                    break;
+                }
+            }
+        } else {
+            scanWindow:
+            for (int col = col0; col <= col1; col++) {
+                for (int row = row0; row <= row1; row++) {
+                    Cell cell = cells.get(key(col, row));
+                    if (cell != null && !hits.scan(cell)) {
+                        break scanWindow;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(hits.ids, hits.count);
+    }
+
+    /**
+     * 范围查询的结果收集
+     */
+    private final class WindowHits {
+        final double minX, minY, maxX, maxY;
+        final int limit;
+        long[] ids = new long[16];
+        int count;
+
+        WindowHits(double minX, double minY, double maxX, double maxY, int limit) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.limit = limit;
+        }
+
+        /**
+         * @return false=已达到 limit
+         */
+        boolean scan(Cell cell) {
+            for (int i = 0; i < cell.count; i++) {
+                int index = cell.items[i];
+                double x = xs[index];
+                double y = ys[index];
+                if (x < minX || x > maxX || y < minY || y > maxY) {
+                    continue;
+                }
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                }
+                ids[count++] = PointGrid.this.ids[index];
+                if (count == limit) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * k 近邻查询
+     * @param maxDistance 只返回距离不超过该值的点（Double.POSITIVE_INFINITY 表示不限）
+     * @return 按距离由近到远排列的点号，不足 k 个时返回全部符合条件的点
+     */
+    public long[] nearest(double x, double y, int k, double maxDistance) {
+        if (size == 0 || k <= 0 || !Double.isFinite(x) || !Double.isFinite(y) || !(maxDistance >= 0)) {
+            return new long[0];
+        }
+        Neighbours neighbours = new Neighbours(x, y, Math.min(k, size), maxDistance * maxDistance);
+        int centerCol = column(x);
+        int centerRow = row(y);
+        // 与已占用范围不相交的圈直接跳过
+        int firstRing = Math.max(0, Math.max(
+                Math.max(minCol - centerCol, centerCol - maxCol),
+                Math.max(minRow - centerRow, centerRow - maxRow)));
+        int lastRing = Math.max(
+                Math.max(Math.abs(centerCol - minCol), Math.abs(maxCol - centerCol)),
+                Math.max(Math.abs(centerRow - minRow), Math.abs(maxRow - centerRow)));
+        long visited = 0;  // 已查过的格数（含空格）
+        for (int ring = firstRing; ring <= lastRing; ring++) {
+            int left = centerCol - ring;
+            int right = centerCol + ring;
+            int top = centerRow - ring;
+            int bottom = centerRow + ring;
+            long rowCells = Math.max(0, (long) Math.min(right, maxCol) - Math.max(left, minCol) + 1);
+            long colCells = Math.max(0, (long) Math.min(bottom - 1, maxRow) - Math.max(top + 1, minRow) + 1);
+            visited += rowCells * ((top >= minRow ? 1 : 0) + (ring > 0 && bottom <= maxRow ? 1 : 0))
+                    + colCells * ((left >= minCol ? 1 : 0) + (right <= maxCol ? 1 : 0));
+            if (visited > cells.size()) {
+                // 空格太多：逐格查表比遍历已占用的网格慢
+                scanOutside(neighbours, centerCol, centerRow, ring);
+                break;
+            }
+            // 上下两行
+            for (int col = Math.max(left, minCol); col <= Math.min(right, maxCol); col++) {
+                if (top >= minRow) {
+                    neighbours.scan(cells.get(key(col, top)));
+                }
+                if (ring > 0 && bottom <= maxRow) {
+                    neighbours.scan(cells.get(key(col, bottom)));
+                }
+            }
+            // 左右两列（不含角上的格）
+            for (int row = Math.max(top + 1, minRow); row <= Math.min(bottom - 1, maxRow); row++) {
+                if (left >= minCol) {
+                    neighbours.scan(cells.get(key(left, row)));
+                }
+                if (right <= maxCol) {
+                    neighbours.scan(cells.get(key(right, row)));
+                }
+            }
+            // 本圈之外的点到查询点的最近可能距离
+            double outside = Math.min(
+                    Math.min(x - (double) left * cellSize, (double) (right + 1) * cellSize - x),
+                    Math.min(y - (double) top * cellSize, (double) (bottom + 1) * cellSize - y));
+            if (neighbours.isSettled(outside * outside)) {
+                break;
+            }
+        }
+        long[] result = new long[neighbours.found];
+        for (int i = 0; i < neighbours.found; i++) {
+            result[i] = ids[neighbours.best[i]];
+        }
+        return result;
+    }
+
+    /**
+     * 检查与查询点所在网格相距 ring 圈及以上的全部已占用网格
+     */
+    private void scanOutside(Neighbours neighbours, int centerCol, int centerRow, int ring) {
+        for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+            long key = entry.getKey();
+            long col = (int) (key >> 32);
+            long row = (int) key;
+            if (Math.max(Math.abs(col - centerCol), Math.abs(row - centerRow)) >= ring) {
+                neighbours.scan(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 近邻查询的候选：按距离平方升序保存最近的 k 个
+     */
+    private final class Neighbours {
+        final double x, y;
+        final double maxSquared;
+        final int[] best;
+        final double[] distance;
+        int found;
+
+        Neighbours(double x, double y, int k, double maxSquared) {
+            this.x = x;
+            this.y = y;
+            this.maxSquared = maxSquared;
+            this.best = new int[k];
+            this.distance = new double[k];
+        }
+
+        void scan(Cell cell) {
+            if (cell == null) {
+                return;
+            }
+            int k = best.length;
+            for (int i = 0; i < cell.count; i++) {
+                int index = cell.items[i];
+                double dx = xs[index] - x;
+                double dy = ys[index] - y;
+                double d = dx * dx + dy * dy;
+                if (d > maxSquared || (found == k && d >= distance[k - 1])) {
+                    continue;
+                }
+                int at = found < k ? found++ : k - 1;
+                while (at > 0 && distance[at - 1] > d) {
+                    best[at] = best[at - 1];
+                    distance[at] = distance[at - 1];
+                    at--;
+                }
+                best[at] = index;
+                distance[at] = d;
+            }
+        }
+
+        /**
+         * @param outsideSquared 未检查区域的最近距离平方
+         * @return true=未检查区域不可能再有更近的点
+         */
+        boolean isSettled(double outsideSquared) {
+            return outsideSquared > maxSquared || (found == best.length && distance[found - 1] <= outsideSquared);
+        }
+    }
+
+    private int column(double x) {
+        return clampToInt(Math.floor(x / cellSize));
+    }
+
+    private int row(double y) {
+        return clampToInt(Math.floor(y / cellSize));
+    }
+
+    private static int clampToInt(double value) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+
+    private static long key(int col, int row) {
+        return ((long) col << 32) | (row & 0xFFFFFFFFL);
+    }
+}
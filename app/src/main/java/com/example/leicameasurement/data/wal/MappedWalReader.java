@@ -0,0 +1,212 @@
+package com.example.leicameasurement.data.wal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 基于内存映射和稀疏索引的 WAL 查询（按时间范围、RPC 编号、序号）
+ * 打开时读取每个段旁的 .idx 索引（缺失或过期时扫描一遍段文件重建并保存），
+ * 查询只映射和遍历时间范围/RPC 掩码相符的块，记录内容不进入堆，命中的记录才解码
+ * 只读取打开时已有的记录；非线程安全
+ */
+public class MappedWalReader implements Closeable {
+
+    /**
+     * 逐条接收命中的记录
+     */
+    public interface RecordVisitor {
+        /**
+         * @return false=停止查询
+         */
+        boolean visit(WalRecord record);
+    }
+
+    private final File[] segments;
+    private final WalIndex[] indexes;
+    private final int blockBytes;
+    private final CRC32 crc = new CRC32();
+
+    // 最近一次映射的段（同一时刻只保留一个映射）
+    private int mappedSegment = -1;
+    private ByteBuffer mapped;
+
+    /**
+     * @param dir WAL 目录
+     * @throws IOException 段文件无法读取
+     */
+    public MappedWalReader(File dir) throws IOException {
+        this(dir, WalIndex.DEFAULT_BLOCK_BYTES);
+    }
+
+    MappedWalReader(File dir, int blockBytes) throws IOException {
+        this.segments = WalFormat.listSegments(dir);
+        this.indexes = new WalIndex[segments.length];
+        this.blockBytes = blockBytes;
+        for (int i = 0; i < segments.length; i++) {
+            final int segment = i;
+            indexes[i] = WalIndex.open(segments[i], blockBytes, () -> map(segment));
+        }
+    }
+
+    /**
+     * 查询时间范围 [fromMillis, toMillis] 内的记录，按序号顺序
+     * @return 命中的记录数
+     */
+    public int scanByTime(long fromMillis, long toMillis, RecordVisitor visitor) throws IOException {
+        return scan(fromMillis, toMillis, false, 0, visitor);
+    }
+
+    /**
+     * 查询时间范围内指定 RPC 编号的记录，按序号顺序
+     * @return 命中的记录数
+     */
+    public int scanByRpc(int rpc, long fromMillis, long toMillis, RecordVisitor visitor) throws IOException {
+        return scan(fromMillis, toMillis, true, rpc, visitor);
+    }
+
+    /**
+     * @param limit 最多返回的记录数
+     */
+    public List<WalRecord> findByTime(long fromMillis, long toMillis, int limit) throws IOException {
+        List<WalRecord> records = new ArrayList<>();
+        scanByTime(fromMillis, toMillis, record -> {
+            records.add(record);
+            return records.size() < limit;
+        });
+        return records;
+    }
+
+    /**
+     * @param limit 最多返回的记录数
+     */
+    public List<WalRecord> findByRpc(int rpc, long fromMillis, long toMillis, int limit) throws IOException {
+        List<WalRecord> records = new ArrayList<>();
+        scanByRpc(rpc, fromMillis, toMillis, record -> {
+            records.add(record);
+            return records.size() < limit;
+        });
+        return records;
+    }
+
+    /**
+     * @return 指定序号的记录，不存在时返回 null
+     */
+    public WalRecord get(long sequence) throws IOException {
+        for (int i = 0; i < segments.length; i++) {
+            int block = indexes[i].blockOf(sequence);
+            if (block < 0) {
+                continue;
+            }
+            ByteBuffer buffer = map(i);
+            WalIndex index = indexes[i];
+            block = index.blockOf(sequence);
+            if (block < 0) {
+                return null;
+            }
+            int end = index.blockEnd(block);
+            for (int position = (int) index.offsets[block]; position < end;
+                 position += frameLength(buffer, position)) {
+                int body = position + WalFormat.FRAME_HEADER_SIZE;
+                if (buffer.getLong(body + WalFormat.BODY_SEQUENCE) == sequence) {
+                    return decode(i, buffer, position);
+                }
+            }
+            return null;
+        }
+        return null;
+    }
+
+    private int scan(long fromMillis, long toMillis, boolean byRpc, int rpc, RecordVisitor visitor)
+            throws IOException {
+        long rpcBit = WalIndex.rpcBit(rpc);
+        int matched = 0;
+        for (int i = 0; i < segments.length; i++) {
+            WalIndex index = indexes[i];
+            if (!index.overlaps(fromMillis, toMillis) || (byRpc && (index.rpcMask & rpcBit) == 0)) {
+                continue;
+            }
+            ByteBuffer buffer = map(i);
+            index = indexes[i];
+            for (int block = 0; block < index.count; block++) {
+                if (index.maxTimes[block] < fromMillis || index.minTimes[block] > toMillis
+                        || (byRpc && (index.rpcMasks[block] & rpcBit) == 0)) {
+                    continue;
+                }
+                int end = index.blockEnd(block);
+                for (int position = (int) index.offsets[block]; position < end;
+                     position += frameLength(buffer, position)) {
+                    int body = position + WalFormat.FRAME_HEADER_SIZE;
+                    long timestamp = buffer.getLong(body + WalFormat.BODY_TIMESTAMP);
+                    if (timestamp < fromMillis || timestamp > toMillis
+                            || (byRpc && buffer.getInt(body + WalFormat.BODY_RPC) != rpc)) {
+                        continue;
+                    }
+                    matched++;
+                    if (!visitor.visit(decode(i, buffer, position))) {
+                        return matched;
+                    }
+                }
+            }
+        }
+        return matched;
+    }
+
+    private static int frameLength(ByteBuffer buffer, int position) {
+        return WalFormat.FRAME_HEADER_SIZE + buffer.getInt(position);
+    }
+
+    private WalRecord decode(int segment, ByteBuffer buffer, int position) throws IOException {
+        if (WalFormat.checkFrame(buffer, position, crc) < 0) {
+            throw new IOException(segments[segment].getName() + " 偏移 " + position + " 处的记录校验失败");
+        }
+        return WalFormat.decodeFrame(buffer, position);
+    }
+
+    /**
+     * 映射段文件（只读）；段在建索引之后被截断时按映射内容重建索引
+     */
+    private ByteBuffer map(int segment) throws IOException {
+        if (mappedSegment == segment) {
+            return mapped;
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segments[segment].toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("WAL段过大，无法映射：" + segments[segment].getName());
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        WalIndex index = indexes[segment];
+        if (index != null && index.validLength > buffer.limit()) {
+            indexes[segment] = WalIndex.build(buffer, buffer.limit(), blockBytes);
+        }
+        mappedSegment = segment;
+        mapped = buffer;
+        return buffer;
+    }
+
+    /**
+     * @return 段文件数
+     */
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * 释放映射（映射内存由 GC 回收）
+     */
+    @Override
+    public void close() {
+        mapped = null;
+        mappedSegment = -1;
+    }
+}
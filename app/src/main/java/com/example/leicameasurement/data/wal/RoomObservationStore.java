@@ -0,0 +1,89 @@
+package com.example.leicameasurement.data.wal;
+
+import com.example.leicameasurement.data.database.AppDatabase;
+import com.example.leicameasurement.data.entity.DetailPoint;
+import com.example.leicameasurement.data.repository.DetailPointRepository;
+import com.example.leicameasurement.infrastructure.LogManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * 观测落库到 Room：碎步点经 DetailPointRepository 批量写入 detail_points，
+ * 检查点与数据在同一事务内更新
+ * 后视/前视观测目前没有对应的表，只推进检查点（原始数据保留在 WAL 中）
+ */
+public class RoomObservationStore implements WalLogManager.ObservationStore {
+
+    private static final String TAG = "RoomObservationStore";
+
+    private final AppDatabase database;
+    private final DetailPointRepository repository;
+
+    public RoomObservationStore(AppDatabase database, DetailPointRepository repository) {
+        this.database = database;
+        this.repository = repository;
+    }
+
+    /**
+     * 先写入缓冲中已提交的观测，读到的检查点才包含它们
+     */
+    @Override
+    public long getAppliedSequence() {
+        try {
+            repository.flushNow();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Long applied = database.walCheckpointDao().getAppliedSequence();
+        return applied == null ? 0 : applied;
+    }
+
+    /**
+     * 重放：按顺序放入写入缓冲并等待全部提交
+     */
+    @Override
+    public void apply(List<WalObservation> observations, long appliedSequence) {
+        try {
+            for (WalObservation observation : observations) {
+                repository.save(toDetailPoint(observation), observation.getSequence());
+            }
+            repository.flushNow();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 实时观测：放入写入缓冲，由仓库按批提交
+     */
+    @Override
+    public void submit(WalObservation observation) {
+        try {
+            repository.save(toDetailPoint(observation), observation.getSequence());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return 对应的碎步点，没有要写入的行时返回 null
+     */
+    public static DetailPoint toDetailPoint(WalObservation observation) {
+        if (observation.getKind() != WalObservation.Kind.DETAIL) {
+            return null;
+        }
+        if (observation.getTaskId() <= 0) {
+            // 未选择任务时测得的点无法满足外键约束
+            LogManager.w(TAG, "观测 #%d 没有所属任务，未写入数据库", observation.getSequence());
+            return null;
+        }
+        return new DetailPoint(observation.getTaskId(), observation.getPointName(),
+                observation.getX(), observation.getY(), observation.getZ(),
+                observation.getHorizontalAngle(), observation.getVerticalAngle(),
+                observation.getSlopeDistance(), observation.getPrismHeight(),
+                observation.getMeasureMode() == null ? null : observation.getMeasureMode().name(),
+                observation.getTimestamp());
+    }
+}
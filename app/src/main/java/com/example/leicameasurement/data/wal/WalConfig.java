@@ -0,0 +1,71 @@
+package com.example.leicameasurement.data.wal;
+
+/**
+ * WAL 写入配置：刷盘策略、段文件大小、队列容量
+ */
+public class WalConfig {
+
+    /**
+     * 刷盘（FileChannel.force）策略
+     */
+    public enum DurabilityPolicy {
+        /** 每批写入后立即刷盘（同一批内的多条记录共用一次刷盘） */
+        EVERY_RECORD,
+        /** 距上次刷盘超过 syncIntervalMs 时刷盘 */
+        INTERVAL,
+        /** 只在测量边界记录或显式 sync() 时刷盘 */
+        BOUNDARY
+    }
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private DurabilityPolicy durabilityPolicy = DurabilityPolicy.INTERVAL;
+    private long syncIntervalMs = 200;
+    private long segmentBytes = DEFAULT_SEGMENT_BYTES;
+    private int queueCapacity = 8192;
+
+    public DurabilityPolicy getDurabilityPolicy() {
+        return durabilityPolicy;
+    }
+
+    public WalConfig setDurabilityPolicy(DurabilityPolicy durabilityPolicy) {
+        this.durabilityPolicy = durabilityPolicy;
+        return this;
+    }
+
+    public long getSyncIntervalMs() {
+        return syncIntervalMs;
+    }
+
+    /**
+     * INTERVAL 策略下的最长刷盘间隔（ms）
+     */
+    public WalConfig setSyncIntervalMs(long syncIntervalMs) {
+        this.syncIntervalMs = Math.max(1, syncIntervalMs);
+        return this;
+    }
+
+    public long getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    /**
+     * 单个段文件的大小上限，超过后切换到新段
+     */
+    public WalConfig setSegmentBytes(long segmentBytes) {
+        this.segmentBytes = Math.max(4096, segmentBytes);
+        return this;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * 待写入队列容量，写线程跟不上时追加方阻塞等待
+     */
+    public WalConfig setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = Math.max(16, queueCapacity);
+        return this;
+    }
+}
@@ -3,92 +3,585 @@ package com.example.leicameasurement.data.wal;
 import android.os.Environment;
 import com.example.leicameasurement.infrastructure.LogManager;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
 
 /**
-* WAL日志写入器（极简版）：实时保存仪器原始数据，确保不丢失
-* 核心职责：追加写入原始数据（时间戳+指令+响应）
+* WAL日志写入器：实时保存仪器原始数据，确保不丢失
+* 核心职责：追加写入带长度与 CRC32 校验的二进制记录（格式见 WalFormat），段文件超过上限后切换新段
+*
+* 追加方只把记录放入队列并取得序号，不做文件 I/O；专用写线程一次取走队列中的全部记录，
+* 编码后一次写入 FileChannel，再按刷盘策略决定是否 force（组提交：多条记录共用一次写入和刷盘）
+* 需要确认落盘时调用 sync() 或 awaitDurable()
+* 打开已有目录时从最后一个段的最后一条完整记录之后继续写入，写入中断的尾部被截断
 */
 public class WalFileWriter {
 
     private static final String TAG = "WalFileWriter";
     private static final String WAL_DIR = "totalstation_wal"; // 日志目录
-    private static final String WAL_FILE_NAME = "raw_data.log"; // 日志文件名
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
 
-    private FileWriter mFileWriter;
-    private File mWalFile;
+    private static final class Pending {
+        final byte type;
+        final long sequence;
+        final long timestamp;
+        final int rpc;
+        final byte[] payload;
 
-    public WalFileWriter() {
-        initWalFile();
+        Pending(byte type, long sequence, long timestamp, int rpc, byte[] payload) {
+            this.type = type;
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.rpc = rpc;
+            this.payload = payload;
+        }
     }
 
+    private final File mWalDir;
+    private final WalConfig mConfig;
+
+    // 以下字段由 mLock 保护
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Condition mNotEmpty = mLock.newCondition();
+    private final Condition mNotFull = mLock.newCondition();
+    private final Condition mProgress = mLock.newCondition();
+    private List<Pending> mQueue = new ArrayList<>();
+    private List<Pending> mSpare = new ArrayList<>();
+    private long mNextSequence = 1;
+    private long mWrittenSequence;  // 已写入文件（可能仍在页缓存中）
+    private long mDurableSequence;  // 已 force 到存储
+    private long mSyncRequested;    // 请求刷盘到的序号
+    private boolean mClosed = false;
+    private IOException mFailure;
+    private long mBatchCount;
+    private long mForceCount;
+    private Thread mWriterThread;
+
+    // 以下字段只在写线程中访问（打开阶段除外）
+    private FileChannel mChannel;
+    private File mSegmentFile;
+    private long mSegmentSize;
+    private ByteBuffer mBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 mCrc = new CRC32();
+    private long mLastForceNanos = System.nanoTime();
+
     /**
-    * 初始化WAL文件（内部存储/外部存储）
+    * 使用外部存储下的默认目录和默认配置；初始化失败时记录日志，之后的写入被忽略
     */
-    private void initWalFile() {
+    public WalFileWriter() {
+        this.mWalDir = new File(Environment.getExternalStorageDirectory(), WAL_DIR);
+        this.mConfig = new WalConfig();
         try {
-            // 1. 创建日志目录（外部存储，便于调试）
-            File walDir = new File(Environment.getExternalStorageDirectory(), WAL_DIR);
-            if (!walDir.exists()) {
-                if (walDir.mkdirs()) {
-                    LogManager.i(TAG, "WAL目录创建成功：" + walDir.getAbsolutePath());
-                } else {
-                    LogManager.e(TAG, "WAL目录创建失败");
-                    return;
-                }
-            }
-            // 2. 创建日志文件（追加模式）
-            mWalFile = new File(walDir, WAL_FILE_NAME);
-            mFileWriter = new FileWriter(mWalFile, true);
-            LogManager.i(TAG, "WAL文件初始化成功：" + mWalFile.getAbsolutePath());
+            open();
+            startWriter();
         } catch (IOException e) {
+            mFailure = e;
+            mClosed = true;
             LogManager.e(TAG, "WAL文件初始化失败：" + e.getMessage());
         }
     }
 
     /**
-    * 写入原始数据到WAL日志
+    * @param walDir WAL 目录（不存在时创建）
+    * @param config 写入配置
+    * @throws IOException 目录无法创建或已有段文件无法打开
+    */
+    public WalFileWriter(File walDir, WalConfig config) throws IOException {
+        this.mWalDir = walDir;
+        this.mConfig = config;
+        open();
+        startWriter();
+    }
+
+    /**
+    * 打开目录：续写最后一个段，截断不完整的尾部
+    */
+    private void open() throws IOException {
+        if (!mWalDir.exists() && !mWalDir.mkdirs()) {
+            throw new IOException("WAL目录创建失败：" + mWalDir.getAbsolutePath());
+        }
+        File[] segments = WalFormat.listSegments(mWalDir);
+        if (segments.length == 0) {
+            openSegment(1);
+            return;
+        }
+        File last = segments[segments.length - 1];
+        if (last.length() < WalFormat.SEGMENT_HEADER_SIZE) {
+            // 新段的段头还没写完就中断了
+            LogManager.w(TAG, "WAL段 " + last.getName() + " 段头不完整，重新创建");
+            openSegment(WalFormat.parseSegmentSequence(last.getName()));
+            mNextSequence = WalFormat.parseSegmentSequence(last.getName());
+            mWrittenSequence = mNextSequence - 1;
+            mDurableSequence = mNextSequence - 1;
+            return;
+        }
+        WalFormat.ScanResult scan = WalFormat.scan(last);
+        mChannel = FileChannel.open(last.toPath(), StandardOpenOption.WRITE);
+        if (mChannel.size() > scan.validLength) {
+            LogManager.w(TAG, "WAL段 " + last.getName() + " 尾部不完整，截断 "
+                    + (mChannel.size() - scan.validLength) + " 字节");
+            mChannel.truncate(scan.validLength);
+            mChannel.force(false);
+        }
+        mChannel.position(scan.validLength);
+        mSegmentFile = last;
+        mSegmentSize = scan.validLength;
+        mNextSequence = scan.lastSequence + 1;
+        mWrittenSequence = scan.lastSequence;
+        mDurableSequence = scan.lastSequence;
+        LogManager.i(TAG, "WAL续写：" + last.getName() + "，下一条序号 " + mNextSequence);
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        File file = new File(mWalDir, WalFormat.segmentName(firstSequence));
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = WalFormat.segmentHeader(firstSequence);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        mChannel = channel;
+        mSegmentFile = file;
+        mSegmentSize = WalFormat.SEGMENT_HEADER_SIZE;
+    }
+
+    private void startWriter() {
+        mWriterThread = new Thread(this::writerLoop, "WalWriter");
+        mWriterThread.setDaemon(true);
+        mWriterThread.start();
+        LogManager.i(TAG, "WAL写入器已启动：" + mWalDir.getAbsolutePath()
+                + "，刷盘策略 " + mConfig.getDurabilityPolicy());
+    }
+
+    // ==================== 追加 ====================
+
+    /**
+    * 写入原始数据到WAL日志（不等待落盘）
     * @param command 发送的指令
     * @param response 接收的响应
     */
     public void writeRawData(String command, String response) {
-        if (mFileWriter == null) {
-            LogManager.w(TAG, "WAL写入失败：文件写入器为空");
-            return;
-        }
+        writeRawData(command, response, false);
+    }
+
+    /**
+    * 写入原始数据到WAL日志
+    * @param measurementBoundary true=一次测量的最后一条记录，写入后立即刷盘
+    */
+    public void writeRawData(String command, String response, boolean measurementBoundary) {
         try {
-            // 日志格式：时间戳|指令|响应（便于后期解析）
-            String logLine = System.currentTimeMillis() + "|" +
-                    command.trim() + "|" +
-                    (response == null ? "NULL" : response.trim()) + "\n";
-            mFileWriter.write(logLine);
-            mFileWriter.flush(); // 强制写入磁盘（避免内存缓存丢失）
-            LogManager.d(TAG, "WAL写入成功：" + logLine.trim());
+            append(WalRecord.TYPE_RAW, parseRpc(command),
+                    WalRecord.encodeRaw(command.trim(), response == null ? null : response.trim()),
+                    measurementBoundary);
         } catch (IOException e) {
             LogManager.e(TAG, "WAL写入失败：" + e.getMessage());
         }
     }
 
     /**
-    * 关闭写入器
+    * 追加一条记录（只入队，不等待写入）
+    * 队列已满时阻塞到写线程腾出空间
+    * @param type 记录类型
+    * @param rpc 指令 RPC 编号，无关时为 -1
+    * @param payload 负载（入队后不应再修改）
+    * @param boundary true=测量边界，写入后立即刷盘（与刷盘策略无关）
+    * @return 记录序号
+    * @throws IOException 写入器已关闭或写线程出错
     */
-    public void close() {
-        if (mFileWriter != null) {
+    public long append(byte type, int rpc, byte[] payload, boolean boundary) throws IOException {
+        return append(type, System.currentTimeMillis(), rpc, payload, boundary);
+    }
+
+    /**
+    * 追加一条带指定时间戳的记录，其余同 {@link #append(byte, int, byte[], boolean)}
+    * @param timestamp 记录时间（ms）
+    */
+    public long append(byte type, long timestamp, int rpc, byte[] payload, boolean boundary) throws IOException {
+        if (WalFormat.RECORD_HEADER_SIZE + payload.length > WalFormat.MAX_RECORD_SIZE) {
+            throw new IOException("WAL记录过大：" + payload.length + " 字节");
+        }
+        mLock.lock();
+        try {
+            while (true) {
+                checkOpen();
+                if (mQueue.size() < mConfig.getQueueCapacity()) {
+                    break;
+                }
+                mNotFull.await();
+            }
+            long sequence = mNextSequence++;
+            mQueue.add(new Pending(type, sequence, timestamp, rpc, payload));
+            if (boundary) {
+                mSyncRequested = Math.max(mSyncRequested, sequence);
+            }
+            mNotEmpty.signal();
+            return sequence;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待WAL队列时被中断");
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+    * 刷盘到当前最后一条记录并等待完成
+    * @throws IOException 写线程出错
+    */
+    public void sync() throws IOException {
+        long target;
+        mLock.lock();
+        try {
+            target = mNextSequence - 1;
+            mSyncRequested = Math.max(mSyncRequested, target);
+            mNotEmpty.signal();
+        } finally {
+            mLock.unlock();
+        }
+        if (!awaitDurable(target, Long.MAX_VALUE)) {
+            throw new InterruptedIOException("等待WAL刷盘超时");
+        }
+    }
+
+    /**
+    * 等待指定序号的记录落盘（不主动触发刷盘，由刷盘策略决定时机）
+    * @return true=已落盘，false=超时
+    * @throws IOException 写线程出错
+    */
+    public boolean awaitDurable(long sequence, long timeoutMs) throws IOException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(Math.min(timeoutMs, Long.MAX_VALUE / 2_000_000));
+        mLock.lock();
+        try {
+            while (mDurableSequence < sequence) {
+                if (mFailure != null) {
+                    throw new IOException("WAL写入失败", mFailure);
+                }
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = mProgress.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待WAL刷盘时被中断");
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (mFailure != null) {
+            throw new IOException("WAL写入失败", mFailure);
+        }
+        if (mClosed) {
+            throw new IOException("WAL写入器已关闭");
+        }
+    }
+
+    // ==================== 写线程 ====================
+
+    private void writerLoop() {
+        WalConfig.DurabilityPolicy policy = mConfig.getDurabilityPolicy();
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(mConfig.getSyncIntervalMs());
+        while (true) {
+            List<Pending> batch;
+            long syncTarget;
+            boolean closing;
+            mLock.lock();
+            try {
+                while (mQueue.isEmpty() && !mClosed && mSyncRequested <= mDurableSequence) {
+                    if (policy == WalConfig.DurabilityPolicy.INTERVAL && mWrittenSequence > mDurableSequence) {
+                        long remaining = intervalNanos - (System.nanoTime() - mLastForceNanos);
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        mNotEmpty.awaitNanos(remaining);
+                    } else {
+                        mNotEmpty.await();
+                    }
+                }
+                batch = mQueue;
+                mQueue = mSpare;
+                mSpare = null;
+                syncTarget = mSyncRequested;
+                closing = mClosed;
+                mNotFull.signalAll();
+            } catch (InterruptedException e) {
+                // 写线程只在关闭时退出，忽略中断
+                continue;
+            } finally {
+                mLock.unlock();
+            }
+
+            long written = -1;
+            long durable = -1;
+            try {
+                if (!batch.isEmpty()) {
+                    for (Pending record : batch) {
+                        writeRecord(record);
+                    }
+                    flushBuffer();
+                    written = batch.get(batch.size() - 1).sequence;
+                }
+                long lastWritten = written >= 0 ? written : currentWritten();
+                boolean force;
+                switch (policy) {
+                    case EVERY_RECORD:
+                        force = written >= 0;
+                        break;
+                    case INTERVAL:
+                        force = System.nanoTime() - mLastForceNanos >= intervalNanos;
+                        break;
+                    default:
+                        force = false;
+                        break;
+                }
+                if ((force || closing || syncTarget > currentDurable()) && lastWritten > currentDurable()) {
+                    mChannel.force(false);
+                    mLastForceNanos = System.nanoTime();
+                    durable = lastWritten;
+                }
+            } catch (IOException e) {
+                LogManager.e(TAG, "WAL写入失败：" + e.getMessage());
+                fail(e);
+                return;
+            }
+
+            batch.clear();
+            mLock.lock();
+            try {
+                mSpare = batch;
+                mBatchCount++;
+                if (written >= 0) {
+                    mWrittenSequence = written;
+                }
+                if (durable >= 0) {
+                    mDurableSequence = durable;
+                    mForceCount++;
+                }
+                mProgress.signalAll();
+                if (closing && mQueue.isEmpty()) {
+                    break;
+                }
+            } finally {
+                mLock.unlock();
+            }
+        }
+        closeChannel();
+    }
+
+    private long currentWritten() {
+        mLock.lock();
+        try {
+            return mWrittenSequence;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private long currentDurable() {
+        mLock.lock();
+        try {
+            return mDurableSequence;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void writeRecord(Pending record) throws IOException {
+        int frameSize = WalFormat.frameSize(record.payload.length);
+        if (mSegmentSize + frameSize > mConfig.getSegmentBytes()
+                && mSegmentSize > WalFormat.SEGMENT_HEADER_SIZE) {
+            rotate(record.sequence);
+        }
+        if (mBuffer.remaining() < frameSize) {
+            flushBuffer();
+            if (mBuffer.capacity() < frameSize) {
+                mBuffer = ByteBuffer.allocate(frameSize).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        WalFormat.encode(mBuffer, mCrc, record.type, record.sequence, record.timestamp, record.rpc, record.payload);
+        mSegmentSize += frameSize;
+    }
+
+    private void flushBuffer() throws IOException {
+        mBuffer.flip();
+        while (mBuffer.hasRemaining()) {
+            mChannel.write(mBuffer);
+        }
+        mBuffer.clear();
+    }
+
+    /**
+    * 切换到新段：旧段写完并刷盘后关闭
+    */
+    private void rotate(long firstSequence) throws IOException {
+        flushBuffer();
+        mChannel.force(false);
+        mChannel.close();
+        LogManager.i(TAG, "WAL段已满：" + mSegmentFile.getName() + "（" + mSegmentSize + " 字节）");
+        openSegment(firstSequence);
+    }
+
+    private void fail(IOException e) {
+        mLock.lock();
+        try {
+            mFailure = e;
+            mQueue.clear();
+            mNotFull.signalAll();
+            mProgress.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        if (mChannel != null) {
             try {
-                mFileWriter.close();
-                LogManager.i(TAG, "WAL写入器已关闭");
+                mChannel.close();
             } catch (IOException e) {
                 LogManager.e(TAG, "WAL写入器关闭失败：" + e.getMessage());
             }
         }
     }
 
+    // ==================== 保留 ====================
+
+    /**
+    * 删除全部记录的序号都不大于 sequence 的段文件及其稀疏索引（先删索引，中断时不留孤立的索引）
+    * 最后一个段是当前写入段，始终保留；调用方须保证没有读取器正在遍历这些段
+    * @param sequence 可以丢弃的最后一个序号（通常是数据库检查点）
+    * @return 删除的段数
+    */
+    public int deleteSegmentsThrough(long sequence) {
+        File[] segments = WalFormat.listSegments(mWalDir);
+        int deleted = 0;
+        for (int i = 0; i + 1 < segments.length; i++) {
+            // 段内最后一条记录的序号小于下一段的首条序号
+            if (WalFormat.parseSegmentSequence(segments[i + 1].getName()) - 1 > sequence) {
+                break;
+            }
+            File index = WalFormat.indexFile(segments[i]);
+            if (index.exists() && !index.delete()) {
+                LogManager.w(TAG, "WAL索引删除失败：" + index.getName());
+                break;
+            }
+            if (!segments[i].delete()) {
+                LogManager.w(TAG, "WAL段删除失败：" + segments[i].getName());
+                break;
+            }
+            deleted++;
+        }
+        if (deleted > 0) {
+            LogManager.i(TAG, "已删除 %d 个全部应用到数据库的WAL段（至序号 %d）", deleted, sequence);
+        }
+        return deleted;
+    }
+
+    // ==================== 状态 ====================
+
+    /**
+    * 关闭写入器：写完并刷盘队列中的全部记录后返回
+    */
+    public void close() {
+        mLock.lock();
+        try {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            mNotEmpty.signal();
+        } finally {
+            mLock.unlock();
+        }
+        try {
+            mWriterThread.join(5000);
+            LogManager.i(TAG, "WAL写入器已关闭");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+    * @return 最后分配的序号（0 表示还没有记录）
+    */
+    public long getLastSequence() {
+        mLock.lock();
+        try {
+            return mNextSequence - 1;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+    * @return 已刷盘的最后一条记录的序号
+    */
+    public long getDurableSequence() {
+        return currentDurable();
+    }
+
     /**
-    * 获取WAL文件路径（用于调试/导出）
-    * @return 文件路径
+    * @return 写线程完成的批次数（每批一次写入）
+    */
+    public long getBatchCount() {
+        mLock.lock();
+        try {
+            return mBatchCount;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+    * @return 刷盘次数
+    */
+    public long getForceCount() {
+        mLock.lock();
+        try {
+            return mForceCount;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    public File getWalDir() {
+        return mWalDir;
+    }
+
+    /**
+    * 获取WAL目录路径（用于调试/导出），段文件位于该目录下
+    * @return 目录路径
     */
     public String getWalFilePath() {
-        return mWalFile != null ? mWalFile.getAbsolutePath() : null;
+        return mWalDir.getAbsolutePath();
+    }
+
+    /**
+    * 解析 %R1Q,rpc: 指令中的 RPC 编号
+    * @return RPC 编号，非 GeoCOM 指令返回 -1
+    */
+    static int parseRpc(String command) {
+        if (command == null || !command.startsWith("%R1Q,")) {
+            return -1;
+        }
+        int rpc = 0;
+        int i = 5;
+        for (; i < command.length() && Character.isDigit(command.charAt(i)); i++) {
+            rpc = rpc * 10 + (command.charAt(i) - '0');
+        }
+        return i > 5 ? rpc : -1;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,309 @@
+package com.example.leicameasurement.data.wal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.CRC32;
+
+/**
+ * WAL 段文件格式（小端序）
+ *
+ * 段文件 wal-<首条序号，20 位>.log：
+ *   段头 16 字节：[魔数 "LWAL" int][版本 short][保留 short][首条序号 long]
+ *   之后是连续的记录帧：[记录体长度 int][记录体 CRC32 int][记录体]
+ *   记录体：[类型 byte][序号 long][时间戳 long][RPC int][负载]
+ * 段文件旁可有稀疏索引 wal-<首条序号>.idx（见 WalIndex），可随时删除重建
+ * 长度为 0、长度越界或 CRC 不符的帧视为写入中断的尾部，之后的内容全部丢弃
+ */
+final class WalFormat {
+
+    static final int SEGMENT_MAGIC = 0x4C41574C; // "LWAL"（小端）
+    static final short VERSION = 1;
+    static final int SEGMENT_HEADER_SIZE = 16;
+    static final int FRAME_HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 1 + 8 + 8 + 4;
+    static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    // 记录体内各字段的偏移
+    static final int BODY_SEQUENCE = 1;
+    static final int BODY_TIMESTAMP = 9;
+    static final int BODY_RPC = 17;
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private WalFormat() {
+    }
+
+    static String segmentName(long firstSequence) {
+        StringBuilder digits = new StringBuilder(Long.toString(firstSequence));
+        while (digits.length() < 20) {
+            digits.insert(0, '0');
+        }
+        return SEGMENT_PREFIX + digits + SEGMENT_SUFFIX;
+    }
+
+    /**
+     * @return 段文件名中的首条序号，不是段文件时返回 -1
+     */
+    static long parseSegmentSequence(String name) {
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        String digits = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+        if (digits.isEmpty()) {
+            return -1;
+        }
+        for (int i = 0; i < digits.length(); i++) {
+            if (digits.charAt(i) < '0' || digits.charAt(i) > '9') {
+                return -1;
+            }
+        }
+        return Long.parseLong(digits);
+    }
+
+    /**
+     * @return 段文件旁的稀疏索引文件 wal-<首条序号>.idx
+     */
+    static File indexFile(File segment) {
+        String name = segment.getName();
+        return new File(segment.getParentFile(),
+                name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    /**
+     * @return 目录中的段文件，按首条序号升序
+     */
+    static File[] listSegments(File dir) {
+        File[] files = dir.listFiles((d, name) -> parseSegmentSequence(name) >= 0);
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, Comparator.comparingLong(file -> parseSegmentSequence(file.getName())));
+        return files;
+    }
+
+    static ByteBuffer segmentHeader(long firstSequence) {
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(SEGMENT_MAGIC).putShort(VERSION).putShort((short) 0).putLong(firstSequence);
+        header.flip();
+        return header;
+    }
+
+    /**
+     * 检查段头
+     * @return 段头中的首条序号
+     * @throws IOException 魔数或版本不符
+     */
+    static long checkSegmentHeader(ByteBuffer header) throws IOException {
+        if (header.remaining() < SEGMENT_HEADER_SIZE) {
+            throw new IOException("WAL 段头不完整");
+        }
+        int magic = header.getInt();
+        short version = header.getShort();
+        header.getShort();
+        long firstSequence = header.getLong();
+        if (magic != SEGMENT_MAGIC) {
+            throw new IOException("不是 WAL 段文件");
+        }
+        if (version != VERSION) {
+            throw new IOException("不支持的 WAL 版本: " + version);
+        }
+        return firstSequence;
+    }
+
+    /**
+     * @return 一条记录编码后的帧长度
+     */
+    static int frameSize(int payloadLength) {
+        return FRAME_HEADER_SIZE + RECORD_HEADER_SIZE + payloadLength;
+    }
+
+    /**
+     * 在 dst 当前位置编码一帧（dst 须为小端、基于数组且剩余空间足够）
+     */
+    static void encode(ByteBuffer dst, CRC32 crc, byte type, long sequence, long timestamp, int rpc, byte[] payload) {
+        int frameStart = dst.position();
+        int bodyLength = RECORD_HEADER_SIZE + payload.length;
+        dst.putInt(bodyLength).putInt(0);
+        int bodyStart = dst.position();
+        dst.put(type).putLong(sequence).putLong(timestamp).putInt(rpc).put(payload);
+        crc.reset();
+        crc.update(dst.array(), dst.arrayOffset() + bodyStart, bodyLength);
+        dst.putInt(frameStart + 4, (int) crc.getValue());
+    }
+
+    /**
+     * 校验 src 中 [bodyStart, bodyStart + bodyLength) 的 CRC
+     */
+    static boolean checkCrc(ByteBuffer src, CRC32 crc, int bodyStart, int bodyLength, int expected) {
+        crc.reset();
+        if (src.hasArray()) {
+            crc.update(src.array(), src.arrayOffset() + bodyStart, bodyLength);
+        } else {
+            ByteBuffer body = src.duplicate();
+            body.limit(bodyStart + bodyLength).position(bodyStart);
+            crc.update(body);
+        }
+        return (int) crc.getValue() == expected;
+    }
+
+    /**
+     * 检查 src 中 offset 处的帧（src 为小端，可为映射内存）
+     * @return 帧长度，帧损坏或不完整时返回 -1
+     */
+    static int checkFrame(ByteBuffer src, int offset, CRC32 crc) {
+        if (src.limit() - offset < FRAME_HEADER_SIZE) {
+            return -1;
+        }
+        int bodyLength = src.getInt(offset);
+        if (bodyLength < RECORD_HEADER_SIZE || bodyLength > MAX_RECORD_SIZE
+                || bodyLength > src.limit() - offset - FRAME_HEADER_SIZE) {
+            return -1;
+        }
+        if (!checkCrc(src, crc, offset + FRAME_HEADER_SIZE, bodyLength, src.getInt(offset + 4))) {
+            return -1;
+        }
+        return FRAME_HEADER_SIZE + bodyLength;
+    }
+
+    /**
+     * 解码 src 中 offset 处已校验过的帧，不改变 src 的位置
+     */
+    static WalRecord decodeFrame(ByteBuffer src, int offset) {
+        int bodyLength = src.getInt(offset);
+        int body = offset + FRAME_HEADER_SIZE;
+        byte[] payload = new byte[bodyLength - RECORD_HEADER_SIZE];
+        ByteBuffer view = src.duplicate();
+        view.position(body + RECORD_HEADER_SIZE);
+        view.get(payload);
+        return new WalRecord(src.get(body), src.getLong(body + BODY_SEQUENCE),
+                src.getLong(body + BODY_TIMESTAMP), src.getInt(body + BODY_RPC), payload);
+    }
+
+    /**
+     * 扫描段文件，找出最后一条完整记录之后的位置（写入中断时截断用）
+     */
+    static ScanResult scan(File segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // 读满段头
+            }
+            header.flip();
+            long firstSequence = checkSegmentHeader(header);
+            SegmentInput input = new SegmentInput(channel, SEGMENT_HEADER_SIZE);
+            long lastSequence = firstSequence - 1;
+            long count = 0;
+            WalRecord record;
+            while ((record = input.next()) != null) {
+                lastSequence = record.getSequence();
+                count++;
+            }
+            return new ScanResult(firstSequence, lastSequence, count, input.validEnd());
+        }
+    }
+
+    static final class ScanResult {
+        final long firstSequence;
+        final long lastSequence;
+        final long recordCount;
+        final long validLength;
+
+        ScanResult(long firstSequence, long lastSequence, long recordCount, long validLength) {
+            this.firstSequence = firstSequence;
+            this.lastSequence = lastSequence;
+            this.recordCount = recordCount;
+            this.validLength = validLength;
+        }
+    }
+
+    /**
+     * 顺序读取一个段文件中的记录（带缓冲），遇到损坏或不完整的帧即停止
+     */
+    static final class SegmentInput {
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32 crc = new CRC32();
+        private long bufferFileOffset;
+        private long validEnd;
+        private boolean eof = false;
+
+        SegmentInput(FileChannel channel, long startOffset) {
+            this.channel = channel;
+            this.bufferFileOffset = startOffset;
+            this.validEnd = startOffset;
+            buffer.limit(0);
+        }
+
+        /**
+         * @return 最后一条完整记录之后的文件位置
+         */
+        long validEnd() {
+            return validEnd;
+        }
+
+        WalRecord next() throws IOException {
+            if (!ensure(FRAME_HEADER_SIZE)) {
+                return null;
+            }
+            int start = buffer.position();
+            int bodyLength = buffer.getInt(start);
+            int expectedCrc = buffer.getInt(start + 4);
+            if (bodyLength < RECORD_HEADER_SIZE || bodyLength > MAX_RECORD_SIZE) {
+                return null;
+            }
+            if (!ensure(FRAME_HEADER_SIZE + bodyLength)) {
+                return null;
+            }
+            start = buffer.position();
+            int bodyStart = start + FRAME_HEADER_SIZE;
+            if (!checkCrc(buffer, crc, bodyStart, bodyLength, expectedCrc)) {
+                return null;
+            }
+            buffer.position(bodyStart);
+            byte type = buffer.get();
+            long sequence = buffer.getLong();
+            long timestamp = buffer.getLong();
+            int rpc = buffer.getInt();
+            byte[] payload = new byte[bodyLength - RECORD_HEADER_SIZE];
+            buffer.get(payload);
+            validEnd = bufferFileOffset + buffer.position();
+            return new WalRecord(type, sequence, timestamp, rpc, payload);
+        }
+
+        /**
+         * 保证缓冲区中至少有 n 字节可读；超过缓冲区容量的大记录按需扩容
+         */
+        private boolean ensure(int n) throws IOException {
+            if (buffer.remaining() >= n) {
+                return true;
+            }
+            if (eof) {
+                return false;
+            }
+            bufferFileOffset += buffer.position();
+            if (n > buffer.capacity()) {
+                ByteBuffer grown = ByteBuffer.allocate(n).order(ByteOrder.LITTLE_ENDIAN);
+                grown.put(buffer);
+                buffer = grown;
+            } else {
+                buffer.compact();
+            }
+            while (buffer.position() < n) {
+                if (channel.read(buffer) < 0) {
+                    eof = true;
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer.remaining() >= n;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.leicameasurement.data.wal;
+
+import com.example.leicameasurement.infrastructure.LogManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * 段文件的稀疏索引：段按约 blockBytes 字节分块（块从帧边界开始），
+ * 每块记录起始偏移、首条序号、时间戳范围和 RPC 掩码，查询时跳过不相关的块
+ *
+ * 索引文件（小端）：
+ *   头 40 字节：[魔数 "LWIX" int][版本 short][保留 short][块数 int][保留 int]
+ *              [建索引时的段长度 long][有效长度 long][最后一条序号 long]
+ *   之后每块 40 字节：[偏移 long][首条序号 long][最早时间 long][最晚时间 long][RPC 掩码 long]
+ * 段长度与索引头不符（段仍在写入或被截断）时重建
+ */
+final class WalIndex {
+
+    private static final String TAG = "WalIndex";
+
+    static final int MAGIC = 0x5849574C; // "LWIX"（小端）
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 40;
+    static final int ENTRY_SIZE = 40;
+    static final int DEFAULT_BLOCK_BYTES = 64 * 1024;
+
+    final long segmentLength;
+    final int validLength;
+    final long lastSequence;
+    final int count;
+    final long[] offsets;
+    final long[] firstSequences;
+    final long[] minTimes;
+    final long[] maxTimes;
+    final long[] rpcMasks;
+
+    // 全段汇总
+    final long minTime;
+    final long maxTime;
+    final long rpcMask;
+
+    private WalIndex(long segmentLength, int validLength, long lastSequence, int count,
+                     long[] offsets, long[] firstSequences, long[] minTimes, long[] maxTimes, long[] rpcMasks) {
+        this.segmentLength = segmentLength;
+        this.validLength = validLength;
+        this.lastSequence = lastSequence;
+        this.count = count;
+        this.offsets = offsets;
+        this.firstSequences = firstSequences;
+        this.minTimes = minTimes;
+        this.maxTimes = maxTimes;
+        this.rpcMasks = rpcMasks;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        long mask = 0;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, minTimes[i]);
+            max = Math.max(max, maxTimes[i]);
+            mask |= rpcMasks[i];
+        }
+        this.minTime = min;
+        this.maxTime = max;
+        this.rpcMask = mask;
+    }
+
+    /**
+     * @return RPC 编号在掩码中对应的位
+     */
+    static long rpcBit(int rpc) {
+        return 1L << ((rpc * 0x9E3779B1) >>> 26);
+    }
+
+    /**
+     * @return 第 block 块之后的位置（下一块的起点或有效长度）
+     */
+    int blockEnd(int block) {
+        return block + 1 < count ? (int) offsets[block + 1] : validLength;
+    }
+
+    boolean overlaps(long fromTime, long toTime) {
+        return count > 0 && maxTime >= fromTime && minTime <= toTime;
+    }
+
+    /**
+     * @return 可能包含该序号的块，序号不在本段时返回 -1
+     */
+    int blockOf(long sequence) {
+        if (count == 0 || sequence < firstSequences[0] || sequence > lastSequence) {
+            return -1;
+        }
+        int found = Arrays.binarySearch(firstSequences, 0, count, sequence);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    /**
+     * 读取段旁的索引文件；不存在、损坏或与段长度不符时由映射的段内容重建并写回
+     * @param mapper 需要重建时才映射段文件
+     */
+    static WalIndex open(File segment, int blockBytes, SegmentMapper mapper) throws IOException {
+        File indexFile = WalFormat.indexFile(segment);
+        long segmentLength = segment.length();
+        WalIndex index = indexFile.exists() ? read(indexFile) : null;
+        if (index != null && index.segmentLength == segmentLength) {
+            return index;
+        }
+        index = build(mapper.map(), segmentLength, blockBytes);
+        try {
+            write(index, indexFile);
+        } catch (IOException e) {
+            // 索引只是加速手段，写不进去（如只读目录）时仍使用内存中的索引
+            LogManager.w(TAG, "WAL索引未保存：" + e.getMessage());
+        }
+        return index;
+    }
+
+    interface SegmentMapper {
+        ByteBuffer map() throws IOException;
+    }
+
+    /**
+     * 顺序扫描一遍映射的段内容（校验 CRC），在第一条损坏或不完整的帧处结束
+     */
+    static WalIndex build(ByteBuffer segment, long segmentLength, int blockBytes) {
+        CRC32 crc = new CRC32();
+        int capacity = 16;
+        long[] offsets = new long[capacity];
+        long[] firstSequences = new long[capacity];
+        long[] minTimes = new long[capacity];
+        long[] maxTimes = new long[capacity];
+        long[] rpcMasks = new long[capacity];
+        int count = 0;
+        long lastSequence = 0;
+        int position = WalFormat.SEGMENT_HEADER_SIZE;
+        int frameLength;
+        while ((frameLength = WalFormat.checkFrame(segment, position, crc)) > 0) {
+            int body = position + WalFormat.FRAME_HEADER_SIZE;
+            long sequence = segment.getLong(body + WalFormat.BODY_SEQUENCE);
+            long timestamp = segment.getLong(body + WalFormat.BODY_TIMESTAMP);
+            int rpc = segment.getInt(body + WalFormat.BODY_RPC);
+            if (count == 0 || position - offsets[count - 1] >= blockBytes) {
+                if (count == capacity) {
+                    capacity *= 2;
+                    offsets = Arrays.copyOf(offsets, capacity);
+                    firstSequences = Arrays.copyOf(firstSequences, capacity);
+                    minTimes = Arrays.copyOf(minTimes, capacity);
+                    maxTimes = Arrays.copyOf(maxTimes, capacity);
+                    rpcMasks = Arrays.copyOf(rpcMasks, capacity);
+                }
+                offsets[count] = position;
+                firstSequences[count] = sequence;
+                minTimes[count] = timestamp;
+                maxTimes[count] = timestamp;
+                count++;
+            }
+            int block = count - 1;
+            minTimes[block] = Math.min(minTimes[block], timestamp);
+            maxTimes[block] = Math.max(maxTimes[block], timestamp);
+            rpcMasks[block] |= rpcBit(rpc);
+            lastSequence = sequence;
+            position += frameLength;
+        }
+        return new WalIndex(segmentLength, position, lastSequence, count,
+                offsets, firstSequences, minTimes, maxTimes, rpcMasks);
+    }
+
+    /**
+     * @return 索引，文件损坏或版本不符时返回 null
+     */
+    static WalIndex read(File indexFile) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // 读满整个索引
+            }
+            buffer.flip();
+        }
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+            return null;
+        }
+        buffer.getShort();
+        int count = buffer.getInt();
+        buffer.getInt();
+        long segmentLength = buffer.getLong();
+        long validLength = buffer.getLong();
+        long lastSequence = buffer.getLong();
+        if (count < 0 || validLength > Integer.MAX_VALUE || buffer.remaining() != (long) count * ENTRY_SIZE) {
+            return null;
+        }
+        long[] offsets = new long[count];
+        long[] firstSequences = new long[count];
+        long[] minTimes = new long[count];
+        long[] maxTimes = new long[count];
+        long[] rpcMasks = new long[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = buffer.getLong();
+            firstSequences[i] = buffer.getLong();
+            minTimes[i] = buffer.getLong();
+            maxTimes[i] = buffer.getLong();
+            rpcMasks[i] = buffer.getLong();
+        }
+        return new WalIndex(segmentLength, (int) validLength, lastSequence, count,
+                offsets, firstSequences, minTimes, maxTimes, rpcMasks);
+    }
+
+    /**
+     * 先写临时文件再改名，读到的索引要么是旧的要么是完整的新索引
+     */
+    static void write(WalIndex index, File indexFile) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + index.count * ENTRY_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(index.count).putInt(0)
+                .putLong(index.segmentLength).putLong(index.validLength).putLong(index.lastSequence);
+        for (int i = 0; i < index.count; i++) {
+            buffer.putLong(index.offsets[i]).putLong(index.firstSequences[i])
+                    .putLong(index.minTimes[i]).putLong(index.maxTimes[i]).putLong(index.rpcMasks[i]);
+        }
+        buffer.flip();
+        File temp = new File(indexFile.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        if (!temp.renameTo(indexFile)) {
+            temp.delete();
+            throw new IOException("WAL索引写入失败：" + indexFile.getName());
+        }
+    }
+}
@@ -1,8 +1,272 @@
 package com.example.leicameasurement.data.wal;
 
+import com.example.leicameasurement.infrastructure.LogManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
 /**
- * WAL日志总控
+ * WAL日志总控：观测先写入 WAL 并落盘，再应用到数据库
+ * 数据库保存已应用的最后一个 WAL 序号（检查点），与观测数据在同一事务内更新，
+ * 因此崩溃后只需重放检查点之后的记录，不会重复也不会遗漏
+ * 重放完成后删除全部记录都已应用的旧段，WAL 目录只保留检查点之后仍需要的段，
+ * 以及含有无法写入数据库的观测（见 WalRejections）的段
  */
 public class WalLogManager {
-    // Implementation to be added
+
+    private static final String TAG = "WalLogManager";
+    static final int REPLAY_BATCH_SIZE = 1000;
+    private static final long DURABLE_TIMEOUT_MS = 5000;
+
+    /**
+     * 观测的落库目标
+     */
+    public interface ObservationStore {
+
+        /**
+         * @return 检查点：已应用的最后一个 WAL 序号，没有时为 0
+         */
+        long getAppliedSequence();
+
+        /**
+         * 在一个事务内写入一批观测，并把检查点更新为 appliedSequence
+         * 失败时应整批回滚（抛出 RuntimeException）
+         */
+        void apply(List<WalObservation> observations, long appliedSequence);
+
+        /**
+         * 提交一条实时观测，可以延迟批量写入，但必须按提交顺序写入并推进检查点
+         * 默认立即在一个事务内写入
+         */
+        default void submit(WalObservation observation) {
+            apply(Collections.singletonList(observation), observation.getSequence());
+        }
+    }
+
+    private final CompletableFuture<WalFileWriter> mWriter;
+    private final ObservationStore mStore;
+    private final WalRejections mRejections;
+
+    // 以下字段由 this 保护
+    private boolean mReplayPending = true;
+    private long mAppliedSequence;
+    private long mReplayedCount;
+
+    /**
+     * @param writer 观测写入的 WAL（可与原始指令记录共用）
+     * @param store 落库目标
+     */
+    public WalLogManager(WalFileWriter writer, ObservationStore store) {
+        this(CompletableFuture.completedFuture(writer), writer.getWalDir(), store);
+    }
+
+    private WalLogManager(CompletableFuture<WalFileWriter> writer, File walDir, ObservationStore store) {
+        this.mWriter = writer;
+        this.mStore = store;
+        this.mRejections = new WalRejections(walDir);
+    }
+
+    /**
+     * 在 executor 上打开 WAL 目录（扫描并截断最后一个段），立即返回
+     * 打开完成前调用 log()/recover() 会等待打开结束，打开失败时抛出 IOException
+     * @param walDir WAL 目录
+     * @param config 写入配置
+     * @param store 落库目标
+     * @param executor 执行打开的线程（不应是主线程）
+     */
+    public static WalLogManager openAsync(File walDir, WalConfig config, ObservationStore store, Executor executor) {
+        CompletableFuture<WalFileWriter> writer = CompletableFuture.supplyAsync(() -> {
+            try {
+                return new WalFileWriter(walDir, config);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+        return new WalLogManager(writer, walDir, store);
+    }
+
+    /**
+     * 写入一条观测：先落盘到 WAL，再提交给数据库（见 ObservationStore.submit）
+     * 落盘后提交失败只记录日志，观测留在 WAL 中，下次写入或 recover() 时重放
+     * 在 recover() 之前调用时先重放积压的记录
+     * @return 带上 WAL 序号与落盘时间戳的观测
+     * @throws IOException WAL 打开、写入或落盘失败（此时观测没有保存）
+     */
+    public synchronized WalObservation log(WalObservation observation) throws IOException {
+        WalFileWriter writer = getWriter();
+        long timestamp = System.currentTimeMillis();
+        long sequence = writer.append(WalRecord.TYPE_OBSERVATION, timestamp, -1, observation.encode(), true);
+        if (!writer.awaitDurable(sequence, DURABLE_TIMEOUT_MS)) {
+            throw new InterruptedIOException("等待观测落盘超时");
+        }
+        WalObservation journaled = observation.withPosition(sequence, timestamp);
+        try {
+            if (mReplayPending) {
+                // 重放范围包含刚写入的这一条
+                replayLocked();
+            } else {
+                submitLocked(journaled);
+            }
+        } catch (IOException e) {
+            mReplayPending = true;
+            LogManager.e(TAG, "观测 #" + sequence + " 暂未写入数据库，稍后重放：" + e.getMessage());
+        }
+        return journaled;
+    }
+
+    /**
+     * 重放检查点之后的全部观测（启动时调用），每 REPLAY_BATCH_SIZE 条一个事务，
+     * 然后删除全部记录都已应用的旧段（见 deleteAppliedSegments()）
+     * @return 重放的观测数
+     * @throws IOException 读取 WAL 或写入数据库失败，已提交的批次保留
+     */
+    public synchronized int recover() throws IOException {
+        int replayed = replayLocked();
+        deleteAppliedSegmentsLocked();
+        return replayed;
+    }
+
+    /**
+     * 删除全部记录的序号都不大于数据库检查点的段文件及其索引
+     * 以数据库中已提交的检查点为准，延迟写入尚未提交的观测所在的段不会被删除；
+     * 含有未处理的无法写入观测（见 getRejections()）的段及之后的段也不会被删除
+     * @return 删除的段数
+     * @throws IOException 读取检查点或无法写入记录失败
+     */
+    public synchronized int deleteAppliedSegments() throws IOException {
+        return deleteAppliedSegmentsLocked();
+    }
+
+    private int deleteAppliedSegmentsLocked() throws IOException {
+        long checkpoint;
+        try {
+            checkpoint = mStore.getAppliedSequence();
+        } catch (RuntimeException e) {
+            throw new IOException("读取WAL检查点失败", e);
+        }
+        long firstRejected = mRejections.getFirstSequence();
+        return getWriter().deleteSegmentsThrough(Math.min(checkpoint, firstRejected - 1));
+    }
+
+    /**
+     * @return 无法写入数据库、已移出写入缓冲的观测记录，交给 DetailPointRepository.setRejectionLog()
+     */
+    public WalRejections getRejections() {
+        return mRejections;
+    }
+
+    private int replayLocked() throws IOException {
+        long from;
+        try {
+            from = mStore.getAppliedSequence() + 1;
+        } catch (RuntimeException e) {
+            throw new IOException("读取WAL检查点失败", e);
+        }
+        long startNanos = System.nanoTime();
+        int replayed = 0;
+        List<WalObservation> batch = new ArrayList<>(REPLAY_BATCH_SIZE);
+        try (WalReader reader = new WalReader(getWriter().getWalDir(), from)) {
+            WalRecord record;
+            while ((record = reader.next()) != null) {
+                if (record.getType() != WalRecord.TYPE_OBSERVATION) {
+                    continue;
+                }
+                try {
+                    batch.add(WalObservation.decode(record));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("WAL观测记录无法解码：" + record, e);
+                }
+                if (batch.size() == REPLAY_BATCH_SIZE) {
+                    applyLocked(batch, record.getSequence());
+                    replayed += batch.size();
+                    batch = new ArrayList<>(REPLAY_BATCH_SIZE);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            applyLocked(batch, batch.get(batch.size() - 1).getSequence());
+            replayed += batch.size();
+        }
+        mReplayPending = false;
+        mReplayedCount += replayed;
+        if (replayed > 0) {
+            LogManager.i(TAG, "WAL重放 %d 条观测（自序号 %d），耗时 %d ms",
+                    replayed, from, (System.nanoTime() - startNanos) / 1_000_000);
+        }
+        return replayed;
+    }
+
+    private void applyLocked(List<WalObservation> observations, long lastSequence) throws IOException {
+        try {
+            mStore.apply(observations, lastSequence);
+        } catch (RuntimeException e) {
+            throw new IOException("观测写入数据库失败", e);
+        }
+        mAppliedSequence = lastSequence;
+    }
+
+    private void submitLocked(WalObservation observation) throws IOException {
+        try {
+            mStore.submit(observation);
+        } catch (RuntimeException e) {
+            throw new IOException("观测提交失败", e);
+        }
+        mAppliedSequence = observation.getSequence();
+    }
+
+    /**
+     * @return 本进程内已提交给数据库的最后一个观测序号（0 表示还没有），延迟写入时可能尚未提交事务
+     */
+    public synchronized long getAppliedSequence() {
+        return mAppliedSequence;
+    }
+
+    /**
+     * @return true=有已落盘但尚未写入数据库的观测
+     */
+    public synchronized boolean isReplayPending() {
+        return mReplayPending;
+    }
+
+    /**
+     * @return 本进程内重放的观测总数
+     */
+    public synchronized long getReplayedCount() {
+        return mReplayedCount;
+    }
+
+    /**
+     * @return WAL 写入器，异步打开时等待打开完成
+     * @throws IOException 打开失败或等待时被中断
+     */
+    public WalFileWriter getWriter() throws IOException {
+        try {
+            return mWriter.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待WAL打开时被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            throw new IOException("WAL打开失败：" + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 关闭 WAL 写入器；仍在打开时，打开完成后立即关闭
+     */
+    public void close() {
+        mWriter.whenComplete((writer, error) -> {
+            if (writer != null) {
+                writer.close();
+            }
+        });
+    }
 }
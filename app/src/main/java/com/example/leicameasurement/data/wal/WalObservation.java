@@ -0,0 +1,188 @@
+package com.example.leicameasurement.data.wal;
+
+import com.example.leicameasurement.device.adapter.InstrumentAdapter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 一次观测（后视/前视/碎步点）的 WAL 负载，不可变
+ * 负载（小端）：[类型 byte][测量模式 byte，-1=无][任务ID long][Hz][V][SD][棱镜高][X][Y][Z]
+ *              [点号长度 int，-1=无][点号 UTF-8]
+ * 角度为弧度，距离与坐标为米；坐标未计算时为 NaN
+ */
+public final class WalObservation {
+
+    /**
+     * 观测类型，code 写入日志，只能追加不能修改
+     */
+    public enum Kind {
+        BACKSIGHT(1),
+        FORESIGHT(2),
+        DETAIL(3);
+
+        final byte code;
+
+        Kind(int code) {
+            this.code = (byte) code;
+        }
+
+        static Kind fromCode(byte code) {
+            for (Kind kind : values()) {
+                if (kind.code == code) {
+                    return kind;
+                }
+            }
+            throw new IllegalArgumentException("未知观测类型: " + code);
+        }
+    }
+
+    private static final int FIXED_SIZE = 1 + 1 + 8 + 7 * 8 + 4;
+
+    private final Kind kind;
+    private final long taskId;
+    private final String pointName;
+    private final double horizontalAngle;
+    private final double verticalAngle;
+    private final double slopeDistance;
+    private final double prismHeight;
+    private final double x;
+    private final double y;
+    private final double z;
+    private final InstrumentAdapter.MeasureMode measureMode;
+    private final long sequence;
+    private final long timestamp;
+
+    public WalObservation(Kind kind, long taskId, String pointName,
+                          double horizontalAngle, double verticalAngle, double slopeDistance,
+                          double prismHeight, double x, double y, double z,
+                          InstrumentAdapter.MeasureMode measureMode) {
+        this(kind, taskId, pointName, horizontalAngle, verticalAngle, slopeDistance,
+                prismHeight, x, y, z, measureMode, 0, 0);
+    }
+
+    private WalObservation(Kind kind, long taskId, String pointName,
+                           double horizontalAngle, double verticalAngle, double slopeDistance,
+                           double prismHeight, double x, double y, double z,
+                           InstrumentAdapter.MeasureMode measureMode, long sequence, long timestamp) {
+        this.kind = kind;
+        this.taskId = taskId;
+        this.pointName = pointName;
+        this.horizontalAngle = horizontalAngle;
+        this.verticalAngle = verticalAngle;
+        this.slopeDistance = slopeDistance;
+        this.prismHeight = prismHeight;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.measureMode = measureMode;
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * 由仪器返回的测量数据创建观测
+     * @param measurement [Hz, V, SD]
+     * @param coordinates [X, Y, Z]，尚未计算时传 null
+     */
+    public static WalObservation of(Kind kind, long taskId, String pointName, double[] measurement,
+                                    double prismHeight, double[] coordinates,
+                                    InstrumentAdapter.MeasureMode measureMode) {
+        return new WalObservation(kind, taskId, pointName,
+                measurement[0], measurement[1], measurement[2], prismHeight,
+                coordinates == null ? Double.NaN : coordinates[0],
+                coordinates == null ? Double.NaN : coordinates[1],
+                coordinates == null ? Double.NaN : coordinates[2],
+                measureMode);
+    }
+
+    public Kind getKind() { return kind; }
+    public long getTaskId() { return taskId; }
+    public String getPointName() { return pointName; }
+    public double getHorizontalAngle() { return horizontalAngle; }
+    public double getVerticalAngle() { return verticalAngle; }
+    public double getSlopeDistance() { return slopeDistance; }
+    public double getPrismHeight() { return prismHeight; }
+    public double getX() { return x; }
+    public double getY() { return y; }
+    public double getZ() { return z; }
+    public InstrumentAdapter.MeasureMode getMeasureMode() { return measureMode; }
+
+    /**
+     * @return WAL 序号，尚未写入日志时为 0
+     */
+    public long getSequence() { return sequence; }
+
+    /**
+     * @return 写入日志的时间（ms），尚未写入日志时为 0
+     */
+    public long getTimestamp() { return timestamp; }
+
+    public boolean hasCoordinates() {
+        return !Double.isNaN(x) && !Double.isNaN(y) && !Double.isNaN(z);
+    }
+
+    /**
+     * @return 带上序号与时间戳的副本
+     */
+    WalObservation withPosition(long sequence, long timestamp) {
+        return new WalObservation(kind, taskId, pointName, horizontalAngle, verticalAngle, slopeDistance,
+                prismHeight, x, y, z, measureMode, sequence, timestamp);
+    }
+
+    byte[] encode() {
+        byte[] name = pointName == null ? null : pointName.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(FIXED_SIZE + (name == null ? 0 : name.length))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(kind.code)
+                .put(measureMode == null ? -1 : (byte) measureMode.ordinal())
+                .putLong(taskId)
+                .putDouble(horizontalAngle).putDouble(verticalAngle).putDouble(slopeDistance)
+                .putDouble(prismHeight)
+                .putDouble(x).putDouble(y).putDouble(z);
+        if (name == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(name.length).put(name);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 解码 TYPE_OBSERVATION 记录
+     * @throws IllegalArgumentException 记录类型或负载不符
+     */
+    static WalObservation decode(WalRecord record) {
+        if (record.getType() != WalRecord.TYPE_OBSERVATION) {
+            throw new IllegalArgumentException("不是观测记录: " + record);
+        }
+        byte[] payload = record.getPayload();
+        if (payload.length < FIXED_SIZE) {
+            throw new IllegalArgumentException("观测记录负载过短: " + record);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(payload).order(ByteOrder.LITTLE_ENDIAN);
+        Kind kind = Kind.fromCode(buffer.get());
+        byte mode = buffer.get();
+        long taskId = buffer.getLong();
+        double hz = buffer.getDouble();
+        double v = buffer.getDouble();
+        double sd = buffer.getDouble();
+        double prismHeight = buffer.getDouble();
+        double x = buffer.getDouble();
+        double y = buffer.getDouble();
+        double z = buffer.getDouble();
+        int nameLength = buffer.getInt();
+        String name = nameLength < 0 ? null
+                : new String(payload, buffer.position(), nameLength, StandardCharsets.UTF_8);
+        return new WalObservation(kind, taskId, name, hz, v, sd, prismHeight, x, y, z,
+                mode < 0 ? null : InstrumentAdapter.MeasureMode.values()[mode],
+                record.getSequence(), record.getTimestamp());
+    }
+
+    @Override
+    public String toString() {
+        return "WalObservation{seq=" + sequence + ", " + kind + ", task=" + taskId
+                + ", point='" + pointName + "'}";
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.leicameasurement.data.wal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * WAL 顺序读取器：按序号顺序遍历目录中全部段文件的记录
+ * 每个段在第一条损坏或不完整的帧处结束（写入中断的尾部），然后继续下一个段
+ */
+public class WalReader implements Closeable {
+
+    private final File[] segments;
+    private final long fromSequence;
+    private int segmentIndex = -1;
+    private FileChannel channel;
+    private WalFormat.SegmentInput input;
+
+    /**
+     * @param dir WAL 目录
+     */
+    public WalReader(File dir) {
+        this(dir, 0);
+    }
+
+    /**
+     * @param dir WAL 目录
+     * @param fromSequence 只返回序号不小于该值的记录（跳过之前的整段）
+     */
+    public WalReader(File dir, long fromSequence) {
+        File[] all = WalFormat.listSegments(dir);
+        // 首条序号不大于 fromSequence 的最后一个段之前的段可以整段跳过
+        int first = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (WalFormat.parseSegmentSequence(all[i].getName()) <= fromSequence) {
+                first = i;
+            }
+        }
+        File[] segments = new File[all.length - first];
+        System.arraycopy(all, first, segments, 0, segments.length);
+        this.segments = segments;
+        this.fromSequence = fromSequence;
+    }
+
+    /**
+     * @return 下一条记录，读完时返回 null
+     * @throws IOException 读取失败或段头损坏
+     */
+    public WalRecord next() throws IOException {
+        while (true) {
+            if (input == null && !openNextSegment()) {
+                return null;
+            }
+            WalRecord record = input.next();
+            if (record == null) {
+                closeSegment();
+                continue;
+            }
+            if (record.getSequence() >= fromSequence) {
+                return record;
+            }
+        }
+    }
+
+    private boolean openNextSegment() throws IOException {
+        if (segmentIndex + 1 >= segments.length) {
+            return false;
+        }
+        segmentIndex++;
+        channel = FileChannel.open(segments[segmentIndex].toPath(), StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(WalFormat.SEGMENT_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && channel.read(header) >= 0) {
+            // 读满段头
+        }
+        header.flip();
+        try {
+            WalFormat.checkSegmentHeader(header);
+        } catch (IOException e) {
+            closeSegment();
+            throw new IOException(segments[segmentIndex].getName() + ": " + e.getMessage(), e);
+        }
+        input = new WalFormat.SegmentInput(channel, WalFormat.SEGMENT_HEADER_SIZE);
+        return true;
+    }
+
+    private void closeSegment() throws IOException {
+        input = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+        segmentIndex = segments.length;
+    }
+}
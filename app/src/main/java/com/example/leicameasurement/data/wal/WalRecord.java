@@ -0,0 +1,86 @@
+package com.example.leicameasurement.data.wal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * WAL 记录（解码后，不可变）
+ * 记录类型决定负载格式：TYPE_RAW 为原始指令/响应，TYPE_OBSERVATION 为观测（见 WalObservation）
+ */
+public final class WalRecord {
+
+    /** 原始指令与响应：[指令长度 int][指令][响应长度 int，-1 表示无响应][响应] */
+    public static final byte TYPE_RAW = 1;
+
+    /** 观测：格式见 WalObservation */
+    public static final byte TYPE_OBSERVATION = 2;
+
+    private final byte type;
+    private final long sequence;
+    private final long timestamp;
+    private final int rpc;
+    private final byte[] payload;
+
+    public WalRecord(byte type, long sequence, long timestamp, int rpc, byte[] payload) {
+        this.type = type;
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.rpc = rpc;
+        this.payload = payload;
+    }
+
+    public byte getType() { return type; }
+    public long getSequence() { return sequence; }
+    public long getTimestamp() { return timestamp; }
+
+    /**
+     * @return 指令的 RPC 编号，非 GeoCOM 指令为 -1
+     */
+    public int getRpc() { return rpc; }
+
+    public byte[] getPayload() { return payload; }
+
+    /**
+     * @return TYPE_RAW 记录中的指令文本
+     */
+    public String getCommand() {
+        ByteBuffer buffer = ByteBuffer.wrap(payload).order(ByteOrder.LITTLE_ENDIAN);
+        int length = buffer.getInt();
+        return new String(payload, 4, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return TYPE_RAW 记录中的响应文本，没有响应时返回 null
+     */
+    public String getResponse() {
+        ByteBuffer buffer = ByteBuffer.wrap(payload).order(ByteOrder.LITTLE_ENDIAN);
+        int commandLength = buffer.getInt();
+        buffer.position(4 + commandLength);
+        int length = buffer.getInt();
+        return length < 0 ? null : new String(payload, buffer.position(), length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 编码 TYPE_RAW 负载
+     */
+    public static byte[] encodeRaw(String command, String response) {
+        byte[] commandBytes = command.getBytes(StandardCharsets.UTF_8);
+        byte[] responseBytes = response == null ? null : response.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + commandBytes.length
+                + (responseBytes == null ? 0 : responseBytes.length)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(commandBytes.length).put(commandBytes);
+        if (responseBytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(responseBytes.length).put(responseBytes);
+        }
+        return buffer.array();
+    }
+
+    @Override
+    public String toString() {
+        return "WalRecord{seq=" + sequence + ", type=" + type + ", rpc=" + rpc
+                + ", time=" + timestamp + ", " + payload.length + " bytes}";
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.leicameasurement.data.wal;
+
+import com.example.leicameasurement.data.entity.DetailPoint;
+import com.example.leicameasurement.data.repository.DetailPointRepository;
+import com.example.leicameasurement.infrastructure.LogManager;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 无法写入数据库、已移出写入缓冲的观测（WAL 目录下的 rejected.log，每行 "序号\t点号"）
+ * 检查点会越过这些观测，重放不再回到它们；WAL 保留含有它们的段，直到 resolve() 之后
+ * 首次访问时读取文件，每次记录都追加并落盘后才返回
+ */
+public class WalRejections implements DetailPointRepository.RejectionLog {
+
+    private static final String TAG = "WalRejections";
+    static final String FILE_NAME = "rejected.log";
+
+    private final File mFile;
+
+    // 序号 → 点号，由 this 保护，首次访问时加载
+    private TreeMap<Long, String> mRejected;
+
+    /**
+     * @param walDir WAL 目录
+     */
+    public WalRejections(File walDir) {
+        this.mFile = new File(walDir, FILE_NAME);
+    }
+
+    @Override
+    public synchronized void record(DetailPoint point, long walSequence, RuntimeException cause) throws IOException {
+        TreeMap<Long, String> rejected = load();
+        String name = point == null ? "" : point.pointName;
+        File dir = mFile.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("WAL目录创建失败：" + dir.getAbsolutePath());
+        }
+        try (FileOutputStream out = new FileOutputStream(mFile, true)) {
+            out.write(line(walSequence, name).getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        rejected.put(walSequence, name);
+        LogManager.w(TAG, "观测 #%d（%s）已记入 %s，WAL 保留其所在的段", walSequence, name, FILE_NAME);
+    }
+
+    /**
+     * @return 最小的未处理序号，没有时返回 Long.MAX_VALUE
+     * @throws IOException 读取记录失败
+     */
+    public synchronized long getFirstSequence() throws IOException {
+        TreeMap<Long, String> rejected = load();
+        return rejected.isEmpty() ? Long.MAX_VALUE : rejected.firstKey();
+    }
+
+    /**
+     * @return 全部未处理的序号，升序
+     * @throws IOException 读取记录失败
+     */
+    public synchronized List<Long> getSequences() throws IOException {
+        return new ArrayList<>(load().keySet());
+    }
+
+    /**
+     * 标记一条观测已处理（人工补录或确认放弃），之后 WAL 可以删除它所在的段
+     * @return false=没有该序号
+     * @throws IOException 改写记录失败，记录保持不变
+     */
+    public synchronized boolean resolve(long walSequence) throws IOException {
+        TreeMap<Long, String> rejected = load();
+        if (!rejected.containsKey(walSequence)) {
+            return false;
+        }
+        TreeMap<Long, String> remaining = new TreeMap<>(rejected);
+        remaining.remove(walSequence);
+        File temp = new File(mFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            for (Map.Entry<Long, String> entry : remaining.entrySet()) {
+                out.write(line(entry.getKey(), entry.getValue()).getBytes(StandardCharsets.UTF_8));
+            }
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(mFile)) {
+            throw new IOException("改写 " + FILE_NAME + " 失败");
+        }
+        mRejected = remaining;
+        return true;
+    }
+
+    private TreeMap<Long, String> load() throws IOException {
+        if (mRejected != null) {
+            return mRejected;
+        }
+        TreeMap<Long, String> rejected = new TreeMap<>();
+        if (mFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(mFile), StandardCharsets.UTF_8))) {
+                String text;
+                while ((text = reader.readLine()) != null) {
+                    int tab = text.indexOf('\t');
+                    try {
+                        rejected.put(Long.parseLong(tab < 0 ? text : text.substring(0, tab)),
+                                tab < 0 ? "" : text.substring(tab + 1));
+                    } catch (NumberFormatException e) {
+                        // 追加时中断留下的不完整行
+                        LogManager.w(TAG, "忽略 " + FILE_NAME + " 中无法解析的行：" + text);
+                    }
+                }
+            }
+        }
+        mRejected = rejected;
+        return rejected;
+    }
+
+    private static String line(long walSequence, String name) {
+        return walSequence + "\t" + name.replace('\n', ' ').replace('\t', ' ') + "\n";
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.leicameasurement.device.adapter;
+
+import com.example.leicameasurement.device.connection.CommandPriority;
+import com.example.leicameasurement.device.connection.IDataTransceiver;
+import com.example.leicameasurement.device.protocol.GeoComTimeouts;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 指令流水线：将一组 GeoCOM 指令连续提交，再按提交顺序取回各自配对的响应
+ * 响应由收发器按事务号配对，一批 N 条指令只需等待一次往返时延，而不是 N 次
+ *
+ * 同一批指令按其中最高的优先级提交到收发器的同一队列，保证按提交顺序发送
+ * （否则测量指令会越过排在前面的棱镜高/测量模式设置）
+ *
+ * 无论中间响应是否为错误码，都会等待全部 N 个响应完成，保证请求不会遗留在途；
+ * 任一请求发送失败或超时时抛出该请求的异常
+ */
+public class CommandPipeline {
+
+    /**
+     * 指令提交方式：IDataTransceiver::submit 或链路管理器的同名方法
+     */
+    public interface Submitter {
+        CompletableFuture<byte[]> submit(byte[] command, long timeoutMs, CommandPriority priority);
+    }
+
+    private final Submitter submitter;
+
+    public CommandPipeline(Submitter submitter) {
+        this.submitter = submitter;
+    }
+
+    /**
+     * 连续提交全部指令后按顺序收取响应，每条指令的超时按 GeoComTimeouts 查表
+     * @param commands 指令序列
+     * @return 与指令一一对应的响应数组
+     * @throws IOException 发送失败或等待响应失败
+     */
+    public byte[][] execute(byte[]... commands) throws IOException {
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>(commands.length);
+        long[] timeouts = new long[commands.length];
+        CommandPriority priority = batchPriority(commands);
+        for (int i = 0; i < commands.length; i++) {
+            timeouts[i] = GeoComTimeouts.forCommand(commands[i]);
+            futures.add(submitter.submit(commands[i], timeouts[i], priority));
+        }
+        byte[][] replies = new byte[commands.length][];
+        IOException failure = null;
+        for (int i = 0; i < commands.length; i++) {
+            try {
+                replies[i] = IDataTransceiver.await(futures.get(i), timeouts[i]);
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return replies;
+    }
+
+    /**
+     * @return 一批指令中最高的优先级
+     */
+    static CommandPriority batchPriority(byte[]... commands) {
+        CommandPriority highest = CommandPriority.STATUS;
+        for (byte[] command : commands) {
+            CommandPriority priority = CommandPriority.forCommand(command);
+            if (priority.ordinal() < highest.ordinal()) {
+                highest = priority;
+            }
+        }
+        return highest;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.leicameasurement.device.adapter;
 
+import com.example.leicameasurement.device.connection.CommandMetrics;
 import com.example.leicameasurement.device.connection.IConnectionChannel;
 import com.example.leicameasurement.device.protocol.InstrumentException;
 
@@ -81,6 +82,30 @@ public interface InstrumentAdapter {
      */
     InstrumentStatus getStatus() throws InstrumentException;
 
+    /**
+     * 启动连续跟踪测量：仪器锁定棱镜并连续测距，按指定频率推送水平角、竖直角、斜距
+     * 监听器处理过慢时只保留最新样本，丢弃数可从跟踪会话统计中读取
+     * @param listener 样本监听器（在分发线程中回调）
+     * @param rateHz 推送频率（Hz），最大 TrackingSession.MAX_RATE_HZ
+     * @throws InstrumentException 仪器未连接、已在跟踪或启动指令失败
+     */
+    void startTracking(TrackingListener listener, double rateHz) throws InstrumentException;
+
+    /**
+     * 停止跟踪测量（未在跟踪时无操作）
+     */
+    void stopTracking();
+
+    /**
+     * @return true=正在跟踪测量
+     */
+    boolean isTracking();
+
+    /**
+     * @return 按 RPC 统计的指令延迟、超时与错误响应，可取快照显示或导出
+     */
+    CommandMetrics getCommandMetrics();
+
     /**
      * 关闭适配器，释放资源
      */
@@ -0,0 +1,122 @@
+package com.example.leicameasurement.device.adapter;
+
+/**
+ * 仪器参数影子状态：记录本次连接中最后一次成功下发到仪器的配置
+ * 适配器据此跳过与仪器当前配置相同的设置指令（棱镜高、测量模式、测站坐标、仪器高）
+ *
+ * 只有在收到成功响应后才更新影子；重连或收到任何错误响应时整体失效，
+ * 下一次测量会重新下发全部设置指令
+ */
+public class InstrumentShadowState {
+
+    private boolean prismHeightKnown;
+    private double prismHeight;
+
+    private InstrumentAdapter.MeasureMode measureMode; // null=未知
+
+    private boolean stationKnown;
+    private double stationX;
+    private double stationY;
+    private double stationH;
+
+    private boolean instrumentHeightKnown;
+    private double instrumentHeight;
+
+    private long connectionEpoch = -1;
+    private long elidedCommandCount;
+    private long invalidationCount;
+
+    // ==================== 棱镜高 ====================
+
+    public synchronized boolean isPrismHeightCurrent(double height) {
+        return prismHeightKnown && sameValue(prismHeight, height);
+    }
+
+    public synchronized void updatePrismHeight(double height) {
+        prismHeight = height;
+        prismHeightKnown = true;
+    }
+
+    // ==================== 测量模式 ====================
+
+    public synchronized boolean isMeasureModeCurrent(InstrumentAdapter.MeasureMode mode) {
+        return measureMode != null && measureMode == mode;
+    }
+
+    public synchronized void updateMeasureMode(InstrumentAdapter.MeasureMode mode) {
+        measureMode = mode;
+    }
+
+    // ==================== 测站坐标 ====================
+
+    public synchronized boolean isStationCurrent(double x, double y, double h) {
+        return stationKnown && sameValue(stationX, x) && sameValue(stationY, y) && sameValue(stationH, h);
+    }
+
+    public synchronized void updateStation(double x, double y, double h) {
+        stationX = x;
+        stationY = y;
+        stationH = h;
+        stationKnown = true;
+    }
+
+    // ==================== 仪器高 ====================
+
+    public synchronized boolean isInstrumentHeightCurrent(double height) {
+        return instrumentHeightKnown && sameValue(instrumentHeight, height);
+    }
+
+    public synchronized void updateInstrumentHeight(double height) {
+        instrumentHeight = height;
+        instrumentHeightKnown = true;
+    }
+
+    // ==================== 失效与统计 ====================
+
+    /**
+     * 记录一条因配置未变化而省略的指令
+     */
+    public synchronized void recordElided() {
+        elidedCommandCount++;
+    }
+
+    /**
+     * 清空影子状态（重连、错误响应、读写异常时调用）
+     */
+    public synchronized void invalidate() {
+        prismHeightKnown = false;
+        measureMode = null;
+        stationKnown = false;
+        instrumentHeightKnown = false;
+        invalidationCount++;
+    }
+
+    /**
+     * 按连接代数同步：代数变化说明链路已重新建立，仪器配置不再可信
+     * @param epoch 当前连接代数
+     */
+    public synchronized void syncConnectionEpoch(long epoch) {
+        if (epoch != connectionEpoch) {
+            connectionEpoch = epoch;
+            invalidate();
+        }
+    }
+
+    /**
+     * @return 累计省略的设置指令数
+     */
+    public synchronized long getElidedCommandCount() {
+        return elidedCommandCount;
+    }
+
+    /**
+     * @return 累计失效次数
+     */
+    public synchronized long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    private static boolean sameValue(double a, double b) {
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+}
@@ -1,21 +1,56 @@
 package com.example.leicameasurement.device.adapter;
 
 import com.example.leicameasurement.device.bluetooth.BluetoothLinkManager;
+import com.example.leicameasurement.device.connection.CommandMetrics;
+import com.example.leicameasurement.device.connection.CommandPriority;
 import com.example.leicameasurement.device.connection.IConnectionChannel;
 import com.example.leicameasurement.device.protocol.GeoComCommandBuilder;
 import com.example.leicameasurement.device.protocol.GeoComResponseParser;
+import com.example.leicameasurement.device.protocol.GeoComTimeouts;
 import com.example.leicameasurement.device.protocol.InstrumentException;
+import com.example.leicameasurement.infrastructure.LogManager;
+import com.example.leicameasurement.infrastructure.TraceRing;
+
+import java.io.IOException;
 
 public class TS30Adapter implements InstrumentAdapter {
 
+    private static final String TAG = "TS30Adapter";
+    private static final int TRACE_MEASURED = TraceRing.event(TAG, LogManager.DEBUG, "测量 Hz={} V={} SD={}");
+    private static final int TRACE_MEASURE_FAILED = TraceRing.event(TAG, LogManager.WARN, "测量响应无效");
+
     private BluetoothLinkManager mLinkManager;
     private GeoComCommandBuilder mCommandBuilder;
     private GeoComResponseParser mResponseParser;
+    private final CommandPipeline mPipeline;
+    private boolean mPipelineEnabled = true;
+    private final InstrumentShadowState mShadowState = new InstrumentShadowState();
+    private TrackingSession mTrackingSession;
 
     public TS30Adapter(BluetoothLinkManager linkManager) {
         this.mLinkManager = linkManager;
         this.mCommandBuilder = new GeoComCommandBuilder();
         this.mResponseParser = new GeoComResponseParser();
+        this.mPipeline = new CommandPipeline(linkManager::submit);
+    }
+
+    /**
+     * 设置测量时是否使用指令流水线
+     * @param enabled true=棱镜高/测量模式/测量三条指令连续发送；false=逐条等待响应
+     */
+    public void setPipelineEnabled(boolean enabled) {
+        this.mPipelineEnabled = enabled;
+    }
+
+    public boolean isPipelineEnabled() {
+        return mPipelineEnabled;
+    }
+
+    /**
+     * 获取仪器参数影子状态（可读取省略的指令数）
+     */
+    public InstrumentShadowState getShadowState() {
+        return mShadowState;
     }
 
     @Override
@@ -24,6 +59,11 @@ public class TS30Adapter implements InstrumentAdapter {
         // 如果你想统一使用 initialize 模式，可以重构构造函数
     }
 
+    @Override
+    public CommandMetrics getCommandMetrics() {
+        return mLinkManager.getCommandMetrics();
+    }
+
     @Override
     public boolean isConnected() {
         return mLinkManager != null && mLinkManager.isConnected();
@@ -32,24 +72,37 @@ public class TS30Adapter implements InstrumentAdapter {
     @Override
     public boolean setStation(double stationX, double stationY, double stationH, double instrumentHeight)
             throws InstrumentException {
+        // 链路重连后仪器配置不再可信
+        mShadowState.syncConnectionEpoch(mLinkManager.getConnectionEpoch());
         try {
-            // 修复：buildSetStationCommand 只需要 3 个参数
-            byte[] command = mCommandBuilder.buildSetStationCommand(stationX, stationY, stationH);
-            mLinkManager.sendCommand(command);
-
-            byte[] response = mLinkManager.receiveResponse();
-            boolean success = mResponseParser.parseSetStationResponse(response);
-
-            if (success) {
-                // 单独设置仪器高
-                byte[] heightCommand = mCommandBuilder.buildSetInstrumentHeightCommand(instrumentHeight);
-                mLinkManager.sendCommand(heightCommand);
-                byte[] heightResponse = mLinkManager.receiveResponse();
-                return mResponseParser.parseSimpleResponse(heightResponse);
+            if (mShadowState.isStationCurrent(stationX, stationY, stationH)) {
+                mShadowState.recordElided();
+            } else {
+                // 修复：buildSetStationCommand 只需要 3 个参数
+                byte[] command = mCommandBuilder.buildSetStationCommand(stationX, stationY, stationH);
+                byte[] response = exchange(command);
+                if (!mResponseParser.parseSetStationResponse(response)) {
+                    mShadowState.invalidate();
+                    return false;
+                }
+                mShadowState.updateStation(stationX, stationY, stationH);
             }
 
-            return false;
+            // 单独设置仪器高
+            if (mShadowState.isInstrumentHeightCurrent(instrumentHeight)) {
+                mShadowState.recordElided();
+                return true;
+            }
+            byte[] heightCommand = mCommandBuilder.buildSetInstrumentHeightCommand(instrumentHeight);
+            byte[] heightResponse = exchange(heightCommand);
+            if (!mResponseParser.parseSimpleResponse(heightResponse)) {
+                mShadowState.invalidate();
+                return false;
+            }
+            mShadowState.updateInstrumentHeight(instrumentHeight);
+            return true;
         } catch (Exception e) {
+            mShadowState.invalidate();
             throw new InstrumentException("设置测站失败: " + e.getMessage(), "SET_STATION_ERROR", "TS30");
         }
     }
@@ -73,8 +126,7 @@ public class TS30Adapter implements InstrumentAdapter {
     public InstrumentInfo getInstrumentInfo() throws InstrumentException {
         try {
             byte[] command = mCommandBuilder.buildGetModelCommand();
-            mLinkManager.sendCommand(command);
-            byte[] response = mLinkManager.receiveResponse();
+            byte[] response = exchange(command);
 
             String model = mResponseParser.parseModelResponse(response);
             return new InstrumentInfo(model, "Unknown", "1.0", "Leica");
@@ -87,8 +139,7 @@ public class TS30Adapter implements InstrumentAdapter {
     public InstrumentStatus getStatus() throws InstrumentException {
         try {
             byte[] command = mCommandBuilder.buildGetStatusCommand();
-            mLinkManager.sendCommand(command);
-            byte[] response = mLinkManager.receiveResponse();
+            byte[] response = exchange(command);
 
             return mResponseParser.parseStatusResponse(response);
         } catch (Exception e) {
@@ -96,8 +147,103 @@ public class TS30Adapter implements InstrumentAdapter {
         }
     }
 
+    @Override
+    public synchronized void startTracking(TrackingListener listener, double rateHz) throws InstrumentException {
+        if (!isConnected()) {
+            throw new InstrumentException("仪器未连接");
+        }
+        if (isTracking()) {
+            throw new InstrumentException("跟踪测量已在进行", "TRACKING_ACTIVE", "TS30");
+        }
+        boolean started = false;
+        try {
+            // 开启 ATR 锁定、锁定棱镜、启动连续跟踪测距，三条指令一次往返
+            byte[][] replies = mPipeline.execute(
+                    mCommandBuilder.buildSetUserLockStateCommand(true),
+                    mCommandBuilder.buildLockInCommand(),
+                    mCommandBuilder.buildStartTrackingCommand());
+            // 跟踪测距改变了仪器的测量程序，单次测量前需重新下发测量模式
+            mShadowState.invalidate();
+            checkSetupResponse(replies[0], "开启锁定跟踪失败", "LOCK_STATE_ERROR");
+            checkSetupResponse(replies[1], "锁定棱镜失败", "LOCK_IN_ERROR");
+            checkSetupResponse(replies[2], "启动跟踪测距失败", "START_TRACKING_ERROR");
+
+            int periodMs = TrackingSession.periodMillis(rateHz);
+            mTrackingSession = new TrackingSession(mLinkManager::submit,
+                    mCommandBuilder.buildGetSimpleMeasurementCommand(periodMs),
+                    periodMs + GeoComTimeouts.QUERY_TIMEOUT_MS, rateHz,
+                    TrackingSession.DEFAULT_BUFFER_CAPACITY, listener, "TS30");
+            TrackingSession session = mTrackingSession;
+            session.setAbortHandler(() -> onTrackingAborted(session));
+            session.start();
+            started = true;
+        } catch (InstrumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new InstrumentException("启动跟踪测量失败: " + e.getMessage(), "START_TRACKING_ERROR", "TS30");
+        } finally {
+            if (!started) {
+                // 部分指令可能已生效（锁定已开启、跟踪测距已启动），一并撤销
+                mTrackingSession = null;
+                releaseTracking();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void stopTracking() {
+        if (mTrackingSession == null) {
+            return;
+        }
+        mTrackingSession.stop();
+        mTrackingSession = null;
+        releaseTracking();
+    }
+
+    /**
+     * 跟踪会话因连续取数失败自行终止：仪器仍在跟踪测距，按正常停止流程撤销
+     */
+    private synchronized void onTrackingAborted(TrackingSession session) {
+        if (mTrackingSession == session) {
+            stopTracking();
+        }
+    }
+
+    /**
+     * 停止仪器的跟踪测距（TMC_STOP）并关闭锁定跟踪，不等待响应
+     */
+    private void releaseTracking() {
+        if (isConnected()) {
+            // 停止测距优先于排队中的其他指令发出
+            mLinkManager.submit(mCommandBuilder.buildStopTrackingCommand(),
+                    GeoComTimeouts.CONFIG_TIMEOUT_MS, CommandPriority.ABORT);
+            byte[] lockOff = mCommandBuilder.buildSetUserLockStateCommand(false);
+            mLinkManager.submit(lockOff, GeoComTimeouts.forCommand(lockOff))
+                    .whenComplete((response, error) -> {
+                        if (error != null) {
+                            LogManager.w(TAG, "关闭锁定跟踪失败：" + error.getMessage());
+                        }
+                    });
+        }
+        mShadowState.invalidate();
+    }
+
+    @Override
+    public synchronized boolean isTracking() {
+        return mTrackingSession != null && mTrackingSession.isRunning();
+    }
+
+    /**
+     * 获取当前跟踪会话（可读取送达、丢弃、失败样本数）
+     * @return 跟踪会话；未在跟踪时为 null
+     */
+    public synchronized TrackingSession getTrackingSession() {
+        return mTrackingSession;
+    }
+
     @Override
     public void close() {
+        stopTracking();
         if (mLinkManager != null) {
             try {
                 byte[] command = mCommandBuilder.buildCloseCommand();
@@ -114,38 +260,105 @@ public class TS30Adapter implements InstrumentAdapter {
      * 执行测量的通用方法
      */
     private double[] performMeasurement(double prismHeight, MeasureMode mode) throws InstrumentException {
+        // 链路重连后仪器配置不再可信
+        mShadowState.syncConnectionEpoch(mLinkManager.getConnectionEpoch());
         try {
-            // 1. 设置棱镜高
-            byte[] prismCommand = mCommandBuilder.buildSetPrismHeightCommand(prismHeight);
-            mLinkManager.sendCommand(prismCommand);
-            byte[] prismResponse = mLinkManager.receiveResponse();
+            // 与影子状态一致的设置指令无需重发
+            boolean sendPrism = !mShadowState.isPrismHeightCurrent(prismHeight);
+            boolean sendMode = !mShadowState.isMeasureModeCurrent(mode);
+            if (!sendPrism) {
+                mShadowState.recordElided();
+            }
+            if (!sendMode) {
+                mShadowState.recordElided();
+            }
+            byte[] measureCommand = mCommandBuilder.buildMeasureCommand(prismHeight, mode);
+
+            if (mPipelineEnabled) {
+                // 需要下发的指令依次进入发送队列连续写出，再按顺序取回响应
+                byte[][] commands = new byte[1 + (sendPrism ? 1 : 0) + (sendMode ? 1 : 0)][];
+                int count = 0;
+                if (sendPrism) {
+                    commands[count++] = mCommandBuilder.buildSetPrismHeightCommand(prismHeight);
+                }
+                if (sendMode) {
+                    commands[count++] = buildMeasureModeCommand(mode);
+                }
+                commands[count] = measureCommand;
 
-            if (!mResponseParser.parseSimpleResponse(prismResponse)) {
-                throw new InstrumentException("设置棱镜高失败", "SET_PRISM_ERROR", "TS30");
+                byte[][] replies = mPipeline.execute(commands);
+                int index = 0;
+                if (sendPrism) {
+                    checkSetupResponse(replies[index++], "设置棱镜高失败", "SET_PRISM_ERROR");
+                    mShadowState.updatePrismHeight(prismHeight);
+                }
+                if (sendMode) {
+                    checkSetupResponse(replies[index++], "设置测量模式失败", "SET_MODE_ERROR");
+                    mShadowState.updateMeasureMode(mode);
+                }
+                return parseMeasurement(replies[index]);
             }
 
-            // 2. 设置测量模式
-            byte[] modeCommand = buildMeasureModeCommand(mode);
-            mLinkManager.sendCommand(modeCommand);
-            byte[] modeResponse = mLinkManager.receiveResponse();
+            // 1. 设置棱镜高
+            if (sendPrism) {
+                byte[] prismResponse = exchange(mCommandBuilder.buildSetPrismHeightCommand(prismHeight));
+                checkSetupResponse(prismResponse, "设置棱镜高失败", "SET_PRISM_ERROR");
+                mShadowState.updatePrismHeight(prismHeight);
+            }
 
-            if (!mResponseParser.parseSimpleResponse(modeResponse)) {
-                throw new InstrumentException("设置测量模式失败", "SET_MODE_ERROR", "TS30");
+            // 2. 设置测量模式
+            if (sendMode) {
+                byte[] modeResponse = exchange(buildMeasureModeCommand(mode));
+                checkSetupResponse(modeResponse, "设置测量模式失败", "SET_MODE_ERROR");
+                mShadowState.updateMeasureMode(mode);
             }
 
             // 3. 执行测量
-            byte[] measureCommand = mCommandBuilder.buildMeasureCommand(prismHeight, mode);
-            mLinkManager.sendCommand(measureCommand);
-            byte[] measureResponse = mLinkManager.receiveResponse();
+            byte[] measureResponse = exchange(measureCommand);
 
             // 4. 解析测量结果
-            return mResponseParser.parseMeasurementResponse(measureResponse);
+            return parseMeasurement(measureResponse);
 
+        } catch (InstrumentException e) {
+            mShadowState.invalidate();
+            throw e;
         } catch (Exception e) {
+            mShadowState.invalidate();
             throw new InstrumentException("测量失败: " + e.getMessage(), "MEASURE_ERROR", "TS30");
         }
     }
 
+    /**
+     * 发送指令并等待按事务号配对的响应，超时按指令类型查表
+     */
+    private byte[] exchange(byte[] command) throws IOException {
+        return mLinkManager.exchange(command, GeoComTimeouts.forCommand(command));
+    }
+
+    /**
+     * 解析测量响应，错误响应（解析结果为null）时让影子状态失效
+     */
+    private double[] parseMeasurement(byte[] response) {
+        double[] result = mResponseParser.parseMeasurementResponse(response);
+        if (result == null) {
+            mShadowState.invalidate();
+            TraceRing.global().record(TRACE_MEASURE_FAILED);
+        } else {
+            TraceRing.global().record(TRACE_MEASURED, result[0], result[1], result[2]);
+        }
+        return result;
+    }
+
+    /**
+     * 检查前置指令（棱镜高、测量模式）的响应，返回码非0时终止整批测量
+     */
+    private void checkSetupResponse(byte[] response, String message, String errorCode)
+            throws InstrumentException {
+        if (!mResponseParser.parseSimpleResponse(response)) {
+            throw new InstrumentException(message, errorCode, "TS30");
+        }
+    }
+
     /**
      * 构建测量模式指令
      */
@@ -1,12 +1,22 @@
 package com.example.leicameasurement.device.adapter;
 
 import com.example.leicameasurement.device.bluetooth.BluetoothLinkManager;
+import com.example.leicameasurement.device.connection.CommandMetrics;
+import com.example.leicameasurement.device.connection.CommandPriority;
+import com.example.leicameasurement.device.connection.ConnectionStateListener;
+import com.example.leicameasurement.device.connection.GeoComTransceiver;
 import com.example.leicameasurement.device.connection.IConnectionChannel;
+import com.example.leicameasurement.device.connection.IDataTransceiver;
+import com.example.leicameasurement.device.connection.InstrumentedConnectionChannel;
 import com.example.leicameasurement.device.protocol.GeoComCommandBuilder;
 import com.example.leicameasurement.device.protocol.GeoComResponseParser;
+import com.example.leicameasurement.device.protocol.GeoComTimeouts;
 import com.example.leicameasurement.device.protocol.InstrumentException;
+import com.example.leicameasurement.infrastructure.LogManager;
+import com.example.leicameasurement.infrastructure.TraceRing;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * TS60 全站仪适配器
@@ -14,11 +24,45 @@ import java.io.IOException;
  */
 public class TS60Adapter implements InstrumentAdapter {
 
+    private static final String TAG = "TS60Adapter";
+    private static final int TRACE_MEASURED = TraceRing.event(TAG, LogManager.DEBUG, "测量 Hz={} V={} SD={}");
+    private static final int TRACE_MEASURE_FAILED = TraceRing.event(TAG, LogManager.WARN, "测量响应无效");
+
     private IConnectionChannel connectionChannel;
+    private IDataTransceiver transceiver;
     private GeoComCommandBuilder commandBuilder;
     private GeoComResponseParser responseParser;
+    private CommandPipeline pipeline;
+    private boolean pipelineEnabled = true;
+    private final InstrumentShadowState shadowState = new InstrumentShadowState();
+    private TrackingSession trackingSession;
+    private final CommandMetrics commandMetrics = new CommandMetrics();
     private boolean initialized = false;
 
+    // 通道重连/断开/出错时让影子状态失效
+    private final ConnectionStateListener shadowInvalidator = new ConnectionStateListener() {
+        @Override
+        public void onConnectionStateChanged(IConnectionChannel.ConnectionState oldState,
+                                             IConnectionChannel.ConnectionState newState,
+                                             String error) {
+        }
+
+        @Override
+        public void onConnected() {
+            shadowState.invalidate();
+        }
+
+        @Override
+        public void onDisconnected(String reason) {
+            shadowState.invalidate();
+        }
+
+        @Override
+        public void onConnectionError(String error) {
+            shadowState.invalidate();
+        }
+    };
+
     // ==================== 构造函数 ====================
 
     /**
@@ -46,10 +90,63 @@ public class TS60Adapter implements InstrumentAdapter {
 
     @Override
     public void initialize(IConnectionChannel connectionChannel) {
+        if (this.connectionChannel != null) {
+            this.connectionChannel.removeConnectionStateListener(shadowInvalidator);
+        }
         this.connectionChannel = connectionChannel;
+        connectionChannel.addConnectionStateListener(shadowInvalidator);
+        shadowState.invalidate();
+        if (this.transceiver != null) {
+            this.transceiver.stop();
+        }
+        // 所有指令经异步收发器按事务号配对，允许多条指令同时在途
+        // 通道尚未连接时不启动读线程，首次提交指令时自动启动
+        // 收发经指标装饰器统计各指令延迟；重新初始化时沿用同一指标容器
+        IConnectionChannel instrumented = connectionChannel instanceof InstrumentedConnectionChannel
+                ? connectionChannel
+                : new InstrumentedConnectionChannel(connectionChannel, commandMetrics);
+        this.transceiver = new GeoComTransceiver(instrumented);
+        if (connectionChannel.isConnected()) {
+            this.transceiver.start();
+        }
+        this.pipeline = new CommandPipeline(transceiver::submit);
         this.initialized = true;
     }
 
+    /**
+     * 设置测量时是否使用指令流水线
+     * @param enabled true=棱镜高/测量模式/测量三条指令连续发送；false=逐条等待响应
+     */
+    public void setPipelineEnabled(boolean enabled) {
+        this.pipelineEnabled = enabled;
+    }
+
+    public boolean isPipelineEnabled() {
+        return pipelineEnabled;
+    }
+
+    /**
+     * 获取异步收发器，可直接提交指令并通过 Future 获取按事务号配对的响应
+     */
+    public IDataTransceiver getTransceiver() {
+        return transceiver;
+    }
+
+    /**
+     * 获取仪器参数影子状态（可读取省略的指令数）
+     */
+    public InstrumentShadowState getShadowState() {
+        return shadowState;
+    }
+
+    @Override
+    public CommandMetrics getCommandMetrics() {
+        if (connectionChannel instanceof InstrumentedConnectionChannel) {
+            return ((InstrumentedConnectionChannel) connectionChannel).getMetrics();
+        }
+        return commandMetrics;
+    }
+
     @Override
     public boolean isConnected() {
         return initialized && connectionChannel != null && connectionChannel.isConnected();
@@ -64,27 +161,40 @@ public class TS60Adapter implements InstrumentAdapter {
         }
 
         try {
-            // 构建设置测站坐标的GeoCOM指令
-            byte[] command = commandBuilder.buildSetStationCommand(stationX, stationY, stationH);
-            connectionChannel.sendData(command);
-
-            // 接收响应
-            byte[] response = connectionChannel.receiveData();
-            boolean success = responseParser.parseSetStationResponse(response);
-
-            if (success) {
-                // 设置仪器高
-                byte[] heightCommand = commandBuilder.buildSetInstrumentHeightCommand(instrumentHeight);
-                connectionChannel.sendData(heightCommand);
-                byte[] heightResponse = connectionChannel.receiveData();
-                return responseParser.parseSimpleResponse(heightResponse);
+            if (shadowState.isStationCurrent(stationX, stationY, stationH)) {
+                shadowState.recordElided();
+            } else {
+                // 构建设置测站坐标的GeoCOM指令
+                byte[] command = commandBuilder.buildSetStationCommand(stationX, stationY, stationH);
+
+                // 发送并等待配对的响应
+                byte[] response = exchange(command);
+                if (!responseParser.parseSetStationResponse(response)) {
+                    shadowState.invalidate();
+                    return false;
+                }
+                shadowState.updateStation(stationX, stationY, stationH);
             }
 
-            return false;
+            // 设置仪器高
+            if (shadowState.isInstrumentHeightCurrent(instrumentHeight)) {
+                shadowState.recordElided();
+                return true;
+            }
+            byte[] heightCommand = commandBuilder.buildSetInstrumentHeightCommand(instrumentHeight);
+            byte[] heightResponse = exchange(heightCommand);
+            if (!responseParser.parseSimpleResponse(heightResponse)) {
+                shadowState.invalidate();
+                return false;
+            }
+            shadowState.updateInstrumentHeight(instrumentHeight);
+            return true;
 
         } catch (IOException e) {
+            shadowState.invalidate();
             throw new InstrumentException("设置测站失败: " + e.getMessage(), "SET_STATION_ERROR", "TS60");
         } catch (Exception e) {
+            shadowState.invalidate();
             throw new InstrumentException("设置测站解析失败: " + e.getMessage(), "SET_STATION_PARSE_ERROR", "TS60");
         }
     }
@@ -111,17 +221,14 @@ public class TS60Adapter implements InstrumentAdapter {
         }
 
         try {
-            // 获取仪器型号
-            byte[] modelCommand = commandBuilder.buildGetModelCommand();
-            connectionChannel.sendData(modelCommand);
-            byte[] modelResponse = connectionChannel.receiveData();
-            String model = responseParser.parseModelResponse(modelResponse);
-
-            // 获取序列号
-            byte[] serialCommand = commandBuilder.buildGetSerialNumberCommand();
-            connectionChannel.sendData(serialCommand);
-            byte[] serialResponse = connectionChannel.receiveData();
-            String serialNumber = responseParser.parseSerialNumberResponse(serialResponse);
+            // 型号与序列号查询同时在途，响应按事务号配对
+            CompletableFuture<byte[]> modelReply = transceiver.submit(commandBuilder.buildGetModelCommand());
+            CompletableFuture<byte[]> serialReply = transceiver.submit(commandBuilder.buildGetSerialNumberCommand());
+
+            String model = responseParser.parseModelResponse(
+                    IDataTransceiver.await(modelReply, GeoComTimeouts.QUERY_TIMEOUT_MS));
+            String serialNumber = responseParser.parseSerialNumberResponse(
+                    IDataTransceiver.await(serialReply, GeoComTimeouts.QUERY_TIMEOUT_MS));
 
             return new InstrumentInfo(model, serialNumber, "1.0", "Leica");
 
@@ -141,8 +248,7 @@ public class TS60Adapter implements InstrumentAdapter {
         try {
             // 获取仪器状态
             byte[] statusCommand = commandBuilder.buildGetStatusCommand();
-            connectionChannel.sendData(statusCommand);
-            byte[] statusResponse = connectionChannel.receiveData();
+            byte[] statusResponse = exchange(statusCommand);
 
             return responseParser.parseStatusResponse(statusResponse);
 
@@ -153,16 +259,119 @@ public class TS60Adapter implements InstrumentAdapter {
         }
     }
 
+    @Override
+    public synchronized void startTracking(TrackingListener listener, double rateHz) throws InstrumentException {
+        if (!isConnected()) {
+            throw new InstrumentException("仪器未连接");
+        }
+        if (isTracking()) {
+            throw new InstrumentException("跟踪测量已在进行", "TRACKING_ACTIVE", "TS60");
+        }
+
+        boolean started = false;
+        try {
+            // 开启 ATR 锁定、锁定棱镜、启动连续跟踪测距，三条指令一次往返
+            byte[][] replies = pipeline.execute(
+                    commandBuilder.buildSetUserLockStateCommand(true),
+                    commandBuilder.buildLockInCommand(),
+                    commandBuilder.buildStartTrackingCommand());
+            // 跟踪测距改变了仪器的测量程序，单次测量前需重新下发测量模式
+            shadowState.invalidate();
+            checkSetupResponse(replies[0], "开启锁定跟踪失败", "LOCK_STATE_ERROR");
+            checkSetupResponse(replies[1], "锁定棱镜失败", "LOCK_IN_ERROR");
+            checkSetupResponse(replies[2], "启动跟踪测距失败", "START_TRACKING_ERROR");
+
+            int periodMs = TrackingSession.periodMillis(rateHz);
+            trackingSession = new TrackingSession(transceiver::submit,
+                    commandBuilder.buildGetSimpleMeasurementCommand(periodMs),
+                    periodMs + GeoComTimeouts.QUERY_TIMEOUT_MS, rateHz,
+                    TrackingSession.DEFAULT_BUFFER_CAPACITY, listener, "TS60");
+            TrackingSession session = trackingSession;
+            session.setAbortHandler(() -> onTrackingAborted(session));
+            session.start();
+            started = true;
+        } catch (IllegalArgumentException e) {
+            throw new InstrumentException(e.getMessage(), "TRACKING_RATE_ERROR", "TS60");
+        } catch (IOException e) {
+            throw new InstrumentException("启动跟踪测量失败: " + e.getMessage(), "START_TRACKING_ERROR", "TS60");
+        } finally {
+            if (!started) {
+                // 部分指令可能已生效（锁定已开启、跟踪测距已启动），一并撤销
+                trackingSession = null;
+                releaseTracking();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void stopTracking() {
+        if (trackingSession == null) {
+            return;
+        }
+        trackingSession.stop();
+        trackingSession = null;
+        releaseTracking();
+    }
+
+    /**
+     * 跟踪会话因连续取数失败自行终止：仪器仍在跟踪测距，按正常停止流程撤销
+     */
+    private synchronized void onTrackingAborted(TrackingSession session) {
+        if (trackingSession == session) {
+            stopTracking();
+        }
+    }
+
+    /**
+     * 停止仪器的跟踪测距（TMC_STOP）并关闭锁定跟踪，不等待响应
+     */
+    private void releaseTracking() {
+        if (isConnected()) {
+            // 停止测距优先于排队中的其他指令发出
+            transceiver.submit(commandBuilder.buildStopTrackingCommand(),
+                    GeoComTimeouts.CONFIG_TIMEOUT_MS, CommandPriority.ABORT);
+            transceiver.submit(commandBuilder.buildSetUserLockStateCommand(false))
+                    .whenComplete((response, error) -> {
+                        if (error != null) {
+                            LogManager.w(TAG, "关闭锁定跟踪失败：" + error.getMessage());
+                        }
+                    });
+        }
+        shadowState.invalidate();
+    }
+
+    @Override
+    public synchronized boolean isTracking() {
+        return trackingSession != null && trackingSession.isRunning();
+    }
+
+    /**
+     * 获取当前跟踪会话（可读取送达、丢弃、失败样本数）
+     * @return 跟踪会话；未在跟踪时为 null
+     */
+    public synchronized TrackingSession getTrackingSession() {
+        return trackingSession;
+    }
+
     @Override
     public void close() {
-        if (connectionChannel != null && connectionChannel.isConnected()) {
-            try {
-                // 发送关闭指令
+        stopTracking();
+        try {
+            if (connectionChannel != null && connectionChannel.isConnected()) {
+                // 发送关闭指令并等待响应，收发器停止时会丢弃尚未发出的指令
                 byte[] closeCommand = commandBuilder.buildCloseCommand();
-                connectionChannel.sendData(closeCommand);
-            } catch (Exception e) {
-                // 忽略关闭时的异常
-            } finally {
+                IDataTransceiver.await(transceiver.submit(closeCommand, GeoComTimeouts.CONFIG_TIMEOUT_MS),
+                        GeoComTimeouts.CONFIG_TIMEOUT_MS);
+            }
+        } catch (Exception e) {
+            // 忽略关闭时的异常
+            LogManager.w(TAG, "关闭指令未得到响应：" + e.getMessage());
+        } finally {
+            // 通道已断开时读写线程仍在运行，同样需要停止
+            if (transceiver != null) {
+                transceiver.stop();
+            }
+            if (connectionChannel != null && connectionChannel.isConnected()) {
                 connectionChannel.disconnect();
             }
         }
@@ -182,41 +391,108 @@ public class TS60Adapter implements InstrumentAdapter {
         }
 
         try {
-            // 1. 设置棱镜高
-            byte[] prismCommand = commandBuilder.buildSetPrismHeightCommand(prismHeight);
-            connectionChannel.sendData(prismCommand);
-            byte[] prismResponse = connectionChannel.receiveData();
+            // 与影子状态一致的设置指令无需重发
+            boolean sendPrism = !shadowState.isPrismHeightCurrent(prismHeight);
+            boolean sendMode = !shadowState.isMeasureModeCurrent(mode);
+            if (!sendPrism) {
+                shadowState.recordElided();
+            }
+            if (!sendMode) {
+                shadowState.recordElided();
+            }
+            byte[] measureCommand = buildMeasurementCommand(measurementType);
 
-            if (!responseParser.parseSimpleResponse(prismResponse)) {
-                throw new InstrumentException("设置棱镜高失败", "SET_PRISM_ERROR", "TS60");
+            if (pipelineEnabled) {
+                // 需要下发的指令连续写出，一次往返后按顺序取回响应
+                // 前置指令失败时仪器仍会执行测量，其结果随整批一起丢弃
+                byte[][] commands = new byte[1 + (sendPrism ? 1 : 0) + (sendMode ? 1 : 0)][];
+                int count = 0;
+                if (sendPrism) {
+                    commands[count++] = commandBuilder.buildSetPrismHeightCommand(prismHeight);
+                }
+                if (sendMode) {
+                    commands[count++] = buildMeasureModeCommand(mode);
+                }
+                commands[count] = measureCommand;
+
+                byte[][] replies = pipeline.execute(commands);
+                int index = 0;
+                if (sendPrism) {
+                    checkSetupResponse(replies[index++], "设置棱镜高失败", "SET_PRISM_ERROR");
+                    shadowState.updatePrismHeight(prismHeight);
+                }
+                if (sendMode) {
+                    checkSetupResponse(replies[index++], "设置测量模式失败", "SET_MODE_ERROR");
+                    shadowState.updateMeasureMode(mode);
+                }
+                return parseMeasurement(replies[index]);
             }
 
-            // 2. 设置测量模式
-            byte[] modeCommand = buildMeasureModeCommand(mode);
-            connectionChannel.sendData(modeCommand);
-            byte[] modeResponse = connectionChannel.receiveData();
+            // 1. 设置棱镜高
+            if (sendPrism) {
+                byte[] prismResponse = exchange(commandBuilder.buildSetPrismHeightCommand(prismHeight));
+                checkSetupResponse(prismResponse, "设置棱镜高失败", "SET_PRISM_ERROR");
+                shadowState.updatePrismHeight(prismHeight);
+            }
 
-            if (!responseParser.parseSimpleResponse(modeResponse)) {
-                throw new InstrumentException("设置测量模式失败", "SET_MODE_ERROR", "TS60");
+            // 2. 设置测量模式
+            if (sendMode) {
+                byte[] modeResponse = exchange(buildMeasureModeCommand(mode));
+                checkSetupResponse(modeResponse, "设置测量模式失败", "SET_MODE_ERROR");
+                shadowState.updateMeasureMode(mode);
             }
 
             // 3. 执行测量
-            byte[] measureCommand = buildMeasurementCommand(measurementType);
-            connectionChannel.sendData(measureCommand);
-            byte[] measureResponse = connectionChannel.receiveData();
+            byte[] measureResponse = exchange(measureCommand);
 
             // 4. 解析测量结果 [水平角, 竖直角, 斜距, X坐标, Y坐标, Z坐标]
-            return responseParser.parseMeasurementResponse(measureResponse);
+            return parseMeasurement(measureResponse);
 
+        } catch (InstrumentException e) {
+            shadowState.invalidate();
+            throw e;
         } catch (IOException e) {
+            shadowState.invalidate();
             throw new InstrumentException(measurementType + "测量失败: " + e.getMessage(),
                     "MEASURE_" + measurementType + "_ERROR", "TS60");
         } catch (Exception e) {
+            shadowState.invalidate();
             throw new InstrumentException("解析测量结果失败: " + e.getMessage(),
                     "PARSE_MEASUREMENT_ERROR", "TS60");
         }
     }
 
+    /**
+     * 发送指令并等待按事务号配对的响应，超时按指令类型查表
+     */
+    private byte[] exchange(byte[] command) throws IOException {
+        return transceiver.exchange(command, GeoComTimeouts.forCommand(command));
+    }
+
+    /**
+     * 解析测量响应，错误响应（解析结果为null）时让影子状态失效
+     */
+    private double[] parseMeasurement(byte[] response) {
+        double[] result = responseParser.parseMeasurementResponse(response);
+        if (result == null) {
+            shadowState.invalidate();
+            TraceRing.global().record(TRACE_MEASURE_FAILED);
+        } else {
+            TraceRing.global().record(TRACE_MEASURED, result[0], result[1], result[2]);
+        }
+        return result;
+    }
+
+    /**
+     * 检查前置指令（棱镜高、测量模式）的响应，返回码非0时终止整批测量
+     */
+    private void checkSetupResponse(byte[] response, String message, String errorCode)
+            throws InstrumentException {
+        if (!responseParser.parseSimpleResponse(response)) {
+            throw new InstrumentException(message, errorCode, "TS60");
+        }
+    }
+
     /**
      * 构建测量模式指令
      */
@@ -0,0 +1,24 @@
+package com.example.leicameasurement.device.adapter;
+
+import com.example.leicameasurement.device.protocol.InstrumentException;
+
+/**
+ * 跟踪测量监听器
+ * 回调在跟踪会话的分发线程中执行，耗时处理不会阻塞取数；处理过慢时旧样本被合并丢弃
+ */
+public interface TrackingListener {
+
+    /**
+     * 收到新样本
+     * @param sample 跟踪样本
+     */
+    void onSample(TrackingSample sample);
+
+    /**
+     * 跟踪因连续取数失败而终止，回调前已向仪器发出停止跟踪测距与关闭锁定的指令
+     * 在独立线程中回调
+     * @param error 失败原因
+     */
+    default void onTrackingError(InstrumentException error) {
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.leicameasurement.device.adapter;
+
+/**
+ * 跟踪测量样本
+ */
+public class TrackingSample {
+    private final long sequence;           // 样本序号（从0开始，含被丢弃的样本）
+    private final long timestamp;          // 收到响应的时间（ms）
+    private final double horizontalAngle;  // 水平角（rad）
+    private final double verticalAngle;    // 竖直角（rad）
+    private final double slopeDistance;    // 斜距（m）
+
+    public TrackingSample(long sequence, long timestamp,
+                          double horizontalAngle, double verticalAngle, double slopeDistance) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.horizontalAngle = horizontalAngle;
+        this.verticalAngle = verticalAngle;
+        this.slopeDistance = slopeDistance;
+    }
+
+    public long getSequence() { return sequence; }
+    public long getTimestamp() { return timestamp; }
+    public double getHorizontalAngle() { return horizontalAngle; }
+    public double getVerticalAngle() { return verticalAngle; }
+    public double getSlopeDistance() { return slopeDistance; }
+}
@@ -0,0 +1,275 @@
+package com.example.leicameasurement.device.adapter;
+
+import com.example.leicameasurement.device.connection.CommandPriority;
+import com.example.leicameasurement.device.protocol.GeoComReply;
+import com.example.leicameasurement.device.protocol.GeoComResponseParser;
+import com.example.leicameasurement.device.protocol.InstrumentException;
+import com.example.leicameasurement.infrastructure.LogManager;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 跟踪测量会话：仪器处于连续跟踪测距时，按固定频率取数并把样本推送给监听器
+ * 核心职责：
+ * 1. 取数线程按频率提交 TMC_GetSimpleMea，最多 MAX_OUTSTANDING 条同时在途，响应慢时跳过本次取数而不积压
+ * 2. 样本放入有界缓冲区，由独立的分发线程回调监听器；监听器处理过慢时丢弃最旧样本，只保留最新位置
+ * 3. 统计产生、送达、丢弃、失败、跳过的样本数；连续失败达到上限时终止会话，
+ *    先调用终止处理（由适配器停止仪器的跟踪测距），再通知监听器
+ */
+public class TrackingSession {
+
+    private static final String TAG = "TrackingSession";
+    public static final double MAX_RATE_HZ = 20.0;
+    public static final int DEFAULT_BUFFER_CAPACITY = 4;
+    private static final int MAX_OUTSTANDING = 2;
+    private static final int MAX_CONSECUTIVE_FAILURES = 10;
+
+    private final CommandPipeline.Submitter submitter;
+    private final byte[] pollCommand;
+    private final long pollTimeoutMs;
+    private final long periodNanos;
+    private final int bufferCapacity;
+    private final TrackingListener listener;
+    private final String instrumentModel;
+
+    private final GeoComResponseParser responseParser = new GeoComResponseParser();
+    private final GeoComReply reply = new GeoComReply(); // 在 reply 锁内使用
+    private final ArrayDeque<TrackingSample> buffer;     // 在 buffer 锁内使用
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private volatile boolean running = false;
+    private volatile Runnable abortHandler;
+    private ScheduledExecutorService scheduler;
+    private Thread dispatcher;
+
+    private long nextSequence = 0;          // 在 reply 锁内使用
+    private int consecutiveFailures = 0;    // 在 reply 锁内使用
+    private volatile long producedCount = 0;
+    private volatile long deliveredCount = 0;
+    private volatile long droppedCount = 0;
+    private volatile long failedCount = 0;
+    private volatile long skippedCount = 0;
+
+    /**
+     * @param submitter 指令提交方式（收发器或链路管理器的 submit）
+     * @param pollCommand 取数指令
+     * @param pollTimeoutMs 单次取数超时
+     * @param rateHz 取数频率，(0, MAX_RATE_HZ]
+     * @param bufferCapacity 待分发样本上限
+     * @param listener 样本监听器
+     * @param instrumentModel 仪器型号（用于异常信息）
+     */
+    public TrackingSession(CommandPipeline.Submitter submitter, byte[] pollCommand, long pollTimeoutMs,
+                           double rateHz, int bufferCapacity, TrackingListener listener, String instrumentModel) {
+        if (!(rateHz > 0) || rateHz > MAX_RATE_HZ) {
+            throw new IllegalArgumentException("跟踪频率需在 (0, " + MAX_RATE_HZ + "] Hz 范围内：" + rateHz);
+        }
+        if (bufferCapacity < 1) {
+            throw new IllegalArgumentException("缓冲区容量至少为 1");
+        }
+        this.submitter = submitter;
+        this.pollCommand = pollCommand;
+        this.pollTimeoutMs = pollTimeoutMs;
+        this.periodNanos = (long) (1e9 / rateHz);
+        this.bufferCapacity = bufferCapacity;
+        this.listener = listener;
+        this.instrumentModel = instrumentModel;
+        this.buffer = new ArrayDeque<>(bufferCapacity);
+    }
+
+    /**
+     * @return 取数周期对应的毫秒数（用作 TMC_GetSimpleMea 的等待时间）
+     */
+    public static int periodMillis(double rateHz) {
+        return (int) Math.max(1, Math.round(1000.0 / rateHz));
+    }
+
+    // ==================== 生命周期 ====================
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        dispatcher = new Thread(this::dispatchLoop, "TrackingSession-Dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleAtFixedRate(this::poll, 0, periodNanos, TimeUnit.NANOSECONDS);
+        LogManager.i(TAG, "跟踪测量已启动，周期 " + periodNanos / 1_000_000 + "ms");
+    }
+
+    /**
+     * 停止取数与分发，尚未分发的样本被丢弃
+     */
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+            dispatcher = null;
+        }
+        synchronized (buffer) {
+            buffer.clear();
+        }
+        LogManager.i(TAG, "跟踪测量已停止：产生 " + producedCount + "，送达 " + deliveredCount
+                + "，丢弃 " + droppedCount + "，失败 " + failedCount + "，跳过 " + skippedCount);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 设置会话因连续取数失败自行终止时的处理（如停止仪器的跟踪测距、关闭锁定跟踪）
+     * 在独立线程中、通知监听器之前调用，可以安全地获取适配器的锁
+     */
+    public void setAbortHandler(Runnable abortHandler) {
+        this.abortHandler = abortHandler;
+    }
+
+    // ==================== 取数 ====================
+
+    private void poll() {
+        if (!running) return;
+        if (outstanding.incrementAndGet() > MAX_OUTSTANDING) {
+            // 上一轮响应尚未返回，本次不再提交，避免请求在链路上积压
+            outstanding.decrementAndGet();
+            skippedCount++;
+            return;
+        }
+        submitter.submit(pollCommand, pollTimeoutMs, CommandPriority.forCommand(pollCommand)).whenComplete((response, error) -> {
+            outstanding.decrementAndGet();
+            onReply(response, error);
+        });
+    }
+
+    private void onReply(byte[] response, Throwable error) {
+        if (!running) return;
+        TrackingSample sample = null;
+        InstrumentException fatal = null;
+        synchronized (reply) {
+            if (error == null && responseParser.parseMeasurementResponse(response, reply)) {
+                consecutiveFailures = 0;
+                sample = new TrackingSample(nextSequence++, System.currentTimeMillis(),
+                        reply.getHorizontalAngle(), reply.getVerticalAngle(), reply.getSlopeDistance());
+            } else {
+                // 失锁、无棱镜等返回码非0的情况同样计为失败，棱镜重新锁定后恢复
+                failedCount++;
+                if (++consecutiveFailures == MAX_CONSECUTIVE_FAILURES) {
+                    fatal = new InstrumentException("跟踪取数连续失败 " + consecutiveFailures + " 次"
+                            + (error != null ? "：" + error.getMessage() : ""), "TRACKING_ERROR", instrumentModel);
+                }
+            }
+        }
+        if (sample != null) {
+            offer(sample);
+        } else if (fatal != null) {
+            LogManager.e(TAG, fatal.getMessage());
+            stop();
+            abort(fatal);
+        }
+    }
+
+    /**
+     * 在独立线程中执行终止处理并通知监听器（当前线程是收发器的读线程，不能在此等待适配器的锁）
+     */
+    private void abort(InstrumentException error) {
+        Thread notifier = new Thread(() -> {
+            Runnable handler = abortHandler;
+            if (handler != null) {
+                try {
+                    handler.run();
+                } catch (RuntimeException e) {
+                    LogManager.e(TAG, "跟踪终止处理异常：" + e.getMessage());
+                }
+            }
+            listener.onTrackingError(error);
+        }, "TrackingSession-Abort");
+        notifier.setDaemon(true);
+        notifier.start();
+    }
+
+    /**
+     * 放入有界缓冲区，已满时丢弃最旧的样本（合并为最新位置）
+     */
+    private void offer(TrackingSample sample) {
+        synchronized (buffer) {
+            if (buffer.size() == bufferCapacity) {
+                buffer.pollFirst();
+                droppedCount++;
+            }
+            buffer.addLast(sample);
+            producedCount++;
+            buffer.notifyAll();
+        }
+    }
+
+    // ==================== 分发 ====================
+
+    private void dispatchLoop() {
+        while (running) {
+            TrackingSample sample;
+            synchronized (buffer) {
+                while (buffer.isEmpty()) {
+                    if (!running) return;
+                    try {
+                        buffer.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                sample = buffer.pollFirst();
+            }
+            try {
+                listener.onSample(sample);
+                deliveredCount++;
+            } catch (RuntimeException e) {
+                LogManager.e(TAG, "跟踪监听器异常：" + e.getMessage());
+            }
+        }
+    }
+
+    // ==================== 统计 ====================
+
+    /**
+     * @return 解析成功并进入缓冲区的样本数
+     */
+    public long getProducedCount() {
+        return producedCount;
+    }
+
+    /**
+     * @return 已回调监听器的样本数
+     */
+    public long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /**
+     * @return 因监听器处理过慢被合并丢弃的样本数
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * @return 取数失败（超时、链路异常、返回码非0）的次数
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return 因在途请求已满而跳过的取数次数
+     */
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+}
@@ -7,28 +7,37 @@ import android.bluetooth.BluetoothSocket;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import androidx.core.app.ActivityCompat;
+import com.example.leicameasurement.device.connection.ByteRingBuffer;
 import com.example.leicameasurement.device.connection.ConnectionConfig;
 import com.example.leicameasurement.device.connection.ConnectionException;
 import com.example.leicameasurement.device.connection.ConnectionStateListener;
 import com.example.leicameasurement.device.connection.ConnectionType;
+import com.example.leicameasurement.device.connection.FrameDecoder;
 import com.example.leicameasurement.device.connection.IConnectionChannel;
 import com.example.leicameasurement.infrastructure.LogManager;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 蓝牙通道：负责底层的蓝牙连接、数据收发
  * 实现 IConnectionChannel 接口，提供统一的连接通道抽象
+ * 每个连接独占一个阻塞读线程，把收到的字节直接读入固定容量的环形缓冲区；
+ * 接收方按截止时间等待，由 FrameDecoder 在环形缓冲区上原位切帧，读取过程不分配中间数组
+ * 接收方跟不上时读线程暂停读取（背压），蓝牙协议栈的流控随之生效；长时间无人消费时丢弃新数据并计数
  */
 public class BluetoothChannel implements IConnectionChannel {
 
     private static final UUID SPP_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
     private static final String TAG = "BluetoothChannel";
     private static final int DEFAULT_TIMEOUT = 5000;
+    private static final int RING_BUFFER_SIZE = 16 * 1024;
+    private static final long BACKPRESSURE_TIMEOUT_MS = 1000; // 背压等待上限，超时后丢弃新数据保持链路畅通
 
     private BluetoothSocket mSocket;
     private OutputStream mOutputStream;
@@ -40,6 +49,13 @@ public class BluetoothChannel implements IConnectionChannel {
     private int mReadTimeout = DEFAULT_TIMEOUT;
     private final List<ConnectionStateListener> mListeners = new ArrayList<>();
 
+    // 读线程（生产者）与环形缓冲区，切帧在接收方（消费者）进行
+    private final Object mReceiveLock = new Object(); // 保证同一时刻只有一个消费者
+    private final FrameDecoder mFrameDecoder = new FrameDecoder(); // 仅在 mReceiveLock 内访问
+    private volatile ByteRingBuffer mRingBuffer = new ByteRingBuffer(RING_BUFFER_SIZE);
+    private Thread mReaderThread;
+    private volatile boolean mReading = false;
+
     public BluetoothChannel(Context context) {
         this.mContext = context;
     }
@@ -77,6 +93,7 @@ public class BluetoothChannel implements IConnectionChannel {
             mSocket.connect();
             mOutputStream = mSocket.getOutputStream();
             mInputStream = mSocket.getInputStream();
+            startReader();
             setState(ConnectionState.CONNECTED);
             notifyConnected();
             LogManager.i(TAG, "Bluetooth connection successful, MAC: " + config.getDeviceAddress());
@@ -131,7 +148,7 @@ public class BluetoothChannel implements IConnectionChannel {
         try {
             mOutputStream.write(data);
             mOutputStream.flush();
-            LogManager.d(TAG, "Sent data: " + bytesToHex(data));
+            LogManager.d(TAG, () -> "Sent data: " + LogManager.toHex(data));
         } catch (IOException e) {
             LogManager.e(TAG, "Send data failed: " + e.getMessage());
             setState(ConnectionState.ERROR);
@@ -145,12 +162,58 @@ public class BluetoothChannel implements IConnectionChannel {
         return receiveResponseBytes(mReadTimeout);
     }
 
+    @Override
+    public byte[] receiveData(long timeoutMs) throws IOException {
+        return receiveResponseBytes(timeoutMs);
+    }
+
+    /**
+     * 获取输入流：读线程独占套接字输入流，这里返回从环形缓冲区读取原始字节的流
+     * 与 receiveData() 共用同一把接收锁；已被帧解码器取走的半帧不会出现在流中
+     */
     @Override
     public InputStream getInputStream() throws IOException {
         if (mInputStream == null) {
             throw new IOException("Input stream is null");
         }
-        return mInputStream;
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                int n = read(one, 0, 1);
+                return n < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                synchronized (mReceiveLock) {
+                    ByteRingBuffer ring = mRingBuffer;
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mReadTimeout);
+                    while (ring.size() == 0) {
+                        if (!mReading || ring.isClosed()) {
+                            return -1;
+                        }
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            throw new InterruptedIOException("Read timeout after " + mReadTimeout + "ms");
+                        }
+                        ring.awaitReadable(remaining, TimeUnit.NANOSECONDS);
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedIOException("Read interrupted");
+                        }
+                    }
+                    return ring.read(b, off, len);
+                }
+            }
+
+            @Override
+            public int available() {
+                return mRingBuffer.size();
+            }
+        };
     }
 
     @Override
@@ -267,83 +330,114 @@ public class BluetoothChannel implements IConnectionChannel {
     }
 
     public String receiveResponse(long timeout) {
-        if (mInputStream == null) {
-            LogManager.w(TAG, "Receive failed: input stream is null");
+        try {
+            byte[] frame = receiveResponseBytes(timeout);
+            return new String(frame, "US-ASCII").trim();
+        } catch (IOException e) {
+            LogManager.w(TAG, "Receive response failed: " + e.getMessage());
             return null;
         }
-        try {
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            StringBuilder response = new StringBuilder();
-            long startTime = System.currentTimeMillis();
-            byte CR = 13;
-            byte LF = 10;
-
-            while (System.currentTimeMillis() - startTime < timeout) {
-                if (mInputStream.available() > 0) {
-                    bytesRead = mInputStream.read(buffer);
-                    response.append(new String(buffer, 0, bytesRead, "US-ASCII"));
-                    String resp = response.toString();
-                    if (resp.length() >= 2 && resp.charAt(resp.length() - 2) == CR && resp.charAt(resp.length() - 1) == LF) {
-                        String result = resp.trim();
-                        LogManager.d(TAG, "Received response: " + result);
-                        return result;
-                    }
+    }
+
+    /**
+     * 等待下一帧完整响应，超时以截止时间计算，帧到达后立即返回
+     */
+    private byte[] receiveResponseBytes(long timeout) throws IOException {
+        synchronized (mReceiveLock) {
+            ByteRingBuffer ring = mRingBuffer;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (!mFrameDecoder.next(ring)) {
+                if (!mReading) {
+                    throw new IOException("Receive failed: reader is not running");
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    // 超时由调用方决定是否告警（收发器读线程会以短超时轮询）
+                    throw new InterruptedIOException("Receive timeout after " + timeout + "ms");
+                }
+                ring.awaitReadable(remaining, TimeUnit.NANOSECONDS);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Receive interrupted");
                 }
-                Thread.sleep(100);
             }
-            LogManager.w(TAG, "Receive timeout (" + timeout + "ms)");
-            return null;
-        } catch (IOException | InterruptedException e) {
-            LogManager.e(TAG, "Receive response failed: " + e.getMessage());
-            Thread.currentThread().interrupt();
-            return null;
+            byte[] frame = mFrameDecoder.copyFrame();
+            LogManager.d(TAG, () -> "Received response: " + LogManager.toHex(frame));
+            return frame;
         }
     }
 
-    private byte[] receiveResponseBytes(long timeout) throws IOException {
-        if (mInputStream == null) {
-            throw new IOException("Receive failed: input stream is null");
+    /**
+     * 启动读线程（连接成功后调用），每个连接使用新的环形缓冲区
+     */
+    private void startReader() {
+        ByteRingBuffer ring = new ByteRingBuffer(RING_BUFFER_SIZE);
+        synchronized (mReceiveLock) {
+            mFrameDecoder.reset();
+            mRingBuffer = ring;
         }
-        try {
-            byte[] buffer = new byte[1024];
-            int bytesRead;
-            int totalBytes = 0;
-            long startTime = System.currentTimeMillis();
-            byte CR = 13;
-            byte LF = 10;
-
-            while (System.currentTimeMillis() - startTime < timeout) {
-                if (mInputStream.available() > 0) {
-                    bytesRead = mInputStream.read(buffer, totalBytes, buffer.length - totalBytes);
-                    totalBytes += bytesRead;
-
-                    if (totalBytes >= 2 && buffer[totalBytes - 2] == CR && buffer[totalBytes - 1] == LF) {
-                        byte[] response = new byte[totalBytes];
-                        System.arraycopy(buffer, 0, response, 0, totalBytes);
-                        LogManager.d(TAG, "Received response: " + bytesToHex(response));
-                        return response;
-                    }
+        mReading = true;
+        final InputStream input = mInputStream;
+        mReaderThread = new Thread(() -> readerLoop(input, ring), "BluetoothChannel-Reader");
+        mReaderThread.setDaemon(true);
+        mReaderThread.start();
+    }
 
-                    if (totalBytes >= buffer.length) {
-                        byte[] newBuffer = new byte[buffer.length * 2];
-                        System.arraycopy(buffer, 0, newBuffer, 0, totalBytes);
-                        buffer = newBuffer;
+    /**
+     * 读循环：阻塞读取，字节直接写入环形缓冲区并唤醒等待方
+     * 达到高水位时先等待接收方消费；等待超时说明无人消费，读出的数据丢弃并计入溢出
+     */
+    private void readerLoop(InputStream input, ByteRingBuffer ring) {
+        byte[] discard = null;
+        try {
+            while (mReading) {
+                if (ring.isBackpressured() && !ring.awaitWritable(BACKPRESSURE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    if (!mReading) break;
+                    if (ring.size() == ring.capacity()) {
+                        if (discard == null) {
+                            discard = new byte[1024];
+                        }
+                        int dropped = input.read(discard);
+                        if (dropped < 0) {
+                            throw new IOException("Stream closed by remote device");
+                        }
+                        ring.recordOverflow(dropped);
+                        LogManager.w(TAG, "Receive buffer full, dropped " + dropped + " bytes");
+                        continue;
                     }
                 }
-                Thread.sleep(100);
+                if (ring.readFrom(input) < 0) {
+                    throw new IOException("Stream closed by remote device");
+                }
+            }
+        } catch (IOException e) {
+            if (mReading) {
+                mReading = false;
+                LogManager.e(TAG, "Reader stopped: " + e.getMessage());
+                setState(ConnectionState.ERROR);
+                notifyConnectionError("Receive data failed: " + e.getMessage());
             }
+        } finally {
+            ring.close();
+        }
+    }
 
-            LogManager.w(TAG, "Receive timeout (" + timeout + "ms)");
-            throw new IOException("Receive timeout after " + timeout + "ms");
+    /**
+     * @return 接收缓冲区因无人消费而丢弃的累计字节数
+     */
+    public long getReceiveOverflowBytes() {
+        return mRingBuffer.getOverflowBytes();
+    }
 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new IOException("Receive interrupted: " + e.getMessage());
-        }
+    /**
+     * @return 读线程因接收方跟不上而暂停读取的累计次数
+     */
+    public long getReceiveBackpressureEvents() {
+        return mRingBuffer.getBackpressureEvents();
     }
 
     public void close() {
+        mReading = false;
+        mRingBuffer.close();
         try {
             if (mInputStream != null) mInputStream.close();
             if (mOutputStream != null) mOutputStream.close();
@@ -352,16 +446,9 @@ public class BluetoothChannel implements IConnectionChannel {
         } catch (IOException e) {
             LogManager.e(TAG, "Close connection failed: " + e.getMessage());
         }
-    }
-
-    private String bytesToHex(byte[] bytes) {
-        if (bytes == null || bytes.length == 0) {
-            return "";
-        }
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02X ", b));
+        if (mReaderThread != null) {
+            mReaderThread.interrupt();
+            mReaderThread = null;
         }
-        return sb.toString().trim();
     }
 }
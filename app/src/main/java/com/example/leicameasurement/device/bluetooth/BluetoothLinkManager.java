@@ -3,8 +3,14 @@ package com.example.leicameasurement.device.bluetooth;
 import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
+import com.example.leicameasurement.device.connection.CommandPriority;
+import com.example.leicameasurement.device.connection.CommandMetrics;
+import com.example.leicameasurement.device.connection.IDataTransceiver;
+import com.example.leicameasurement.device.connection.LinkQuality;
+import com.example.leicameasurement.device.connection.TransceiverMetrics;
 import com.example.leicameasurement.infrastructure.LogManager;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 蓝牙链路总控：封装状态机、对外提供统一接口
@@ -13,7 +19,6 @@ import java.io.IOException;
 public class BluetoothLinkManager {
 
     private static final String TAG = "BluetoothLinkManager";
-    private static final long DEFAULT_TIMEOUT = 5000; // 默认超时
 
     private final String mDeviceMac;
     private final Context mContext;
@@ -23,7 +28,9 @@ public class BluetoothLinkManager {
     private final Handler mMainHandler = new Handler(Looper.getMainLooper()); // 用于UI回调
 
     private volatile LinkState mState = LinkState.DISCONNECTED;
+    private volatile long mConnectionEpoch = 0; // 每次连接成功加1，用于判断仪器侧状态是否需要重建
     private LinkStateListener mListener;
+    private final CommandMetrics mCommandMetrics = new CommandMetrics(); // 跨重连累计的指令延迟统计
 
     public BluetoothLinkManager(Context context, String deviceMac) {
         this.mContext = context;
@@ -53,10 +60,11 @@ public class BluetoothLinkManager {
         new Thread(() -> {
             mChannel = new BluetoothChannel(mContext, mDeviceMac);
             if (mChannel.connect()) {
-                mTransceiver = new DataTransceiver(mChannel);
+                mTransceiver = new DataTransceiver(mChannel, mCommandMetrics);
                 mTransceiver.start();
-                mMonitor = new ConnectionMonitor(mChannel, this::handleDisconnect);
+                mMonitor = new ConnectionMonitor(mChannel, mTransceiver, this::handleDisconnect);
                 mMonitor.start();
+                mConnectionEpoch++;
                 updateState(LinkState.CONNECTED);
             } else {
                 updateState(LinkState.DISCONNECTED);
@@ -113,46 +121,85 @@ public class BluetoothLinkManager {
     // ==================== 新增方法：支持 TS30Adapter 等适配器 ====================
 
     /**
-     * 发送字节数组指令（新增方法，用于支持 byte[] 类型的指令）
+     * 发送字节数组指令（异步，不关心响应）
+     * 响应由收发器按事务号配对后丢弃
      * @param command 字节数组指令
-     * @throws IOException 如果发送失败
+     * @throws IOException 如果链路未连接
      */
     public void sendCommand(byte[] command) throws IOException {
         if (mState != LinkState.CONNECTED || mTransceiver == null) {
             throw new IOException("发送失败：链路未连接");
         }
+        mTransceiver.submit(command);
+    }
 
-        // 将 byte[] 转换为 String（根据你的协议，可能需要调整编码方式）
-        // 如果你的协议是二进制的，可以直接传递给 DataTransceiver
-        // 这里假设你的 DataTransceiver 内部可以处理 byte[]
-
-        // 方案1：如果 DataTransceiver 只支持 String，转换为 String
-        String commandStr = new String(command, "UTF-8"); // 或者使用其他编码
-        mTransceiver.sendCommand(commandStr);
-
-        // 方案2：如果你想直接发送 byte[]，需要修改 DataTransceiver 添加对应方法
-        // mTransceiver.sendCommand(command);
+    /**
+     * 异步发送指令，响应按 GeoCOM 事务号配对
+     * @param command 字节数组指令
+     * @param timeout 超时时间（ms）
+     * @return 响应 Future；链路未连接时以 IOException 结束
+     */
+    public CompletableFuture<byte[]> submit(byte[] command, long timeout) {
+        DataTransceiver transceiver = mTransceiver;
+        if (mState != LinkState.CONNECTED || transceiver == null) {
+            CompletableFuture<byte[]> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IOException("发送失败：链路未连接"));
+            return failed;
+        }
+        return transceiver.submit(command, timeout);
     }
 
     /**
-     * 接收响应数据（新增方法）
-     * @return 响应的字节数组
-     * @throws IOException 如果接收失败
+     * 异步发送指令并指定优先级（如停止测量以 ABORT 发送）
+     * @param command 字节数组指令
+     * @param timeout 超时时间（ms）
+     * @param priority 发送优先级
+     * @return 响应 Future；链路未连接时以 IOException 结束
      */
-    public byte[] receiveResponse() throws IOException {
-        if (mState != LinkState.CONNECTED || mTransceiver == null) {
-            throw new IOException("接收失败：链路未连接");
+    public CompletableFuture<byte[]> submit(byte[] command, long timeout, CommandPriority priority) {
+        DataTransceiver transceiver = mTransceiver;
+        if (mState != LinkState.CONNECTED || transceiver == null) {
+            CompletableFuture<byte[]> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IOException("发送失败：链路未连接"));
+            return failed;
         }
+        return transceiver.submit(command, timeout, priority);
+    }
+
+    /**
+     * 发送指令并等待配对的响应（同步）
+     * @param command 字节数组指令
+     * @param timeout 超时时间（ms）
+     * @return 响应帧
+     * @throws IOException 链路未连接、发送失败或超时
+     */
+    public byte[] exchange(byte[] command, long timeout) throws IOException {
+        return IDataTransceiver.await(submit(command, timeout), timeout);
+    }
 
-        // 使用默认超时时间接收响应
-        String response = mTransceiver.sendAndReceive("", DEFAULT_TIMEOUT);
+    /**
+     * 获取收发器运行指标（各优先级排队深度、等待时间）
+     * @return 指标快照；未连接时为空指标
+     */
+    public TransceiverMetrics getTransceiverMetrics() {
+        DataTransceiver transceiver = mTransceiver;
+        return transceiver != null ? transceiver.getMetrics() : TransceiverMetrics.empty();
+    }
 
-        if (response == null) {
-            throw new IOException("接收响应超时");
-        }
+    /**
+     * 获取按 RPC 统计的指令延迟、超时与错误响应（跨重连累计）
+     */
+    public CommandMetrics getCommandMetrics() {
+        return mCommandMetrics;
+    }
 
-        // 将 String 转换为 byte[]
-        return response.getBytes("UTF-8"); // 或者使用其他编码
+    /**
+     * 获取链路质量统计（最近通信时间、RTT）
+     * @return 链路质量；未连接时返回 null
+     */
+    public LinkQuality getLinkQuality() {
+        DataTransceiver transceiver = mTransceiver;
+        return transceiver != null ? transceiver.getLinkQuality() : null;
     }
 
     /**
@@ -163,6 +210,15 @@ public class BluetoothLinkManager {
         return mState == LinkState.CONNECTED && mChannel != null && mChannel.isConnected();
     }
 
+    /**
+     * 获取连接代数：每次重新连接成功后递增
+     * 适配器据此判断仪器配置是否需要重新下发
+     * @return 连接代数
+     */
+    public long getConnectionEpoch() {
+        return mConnectionEpoch;
+    }
+
     /**
      * 获取 Context（新增方法，用于 InstrumentFactory）
      * @return Context 对象
@@ -1,27 +1,41 @@
 package com.example.leicameasurement.device.bluetooth;
 
+import com.example.leicameasurement.device.connection.CommandPriority;
+import com.example.leicameasurement.device.connection.IDataTransceiver;
+import com.example.leicameasurement.device.connection.LinkQuality;
+import com.example.leicameasurement.device.protocol.GeoComCommandBuilder;
+import com.example.leicameasurement.device.protocol.GeoComTimeouts;
 import com.example.leicameasurement.infrastructure.LogManager;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
 * 连接监控器：负责心跳检测与断连事件通知
-* 核心职责：定时发送心跳指令，检测链路是否正常
+* 核心职责：根据最近的成功通信判断链路是否存活，仅在链路空闲超过阈值时发送心跳
+* 心跳使用可带事务号的 COM_NullProc，经数据收发器以最低优先级（STATUS）排队发送并与响应配对；
+* 有请求在途时不发送心跳，测量期间不会产生额外的无线唤醒和时延抖动
 */
 public class ConnectionMonitor {
 
     private static final String TAG = "ConnectionMonitor";
-    private static final long HEARTBEAT_INTERVAL = 5000; // 心跳间隔（5秒）
-    private static final String HEARTBEAT_COMMAND = "*IDN?\r\n"; // 身份识别指令作为心跳包
+    private static final long CHECK_INTERVAL = 1000;  // 检查间隔（1秒，仅读取统计，不产生通信）
+    private static final long IDLE_WINDOW = 5000;     // 链路空闲超过该时间才发送心跳（5秒）
+    private static final int MAX_MISSED_HEARTBEATS = 3; // 连续心跳超时次数达到该值判定断连
 
     private final BluetoothChannel mChannel;
+    private final IDataTransceiver mTransceiver;
     private final Runnable mOnDisconnectCallback; // 断连回调
+    private final byte[] mHeartbeatCommand = new GeoComCommandBuilder().buildNullProcCommand();
+    private int mMissedHeartbeats = 0; // 仅在监控线程中访问
     private ScheduledExecutorService mScheduler; // 定时任务执行器
     private volatile boolean isMonitoring = false;
 
-    public ConnectionMonitor(BluetoothChannel channel, Runnable onDisconnectCallback) {
+    public ConnectionMonitor(BluetoothChannel channel, IDataTransceiver transceiver, Runnable onDisconnectCallback) {
         this.mChannel = channel;
+        this.mTransceiver = transceiver;
         this.mOnDisconnectCallback = onDisconnectCallback;
     }
 
@@ -31,8 +45,9 @@ public class ConnectionMonitor {
     public void start() {
         if (isMonitoring) return;
         isMonitoring = true;
+        mMissedHeartbeats = 0;
         mScheduler = Executors.newSingleThreadScheduledExecutor();
-        mScheduler.scheduleAtFixedRate(this::checkConnection, 0, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
+        mScheduler.scheduleAtFixedRate(this::checkConnection, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
         LogManager.i(TAG, "连接监控已启动");
     }
 
@@ -58,9 +73,28 @@ public class ConnectionMonitor {
             }
             return;
         }
-        // 发送心跳指令，但不关心响应（仅用于检测通道是否可用）
-        if (!mChannel.sendCommand(HEARTBEAT_COMMAND)) {
-            LogManager.e(TAG, "心跳发送失败");
+        LinkQuality quality = mTransceiver.getLinkQuality();
+        if (quality.getIdleMillis() < IDLE_WINDOW) {
+            mMissedHeartbeats = 0; // 近期有成功通信，链路存活
+            return;
+        }
+        if (mTransceiver.getMetrics().getInFlight() > 0) {
+            return; // 有请求在途（如精密测距），由请求自身的超时反映链路故障
+        }
+
+        try {
+            IDataTransceiver.await(mTransceiver.submit(mHeartbeatCommand,
+                    GeoComTimeouts.QUERY_TIMEOUT_MS, CommandPriority.STATUS), GeoComTimeouts.QUERY_TIMEOUT_MS);
+            mMissedHeartbeats = 0;
+            LogManager.d(TAG, "心跳正常，RTT " + quality.getLastRttMs() + "ms，平均 " + quality.getAverageRttMs() + "ms");
+        } catch (InterruptedIOException e) {
+            mMissedHeartbeats++;
+            LogManager.w(TAG, "心跳响应超时（连续 " + mMissedHeartbeats + " 次）");
+            if (mMissedHeartbeats >= MAX_MISSED_HEARTBEATS && isMonitoring) {
+                mOnDisconnectCallback.run();
+            }
+        } catch (IOException e) {
+            LogManager.e(TAG, "心跳发送失败：" + e.getMessage());
             if (isMonitoring) {
                 mOnDisconnectCallback.run();
             }
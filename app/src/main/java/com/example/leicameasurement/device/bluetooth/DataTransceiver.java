@@ -1,68 +1,117 @@
 package com.example.leicameasurement.device.bluetooth;
 
+import com.example.leicameasurement.device.connection.CommandMetrics;
+import com.example.leicameasurement.device.connection.CommandPriority;
+import com.example.leicameasurement.device.connection.GeoComTransceiver;
+import com.example.leicameasurement.device.connection.IDataTransceiver;
+import com.example.leicameasurement.device.connection.InstrumentedConnectionChannel;
+import com.example.leicameasurement.device.connection.LinkQuality;
+import com.example.leicameasurement.device.connection.TransceiverMetrics;
 import com.example.leicameasurement.infrastructure.LogManager;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
 
 /**
-* 数据收发器：负责指令的队列发送与响应的同步接收
-* 核心职责：解决 “一发一收” 的同步问题，处理超时与重发
+* 数据收发器：负责蓝牙链路上指令的发送与响应的配对
+* 核心职责：所有指令经 GeoComTransceiver 标记事务号后发送，响应按事务号交给对应请求，
+* 同步、异步指令及心跳共用同一条配对通路，由收发器的写线程按优先级串行写入蓝牙通道
 */
-public class DataTransceiver {
+public class DataTransceiver implements IDataTransceiver {
 
     private static final String TAG = "DataTransceiver";
     private final BluetoothChannel mChannel; // 蓝牙物理通道
-    private final BlockingQueue<String> mCommandQueue = new LinkedBlockingQueue<>(); // 指令发送队列
-    private volatile boolean isRunning = false; // 运行状态
-    private Thread mTransceiverThread; // 收发线程
+    private final GeoComTransceiver mTransceiver; // 事务号配对收发器
 
     public DataTransceiver(BluetoothChannel channel) {
         this.mChannel = channel;
+        this.mTransceiver = new GeoComTransceiver(channel);
+    }
+
+    /**
+    * @param channel 蓝牙物理通道
+    * @param metrics 指令指标容器，收发经 InstrumentedConnectionChannel 统计延迟
+    */
+    public DataTransceiver(BluetoothChannel channel, CommandMetrics metrics) {
+        this.mChannel = channel;
+        this.mTransceiver = new GeoComTransceiver(new InstrumentedConnectionChannel(channel, metrics));
     }
 
     /**
     * 启动收发器（在连接成功后调用）
     */
+    @Override
     public void start() {
-        if (isRunning) return;
-        isRunning = true;
-        mTransceiverThread = new Thread(this::transceiverLoop);
-        mTransceiverThread.start();
+        mTransceiver.start();
         LogManager.i(TAG, "数据收发器已启动");
     }
 
     /**
-    * 停止收发器（在连接断开后调用）
+    * 停止收发器（在连接断开后调用），未完成的请求以异常结束
     */
+    @Override
     public void stop() {
-        isRunning = false;
-        if (mTransceiverThread != null) {
-            mTransceiverThread.interrupt(); // 中断线程
-        }
-        mCommandQueue.clear(); // 清空队列
+        mTransceiver.stop();
         LogManager.i(TAG, "数据收发器已停止");
     }
 
+    @Override
+    public boolean isRunning() {
+        return mTransceiver.isRunning();
+    }
+
+    @Override
+    public CompletableFuture<byte[]> submit(byte[] command) {
+        return mTransceiver.submit(command);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> submit(byte[] command, long timeoutMs) {
+        return mTransceiver.submit(command, timeoutMs);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> submit(byte[] command, long timeoutMs, CommandPriority priority) {
+        return mTransceiver.submit(command, timeoutMs, priority);
+    }
+
+    @Override
+    public byte[] exchange(byte[] command, long timeoutMs) throws IOException {
+        return mTransceiver.exchange(command, timeoutMs);
+    }
+
+    @Override
+    public TransceiverMetrics getMetrics() {
+        return mTransceiver.getMetrics();
+    }
+
+    @Override
+    public LinkQuality getLinkQuality() {
+        return mTransceiver.getLinkQuality();
+    }
+
+    /**
+    * 设置在途窗口上限，1=严格一问一答
+    */
+    public void setMaxInFlight(int maxInFlight) {
+        mTransceiver.setMaxInFlight(maxInFlight);
+    }
+
     /**
     * 发送指令并等待响应（同步阻塞）
     * @param command 指令
     * @param timeout 超时时间（ms）
     * @return 响应数据（null=超时或失败）
     */
-    public synchronized String sendAndReceive(String command, long timeout) {
+    public String sendAndReceive(String command, long timeout) {
         if (!mChannel.isConnected()) {
             LogManager.e(TAG, "发送失败：蓝牙未连接");
             return null;
         }
         try {
-            // 1. 发送指令
-            if (!mChannel.sendCommand(command)) {
-                return null;
-            }
-            // 2. 等待响应（阻塞）
-            return mChannel.receiveResponse(timeout);
-        } catch (Exception e) {
+            byte[] response = exchange(command.getBytes(StandardCharsets.US_ASCII), timeout);
+            return new String(response, StandardCharsets.US_ASCII).trim();
+        } catch (IOException e) {
             LogManager.e(TAG, "收发异常：" + e.getMessage());
             return null;
         }
@@ -70,34 +119,16 @@ public class DataTransceiver {
 
     /**
     * 仅发送指令（异步，不关心响应）
+    * 响应仍会被配对并丢弃，不会干扰其他请求
     * @param command 指令
     */
     public void sendCommand(String command) {
-        try {
-            mCommandQueue.put(command);
-        } catch (InterruptedException e) {
-            LogManager.e(TAG, "添加指令到队列失败：" + e.getMessage());
-            Thread.currentThread().interrupt();
-        }
-    }
-
-    /**
-    * 收发循环（用于处理队列中的异步指令）
-    */
-    private void transceiverLoop() {
-        while (isRunning && !Thread.currentThread().isInterrupted()) {
-            try {
-                // 从队列中取出指令（阻塞）
-                String command = mCommandQueue.poll(1, TimeUnit.SECONDS);
-                if (command != null && mChannel.isConnected()) {
-                    mChannel.sendCommand(command); // 发送
-                    // 对于异步指令，我们不处理响应，仅记录日志
-                    LogManager.d(TAG, "已发送异步指令：" + command.trim());
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
+        submit(command.getBytes(StandardCharsets.US_ASCII)).whenComplete((response, error) -> {
+            if (error != null) {
+                LogManager.e(TAG, "异步指令失败：" + command.trim() + "，" + error.getMessage());
+            } else {
+                LogManager.d(TAG, "已完成异步指令：" + command.trim());
             }
-        }
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,277 @@
+package com.example.leicameasurement.device.connection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单生产者/单消费者无锁字节环形缓冲区
+ * 通道读线程（生产者）把收到的字节直接读入环形区，FrameDecoder（消费者）在原位扫描切帧，
+ * 收发过程不再为每次读取分配数组，也不再扩容拷贝
+ *
+ * 约束：写入类方法只能由一个生产者线程调用，读取类方法只能由一个消费者线程调用（或在同一把锁内调用）
+ * 读写位置为单调递增的 long，下标取 position & mask，容量必须为 2 的幂
+ */
+public final class ByteRingBuffer {
+
+    private final byte[] mBuffer;
+    private final int mMask;
+    private final int mHighWatermark;
+
+    private final AtomicLong mWritePosition = new AtomicLong(); // 仅生产者写
+    private final AtomicLong mReadPosition = new AtomicLong();  // 仅消费者写
+    private final ByteBuffer mWriteView; // 仅生产者使用，用于 NIO 通道直接读入
+
+    private volatile long mOverflowBytes = 0;     // 仅生产者写
+    private volatile long mBackpressureEvents = 0; // 仅生产者写
+    private volatile boolean mClosed = false;
+    private volatile Thread mWaitingConsumer;
+    private volatile Thread mWaitingProducer;
+
+    /**
+     * @param capacity 容量（字节），向上取整为 2 的幂
+     */
+    public ByteRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("容量必须大于 0");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.mBuffer = new byte[size];
+        this.mMask = size - 1;
+        this.mHighWatermark = size - size / 4;
+        this.mWriteView = ByteBuffer.wrap(mBuffer);
+    }
+
+    // ==================== 生产者 ====================
+
+    /**
+     * 写入字节，空间不足时只写入能放下的部分，其余计入溢出字节数
+     * @return 实际写入的字节数
+     */
+    public int write(byte[] src, int offset, int count) {
+        long write = mWritePosition.get();
+        int free = mBuffer.length - (int) (write - mReadPosition.get());
+        int n = Math.min(count, free);
+        int index = (int) write & mMask;
+        int first = Math.min(n, mBuffer.length - index);
+        System.arraycopy(src, offset, mBuffer, index, first);
+        System.arraycopy(src, offset + first, mBuffer, 0, n - first);
+        if (n < count) {
+            mOverflowBytes += count - n;
+        }
+        publish(write + n);
+        return n;
+    }
+
+    /**
+     * 从输入流直接读入环形区的连续空闲段（阻塞直到流中有数据）
+     * @return 读入的字节数；0=缓冲区已满；-1=流已结束
+     */
+    public int readFrom(InputStream input) throws IOException {
+        long write = mWritePosition.get();
+        int free = mBuffer.length - (int) (write - mReadPosition.get());
+        if (free == 0) {
+            return 0;
+        }
+        int index = (int) write & mMask;
+        int n = input.read(mBuffer, index, Math.min(free, mBuffer.length - index));
+        if (n > 0) {
+            publish(write + n);
+        }
+        return n;
+    }
+
+    /**
+     * 从 NIO 通道直接读入环形区的连续空闲段（非阻塞通道无数据时立即返回 0）
+     * @return 读入的字节数；0=无数据或缓冲区已满；-1=对端关闭
+     */
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        long write = mWritePosition.get();
+        int free = mBuffer.length - (int) (write - mReadPosition.get());
+        if (free == 0) {
+            return 0;
+        }
+        int index = (int) write & mMask;
+        mWriteView.limit(index + Math.min(free, mBuffer.length - index));
+        mWriteView.position(index);
+        int n = channel.read(mWriteView);
+        if (n > 0) {
+            publish(write + n);
+        }
+        return n;
+    }
+
+    /**
+     * 记录生产者主动丢弃的字节（等待消费者超时后为保持链路畅通而丢弃）
+     */
+    public void recordOverflow(int count) {
+        mOverflowBytes += count;
+    }
+
+    /**
+     * @return true=已用空间达到高水位（容量的 3/4），生产者应暂停读取，等待消费者追上
+     */
+    public boolean isBackpressured() {
+        return size() >= mHighWatermark;
+    }
+
+    /**
+     * 背压等待：阻塞直到已用空间低于高水位、缓冲区关闭或超时
+     * @return true=已低于高水位
+     */
+    public boolean awaitWritable(long timeout, TimeUnit unit) {
+        if (!isBackpressured()) {
+            return true;
+        }
+        mBackpressureEvents++;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        mWaitingProducer = Thread.currentThread();
+        try {
+            while (isBackpressured() && !mClosed) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            return !isBackpressured();
+        } finally {
+            mWaitingProducer = null;
+        }
+    }
+
+    private void publish(long write) {
+        mWritePosition.set(write);
+        Thread consumer = mWaitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    // ==================== 消费者 ====================
+
+    /**
+     * @return 可读字节数
+     */
+    public int size() {
+        return (int) (mWritePosition.get() - mReadPosition.get());
+    }
+
+    /**
+     * 读取字节到目标数组
+     * @return 实际读取的字节数
+     */
+    public int read(byte[] dst, int offset, int count) {
+        long read = mReadPosition.get();
+        int n = Math.min(count, (int) (mWritePosition.get() - read));
+        int index = (int) read & mMask;
+        int first = Math.min(n, mBuffer.length - index);
+        System.arraycopy(mBuffer, index, dst, offset, first);
+        System.arraycopy(mBuffer, 0, dst, offset + first, n - first);
+        advanceReadPosition(read + n);
+        return n;
+    }
+
+    /**
+     * 阻塞直到有数据可读、缓冲区关闭、线程被中断或超时
+     * @return true=有数据可读
+     */
+    public boolean awaitReadable(long timeout, TimeUnit unit) {
+        if (size() > 0) {
+            return true;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        mWaitingConsumer = Thread.currentThread();
+        try {
+            while (size() == 0 && !mClosed) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+            return size() > 0;
+        } finally {
+            mWaitingConsumer = null;
+        }
+    }
+
+    /**
+     * 丢弃全部可读字节
+     */
+    public void clear() {
+        advanceReadPosition(mWritePosition.get());
+    }
+
+    // 供 FrameDecoder 在原位扫描
+
+    byte[] array() {
+        return mBuffer;
+    }
+
+    int mask() {
+        return mMask;
+    }
+
+    long readPosition() {
+        return mReadPosition.get();
+    }
+
+    long writePosition() {
+        return mWritePosition.get();
+    }
+
+    void advanceReadPosition(long read) {
+        mReadPosition.set(read);
+        Thread producer = mWaitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    // ==================== 状态 ====================
+
+    /**
+     * 关闭缓冲区：唤醒等待中的生产者与消费者，剩余数据仍可读出
+     */
+    public void close() {
+        mClosed = true;
+        Thread consumer = mWaitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        Thread producer = mWaitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    public int capacity() {
+        return mBuffer.length;
+    }
+
+    /**
+     * @return 因空间不足丢弃的累计字节数
+     */
+    public long getOverflowBytes() {
+        return mOverflowBytes;
+    }
+
+    /**
+     * @return 生产者因高水位进入背压等待的累计次数
+     */
+    public long getBackpressureEvents() {
+        return mBackpressureEvents;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.leicameasurement.device.connection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按 RPC 编号统计的指令指标：延迟直方图、字节数、超时与错误响应
+ * 由 InstrumentedConnectionChannel 记录；跨重连保留，可随时取快照显示或导出
+ * 每个 RPC 占用固定内存，最多跟踪 MAX_TRACKED_RPCS 个 RPC，其余计入 OTHER_RPC
+ */
+public class CommandMetrics {
+
+    /** 非 %R1Q 指令（*IDN? 等）以及超出跟踪上限的 RPC */
+    public static final int OTHER_RPC = -1;
+    private static final int MAX_TRACKED_RPCS = 64;
+
+    static final class Entry {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        long requests;
+        long replies;
+        long errorReplies;
+        long timeouts;
+        long bytesSent;
+        long bytesReceived;
+    }
+
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private volatile long sinceMillis = System.currentTimeMillis();
+
+    /**
+     * 记录一条已写出的请求
+     */
+    public void recordRequest(int rpc, int bytes) {
+        Entry entry = entry(rpc);
+        synchronized (entry) {
+            entry.requests++;
+            entry.bytesSent += bytes;
+        }
+    }
+
+    /**
+     * 记录一条已配对的响应
+     * @param latencyNanos 从写出请求到收到响应的时间
+     * @param success 返回码是否为 0
+     */
+    public void recordReply(int rpc, int bytes, long latencyNanos, boolean success) {
+        Entry entry = entry(rpc);
+        entry.histogram.recordNanos(latencyNanos);
+        synchronized (entry) {
+            entry.replies++;
+            entry.bytesReceived += bytes;
+            if (!success) {
+                entry.errorReplies++;
+            }
+        }
+    }
+
+    /**
+     * 记录一条在超时时间内未收到响应的请求
+     */
+    public void recordTimeout(int rpc) {
+        Entry entry = entry(rpc);
+        synchronized (entry) {
+            entry.timeouts++;
+        }
+    }
+
+    /**
+     * 清空全部统计
+     */
+    public void reset() {
+        entries.clear();
+        sinceMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * @return 当前统计的不可变快照，按 RPC 编号排序
+     */
+    public CommandMetricsSnapshot snapshot() {
+        List<CommandMetricsSnapshot.CommandStats> stats = new ArrayList<>(entries.size());
+        for (Map.Entry<Integer, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            LatencyHistogram histogram = entry.histogram;
+            synchronized (entry) {
+                stats.add(new CommandMetricsSnapshot.CommandStats(e.getKey(), entry.requests, entry.replies,
+                        entry.errorReplies, entry.timeouts, entry.bytesSent, entry.bytesReceived,
+                        histogram.getPercentileMs(0.50), histogram.getPercentileMs(0.90),
+                        histogram.getPercentileMs(0.99), histogram.getMaxMs(), histogram.getMeanMs()));
+            }
+        }
+        stats.sort((a, b) -> Integer.compare(a.getRpc(), b.getRpc()));
+        return new CommandMetricsSnapshot(sinceMillis, System.currentTimeMillis(), stats);
+    }
+
+    private Entry entry(int rpc) {
+        Entry entry = entries.get(rpc);
+        if (entry != null) {
+            return entry;
+        }
+        if (rpc != OTHER_RPC && entries.size() >= MAX_TRACKED_RPCS) {
+            rpc = OTHER_RPC;
+        }
+        return entries.computeIfAbsent(rpc, key -> new Entry());
+    }
+}
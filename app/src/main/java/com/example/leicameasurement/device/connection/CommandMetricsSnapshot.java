@@ -0,0 +1,142 @@
+package com.example.leicameasurement.device.connection;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 指令指标快照（不可变）：每个 RPC 的延迟分位数、字节数、超时与错误响应数
+ * format() 输出等宽文本表格，供日志页面显示或写入文件
+ */
+public final class CommandMetricsSnapshot {
+
+    /**
+     * 单个 RPC 的统计
+     */
+    public static final class CommandStats {
+        private final int rpc;
+        private final long requests;
+        private final long replies;
+        private final long errorReplies;
+        private final long timeouts;
+        private final long bytesSent;
+        private final long bytesReceived;
+        private final double p50Ms;
+        private final double p90Ms;
+        private final double p99Ms;
+        private final double maxMs;
+        private final double meanMs;
+
+        CommandStats(int rpc, long requests, long replies, long errorReplies, long timeouts,
+                     long bytesSent, long bytesReceived, double p50Ms, double p90Ms, double p99Ms,
+                     double maxMs, double meanMs) {
+            this.rpc = rpc;
+            this.requests = requests;
+            this.replies = replies;
+            this.errorReplies = errorReplies;
+            this.timeouts = timeouts;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+            this.p50Ms = p50Ms;
+            this.p90Ms = p90Ms;
+            this.p99Ms = p99Ms;
+            this.maxMs = maxMs;
+            this.meanMs = meanMs;
+        }
+
+        /**
+         * @return RPC 编号，CommandMetrics.OTHER_RPC 表示其他指令
+         */
+        public int getRpc() { return rpc; }
+        public long getRequests() { return requests; }
+        public long getReplies() { return replies; }
+        public long getErrorReplies() { return errorReplies; }
+        public long getTimeouts() { return timeouts; }
+        public long getBytesSent() { return bytesSent; }
+        public long getBytesReceived() { return bytesReceived; }
+        public double getP50Ms() { return p50Ms; }
+        public double getP90Ms() { return p90Ms; }
+        public double getP99Ms() { return p99Ms; }
+        public double getMaxMs() { return maxMs; }
+        public double getMeanMs() { return meanMs; }
+    }
+
+    private final long sinceMillis;
+    private final long takenMillis;
+    private final List<CommandStats> commands;
+
+    CommandMetricsSnapshot(long sinceMillis, long takenMillis, List<CommandStats> commands) {
+        this.sinceMillis = sinceMillis;
+        this.takenMillis = takenMillis;
+        this.commands = Collections.unmodifiableList(commands);
+    }
+
+    /**
+     * @return 各 RPC 的统计，按 RPC 编号排序
+     */
+    public List<CommandStats> getCommands() {
+        return commands;
+    }
+
+    /**
+     * @return 指定 RPC 的统计，没有记录时返回 null
+     */
+    public CommandStats get(int rpc) {
+        for (CommandStats stats : commands) {
+            if (stats.rpc == rpc) {
+                return stats;
+            }
+        }
+        return null;
+    }
+
+    public long getSinceMillis() {
+        return sinceMillis;
+    }
+
+    public long getTakenMillis() {
+        return takenMillis;
+    }
+
+    /**
+     * @return 等宽文本表格
+     */
+    public String format() {
+        SimpleDateFormat time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+        StringBuilder out = new StringBuilder();
+        out.append("指令延迟统计 ").append(time.format(new Date(sinceMillis)))
+                .append(" ~ ").append(time.format(new Date(takenMillis))).append('\n');
+        out.append(String.format(Locale.US, "%-6s %7s %8s %8s %8s %8s %5s %5s %8s %8s%n",
+                "RPC", "count", "p50ms", "p90ms", "p99ms", "maxms", "tmo", "err", "txB", "rxB"));
+        for (CommandStats s : commands) {
+            out.append(String.format(Locale.US, "%-6s %7d %8.1f %8.1f %8.1f %8.1f %5d %5d %8d %8d%n",
+                    s.rpc == CommandMetrics.OTHER_RPC ? "other" : String.valueOf(s.rpc),
+                    s.requests, s.p50Ms, s.p90Ms, s.p99Ms, s.maxMs, s.timeouts, s.errorReplies,
+                    s.bytesSent, s.bytesReceived));
+        }
+        return out.toString();
+    }
+
+    /**
+     * 将表格追加写入文件
+     * @param file 目标文件
+     * @throws IOException 写入失败
+     */
+    public void writeTo(File file) throws IOException {
+        try (Writer writer = new FileWriter(file, true)) {
+            writer.write(format());
+            writer.write('\n');
+        }
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.leicameasurement.device.connection;
+
+import com.example.leicameasurement.device.protocol.GeoComTimeouts;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 指令优先级：收发器按优先级从高到低依次发送排队中的指令
+ * 停止/中止 > 测量 > 参数设置 > 状态查询/心跳
+ */
+public enum CommandPriority {
+    ABORT,          // 停止测量等中止指令，不受在途窗口限制
+    MEASUREMENT,    // 测距测角
+    CONFIGURATION,  // 测站、棱镜高、测量模式、锁定等参数设置
+    STATUS;         // 状态、电量、型号查询及心跳
+
+    private static final byte[] STOP_PREFIX = "GEO::STOP".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * 按指令内容确定优先级
+     * @param command 指令字节数组
+     * @return 优先级；无法识别的 %R1Q 指令按参数设置处理
+     */
+    public static CommandPriority forCommand(byte[] command) {
+        int rpc = GeoComTimeouts.parseRpc(command);
+        if (rpc < 0) {
+            if (command != null && command.length > 0 && command[0] == '*') {
+                return STATUS; // *IDN? 等身份查询
+            }
+            return startsWith(command, STOP_PREFIX) ? ABORT : CONFIGURATION;
+        }
+        if (GeoComTimeouts.isTs30Measurement(command)) {
+            return MEASUREMENT; // TS30 的 2008 测量形式，模式设置和跟踪启停仍按参数设置
+        }
+        switch (rpc) {
+            case 17008:
+            case 2108:  // 跟踪测量取数
+                return MEASUREMENT;
+            case 0:     // COM_NullProc
+            case 5002:
+            case 5003:
+            case 5004:
+            case 5005:
+                return STATUS;
+            default:
+                return CONFIGURATION;
+        }
+    }
+
+    /**
+     * @return true=该优先级的指令不受在途窗口限制，窗口已满时也立即发送
+     */
+    public boolean bypassesWindow() {
+        return this == ABORT;
+    }
+
+    private static boolean startsWith(byte[] command, byte[] prefix) {
+        if (command == null || command.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (command[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
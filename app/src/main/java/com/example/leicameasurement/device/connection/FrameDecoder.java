@@ -0,0 +1,196 @@
+package com.example.leicameasurement.device.connection;
+
+import java.util.Arrays;
+
+/**
+ * 帧解码器：把连续的字节流切分为以结束符结尾的完整 GeoCOM 帧
+ * 核心职责：跨多次读取拼接半帧、一次读取拆出多帧，返回的帧包含结束符
+ * 默认结束符为 CR/LF，可通过构造函数指定多个结束符（任一匹配即成帧）
+ * 两种用法：feed() 推入字节并回调完整帧；next() 从 ByteRingBuffer 原位拉取，帧留在内部缓冲区，不分配新数组
+ * 非线程安全，应由唯一的读线程调用
+ */
+public class FrameDecoder {
+
+    /** GeoCOM 标准结束符 */
+    public static final byte[] TERMINATOR_CRLF = {13, 10};
+    /** 部分串口透传模块使用的 ETX 结束符 */
+    public static final byte[] TERMINATOR_ETX = {3};
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024;
+
+    /**
+     * 完整帧回调
+     */
+    public interface FrameListener {
+        void onFrame(byte[] frame);
+    }
+
+    private final int mMaxFrameSize;
+    private final byte[][] mTerminators;
+    private final boolean[] mTerminalByte = new boolean[256]; // 各结束符最后一个字节的快速查找表
+    private byte[] mBuffer = new byte[INITIAL_CAPACITY];
+    private int mLength = 0;
+    private boolean mFrameReady = false; // next() 已产出一帧，下次调用前清空
+    private long mDiscardedBytes = 0;
+
+    public FrameDecoder() {
+        this(DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    public FrameDecoder(int maxFrameSize) {
+        this(new byte[][]{TERMINATOR_CRLF}, maxFrameSize);
+    }
+
+    /**
+     * @param terminators 结束符集合，每个结束符为非空字节序列
+     * @param maxFrameSize 单帧最大字节数
+     */
+    public FrameDecoder(byte[][] terminators, int maxFrameSize) {
+        if (terminators == null || terminators.length == 0) {
+            throw new IllegalArgumentException("至少需要一个结束符");
+        }
+        this.mTerminators = new byte[terminators.length][];
+        for (int i = 0; i < terminators.length; i++) {
+            byte[] terminator = terminators[i];
+            if (terminator == null || terminator.length == 0) {
+                throw new IllegalArgumentException("结束符不能为空");
+            }
+            mTerminators[i] = terminator.clone();
+            mTerminalByte[terminator[terminator.length - 1] & 0xFF] = true;
+        }
+        this.mMaxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * 输入一段新读到的字节，每凑齐一帧回调一次
+     * @param data 数据缓冲区
+     * @param offset 起始位置
+     * @param count 字节数
+     * @param listener 完整帧回调
+     */
+    public void feed(byte[] data, int offset, int count, FrameListener listener) {
+        consumeReadyFrame();
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            if (append(data[i])) {
+                listener.onFrame(Arrays.copyOf(mBuffer, mLength));
+                mLength = 0;
+            }
+        }
+    }
+
+    /**
+     * 从环形缓冲区消费字节，直到凑齐一帧或缓冲区读空
+     * 凑齐的帧保存在内部缓冲区（getFrameBuffer / getFrameLength），下一次调用 next() 或 feed() 前有效；
+     * 帧之后的字节留在环形缓冲区中，不会被提前取出
+     * @param ring 环形缓冲区（调用方为其唯一消费者）
+     * @return true=已凑齐一帧
+     */
+    public boolean next(ByteRingBuffer ring) {
+        consumeReadyFrame();
+        byte[] data = ring.array();
+        int mask = ring.mask();
+        long read = ring.readPosition();
+        long write = ring.writePosition();
+        while (read < write) {
+            byte b = data[(int) read & mask];
+            read++;
+            if (append(b)) {
+                ring.advanceReadPosition(read);
+                mFrameReady = true;
+                return true;
+            }
+        }
+        ring.advanceReadPosition(read);
+        return false;
+    }
+
+    /**
+     * @return next() 凑齐的帧所在的内部缓冲区（有效长度见 getFrameLength）
+     */
+    public byte[] getFrameBuffer() {
+        return mBuffer;
+    }
+
+    /**
+     * @return next() 凑齐的帧长度（含结束符），没有完整帧时为 0
+     */
+    public int getFrameLength() {
+        return mFrameReady ? mLength : 0;
+    }
+
+    /**
+     * @return next() 凑齐的帧的副本
+     */
+    public byte[] copyFrame() {
+        return Arrays.copyOf(mBuffer, getFrameLength());
+    }
+
+    /**
+     * 追加一个字节
+     * @return true=该字节结束了一帧
+     */
+    private boolean append(byte b) {
+        if (mLength == mBuffer.length) {
+            if (mLength >= mMaxFrameSize) {
+                // 超长且没有结束符，视为垃圾数据丢弃，等待下一帧重新同步
+                mDiscardedBytes += mLength;
+                mLength = 0;
+            } else {
+                mBuffer = Arrays.copyOf(mBuffer, Math.min(mBuffer.length * 2, mMaxFrameSize));
+            }
+        }
+        mBuffer[mLength++] = b;
+        return mTerminalByte[b & 0xFF] && endsWithTerminator();
+    }
+
+    private void consumeReadyFrame() {
+        if (mFrameReady) {
+            mFrameReady = false;
+            mLength = 0;
+        }
+    }
+
+    private boolean endsWithTerminator() {
+        for (byte[] terminator : mTerminators) {
+            int start = mLength - terminator.length;
+            if (start < 0) {
+                continue;
+            }
+            boolean match = true;
+            for (int j = 0; j < terminator.length; j++) {
+                if (mBuffer[start + j] != terminator[j]) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 丢弃未完成的半帧（重连或清空缓冲时调用）
+     */
+    public void reset() {
+        mLength = 0;
+        mFrameReady = false;
+    }
+
+    /**
+     * @return 当前缓存的未完成字节数
+     */
+    public int getPendingBytes() {
+        return mFrameReady ? 0 : mLength;
+    }
+
+    /**
+     * @return 因超长被丢弃的累计字节数
+     */
+    public long getDiscardedBytes() {
+        return mDiscardedBytes;
+    }
+}
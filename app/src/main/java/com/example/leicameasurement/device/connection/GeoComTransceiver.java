@@ -0,0 +1,509 @@
+package com.example.leicameasurement.device.connection;
+
+import com.example.leicameasurement.device.protocol.GeoComCommandBuilder;
+import com.example.leicameasurement.device.protocol.GeoComReply;
+import com.example.leicameasurement.device.protocol.GeoComResponseParser;
+import com.example.leicameasurement.device.protocol.GeoComTimeouts;
+import com.example.leicameasurement.infrastructure.LogManager;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * GeoCOM 异步收发器：链路上唯一的 I/O 所有者，在任意 IConnectionChannel 之上提供按事务号配对的请求/响应
+ * 核心职责：
+ * 1. 所有指令先按优先级进入队列（中止 > 测量 > 参数设置 > 状态/心跳），只由写线程取出发送，
+ *    调用方线程从不直接写通道，心跳与测量指令不会交错写入
+ * 2. 写线程发送前在 %R1Q 报头中插入事务号（%R1Q,rpc,trId:params），登记待响应请求；
+ *    在途请求数达到窗口上限时暂停发送，高优先级指令在下一个空位优先发出，中止指令不受窗口限制
+ * 3. 读线程持续接收响应帧，按报头中的事务号完成对应的 Future；
+ *    事务号为 0 的 %R1P 响应按发送顺序交给期待 %R1P 报头的请求，无报头的响应（如 *IDN? 的应答）
+ *    按发送顺序交给 * 开头的查询，两类响应不会互相错配
+ * 4. 读线程定期检查超时（含仍在排队的请求），超时请求以 InterruptedIOException 结束，迟到的响应被丢弃
+ * 5. 按优先级统计排队深度与等待时间，见 getMetrics()；收到响应时记录链路活动与 RTT，见 getLinkQuality()
+ */
+public class GeoComTransceiver implements IDataTransceiver {
+
+    private static final String TAG = "GeoComTransceiver";
+    private static final long POLL_INTERVAL_MS = 50;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    /**
+     * 排队或在途的请求
+     */
+    private static final class PendingRequest {
+        final byte[] command;
+        final CommandPriority priority;
+        final long deadline;
+        final long enqueuedNanos;
+        final boolean expectsHeader; // false=* 开头的查询，应答不带 %R1P 报头
+        final CompletableFuture<byte[]> future = new CompletableFuture<>();
+        int key;           // 发送时分配
+        int transactionId; // 0=未标记
+        long sentNanos;
+
+        PendingRequest(byte[] command, CommandPriority priority, long deadline) {
+            this.command = command;
+            this.priority = priority;
+            this.deadline = deadline;
+            this.enqueuedNanos = System.nanoTime();
+            this.expectsHeader = command.length == 0 || command[0] != '*';
+        }
+    }
+
+    private final IConnectionChannel mChannel;
+    private final GeoComResponseParser mParser = new GeoComResponseParser();
+    private final GeoComReply mReply = new GeoComReply(); // 仅读线程使用
+    private final LinkQuality mLinkQuality = new LinkQuality();
+
+    // 以下状态均由 mLock 保护
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Condition mWritable = mLock.newCondition();
+    private final List<ArrayDeque<PendingRequest>> mLanes; // 下标为 CommandPriority.ordinal()
+    // 按发送顺序排列；已标记请求以事务号为键，未标记请求以负数序号为键
+    private final LinkedHashMap<Integer, PendingRequest> mPending = new LinkedHashMap<>();
+    private int mNextTransactionId = 1;
+    private int mNextUntaggedKey = -1;
+    private int mMaxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private final long[] mSentCounts;
+    private final long[] mTotalWaitNanos;
+    private final long[] mMaxWaitNanos;
+
+    private volatile boolean mRunning = false;
+    private Thread mReaderThread;
+    private Thread mWriterThread;
+
+    public GeoComTransceiver(IConnectionChannel channel) {
+        this.mChannel = channel;
+        int lanes = CommandPriority.values().length;
+        this.mLanes = new ArrayList<>(lanes);
+        for (int i = 0; i < lanes; i++) {
+            mLanes.add(new ArrayDeque<>());
+        }
+        this.mSentCounts = new long[lanes];
+        this.mTotalWaitNanos = new long[lanes];
+        this.mMaxWaitNanos = new long[lanes];
+    }
+
+    // ==================== 生命周期 ====================
+
+    @Override
+    public synchronized void start() {
+        if (mRunning) return;
+        mRunning = true;
+        mReaderThread = new Thread(this::readerLoop, "GeoComTransceiver-Reader");
+        mReaderThread.setDaemon(true);
+        mReaderThread.start();
+        mWriterThread = new Thread(this::writerLoop, "GeoComTransceiver-Writer");
+        mWriterThread.setDaemon(true);
+        mWriterThread.start();
+        LogManager.i(TAG, "收发器已启动");
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!mRunning) return;
+        mRunning = false;
+        if (mReaderThread != null) {
+            mReaderThread.interrupt();
+            mReaderThread = null;
+        }
+        if (mWriterThread != null) {
+            mWriterThread.interrupt();
+            mWriterThread = null;
+        }
+        failAll(new IOException("收发器已停止"));
+        LogManager.i(TAG, "收发器已停止");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    // ==================== 收发接口 ====================
+
+    /**
+     * 异步发送指令，超时按指令的 RPC 编号查 GeoComTimeouts，优先级按指令类型确定
+     */
+    @Override
+    public CompletableFuture<byte[]> submit(byte[] command) {
+        return submit(command, GeoComTimeouts.forCommand(command));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> submit(byte[] command, long timeoutMs) {
+        return submit(command, timeoutMs, CommandPriority.forCommand(command));
+    }
+
+    /**
+     * 异步发送指令；超时从提交时刻起算，包含排队时间
+     */
+    @Override
+    public CompletableFuture<byte[]> submit(byte[] command, long timeoutMs, CommandPriority priority) {
+        if (!mRunning) {
+            // 读线程因断连退出后，通道重新连上时自动恢复
+            if (mChannel.isConnected()) {
+                start();
+            } else {
+                CompletableFuture<byte[]> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new IOException("链路未连接"));
+                return failed;
+            }
+        }
+
+        PendingRequest request = new PendingRequest(command, priority, System.currentTimeMillis() + timeoutMs);
+        mLock.lock();
+        try {
+            mLanes.get(priority.ordinal()).addLast(request);
+            mWritable.signal();
+        } finally {
+            mLock.unlock();
+        }
+        return request.future;
+    }
+
+    @Override
+    public byte[] exchange(byte[] command, long timeoutMs) throws IOException {
+        return IDataTransceiver.await(submit(command, timeoutMs), timeoutMs);
+    }
+
+    /**
+     * 设置在途窗口：已发送未响应的请求达到该数量时暂停发送（中止指令除外）
+     * @param maxInFlight 窗口上限，1=严格一问一答
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("在途窗口至少为 1");
+        }
+        mLock.lock();
+        try {
+            mMaxInFlight = maxInFlight;
+            mWritable.signal();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * @return 当前在途（已发送未响应）的请求数
+     */
+    public int getPendingCount() {
+        mLock.lock();
+        try {
+            return mPending.size();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public TransceiverMetrics getMetrics() {
+        mLock.lock();
+        try {
+            int[] depths = new int[mLanes.size()];
+            for (int i = 0; i < depths.length; i++) {
+                depths[i] = mLanes.get(i).size();
+            }
+            return new TransceiverMetrics(depths, mSentCounts.clone(), mTotalWaitNanos.clone(),
+                    mMaxWaitNanos.clone(), mPending.size(), mMaxInFlight);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public LinkQuality getLinkQuality() {
+        return mLinkQuality;
+    }
+
+    // ==================== 写线程 ====================
+
+    private void writerLoop() {
+        while (mRunning) {
+            PendingRequest request;
+            byte[] wire;
+            mLock.lock();
+            try {
+                request = awaitNext();
+                // 先登记再发送，避免响应先于登记到达
+                wire = register(request);
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                mLock.unlock();
+            }
+
+            try {
+                mChannel.sendData(wire, Math.max(0, request.deadline - System.currentTimeMillis()));
+            } catch (IOException e) {
+                if (!mRunning) break;
+                LogManager.e(TAG, "发送异常：" + e.getMessage());
+                remove(request);
+                request.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * 取出下一条可发送的请求：最高优先级非空队列的队首，窗口已满时等待（中止指令除外）
+     * 需在 mLock 内调用
+     */
+    private PendingRequest awaitNext() throws InterruptedException {
+        while (true) {
+            if (!mRunning) {
+                throw new InterruptedException();
+            }
+            ArrayDeque<PendingRequest> lane = highestNonEmptyLane();
+            if (lane != null) {
+                PendingRequest head = lane.peekFirst();
+                if (head.future.isDone()) {
+                    // 调用方已放弃（取消或超时），不再发送
+                    lane.pollFirst();
+                    continue;
+                }
+                if (head.priority.bypassesWindow() || mPending.size() < mMaxInFlight) {
+                    lane.pollFirst();
+                    return head;
+                }
+            }
+            mWritable.await();
+        }
+    }
+
+    private ArrayDeque<PendingRequest> highestNonEmptyLane() {
+        for (ArrayDeque<PendingRequest> lane : mLanes) {
+            if (!lane.isEmpty()) {
+                return lane;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 分配事务号、登记在途并记录排队等待时间；需在 mLock 内调用
+     * @return 实际写出的指令
+     */
+    private byte[] register(PendingRequest request) {
+        int transactionId = nextTransactionId();
+        byte[] tagged = GeoComCommandBuilder.withTransactionId(request.command, transactionId);
+        byte[] wire;
+        if (tagged != null) {
+            request.key = transactionId;
+            request.transactionId = transactionId;
+            wire = tagged;
+        } else {
+            request.key = nextUntaggedKey();
+            request.transactionId = 0;
+            wire = request.command;
+        }
+        request.sentNanos = System.nanoTime();
+        mPending.put(request.key, request);
+
+        int lane = request.priority.ordinal();
+        long waited = request.sentNanos - request.enqueuedNanos;
+        mSentCounts[lane]++;
+        mTotalWaitNanos[lane] += waited;
+        if (waited > mMaxWaitNanos[lane]) {
+            mMaxWaitNanos[lane] = waited;
+        }
+        return wire;
+    }
+
+    // ==================== 读线程 ====================
+
+    private void readerLoop() {
+        while (mRunning) {
+            byte[] frame = null;
+            try {
+                frame = mChannel.receiveData(POLL_INTERVAL_MS);
+            } catch (InterruptedIOException e) {
+                // 轮询超时，继续检查请求超时
+            } catch (IOException e) {
+                if (!mRunning) break;
+                LogManager.e(TAG, "接收异常：" + e.getMessage());
+                failInFlight(e);
+                if (!mChannel.isConnected()) {
+                    mRunning = false;
+                    failAll(e);
+                    break;
+                }
+            }
+            if (frame != null && frame.length > 0) {
+                dispatch(frame);
+            }
+            expireTimedOut();
+        }
+    }
+
+    /**
+     * 将响应帧交给配对的请求
+     */
+    private void dispatch(byte[] frame) {
+        mParser.parseReply(frame, 0, frame.length, mReply);
+        PendingRequest target;
+        mLock.lock();
+        try {
+            if (mReply.hasHeader() && mReply.getTransactionId() != 0) {
+                target = mPending.remove(mReply.getTransactionId());
+            } else if (mReply.hasHeader()) {
+                // 事务号为 0 的 %R1P 响应：优先交给最早的未标记请求（如 GEO:: 指令），
+                // 仪器不回显事务号时交给最早的已标记请求；不会交给 *IDN? 等查询
+                target = pollOldest(true, true);
+                if (target == null) {
+                    target = pollOldest(true, false);
+                }
+            } else {
+                // 无报头的响应只属于 * 开头的查询
+                target = pollOldest(false, true);
+            }
+            if (target != null) {
+                mWritable.signal();
+            }
+        } finally {
+            mLock.unlock();
+        }
+        if (target != null) {
+            mLinkQuality.recordRtt(System.nanoTime() - target.sentNanos);
+            target.future.complete(frame);
+        } else {
+            mLinkQuality.recordActivity();
+            LogManager.w(TAG, "丢弃无法配对的响应（可能已超时）："
+                    + new String(frame, java.nio.charset.StandardCharsets.US_ASCII).trim());
+        }
+    }
+
+    /**
+     * 取出最早发送的、符合条件的在途请求；需在 mLock 内调用
+     * @param expectsHeader 请求是否期待 %R1P 报头的响应
+     * @param untagged true=只取未标记事务号的请求，false=只取已标记的请求
+     */
+    private PendingRequest pollOldest(boolean expectsHeader, boolean untagged) {
+        Iterator<PendingRequest> iterator = mPending.values().iterator();
+        while (iterator.hasNext()) {
+            PendingRequest request = iterator.next();
+            if (request.expectsHeader == expectsHeader && (request.transactionId == 0) == untagged) {
+                iterator.remove();
+                return request;
+            }
+        }
+        return null;
+    }
+
+    private void expireTimedOut() {
+        List<PendingRequest> expired = null;
+        long now = System.currentTimeMillis();
+        mLock.lock();
+        try {
+            expired = collectExpired(mPending.values().iterator(), now, expired);
+            for (ArrayDeque<PendingRequest> lane : mLanes) {
+                expired = collectExpired(lane.iterator(), now, expired);
+            }
+            if (expired != null) {
+                mWritable.signal();
+            }
+        } finally {
+            mLock.unlock();
+        }
+        if (expired != null) {
+            for (PendingRequest request : expired) {
+                request.future.completeExceptionally(new InterruptedIOException(request.transactionId != 0
+                        ? "等待响应超时（事务号 " + request.transactionId + "）"
+                        : "等待响应超时（" + request.priority + "）"));
+            }
+        }
+    }
+
+    private static List<PendingRequest> collectExpired(Iterator<PendingRequest> iterator, long now,
+                                                       List<PendingRequest> expired) {
+        while (iterator.hasNext()) {
+            PendingRequest request = iterator.next();
+            if (request.deadline <= now) {
+                iterator.remove();
+                if (expired == null) {
+                    expired = new ArrayList<>();
+                }
+                expired.add(request);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * 在途请求全部失败（响应已无法配对），排队请求保留，链路仍可用时继续发送
+     */
+    private void failInFlight(IOException cause) {
+        List<PendingRequest> failed;
+        mLock.lock();
+        try {
+            failed = new ArrayList<>(mPending.values());
+            mPending.clear();
+            mWritable.signal();
+        } finally {
+            mLock.unlock();
+        }
+        for (PendingRequest request : failed) {
+            request.future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * 在途及排队请求全部失败
+     */
+    private void failAll(IOException cause) {
+        List<PendingRequest> failed;
+        mLock.lock();
+        try {
+            failed = new ArrayList<>(mPending.values());
+            mPending.clear();
+            for (ArrayDeque<PendingRequest> lane : mLanes) {
+                failed.addAll(lane);
+                lane.clear();
+            }
+            mWritable.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+        for (PendingRequest request : failed) {
+            request.future.completeExceptionally(cause);
+        }
+    }
+
+    private void remove(PendingRequest request) {
+        mLock.lock();
+        try {
+            mPending.remove(request.key);
+            mWritable.signal();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    // 以下方法需在 mLock 内调用
+
+    private int nextTransactionId() {
+        // 跳过仍在途的事务号
+        for (int i = 0; i < GeoComCommandBuilder.MAX_TRANSACTION_ID; i++) {
+            int candidate = mNextTransactionId;
+            mNextTransactionId = candidate == GeoComCommandBuilder.MAX_TRANSACTION_ID ? 1 : candidate + 1;
+            if (!mPending.containsKey(candidate)) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("在途请求过多");
+    }
+
+    private int nextUntaggedKey() {
+        int key = mNextUntaggedKey;
+        mNextUntaggedKey = key == Integer.MIN_VALUE ? -1 : key - 1;
+        return key;
+    }
+}
@@ -50,6 +50,17 @@ public interface IConnectionChannel {
      */
     void sendData(byte[] data) throws IOException;
 
+    /**
+     * 发送一条请求（附带调用方等待响应的超时）
+     * 默认实现忽略超时参数，供需要跟踪请求超时的装饰器覆盖
+     * @param data 要发送的数据字节数组
+     * @param timeoutMs 调用方等待响应的超时时间（毫秒）
+     * @throws IOException 发送异常
+     */
+    default void sendData(byte[] data, long timeoutMs) throws IOException {
+        sendData(data);
+    }
+
     /**
      * 接收数据
      * @return 接收到的数据字节数组
@@ -57,6 +68,17 @@ public interface IConnectionChannel {
      */
     byte[] receiveData() throws IOException;
 
+    /**
+     * 接收一帧数据（指定超时）
+     * 默认实现忽略超时参数，使用通道自身的读取超时
+     * @param timeoutMs 超时时间（毫秒）
+     * @return 接收到的数据字节数组
+     * @throws IOException 接收异常，超时时抛出 InterruptedIOException
+     */
+    default byte[] receiveData(long timeoutMs) throws IOException {
+        return receiveData();
+    }
+
     /**
      * 获取输入流（用于需要流式读写的场景）
      * @return 输入流
@@ -1,4 +1,99 @@
 package com.example.leicameasurement.device.connection;
 
-public class IDataTransceiver {
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 数据收发器接口：定义异步指令收发标准
+ * 核心职责：每条指令对应一个 Future，响应按 GeoCOM 事务号与请求配对，
+ * 允许状态查询、电量查询与测量指令同时在途；排队指令按 CommandPriority 从高到低发送
+ */
+public interface IDataTransceiver {
+
+    /**
+     * 启动收发器（开始接收响应）
+     */
+    void start();
+
+    /**
+     * 停止收发器，所有未完成的请求以异常结束
+     */
+    void stop();
+
+    /**
+     * @return true=收发器正在运行
+     */
+    boolean isRunning();
+
+    /**
+     * 异步发送指令，使用该指令的默认超时
+     * @param command 指令字节数组
+     * @return 响应 Future：成功时为含结束符的响应帧，超时时以 InterruptedIOException 结束
+     */
+    CompletableFuture<byte[]> submit(byte[] command);
+
+    /**
+     * 异步发送指令
+     * @param command 指令字节数组
+     * @param timeoutMs 超时时间（毫秒）
+     * @return 响应 Future
+     */
+    CompletableFuture<byte[]> submit(byte[] command, long timeoutMs);
+
+    /**
+     * 异步发送指令，显式指定优先级（如心跳以 STATUS 发送，不挤占测量指令）
+     * @param command 指令字节数组
+     * @param timeoutMs 超时时间（毫秒），包含排队时间
+     * @param priority 发送优先级
+     * @return 响应 Future
+     */
+    CompletableFuture<byte[]> submit(byte[] command, long timeoutMs, CommandPriority priority);
+
+    /**
+     * 同步发送指令并等待配对的响应
+     * @param command 指令字节数组
+     * @param timeoutMs 超时时间（毫秒）
+     * @return 响应帧
+     * @throws IOException 发送失败、超时或链路断开
+     */
+    byte[] exchange(byte[] command, long timeoutMs) throws IOException;
+
+    /**
+     * @return 按优先级统计的排队深度与等待时间快照
+     */
+    TransceiverMetrics getMetrics();
+
+    /**
+     * @return 链路质量统计（最近通信时间、RTT 样本），由收到的响应更新
+     */
+    LinkQuality getLinkQuality();
+
+    /**
+     * 等待响应 Future 完成，并把异常还原为 IOException
+     * @param future 响应 Future
+     * @param timeoutMs 请求超时时间；收发器自身负责超时，这里额外留出余量防止无限等待
+     * @return 响应帧
+     * @throws IOException 请求失败或超时
+     */
+    static byte[] await(CompletableFuture<byte[]> future, long timeoutMs) throws IOException {
+        try {
+            return future.get(timeoutMs + 1000, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause != null ? cause.getMessage() : e.getMessage(), cause);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw new InterruptedIOException("等待响应超时(" + timeoutMs + "ms)");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待响应被中断");
+        }
+    }
 }
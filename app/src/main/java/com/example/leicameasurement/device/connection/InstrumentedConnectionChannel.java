@@ -0,0 +1,291 @@
+package com.example.leicameasurement.device.connection;
+
+import com.example.leicameasurement.device.protocol.GeoComReply;
+import com.example.leicameasurement.device.protocol.GeoComResponseParser;
+import com.example.leicameasurement.device.protocol.GeoComTimeouts;
+import com.example.leicameasurement.infrastructure.LogManager;
+import com.example.leicameasurement.infrastructure.TraceRing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 带指标统计的连接通道（装饰器）：透明转发所有调用，同时按 RPC 编号记录
+ * 请求/响应延迟、收发字节数、超时和错误响应
+ *
+ * 配对规则与 GeoComTransceiver 一致：带事务号的响应按事务号配对，未标记的响应交给最早的未标记请求；
+ * 超时使用调用方传入的等待时间（未传入时按 GeoComTimeouts 的指令超时）从写出时刻计算，在每次接收调用时检查
+ * 最多同时跟踪 MAX_PENDING 条未响应请求，超出时最早的一条计为超时
+ * 每条响应和超时同时写入全局跟踪环
+ */
+public class InstrumentedConnectionChannel implements IConnectionChannel {
+
+    private static final int MAX_PENDING = 64;
+    private static final byte[] REQUEST_HEADER = {'%', 'R', '1', 'Q', ','};
+    private static final String TAG = "InstrumentedChannel";
+    private static final int TRACE_REPLY = TraceRing.event(TAG, LogManager.DEBUG, "RPC {} 响应 rc={} 延迟 {}us");
+    private static final int TRACE_TIMEOUT = TraceRing.event(TAG, LogManager.WARN, "RPC {} 超时");
+
+    private static final class Pending {
+        final int rpc;
+        final long sentNanos;
+        final long deadlineNanos;
+
+        Pending(int rpc, long sentNanos, long timeoutMs) {
+            this.rpc = rpc;
+            this.sentNanos = sentNanos;
+            this.deadlineNanos = sentNanos + timeoutMs * 1_000_000L;
+        }
+    }
+
+    private final IConnectionChannel delegate;
+    private final CommandMetrics metrics;
+
+    // 在途请求，仅在 pendingLock 内访问；事务号为键，未标记请求使用负数键
+    private final Object pendingLock = new Object();
+    private final LinkedHashMap<Integer, Pending> pending = new LinkedHashMap<>();
+    private int nextUntaggedKey = -1;
+    private final GeoComResponseParser responseParser = new GeoComResponseParser();
+    private final GeoComReply reply = new GeoComReply();
+
+    public InstrumentedConnectionChannel(IConnectionChannel delegate) {
+        this(delegate, new CommandMetrics());
+    }
+
+    /**
+     * @param delegate 被装饰的通道
+     * @param metrics 指标容器（可在多次连接间共享）
+     */
+    public InstrumentedConnectionChannel(IConnectionChannel delegate, CommandMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    public IConnectionChannel getDelegate() {
+        return delegate;
+    }
+
+    public CommandMetrics getMetrics() {
+        return metrics;
+    }
+
+    // ==================== 统计 ====================
+
+    /**
+     * 调用方未给出超时时按 GeoComTimeouts 的指令超时统计
+     */
+    @Override
+    public void sendData(byte[] data) throws IOException {
+        sendData(data, GeoComTimeouts.forCommand(data));
+    }
+
+    /**
+     * 先登记再发送，避免响应先于登记到达；发送失败时撤销登记
+     */
+    @Override
+    public void sendData(byte[] data, long timeoutMs) throws IOException {
+        int rpc = GeoComTimeouts.parseRpc(data);
+        int transactionId = parseTransactionId(data);
+        int key;
+        synchronized (pendingLock) {
+            if (pending.size() >= MAX_PENDING) {
+                Iterator<Pending> oldest = pending.values().iterator();
+                timeout(oldest.next().rpc);
+                oldest.remove();
+            }
+            key = transactionId > 0 ? transactionId : nextUntaggedKey();
+            Pending previous = pending.put(key,
+                    new Pending(rpc >= 0 ? rpc : CommandMetrics.OTHER_RPC, System.nanoTime(), timeoutMs));
+            if (previous != null) {
+                // 事务号回绕时旧请求仍未响应
+                timeout(previous.rpc);
+            }
+        }
+        try {
+            delegate.sendData(data, timeoutMs);
+        } catch (IOException e) {
+            synchronized (pendingLock) {
+                pending.remove(key);
+            }
+            throw e;
+        }
+        metrics.recordRequest(rpc >= 0 ? rpc : CommandMetrics.OTHER_RPC, data.length);
+    }
+
+    @Override
+    public byte[] receiveData() throws IOException {
+        try {
+            return record(delegate.receiveData());
+        } finally {
+            expireTimedOut();
+        }
+    }
+
+    @Override
+    public byte[] receiveData(long timeoutMs) throws IOException {
+        try {
+            return record(delegate.receiveData(timeoutMs));
+        } finally {
+            // 轮询超时本身不计入统计，只检查在途请求是否超时
+            expireTimedOut();
+        }
+    }
+
+    private byte[] record(byte[] frame) {
+        if (frame == null || frame.length == 0) {
+            return frame;
+        }
+        long now = System.nanoTime();
+        synchronized (pendingLock) {
+            responseParser.parseReply(frame, 0, frame.length, reply);
+            Pending request;
+            if (reply.hasHeader() && reply.getTransactionId() != 0) {
+                request = pending.remove(reply.getTransactionId());
+            } else {
+                request = pollOldest(true);
+                if (request == null && reply.hasHeader()) {
+                    request = pollOldest(false);
+                }
+            }
+            if (request != null) {
+                long latencyNanos = now - request.sentNanos;
+                metrics.recordReply(request.rpc, frame.length, latencyNanos,
+                        !reply.hasHeader() || reply.isSuccess());
+                TraceRing.global().record(TRACE_REPLY, request.rpc,
+                        reply.hasHeader() ? reply.getReturnCode() : 0, latencyNanos / 1000);
+            }
+        }
+        return frame;
+    }
+
+    private Pending pollOldest(boolean untaggedOnly) {
+        Iterator<Map.Entry<Integer, Pending>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, Pending> entry = iterator.next();
+            if (!untaggedOnly || entry.getKey() < 0) {
+                iterator.remove();
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private void expireTimedOut() {
+        long now = System.nanoTime();
+        synchronized (pendingLock) {
+            Iterator<Pending> iterator = pending.values().iterator();
+            while (iterator.hasNext()) {
+                Pending request = iterator.next();
+                if (now - request.deadlineNanos >= 0) {
+                    iterator.remove();
+                    timeout(request.rpc);
+                }
+            }
+        }
+    }
+
+    private void timeout(int rpc) {
+        metrics.recordTimeout(rpc);
+        TraceRing.global().record(TRACE_TIMEOUT, rpc);
+    }
+
+    private int nextUntaggedKey() {
+        int key = nextUntaggedKey;
+        nextUntaggedKey = key == Integer.MIN_VALUE ? -1 : key - 1;
+        return key;
+    }
+
+    /**
+     * 解析 %R1Q,rpc,trId:params 中的事务号
+     * @return 事务号，未标记时返回 0
+     */
+    static int parseTransactionId(byte[] command) {
+        if (command == null || command.length <= REQUEST_HEADER.length) {
+            return 0;
+        }
+        for (int i = 0; i < REQUEST_HEADER.length; i++) {
+            if (command[i] != REQUEST_HEADER[i]) {
+                return 0;
+            }
+        }
+        int i = REQUEST_HEADER.length;
+        while (i < command.length && command[i] >= '0' && command[i] <= '9') {
+            i++;
+        }
+        if (i >= command.length || command[i] != ',') {
+            return 0;
+        }
+        int transactionId = 0;
+        for (i++; i < command.length && command[i] >= '0' && command[i] <= '9'; i++) {
+            transactionId = transactionId * 10 + (command[i] - '0');
+        }
+        return i < command.length && command[i] == ':' ? transactionId : 0;
+    }
+
+    // ==================== 透明转发 ====================
+
+    @Override
+    public void connect(ConnectionConfig config) throws ConnectionException {
+        synchronized (pendingLock) {
+            pending.clear();
+        }
+        delegate.connect(config);
+    }
+
+    @Override
+    public void disconnect() {
+        delegate.disconnect();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return delegate.isConnected();
+    }
+
+    @Override
+    public ConnectionState getConnectionState() {
+        return delegate.getConnectionState();
+    }
+
+    /**
+     * 流式读写绕过帧接口，不计入统计
+     */
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return delegate.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return delegate.getOutputStream();
+    }
+
+    @Override
+    public ConnectionConfig getConnectionConfig() {
+        return delegate.getConnectionConfig();
+    }
+
+    @Override
+    public void setConnectionTimeout(int timeoutMs) {
+        delegate.setConnectionTimeout(timeoutMs);
+    }
+
+    @Override
+    public void setReadTimeout(int timeoutMs) {
+        delegate.setReadTimeout(timeoutMs);
+    }
+
+    @Override
+    public void addConnectionStateListener(ConnectionStateListener listener) {
+        delegate.addConnectionStateListener(listener);
+    }
+
+    @Override
+    public void removeConnectionStateListener(ConnectionStateListener listener) {
+        delegate.removeConnectionStateListener(listener);
+    }
+}
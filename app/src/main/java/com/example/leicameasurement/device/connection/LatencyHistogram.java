@@ -0,0 +1,103 @@
+package com.example.leicameasurement.device.connection;
+
+import java.util.Arrays;
+
+/**
+ * 固定内存的延迟直方图（对数-线性分桶，单位微秒）
+ * 0~15µs 每微秒一个桶，之后每个 2 的幂区间再均分为 16 个子桶，相对误差不超过 1/16；
+ * 覆盖到约 134 秒，更大的值计入最后一个桶。共 400 个桶，记录过程不分配内存
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // 16
+    private static final int MAX_EXPONENT = 27;                   // 2^27 µs ≈ 134 s
+    static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount = 0;
+    private long totalMicros = 0;
+    private long maxMicros = 0;
+
+    /**
+     * 记录一次延迟
+     * @param nanos 延迟（ns）
+     */
+    public synchronized void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts[bucketOf(micros)]++;
+        totalCount++;
+        totalMicros += micros;
+        if (micros > maxMicros) {
+            maxMicros = micros;
+        }
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalMicros = 0;
+        maxMicros = 0;
+    }
+
+    public synchronized long getCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return 平均延迟（ms），无样本时返回 0
+     */
+    public synchronized double getMeanMs() {
+        return totalCount == 0 ? 0 : totalMicros / (totalCount * 1000.0);
+    }
+
+    /**
+     * @return 最大延迟（ms）
+     */
+    public synchronized double getMaxMs() {
+        return maxMicros / 1000.0;
+    }
+
+    /**
+     * 分位数：返回包含该分位样本的桶的上界（不超过实际最大值）
+     * @param quantile 分位 (0, 1]，例如 0.99
+     * @return 延迟（ms），无样本时返回 0
+     */
+    public synchronized double getPercentileMs(double quantile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.min(1, Math.max(0, quantile)) * totalCount);
+        rank = Math.max(1, rank);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), maxMicros) / 1000.0;
+            }
+        }
+        return maxMicros / 1000.0;
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.leicameasurement.device.connection;
+
+/**
+ * 链路质量统计：最近一次成功通信的时间与往返时延（RTT）样本
+ * 收发器在收到响应时记录，连接监控器据此判断链路是否空闲、是否需要发送心跳
+ */
+public class LinkQuality {
+
+    private static final int RTT_WINDOW = 32; // 保留最近的 RTT 样本数
+
+    private volatile long lastActivityNanos = System.nanoTime();
+    private final long[] rttSamples = new long[RTT_WINDOW];
+    private int sampleIndex = 0;
+    private int sampleSize = 0;
+    private long sampleCount = 0;
+
+    /**
+     * 记录一次成功通信（收到任意响应帧）
+     */
+    public void recordActivity() {
+        lastActivityNanos = System.nanoTime();
+    }
+
+    /**
+     * 记录一次请求/响应往返，同时视为一次成功通信
+     * @param rttNanos 从发送到收到响应的时间（ns）
+     */
+    public synchronized void recordRtt(long rttNanos) {
+        recordActivity();
+        rttSamples[sampleIndex] = rttNanos;
+        sampleIndex = (sampleIndex + 1) % RTT_WINDOW;
+        if (sampleSize < RTT_WINDOW) {
+            sampleSize++;
+        }
+        sampleCount++;
+    }
+
+    /**
+     * 重新连接后清空统计
+     */
+    public synchronized void reset() {
+        lastActivityNanos = System.nanoTime();
+        sampleIndex = 0;
+        sampleSize = 0;
+        sampleCount = 0;
+    }
+
+    /**
+     * @return 距最近一次成功通信的时间（ms）
+     */
+    public long getIdleMillis() {
+        return (System.nanoTime() - lastActivityNanos) / 1_000_000L;
+    }
+
+    /**
+     * @return 最近一次 RTT（ms），无样本时返回 -1
+     */
+    public synchronized double getLastRttMs() {
+        if (sampleSize == 0) {
+            return -1;
+        }
+        int last = (sampleIndex + RTT_WINDOW - 1) % RTT_WINDOW;
+        return rttSamples[last] / 1e6;
+    }
+
+    /**
+     * @return 最近样本的平均 RTT（ms），无样本时返回 -1
+     */
+    public synchronized double getAverageRttMs() {
+        if (sampleSize == 0) {
+            return -1;
+        }
+        long total = 0;
+        for (int i = 0; i < sampleSize; i++) {
+            total += rttSamples[i];
+        }
+        return total / (sampleSize * 1e6);
+    }
+
+    /**
+     * @return 最近样本中的最大 RTT（ms），无样本时返回 -1
+     */
+    public synchronized double getMaxRttMs() {
+        if (sampleSize == 0) {
+            return -1;
+        }
+        long max = 0;
+        for (int i = 0; i < sampleSize; i++) {
+            max = Math.max(max, rttSamples[i]);
+        }
+        return max / 1e6;
+    }
+
+    /**
+     * @return 累计 RTT 样本数
+     */
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.leicameasurement.device.connection;
+
+import java.util.Locale;
+
+/**
+ * 收发器运行指标快照（不可变）
+ * 按优先级分别统计排队深度、已发送数量、排队等待时间，用于判断测量指令是否被低优先级流量阻塞
+ */
+public final class TransceiverMetrics {
+
+    private final int[] queueDepths;
+    private final long[] sentCounts;
+    private final long[] totalWaitNanos;
+    private final long[] maxWaitNanos;
+    private final int inFlight;
+    private final int maxInFlight;
+
+    TransceiverMetrics(int[] queueDepths, long[] sentCounts, long[] totalWaitNanos,
+                       long[] maxWaitNanos, int inFlight, int maxInFlight) {
+        this.queueDepths = queueDepths;
+        this.sentCounts = sentCounts;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+        this.inFlight = inFlight;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * 空指标（收发器尚未创建时使用）
+     */
+    public static TransceiverMetrics empty() {
+        int lanes = CommandPriority.values().length;
+        return new TransceiverMetrics(new int[lanes], new long[lanes], new long[lanes], new long[lanes], 0, 0);
+    }
+
+    /**
+     * @return 该优先级当前排队（未发送）的指令数
+     */
+    public int getQueueDepth(CommandPriority priority) {
+        return queueDepths[priority.ordinal()];
+    }
+
+    /**
+     * @return 所有优先级排队指令总数
+     */
+    public int getTotalQueueDepth() {
+        int total = 0;
+        for (int depth : queueDepths) {
+            total += depth;
+        }
+        return total;
+    }
+
+    /**
+     * @return 该优先级累计已发送的指令数
+     */
+    public long getSentCount(CommandPriority priority) {
+        return sentCounts[priority.ordinal()];
+    }
+
+    /**
+     * @return 该优先级指令从提交到发送的平均等待时间（ms）
+     */
+    public double getAverageWaitMs(CommandPriority priority) {
+        long count = sentCounts[priority.ordinal()];
+        return count == 0 ? 0 : totalWaitNanos[priority.ordinal()] / (count * 1e6);
+    }
+
+    /**
+     * @return 该优先级指令从提交到发送的最长等待时间（ms）
+     */
+    public double getMaxWaitMs(CommandPriority priority) {
+        return maxWaitNanos[priority.ordinal()] / 1e6;
+    }
+
+    /**
+     * @return 当前在途（已发送未响应）的请求数
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return 在途窗口上限
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("在途 ").append(inFlight).append('/').append(maxInFlight);
+        for (CommandPriority priority : CommandPriority.values()) {
+            sb.append(String.format(Locale.US, "，%s 排队 %d 已发 %d 平均等待 %.2fms 最长 %.2fms",
+                    priority, getQueueDepth(priority), getSentCount(priority),
+                    getAverageWaitMs(priority), getMaxWaitMs(priority)));
+        }
+        return sb.toString();
+    }
+}
@@ -2,12 +2,61 @@ package com.example.leicameasurement.device.protocol;
 
 import com.example.leicameasurement.device.adapter.InstrumentAdapter;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
 /**
  * GeoCOM指令构建器：负责将高层操作转换为具体的仪器指令
  * 核心职责：封装指令格式，处理参数转换
+ * 固定指令预先编码为共享字节数组（调用方不得修改）；带参数的指令写入线程内复用的 ByteBuffer，
+ * 数值按 %.4f 的格式直接编码为 ASCII，不经过 Formatter
  */
 public class GeoComCommandBuilder {
 
+    // %.4f 格式下 Double.MAX_VALUE 约 315 字符，2114 指令三个参数取极值时仍能放下
+    private static final int COMMAND_BUFFER_SIZE = 1024;
+    private static final long DECIMAL_SCALE = 10000L;
+    // 超过该绝对值时 long 定点运算不再精确，回退到 String.format
+    private static final double MAX_FAST_VALUE = 1e11;
+
+    // ==================== 固定指令模板 ====================
+
+    private static final byte[] CMD_SET_PRECISION_MODE = ascii("%R1Q,2008:2,0" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_SET_STANDARD_MODE = ascii("%R1Q,2008:1,0" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_SET_FAST_MODE = ascii("%R1Q,2008:3,0" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_BACKSIGHT_MEASUREMENT = ascii("%R1Q,17008:0" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_FOREPOINT_MEASUREMENT = ascii("%R1Q,17008:1" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_DETAIL_POINT_MEASUREMENT = ascii("%R1Q,17008:2" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_GET_MODEL = ascii("%R1Q,5003:" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_GET_SERIAL_NUMBER = ascii("%R1Q,5004:" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_GET_STATUS = ascii("%R1Q,5002:" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_CLOSE = ascii("%R1Q,9002:" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_STOP_MEASURE = ascii(ProtocolConstants.CMD_STOP_MEASURE);
+    private static final byte[] CMD_NULL_PROC = ascii("%R1Q,0:" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_IDENTIFICATION = ascii("*IDN?" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_UNLOCK = ascii("%R1Q,9007:0" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_LOCK = ascii("%R1Q,9007:1" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_GET_BATTERY_STATUS = ascii("%R1Q,5005:" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_START_TRACKING = ascii("%R1Q,2008:8,1" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_STOP_TRACKING = ascii("%R1Q,2008:0,1" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_USER_LOCK_ON = ascii("%R1Q,18007:1" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_USER_LOCK_OFF = ascii("%R1Q,18007:0" + ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] CMD_LOCK_IN = ascii("%R1Q,9013:" + ProtocolConstants.COMMAND_TERMINATOR);
+
+    // 带参数指令的前缀
+    private static final byte[] PREFIX_SET_STATION = ascii("%R1Q,2114:");
+    private static final byte[] PREFIX_SET_PRISM_HEIGHT = ascii("%R1Q,2116:");
+    private static final byte[] PREFIX_SET_INSTRUMENT_HEIGHT = ascii("%R1Q,2117:");
+    private static final byte[] PREFIX_MEASURE = ascii("%R1Q,2008:");
+    private static final byte[] PREFIX_GET_SIMPLE_MEASUREMENT = ascii("%R1Q,2108:");
+    private static final byte[] TERMINATOR = ascii(ProtocolConstants.COMMAND_TERMINATOR);
+    private static final byte[] REQUEST_HEADER = ascii("%R1Q,");
+
+    // 每个线程一个编码缓冲区，避免频繁分配
+    private static final ThreadLocal<ByteBuffer> BUFFER_POOL =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(COMMAND_BUFFER_SIZE));
+
     /**
      * 构建设置测站坐标指令（不含仪器高）
      * @param stationX X坐标
@@ -16,10 +65,25 @@ public class GeoComCommandBuilder {
      * @return GeoCOM指令字节数组
      */
     public byte[] buildSetStationCommand(double stationX, double stationY, double stationH) {
-        // 格式：%R1Q,2114:stationX,stationY,stationH
-        String command = String.format(java.util.Locale.US, "%%R1Q,2114:%.4f,%.4f,%.4f",
-                stationX, stationY, stationH);
-        return (command + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        return toBytes(encodeSetStationCommand(stationX, stationY, stationH));
+    }
+
+    /**
+     * 将设置测站坐标指令编码到线程内复用的缓冲区
+     * 格式：%R1Q,2114:stationX,stationY,stationH
+     * @return 已 flip 的缓冲区，在本线程下一次 encode 调用前有效
+     */
+    public ByteBuffer encodeSetStationCommand(double stationX, double stationY, double stationH) {
+        ByteBuffer buffer = acquireBuffer();
+        buffer.put(PREFIX_SET_STATION);
+        putFixed(buffer, stationX);
+        buffer.put((byte) ',');
+        putFixed(buffer, stationY);
+        buffer.put((byte) ',');
+        putFixed(buffer, stationH);
+        buffer.put(TERMINATOR);
+        buffer.flip();
+        return buffer;
     }
 
     /**
@@ -28,9 +92,15 @@ public class GeoComCommandBuilder {
      * @return GeoCOM指令字节数组
      */
     public byte[] buildSetInstrumentHeightCommand(double instrumentHeight) {
-        // 格式：%R1Q,2117:instrumentHeight
-        String command = String.format(java.util.Locale.US, "%%R1Q,2117:%.4f", instrumentHeight);
-        return (command + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        return toBytes(encodeSetInstrumentHeightCommand(instrumentHeight));
+    }
+
+    /**
+     * 将设置仪器高指令编码到线程内复用的缓冲区
+     * 格式：%R1Q,2117:instrumentHeight
+     */
+    public ByteBuffer encodeSetInstrumentHeightCommand(double instrumentHeight) {
+        return encodeSingleValue(PREFIX_SET_INSTRUMENT_HEIGHT, instrumentHeight);
     }
 
     /**
@@ -39,109 +109,105 @@ public class GeoComCommandBuilder {
      * @return GeoCOM指令字节数组
      */
     public byte[] buildSetPrismHeightCommand(double prismHeight) {
-        // 格式：%R1Q,2116:prismHeight
-        String command = String.format(java.util.Locale.US, "%%R1Q,2116:%.4f", prismHeight);
-        return (command + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        return toBytes(encodeSetPrismHeightCommand(prismHeight));
+    }
+
+    /**
+     * 将设置棱镜高指令编码到线程内复用的缓冲区
+     * 格式：%R1Q,2116:prismHeight
+     */
+    public ByteBuffer encodeSetPrismHeightCommand(double prismHeight) {
+        return encodeSingleValue(PREFIX_SET_PRISM_HEIGHT, prismHeight);
     }
 
     /**
      * 构建精密测量模式指令
-     * @return GeoCOM指令字节数组
+     * @return GeoCOM指令字节数组（共享常量）
      */
     public byte[] buildSetPrecisionModeCommand() {
         // 格式：%R1Q,2008:2,0 (模式2=精密测量)
-        String command = "%R1Q,2008:2,0" + ProtocolConstants.COMMAND_TERMINATOR;
-        return command.getBytes();
+        return CMD_SET_PRECISION_MODE;
     }
 
     /**
      * 构建标准测量模式指令
-     * @return GeoCOM指令字节数组
+     * @return GeoCOM指令字节数组（共享常量）
      */
     public byte[] buildSetStandardModeCommand() {
         // 格式：%R1Q,2008:1,0 (模式1=标准测量)
-        String command = "%R1Q,2008:1,0" + ProtocolConstants.COMMAND_TERMINATOR;
-        return command.getBytes();
+        return CMD_SET_STANDARD_MODE;
     }
 
     /**
      * 构建快速测量模式指令
-     * @return GeoCOM指令字节数组
+     * @return GeoCOM指令字节数组（共享常量）
      */
     public byte[] buildSetFastModeCommand() {
         // 格式：%R1Q,2008:3,0 (模式3=快速测量)
-        String command = "%R1Q,2008:3,0" + ProtocolConstants.COMMAND_TERMINATOR;
-        return command.getBytes();
+        return CMD_SET_FAST_MODE;
     }
 
     /**
      * 构建后视测量指令
-     * @return GeoCOM指令字节数组
+     * @return GeoCOM指令字节数组（共享常量）
      */
     public byte[] buildBacksightMeasurementCommand() {
         // 格式：%R1Q,17008:0 (后视测量)
-        String command = "%R1Q,17008:0" + ProtocolConstants.COMMAND_TERMINATOR;
-        return command.getBytes();
+        return CMD_BACKSIGHT_MEASUREMENT;
     }
 
     /**
      * 构建前视测量指令
-     * @return GeoCOM指令字节数组
+     * @return GeoCOM指令字节数组（共享常量）
      */
     public byte[] buildForepointMeasurementCommand() {
         // 格式：%R1Q,17008:1 (前视测量)
-        String command = "%R1Q,17008:1" + ProtocolConstants.COMMAND_TERMINATOR;
-        return command.getBytes();
+        return CMD_FOREPOINT_MEASUREMENT;
     }
 
     /**
      * 构建碎步点测量指令
-     * @return GeoCOM指令字节数组
+     * @return GeoCOM指令字节数组（共享常量）
      */
     public byte[] buildDetailPointMeasurementCommand() {
         // 格式：%R1Q,17008:2 (碎步点测量)
-        String command = "%R1Q,17008:2" + ProtocolConstants.COMMAND_TERMINATOR;
-        return command.getBytes();
+        return CMD_DETAIL_POINT_MEASUREMENT;
     }
 
     /**
      * 构建获取仪器型号指令
-     * @return GeoCOM指令字节数组
+     * @return GeoCOM指令字节数组（共享常量）
      */
     public byte[] buildGetModelCommand() {
         // 格式：%R1Q,5003:
-        String command = "%R1Q,5003:" + ProtocolConstants.COMMAND_TERMINATOR;
-        return command.getBytes();
+        return CMD_GET_MODEL;
     }
 
     /**
      * 构建获取序列号指令
-     * @return GeoCOM指令字节数组
+     * @return GeoCOM指令字节数组（共享常量）
      */
     public byte[] buildGetSerialNumberCommand() {
         // 格式：%R1Q,5004:
-        String command = "%R1Q,5004:" + ProtocolConstants.COMMAND_TERMINATOR;
-        return command.getBytes();
+        return CMD_GET_SERIAL_NUMBER;
     }
 
     /**
      * 构建获取仪器状态指令
-     * @return GeoCOM指令字节数组
+     * @return GeoCOM指令字节数组（共享常量）
      */
     public byte[] buildGetStatusCommand() {
         // 格式：%R1Q,5002:
-        String command = "%R1Q,5002:" + ProtocolConstants.COMMAND_TERMINATOR;
-        return command.getBytes();
+        return CMD_GET_STATUS;
     }
 
     /**
      * 构建关闭仪器连接指令
-     * @return GeoCOM指令字节数组
+     * @return GeoCOM指令字节数组（共享常量）
      */
     public byte[] buildCloseCommand() {
         // 格式：%R1Q,9002:
-        String command = "%R1Q,9002:" + ProtocolConstants.COMMAND_TERMINATOR;
-        return command.getBytes();
+        return CMD_CLOSE;
     }
 
     /**
@@ -151,51 +217,250 @@ public class GeoComCommandBuilder {
      * @return GeoCOM指令字节数组
      */
     public byte[] buildMeasureCommand(double prismHeight, InstrumentAdapter.MeasureMode mode) {
+        return toBytes(encodeMeasureCommand(prismHeight, mode));
+    }
+
+    /**
+     * 将通用测量指令编码到线程内复用的缓冲区
+     * 格式：%R1Q,2008:geoComMode,prismHeight
+     */
+    public ByteBuffer encodeMeasureCommand(double prismHeight, InstrumentAdapter.MeasureMode mode) {
         int geoComMode = 1; // 默认为标准模式
         if (mode == InstrumentAdapter.MeasureMode.PRECISION) {
             geoComMode = 2;
         } else if (mode == InstrumentAdapter.MeasureMode.FAST) {
             geoComMode = 3;
         }
-        String command = String.format(java.util.Locale.US, "%%R1Q,2008:%d,%.4f", geoComMode, prismHeight);
-        return (command + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        ByteBuffer buffer = acquireBuffer();
+        buffer.put(PREFIX_MEASURE);
+        buffer.put((byte) ('0' + geoComMode));
+        buffer.put((byte) ',');
+        putFixed(buffer, prismHeight);
+        buffer.put(TERMINATOR);
+        buffer.flip();
+        return buffer;
     }
 
     /**
      * 构建停止测量指令
-     * @return GeoCOM指令字节数组
+     * @return GeoCOM指令字节数组（共享常量）
      */
     public byte[] buildStopMeasureCommand() {
-        return ProtocolConstants.CMD_STOP_MEASURE.getBytes();
+        return CMD_STOP_MEASURE;
     }
 
     /**
      * 构建身份识别指令（用于心跳）
-     * @return GeoCOM指令字节数组
+     * @return GeoCOM指令字节数组（共享常量）
      */
     public byte[] buildIdentificationCommand() {
-        return ("*IDN?" + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        return CMD_IDENTIFICATION;
+    }
+
+    /**
+     * 构建空操作指令 COM_NullProc（用于心跳）
+     * 与 *IDN? 不同，该指令可携带事务号，响应能与请求严格配对
+     * @return GeoCOM指令字节数组（共享常量）
+     */
+    public byte[] buildNullProcCommand() {
+        // 格式：%R1Q,0:
+        return CMD_NULL_PROC;
     }
 
     /**
      * 构建改变仪器状态指令（锁定/解锁）
      * @param lock true=锁定，false=解锁
-     * @return GeoCOM指令字节数组
+     * @return GeoCOM指令字节数组（共享常量）
      */
     public byte[] buildChangeInstrumentStateCommand(boolean lock) {
         // 格式：%R1Q,9007:state (0=解锁, 1=锁定)
-        int state = lock ? 1 : 0;
-        String command = String.format("%%R1Q,9007:%d", state) + ProtocolConstants.COMMAND_TERMINATOR;
-        return command.getBytes();
+        return lock ? CMD_LOCK : CMD_UNLOCK;
     }
 
     /**
      * 构建获取电池状态指令
-     * @return GeoCOM指令字节数组
+     * @return GeoCOM指令字节数组（共享常量）
      */
     public byte[] buildGetBatteryStatusCommand() {
         // 格式：%R1Q,5005:
-        String command = "%R1Q,5005:" + ProtocolConstants.COMMAND_TERMINATOR;
-        return command.getBytes();
+        return CMD_GET_BATTERY_STATUS;
+    }
+
+    // ==================== 跟踪测量 ====================
+
+    /**
+     * 构建启动连续跟踪测距指令 TMC_DoMeasure(TMC_RTRK_DIST, TMC_AUTO_INC)
+     * @return GeoCOM指令字节数组（共享常量）
+     */
+    public byte[] buildStartTrackingCommand() {
+        // 格式：%R1Q,2008:8,1
+        return CMD_START_TRACKING;
+    }
+
+    /**
+     * 构建停止测距指令 TMC_DoMeasure(TMC_STOP, TMC_AUTO_INC)
+     * @return GeoCOM指令字节数组（共享常量）
+     */
+    public byte[] buildStopTrackingCommand() {
+        // 格式：%R1Q,2008:0,1
+        return CMD_STOP_TRACKING;
+    }
+
+    /**
+     * 构建 ATR 锁定开关指令 AUS_SetUserLockState
+     * @param enabled true=开启锁定跟踪
+     * @return GeoCOM指令字节数组（共享常量）
+     */
+    public byte[] buildSetUserLockStateCommand(boolean enabled) {
+        // 格式：%R1Q,18007:state
+        return enabled ? CMD_USER_LOCK_ON : CMD_USER_LOCK_OFF;
+    }
+
+    /**
+     * 构建锁定棱镜指令 AUT_LockIn
+     * @return GeoCOM指令字节数组（共享常量）
+     */
+    public byte[] buildLockInCommand() {
+        // 格式：%R1Q,9013:
+        return CMD_LOCK_IN;
+    }
+
+    /**
+     * 构建读取当前角度与距离指令 TMC_GetSimpleMea
+     * 跟踪测距运行时仪器直接返回最新一次的水平角、竖直角、斜距
+     * @param waitTimeMs 等待距离测量完成的最长时间（ms）
+     * @return GeoCOM指令字节数组
+     */
+    public byte[] buildGetSimpleMeasurementCommand(int waitTimeMs) {
+        // 格式：%R1Q,2108:waitTime,1
+        ByteBuffer buffer = acquireBuffer();
+        buffer.put(PREFIX_GET_SIMPLE_MEASUREMENT);
+        putLong(buffer, Math.max(0, waitTimeMs));
+        buffer.put((byte) ',');
+        buffer.put((byte) '1');
+        buffer.put(TERMINATOR);
+        buffer.flip();
+        return toBytes(buffer);
+    }
+
+    // ==================== 事务号 ====================
+
+    /** 事务号取值范围 1..MAX_TRANSACTION_ID，0 表示未标记 */
+    public static final int MAX_TRANSACTION_ID = 65535;
+
+    /**
+     * 在 GeoCOM 请求报头中插入事务号
+     * %R1Q,rpc:params → %R1Q,rpc,trId:params
+     * @param command 原始指令
+     * @param transactionId 事务号（1..65535）
+     * @return 带事务号的新指令；非 %R1Q 指令或报头已含事务号时返回 null
+     */
+    public static byte[] withTransactionId(byte[] command, int transactionId) {
+        int prefixLength = REQUEST_HEADER.length;
+        if (command == null || command.length <= prefixLength) {
+            return null;
+        }
+        for (int i = 0; i < prefixLength; i++) {
+            if (command[i] != REQUEST_HEADER[i]) {
+                return null;
+            }
+        }
+        int colon = -1;
+        for (int i = prefixLength; i < command.length; i++) {
+            byte b = command[i];
+            if (b == ':') {
+                colon = i;
+                break;
+            }
+            if (b < '0' || b > '9') {
+                // RPC 编号之后出现逗号等字符，说明已带事务号或格式不符
+                return null;
+            }
+        }
+        if (colon <= prefixLength) {
+            return null;
+        }
+        byte[] id = ascii(Integer.toString(transactionId));
+        byte[] tagged = new byte[command.length + 1 + id.length];
+        System.arraycopy(command, 0, tagged, 0, colon);
+        tagged[colon] = ',';
+        System.arraycopy(id, 0, tagged, colon + 1, id.length);
+        System.arraycopy(command, colon, tagged, colon + 1 + id.length, command.length - colon);
+        return tagged;
+    }
+
+    // ==================== 编码工具 ====================
+
+    private static ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = BUFFER_POOL.get();
+        buffer.clear();
+        return buffer;
+    }
+
+    private static ByteBuffer encodeSingleValue(byte[] prefix, double value) {
+        ByteBuffer buffer = acquireBuffer();
+        buffer.put(prefix);
+        putFixed(buffer, value);
+        buffer.put(TERMINATOR);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 按 String.format(Locale.US, "%.4f", value) 的结果写入 ASCII 定点小数
+     * Formatter 先取最短十进制表示再四舍五入（HALF_UP），
+     * 因此当数值落在舍入分界点附近、定点运算无法确定方向时回退到 String.format
+     */
+    static void putFixed(ByteBuffer buffer, double value) {
+        double abs = Math.abs(value);
+        if (!(abs < MAX_FAST_VALUE)) {
+            // NaN、无穷大或超大数值
+            buffer.put(ascii(String.format(Locale.US, "%.4f", value)));
+            return;
+        }
+        double scaled = abs * DECIMAL_SCALE;
+        long units = (long) scaled;
+        double fraction = scaled - units;
+        if (Math.abs(fraction - 0.5) <= 4 * Math.ulp(scaled)) {
+            buffer.put(ascii(String.format(Locale.US, "%.4f", value)));
+            return;
+        }
+        if (fraction > 0.5) {
+            units++;
+        }
+        // 与 Formatter 一致：负数（包括 -0.0 和舍入为0的负数）保留负号
+        if (Double.doubleToRawLongBits(value) < 0) {
+            buffer.put((byte) '-');
+        }
+        putLong(buffer, units / DECIMAL_SCALE);
+        buffer.put((byte) '.');
+        long fractionDigits = units % DECIMAL_SCALE;
+        for (long divisor = DECIMAL_SCALE / 10; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + (fractionDigits / divisor) % 10));
+        }
+    }
+
+    private static void putLong(ByteBuffer buffer, long value) {
+        if (value == 0) {
+            buffer.put((byte) '0');
+            return;
+        }
+        long divisor = 1;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,90 @@
+package com.example.leicameasurement.device.protocol;
+
+/**
+ * GeoCOM响应容器：可复用的解析结果，避免每次测量分配新对象
+ * 格式：%R1P,返回码,事务号:值0,值1,...
+ * 非线程安全，每个解析线程持有自己的实例
+ */
+public class GeoComReply {
+
+    /** 单帧最多保存的数值字段数 */
+    public static final int MAX_VALUES = 16;
+
+    // 测量响应中各字段的下标
+    public static final int INDEX_HZ = 0;
+    public static final int INDEX_V = 1;
+    public static final int INDEX_SD = 2;
+    public static final int INDEX_X = 3;
+    public static final int INDEX_Y = 4;
+    public static final int INDEX_Z = 5;
+
+    private final double[] values = new double[MAX_VALUES];
+    private int valueCount;
+    private int returnCode;
+    private int transactionId;
+    private boolean hasHeader;
+
+    /**
+     * 清空上一次的解析结果
+     */
+    public void reset() {
+        valueCount = 0;
+        returnCode = 0;
+        transactionId = 0;
+        hasHeader = false;
+    }
+
+    void setHeader(int returnCode, int transactionId) {
+        this.returnCode = returnCode;
+        this.transactionId = transactionId;
+        this.hasHeader = true;
+    }
+
+    boolean addValue(double value) {
+        if (valueCount >= MAX_VALUES) {
+            return false;
+        }
+        values[valueCount++] = value;
+        return true;
+    }
+
+    /**
+     * @return true=返回码为0（指令执行成功）
+     */
+    public boolean isSuccess() {
+        return returnCode == 0;
+    }
+
+    public int getReturnCode() { return returnCode; }
+    public int getTransactionId() { return transactionId; }
+    public boolean hasHeader() { return hasHeader; }
+    public int getValueCount() { return valueCount; }
+
+    /**
+     * 获取第 index 个数值字段
+     */
+    public double getValue(int index) {
+        if (index < 0 || index >= valueCount) {
+            throw new IndexOutOfBoundsException("index=" + index + ", count=" + valueCount);
+        }
+        return values[index];
+    }
+
+    /**
+     * 将数值字段拷贝到调用方的数组，不足的位置补0
+     * @param dst 目标数组
+     * @return 实际拷贝的字段数
+     */
+    public int copyValuesTo(double[] dst) {
+        int n = Math.min(valueCount, dst.length);
+        System.arraycopy(values, 0, dst, 0, n);
+        for (int i = n; i < dst.length; i++) {
+            dst[i] = 0;
+        }
+        return n;
+    }
+
+    public double getHorizontalAngle() { return getValue(INDEX_HZ); }
+    public double getVerticalAngle() { return getValue(INDEX_V); }
+    public double getSlopeDistance() { return getValue(INDEX_SD); }
+}
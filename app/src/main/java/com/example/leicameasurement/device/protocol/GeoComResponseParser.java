@@ -4,6 +4,8 @@ import com.example.leicameasurement.device.adapter.InstrumentInfo;
 import com.example.leicameasurement.device.adapter.InstrumentStatus;
 import com.example.leicameasurement.infrastructure.LogManager;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * GeoCOM响应解析器：负责将仪器返回的原始字节流转换为结构化的数据对象或状态
  * 核心职责：解析成功/失败响应、解析测量数据、解析仪器信息
@@ -103,44 +105,109 @@ public class GeoComResponseParser {
      * @return double数组：[水平角(rad), 垂直角(rad), 斜距(m), X坐标, Y坐标, Z坐标]
      */
     public double[] parseMeasurementResponse(byte[] response) {
-        String responseStr = bytesToString(response);
-        if (responseStr == null || !responseStr.contains(",")) {
-            LogManager.e(TAG, "无效的测量数据响应：" + responseStr);
+        GeoComReply reply = new GeoComReply();
+        if (!parseMeasurementResponse(response, reply)) {
             return null;
         }
+        double[] result = new double[6];
+        reply.copyValuesTo(result);
+        return result;
+    }
 
-        try {
-            // 示例响应格式：%R1P,0,0:水平角,垂直角,斜距,X,Y,Z
-            String dataPart = responseStr.substring(responseStr.indexOf(":") + 1);
-            String[] parts = dataPart.split(",");
-
-            if (parts.length >= 6) {
-                double horizontalAngle = Double.parseDouble(parts[0]);  // 水平角 (rad)
-                double verticalAngle = Double.parseDouble(parts[1]);    // 垂直角 (rad)
-                double slopeDistance = Double.parseDouble(parts[2]);    // 斜距 (m)
-                double x = Double.parseDouble(parts[3]);                // X坐标
-                double y = Double.parseDouble(parts[4]);                // Y坐标
-                double z = Double.parseDouble(parts[5]);                // Z坐标
-
-                LogManager.d(TAG, String.format("解析测量数据成功：Hz=%.6frad, V=%.6frad, SD=%.4fm, X=%.3f, Y=%.3f, Z=%.3f",
-                        horizontalAngle, verticalAngle, slopeDistance, x, y, z));
-
-                return new double[]{horizontalAngle, verticalAngle, slopeDistance, x, y, z};
-            } else if (parts.length >= 3) {
-                // 兼容只有角度和距离的响应
-                double horizontalAngle = Double.parseDouble(parts[0]);
-                double verticalAngle = Double.parseDouble(parts[1]);
-                double slopeDistance = Double.parseDouble(parts[2]);
+    /**
+     * 解析测量响应数据到调用方提供的数组（零分配）
+     * @param response 测量响应字节数组
+     * @param out 输出数组，长度至少为3：[水平角, 垂直角, 斜距, X, Y, Z]，缺少的字段补0
+     * @param reply 可复用的解析容器
+     * @return true=解析成功
+     */
+    public boolean parseMeasurementResponse(byte[] response, double[] out, GeoComReply reply) {
+        if (!parseMeasurementResponse(response, reply)) {
+            return false;
+        }
+        reply.copyValuesTo(out);
+        return true;
+    }
+
+    /**
+     * 解析测量响应数据到可复用容器（零分配）
+     * 至少包含水平角、垂直角、斜距三个字段才视为有效测量
+     * @param response 测量响应字节数组
+     * @param reply 可复用的解析容器
+     * @return true=解析成功
+     */
+    public boolean parseMeasurementResponse(byte[] response, GeoComReply reply) {
+        if (response == null || !parseReply(response, 0, response.length, reply)) {
+            LogManager.e(TAG, "无效的测量数据响应");
+            return false;
+        }
+        if (!reply.isSuccess()) {
+            LogManager.e(TAG, "测量失败，返回码：" + reply.getReturnCode());
+            return false;
+        }
+        if (reply.getValueCount() < 3) {
+            LogManager.e(TAG, "测量数据字段不足：" + reply.getValueCount());
+            return false;
+        }
+        return true;
+    }
 
-                LogManager.d(TAG, String.format("解析基础测量数据成功：Hz=%.6frad, V=%.6frad, SD=%.4fm",
-                        horizontalAngle, verticalAngle, slopeDistance));
+    /**
+     * 直接在字节上解析GeoCOM响应，不创建中间字符串
+     * 格式：%R1P,返回码,事务号:值0,值1,...（无报头时从首字节开始解析数值字段）
+     * @param buffer 响应缓冲区
+     * @param offset 起始位置
+     * @param length 长度
+     * @param reply 输出容器，解析前会被清空
+     * @return true=格式正确
+     */
+    public boolean parseReply(byte[] buffer, int offset, int length, GeoComReply reply) {
+        reply.reset();
+        int pos = skipSpaces(buffer, offset, offset + length);
+        int end = trimEnd(buffer, pos, offset + length);
+        if (pos >= end) {
+            return false;
+        }
 
-                return new double[]{horizontalAngle, verticalAngle, slopeDistance, 0, 0, 0};
+        if (startsWith(buffer, pos, end, REPLY_HEADER)) {
+            pos += REPLY_HEADER.length;
+            // 返回码
+            int returnCodeEnd = scanInt(buffer, pos, end);
+            if (returnCodeEnd < 0 || returnCodeEnd >= end || buffer[returnCodeEnd] != ',') {
+                return false;
             }
-        } catch (Exception e) {
-            LogManager.e(TAG, "解析测量数据失败：" + e.getMessage());
+            int returnCode = toInt(buffer, pos, returnCodeEnd);
+            // 事务号
+            pos = returnCodeEnd + 1;
+            int transactionIdEnd = scanInt(buffer, pos, end);
+            if (transactionIdEnd < 0 || transactionIdEnd >= end || buffer[transactionIdEnd] != ':') {
+                return false;
+            }
+            int transactionId = toInt(buffer, pos, transactionIdEnd);
+            pos = transactionIdEnd + 1;
+            reply.setHeader(returnCode, transactionId);
         }
-        return null;
+
+        // 逗号分隔的数值字段
+        while (pos < end) {
+            pos = skipSpaces(buffer, pos, end);
+            int fieldEnd = pos;
+            while (fieldEnd < end && buffer[fieldEnd] != ',') {
+                fieldEnd++;
+            }
+            int valueEnd = trimEnd(buffer, pos, fieldEnd);
+            if (valueEnd > pos) {
+                double value = parseDouble(buffer, pos, valueEnd);
+                if (Double.isNaN(value) && !isNaNLiteral(buffer, pos, valueEnd)) {
+                    return false;
+                }
+                if (!reply.addValue(value)) {
+                    break;
+                }
+            }
+            pos = fieldEnd + 1;
+        }
+        return true;
     }
 
     /**
@@ -175,8 +242,8 @@ public class GeoComResponseParser {
             return false;
         }
 
-        // 成功响应格式：%R1P,0,0: 或类似的成功码
-        if (response.startsWith("%R1P,0,0")) {
+        // 成功响应格式：%R1P,0,trId:（未标记事务号时 trId 为 0）
+        if (response.startsWith("%R1P,0,")) {
             LogManager.i(TAG, "指令执行成功");
             return true;
         }
@@ -222,8 +289,8 @@ public class GeoComResponseParser {
                 double horizontalAngle = Double.parseDouble(parts[0]);
                 double verticalAngle = Double.parseDouble(parts[1]);
                 double slopeDistance = Double.parseDouble(parts[2]);
-                LogManager.d(TAG, String.format("解析测量数据成功：Hz=%.6f, V=%.6f, SD=%.4f",
-                        horizontalAngle, verticalAngle, slopeDistance));
+                LogManager.d(TAG, "解析测量数据成功：Hz=%.6f, V=%.6f, SD=%.4f",
+                        horizontalAngle, verticalAngle, slopeDistance);
                 return new double[]{horizontalAngle, verticalAngle, slopeDistance};
             }
         } catch (Exception e) {
@@ -249,6 +316,163 @@ public class GeoComResponseParser {
         }
     }
 
+    // ==================== 字节级扫描工具 ====================
+
+    private static final byte[] REPLY_HEADER = {'%', 'R', '1', 'P', ','};
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static int skipSpaces(byte[] b, int pos, int end) {
+        while (pos < end && (b[pos] == ' ' || b[pos] == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int trimEnd(byte[] b, int start, int end) {
+        while (end > start && (b[end - 1] == ' ' || b[end - 1] == '\t'
+                || b[end - 1] == '\r' || b[end - 1] == '\n')) {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean startsWith(byte[] b, int pos, int end, byte[] prefix) {
+        if (end - pos < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (b[pos + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 扫描一个十进制整数（允许前导符号）
+     * @return 整数之后的位置，没有数字返回 -1
+     */
+    private static int scanInt(byte[] b, int pos, int end) {
+        if (pos < end && (b[pos] == '-' || b[pos] == '+')) {
+            pos++;
+        }
+        int start = pos;
+        while (pos < end && b[pos] >= '0' && b[pos] <= '9' && pos - start < 9) {
+            pos++;
+        }
+        return pos == start ? -1 : pos;
+    }
+
+    /**
+     * 将 scanInt 确认过的区间转换为整数
+     */
+    private static int toInt(byte[] b, int start, int end) {
+        boolean negative = b[start] == '-';
+        int pos = (b[start] == '-' || b[start] == '+') ? start + 1 : start;
+        int value = 0;
+        for (; pos < end; pos++) {
+            value = value * 10 + (b[pos] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * 解析十进制浮点数
+     * 常见的测量值（不超过15位有效数字、指数在±22以内）走快速路径，结果与 Double.parseDouble 一致；
+     * 其余情况回退到 Double.parseDouble
+     * @return 解析值，格式错误返回 NaN
+     */
+    private static double parseDouble(byte[] b, int start, int end) {
+        int pos = start;
+        boolean negative = false;
+        if (b[pos] == '-' || b[pos] == '+') {
+            negative = b[pos] == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean exact = true;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; pos < end; pos++) {
+            byte c = b[pos];
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (mantissa == 0 && c == '0') {
+                    // 前导零不计入有效数字
+                    if (seenPoint) {
+                        exponent--;
+                    }
+                    continue;
+                }
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    if (seenPoint) {
+                        exponent--;
+                    }
+                } else {
+                    exact = false;
+                    if (!seenPoint) {
+                        exponent++;
+                    }
+                }
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (!seenDigit) {
+            return slowParseDouble(b, start, end);
+        }
+        if (pos < end) {
+            if (b[pos] != 'e' && b[pos] != 'E') {
+                return slowParseDouble(b, start, end);
+            }
+            pos++;
+            boolean negativeExp = false;
+            if (pos < end && (b[pos] == '-' || b[pos] == '+')) {
+                negativeExp = b[pos] == '-';
+                pos++;
+            }
+            int expStart = pos;
+            int exp = 0;
+            while (pos < end && b[pos] >= '0' && b[pos] <= '9') {
+                if (exp < 10000) {
+                    exp = exp * 10 + (b[pos] - '0');
+                }
+                pos++;
+            }
+            if (pos == expStart || pos != end) {
+                return slowParseDouble(b, start, end);
+            }
+            exponent += negativeExp ? -exp : exp;
+        }
+        if (!exact || mantissa > MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22) {
+            return slowParseDouble(b, start, end);
+        }
+        double value = exponent >= 0 ? mantissa * POW10[exponent] : mantissa / POW10[-exponent];
+        return negative ? -value : value;
+    }
+
+    private static double slowParseDouble(byte[] b, int start, int end) {
+        try {
+            return Double.parseDouble(new String(b, start, end - start, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static boolean isNaNLiteral(byte[] b, int start, int end) {
+        return end - start == 3 && b[start] == 'N' && b[start + 1] == 'a' && b[start + 2] == 'N';
+    }
+
     /**
      * 检查响应是否包含有效数据
      * @param response 仪器响应字节数组
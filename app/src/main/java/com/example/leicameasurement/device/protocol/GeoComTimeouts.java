@@ -0,0 +1,142 @@
+package com.example.leicameasurement.device.protocol;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+* GeoCOM指令超时表：按 RPC 编号给出等待响应的超时时间
+* 状态查询仪器立即应答，测距指令需要等待 EDM 完成，统一用一个超时会让查询失败发现得太慢、
+* 或让精密测距被过早判为超时
+*/
+public class GeoComTimeouts {
+
+    // 未登记指令的默认超时（ms）
+    public static final long DEFAULT_TIMEOUT_MS = 5000;
+
+    // 状态类查询（型号、序列号、状态、电量、*IDN?）
+    public static final long QUERY_TIMEOUT_MS = 1500;
+    // 参数设置（测站、棱镜高、仪器高、测量模式、锁定）
+    public static final long CONFIG_TIMEOUT_MS = 3000;
+    // 测距测角（精密模式多次测距取平均，耗时最长）
+    public static final long MEASURE_TIMEOUT_MS = 20000;
+
+    private static final byte[] REQUEST_HEADER = {'%', 'R', '1', 'Q', ','};
+    private static final int MEASURE_RPC = 17008;
+    private static final int TS30_MEASURE_RPC = 2008;
+    private static final Map<Integer, Long> TIMEOUTS = new ConcurrentHashMap<>();
+
+    static {
+        TIMEOUTS.put(0, QUERY_TIMEOUT_MS);        // COM_NullProc
+        TIMEOUTS.put(5002, QUERY_TIMEOUT_MS);     // 仪器状态
+        TIMEOUTS.put(5003, QUERY_TIMEOUT_MS);     // 仪器型号
+        TIMEOUTS.put(5004, QUERY_TIMEOUT_MS);     // 序列号
+        TIMEOUTS.put(5005, QUERY_TIMEOUT_MS);     // 电量
+        TIMEOUTS.put(2008, CONFIG_TIMEOUT_MS);    // 测量模式、跟踪启停（TS30 测量见 isTs30Measurement）
+        TIMEOUTS.put(2114, CONFIG_TIMEOUT_MS);    // 测站坐标
+        TIMEOUTS.put(2116, CONFIG_TIMEOUT_MS);    // 棱镜高
+        TIMEOUTS.put(2117, CONFIG_TIMEOUT_MS);    // 仪器高
+        TIMEOUTS.put(2108, QUERY_TIMEOUT_MS);     // 读取跟踪测量结果
+        TIMEOUTS.put(9013, CONFIG_TIMEOUT_MS);    // 锁定棱镜
+        TIMEOUTS.put(18007, CONFIG_TIMEOUT_MS);   // ATR 锁定开关
+        TIMEOUTS.put(9002, CONFIG_TIMEOUT_MS);    // 关闭连接
+        TIMEOUTS.put(9007, CONFIG_TIMEOUT_MS);    // 锁定/解锁
+        TIMEOUTS.put(17008, MEASURE_TIMEOUT_MS);  // 测距测角
+    }
+
+    private GeoComTimeouts() {
+    }
+
+    /**
+     * 按 RPC 编号查询超时
+     * @param rpc GeoCOM RPC 编号
+     * @return 超时时间（ms）
+     */
+    public static long forRpc(int rpc) {
+        Long timeout = TIMEOUTS.get(rpc);
+        return timeout != null ? timeout : DEFAULT_TIMEOUT_MS;
+    }
+
+    /**
+     * 按指令内容查询超时：%R1Q 指令取其 RPC 编号，其他指令（如 *IDN?）按查询处理
+     * @param command 指令字节数组
+     * @return 超时时间（ms）
+     */
+    public static long forCommand(byte[] command) {
+        int rpc = parseRpc(command);
+        if (rpc < 0) {
+            return command != null && command.length > 0 && command[0] == '*'
+                    ? QUERY_TIMEOUT_MS : DEFAULT_TIMEOUT_MS;
+        }
+        if (rpc == TS30_MEASURE_RPC && isTs30Measurement(command)) {
+            return forRpc(MEASURE_RPC);
+        }
+        return forRpc(rpc);
+    }
+
+    /**
+     * 判断 2008 指令是否为 TS30 的测量指令（%R1Q,2008:mode,prismHeight，见 GeoComCommandBuilder.buildMeasureCommand）
+     * 同一 RPC 也用于设置测量模式（mode,0）和跟踪启停（8,1 / 0,1），这些形式的第二个参数是整数，
+     * 测量指令的第二个参数是定点小数格式的棱镜高
+     * @param command 指令字节数组
+     * @return true=TS30 测量指令
+     */
+    public static boolean isTs30Measurement(byte[] command) {
+        if (parseRpc(command) != TS30_MEASURE_RPC) {
+            return false;
+        }
+        int pos = REQUEST_HEADER.length;
+        while (pos < command.length && command[pos] != ':') {
+            pos++;
+        }
+        while (pos < command.length && command[pos] != ',') {
+            pos++;
+        }
+        // 第二个参数：到下一个逗号或行尾
+        boolean integer = true;
+        int digits = 0;
+        for (pos++; pos < command.length; pos++) {
+            byte b = command[pos];
+            if (b == ',' || b == '\r' || b == '\n') {
+                break;
+            }
+            if (b >= '0' && b <= '9') {
+                digits++;
+            } else if (!(b == '-' && digits == 0)) {
+                integer = false;
+            }
+        }
+        return digits > 0 && !integer;
+    }
+
+    /**
+     * 覆盖某个 RPC 的超时（例如现场实测后调整精密测距的等待时间）
+     */
+    public static void setTimeout(int rpc, long timeoutMs) {
+        TIMEOUTS.put(rpc, timeoutMs);
+    }
+
+    /**
+     * 解析 %R1Q,rpc[,trId]:params 中的 RPC 编号
+     * @return RPC 编号，不是 %R1Q 指令时返回 -1
+     */
+    public static int parseRpc(byte[] command) {
+        if (command == null || command.length <= REQUEST_HEADER.length) {
+            return -1;
+        }
+        for (int i = 0; i < REQUEST_HEADER.length; i++) {
+            if (command[i] != REQUEST_HEADER[i]) {
+                return -1;
+            }
+        }
+        int rpc = 0;
+        int i = REQUEST_HEADER.length;
+        for (; i < command.length; i++) {
+            byte b = command[i];
+            if (b < '0' || b > '9') {
+                break;
+            }
+            rpc = rpc * 10 + (b - '0');
+        }
+        return i > REQUEST_HEADER.length ? rpc : -1;
+    }
+}
@@ -1,32 +1,53 @@
 package com.example.leicameasurement.device.wifi;
 
+import com.example.leicameasurement.device.connection.ByteRingBuffer;
 import com.example.leicameasurement.device.connection.IConnectionChannel;
 import com.example.leicameasurement.device.connection.ConnectionConfig;
 import com.example.leicameasurement.device.connection.ConnectionException;
 import com.example.leicameasurement.device.connection.ConnectionState;
 import com.example.leicameasurement.device.connection.ConnectionStateListener;
 import com.example.leicameasurement.device.connection.ConnectionType; // 添加这行导入
+import com.example.leicameasurement.device.connection.FrameDecoder;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.net.Socket;
-import java.util.ArrayList;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
- * WiFi通道实现：通过TCP Socket连接全站仪
+ * WiFi通道实现：通过 NIO SocketChannel 连接全站仪
+ * 连接建立后通道处于非阻塞模式，读写通过 Selector 按截止时间等待；
+ * 接收端把套接字数据直接读入固定容量的环形缓冲区，由 FrameDecoder 在原位按结束符切帧，
+ * 一帧之后的剩余字节留在环形缓冲区中供下次接收，读取过程不分配中间数组
  */
 public class WifiChannel implements IConnectionChannel {
 
-    private Socket socket;
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private SocketChannel socketChannel;
+    private Selector readSelector;
+    private Selector writeSelector;
     private String ipAddress;
     private int port;
     private ConnectionState state = ConnectionState.DISCONNECTED;
     private WifiConfig wifiConfig;
     private int connectionTimeout = 10000; // 10秒连接超时
-    private int readTimeout = 5000; // 5秒读取超时
+    private volatile int readTimeout = 5000; // 5秒读取超时
+
+    // 接收侧状态，仅在 readLock 内访问
+    private final Object readLock = new Object();
+    private final Object writeLock = new Object();
+    private final ByteRingBuffer ringBuffer = new ByteRingBuffer(READ_BUFFER_SIZE);
+    private FrameDecoder frameDecoder = new FrameDecoder();
 
     private final List<ConnectionStateListener> listeners = new CopyOnWriteArrayList<>();
 
@@ -43,19 +64,32 @@ public class WifiChannel implements IConnectionChannel {
         // 通知状态变化
         notifyStateChange(ConnectionState.CONNECTING);
 
+        SocketChannel channel = null;
         try {
-            // 创建Socket并设置连接超时
-            socket = new Socket();
-            java.net.InetSocketAddress address = new java.net.InetSocketAddress(ipAddress, port);
-            socket.connect(address, connectionTimeout);
-            socket.setSoTimeout(readTimeout);
+            // 阻塞模式下带超时连接，连接成功后切换为非阻塞
+            channel = SocketChannel.open();
+            channel.socket().connect(new InetSocketAddress(ipAddress, port), connectionTimeout);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, wifiConfig.isTcpNoDelay());
+            channel.configureBlocking(false);
+
+            Selector readSel = Selector.open();
+            Selector writeSel = Selector.open();
+            channel.register(readSel, SelectionKey.OP_READ);
+            channel.register(writeSel, SelectionKey.OP_WRITE);
+
+            synchronized (readLock) {
+                ringBuffer.clear();
+                frameDecoder = new FrameDecoder(wifiConfig.getFrameTerminators(), 64 * 1024);
+            }
+            this.readSelector = readSel;
+            this.writeSelector = writeSel;
+            this.socketChannel = channel;
 
             // 连接成功
-            this.state = ConnectionState.CONNECTED;
             notifyStateChange(ConnectionState.CONNECTED);
 
         } catch (IOException e) {
-            this.state = ConnectionState.ERROR;
+            closeQuietly(channel);
             String errorMsg = "WiFi连接失败: " + e.getMessage() + " [" + ipAddress + ":" + port + "]";
             notifyStateChange(ConnectionState.ERROR, errorMsg);
             throw new ConnectionException(errorMsg, "WIFI_CONNECT_ERROR", ConnectionType.WIFI);
@@ -64,17 +98,22 @@ public class WifiChannel implements IConnectionChannel {
 
     @Override
     public void disconnect() {
-        if (socket != null && !socket.isClosed()) {
+        SocketChannel channel = socketChannel;
+        if (channel != null && channel.isOpen()) {
             try {
-                state = ConnectionState.DISCONNECTING;
                 notifyStateChange(ConnectionState.DISCONNECTING);
 
-                socket.close();
+                channel.close();
+                closeQuietly(readSelector);
+                closeQuietly(writeSelector);
             } catch (IOException e) {
                 // 忽略关闭时的异常
             } finally {
-                socket = null;
-                state = ConnectionState.DISCONNECTED;
+                socketChannel = null;
+                synchronized (readLock) {
+                    ringBuffer.clear();
+                    frameDecoder.reset();
+                }
                 notifyStateChange(ConnectionState.DISCONNECTED, "手动断开连接");
             }
         }
@@ -82,7 +121,8 @@ public class WifiChannel implements IConnectionChannel {
 
     @Override
     public boolean isConnected() {
-        return socket != null && socket.isConnected() && !socket.isClosed();
+        SocketChannel channel = socketChannel;
+        return channel != null && channel.isOpen() && channel.isConnected();
     }
 
     @Override
@@ -97,11 +137,8 @@ public class WifiChannel implements IConnectionChannel {
         }
 
         try {
-            OutputStream outputStream = socket.getOutputStream();
-            outputStream.write(data);
-            outputStream.flush();
+            writeFully(ByteBuffer.wrap(data));
         } catch (IOException e) {
-            state = ConnectionState.ERROR;
             notifyStateChange(ConnectionState.ERROR, "发送数据失败: " + e.getMessage());
             throw e;
         }
@@ -109,43 +146,126 @@ public class WifiChannel implements IConnectionChannel {
 
     @Override
     public byte[] receiveData() throws IOException {
+        return receiveData(readTimeout);
+    }
+
+    /**
+     * 接收一帧数据：优先从环形缓冲区中已有的字节切帧，否则批量读取直到凑齐一帧或超时
+     * @param timeoutMs 超时时间（毫秒）
+     * @return 含结束符的完整帧
+     * @throws InterruptedIOException 超时
+     */
+    @Override
+    public byte[] receiveData(long timeoutMs) throws IOException {
         if (!isConnected()) {
             throw new IOException("WiFi未连接，无法接收数据");
         }
 
-        try {
-            InputStream inputStream = socket.getInputStream();
-            // 简单的读取实现 - 实际可能需要更复杂的协议处理
-            List<Byte> byteList = new ArrayList<>();
-            int data;
-            while ((data = inputStream.read()) != -1) {
-                byteList.add((byte) data);
-                // 如果遇到协议终止符，停止读取
-                if (data == 0x03) { // ETX
-                    break;
+        synchronized (readLock) {
+            if (frameDecoder.next(ringBuffer)) {
+                return frameDecoder.copyFrame();
+            }
+            try {
+                long deadline = System.currentTimeMillis() + timeoutMs;
+                while (true) {
+                    int count = ringBuffer.readFrom(socketChannel);
+                    if (frameDecoder.next(ringBuffer)) {
+                        return frameDecoder.copyFrame();
+                    }
+                    if (count < 0) {
+                        throw new EOFException("仪器端已关闭连接");
+                    }
+                    if (count == 0) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            throw new InterruptedIOException("接收数据超时(" + timeoutMs + "ms)");
+                        }
+                        readSelector.select(remaining);
+                        readSelector.selectedKeys().clear();
+                    }
                 }
+            } catch (InterruptedIOException e) {
+                // 超时不代表链路故障，保留连接状态
+                throw e;
+            } catch (IOException e) {
+                notifyStateChange(ConnectionState.ERROR, "接收数据失败: " + e.getMessage());
+                throw e;
             }
+        }
+    }
 
-            // 转换为字节数组
-            byte[] result = new byte[byteList.size()];
-            for (int i = 0; i < byteList.size(); i++) {
-                result[i] = byteList.get(i);
+    /**
+     * 丢弃环形缓冲区中的字节、半帧以及内核中已到达但未读取的数据
+     */
+    public void clearReceiveBuffer() throws IOException {
+        synchronized (readLock) {
+            ringBuffer.clear();
+            if (isConnected()) {
+                while (ringBuffer.readFrom(socketChannel) > 0) {
+                    ringBuffer.clear();
+                }
+                ringBuffer.clear();
             }
-            return result;
+            frameDecoder.reset();
+        }
+    }
 
-        } catch (IOException e) {
-            state = ConnectionState.ERROR;
-            notifyStateChange(ConnectionState.ERROR, "接收数据失败: " + e.getMessage());
-            throw e;
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        synchronized (writeLock) {
+            long deadline = System.currentTimeMillis() + readTimeout;
+            while (buffer.hasRemaining()) {
+                if (socketChannel.write(buffer) == 0) {
+                    // 发送缓冲区已满，等待可写
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new InterruptedIOException("发送数据超时");
+                    }
+                    writeSelector.select(remaining);
+                    writeSelector.selectedKeys().clear();
+                }
+            }
         }
     }
 
+    /**
+     * 获取输入流：直接读取原始字节，不经过帧解码器（已解码的缓存帧不会出现在流中）
+     */
     @Override
     public InputStream getInputStream() throws IOException {
         if (!isConnected()) {
             throw new IOException("WiFi未连接");
         }
-        return socket.getInputStream();
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                int n = read(one, 0, 1);
+                return n < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                synchronized (readLock) {
+                    ByteBuffer target = ByteBuffer.wrap(b, off, len);
+                    long deadline = System.currentTimeMillis() + readTimeout;
+                    while (true) {
+                        int n = socketChannel.read(target);
+                        if (n != 0) {
+                            return n;
+                        }
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            throw new InterruptedIOException("读取超时");
+                        }
+                        readSelector.select(remaining);
+                        readSelector.selectedKeys().clear();
+                    }
+                }
+            }
+        };
     }
 
     @Override
@@ -153,7 +273,17 @@ public class WifiChannel implements IConnectionChannel {
         if (!isConnected()) {
             throw new IOException("WiFi未连接");
         }
-        return socket.getOutputStream();
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writeFully(ByteBuffer.wrap(b, off, len));
+            }
+        };
     }
 
     @Override
@@ -169,13 +299,6 @@ public class WifiChannel implements IConnectionChannel {
     @Override
     public void setReadTimeout(int timeoutMs) {
         this.readTimeout = timeoutMs;
-        if (socket != null && !socket.isClosed()) {
-            try {
-                socket.setSoTimeout(timeoutMs);
-            } catch (IOException e) {
-                // 忽略设置超时时的异常
-            }
-        }
     }
 
     @Override
@@ -228,6 +351,16 @@ public class WifiChannel implements IConnectionChannel {
         }
     }
 
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // 忽略关闭时的异常
+            }
+        }
+    }
+
     /**
      * 获取IP地址
      */
@@ -241,4 +374,4 @@ public class WifiChannel implements IConnectionChannel {
     public int getPort() {
         return port;
     }
-}
\ No newline at end of file
+}
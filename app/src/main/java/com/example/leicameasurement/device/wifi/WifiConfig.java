@@ -2,10 +2,13 @@ package com.example.leicameasurement.device.wifi;
 
 import com.example.leicameasurement.device.connection.ConnectionConfig;
 import com.example.leicameasurement.device.connection.ConnectionType;
+import com.example.leicameasurement.device.connection.FrameDecoder;
 
 public class WifiConfig extends ConnectionConfig {
     private String ipAddress;
     private int port;
+    private boolean tcpNoDelay = true; // 指令短小且一问一答，关闭 Nagle 算法避免攒包延迟
+    private byte[][] frameTerminators = {FrameDecoder.TERMINATOR_CRLF, FrameDecoder.TERMINATOR_ETX};
 
     public WifiConfig(String ipAddress, int port) {
         // 调用父类构造函数，传入 IP 地址和连接类型
@@ -25,4 +28,26 @@ public class WifiConfig extends ConnectionConfig {
     public int getPort() {
         return port;
     }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * 获取响应帧结束符集合（默认 CR/LF 与 ETX）
+     */
+    public byte[][] getFrameTerminators() {
+        return frameTerminators;
+    }
+
+    /**
+     * 设置响应帧结束符集合，任一结束符出现即视为一帧结束
+     */
+    public void setFrameTerminators(byte[]... frameTerminators) {
+        this.frameTerminators = frameTerminators;
+    }
 }
@@ -2,9 +2,12 @@ package com.example.leicameasurement.device.wifi;
 
 import com.example.leicameasurement.device.connection.ConnectionState;
 import com.example.leicameasurement.device.connection.ConnectionStateListener;
+import com.example.leicameasurement.device.connection.LinkQuality;
+import com.example.leicameasurement.device.protocol.GeoComCommandBuilder;
 import com.example.leicameasurement.infrastructure.LogManager;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
@@ -14,24 +17,33 @@ import java.util.concurrent.TimeUnit;
 /**
  * WiFi 连接监控器
  * 定期检查连接状态，检测连接断开
+ * 链路存活由最近的成功通信判断：空闲超过阈值且没有指令在等待响应时，
+ * 才经收发器发送带事务号的 COM_NullProc 心跳并校验配对的响应，RTT 计入链路质量统计
  */
 public class WifiConnectionMonitor {
 
     private static final String TAG = "WifiConnectionMonitor";
-    private static final long DEFAULT_CHECK_INTERVAL_MS = 5000; // 5秒检查一次
+    private static final long DEFAULT_CHECK_INTERVAL_MS = 1000; // 1秒检查一次（仅读取统计）
+    private static final long DEFAULT_IDLE_WINDOW_MS = 5000;    // 空闲5秒后才发送心跳
     private static final int HEARTBEAT_TIMEOUT_MS = 3000;
+    private static final int MAX_MISSED_HEARTBEATS = 3;
 
     private WifiChannel wifiChannel;
+    private WifiTransceiver transceiver;
     private ScheduledExecutorService scheduler;
     private boolean isMonitoring = false;
     private long checkIntervalMs = DEFAULT_CHECK_INTERVAL_MS;
+    private long idleWindowMs = DEFAULT_IDLE_WINDOW_MS;
+    private int missedHeartbeats = 0; // 仅在监控线程中访问
+    private final byte[] heartbeatCommand = new GeoComCommandBuilder().buildNullProcCommand();
 
     private final List<ConnectionStateListener> listeners = new CopyOnWriteArrayList<>();
 
     // ==================== 构造函数 ====================
 
-    public WifiConnectionMonitor(WifiChannel wifiChannel) {
+    public WifiConnectionMonitor(WifiChannel wifiChannel, WifiTransceiver transceiver) {
         this.wifiChannel = wifiChannel;
+        this.transceiver = transceiver;
     }
 
     // ==================== 监控控制 ====================
@@ -46,6 +58,7 @@ public class WifiConnectionMonitor {
         }
 
         isMonitoring = true;
+        missedHeartbeats = 0;
         scheduler = Executors.newSingleThreadScheduledExecutor();
 
         scheduler.scheduleAtFixedRate(
@@ -97,6 +110,13 @@ public class WifiConnectionMonitor {
         }
     }
 
+    /**
+     * 设置空闲阈值：超过该时间没有成功通信才发送心跳
+     */
+    public void setIdleWindow(long idleWindowMs) {
+        this.idleWindowMs = idleWindowMs;
+    }
+
     // ==================== 连接检查 ====================
 
     /**
@@ -115,10 +135,26 @@ public class WifiConnectionMonitor {
                 return;
             }
 
+            LinkQuality quality = transceiver.getLinkQuality();
+            if (quality.getIdleMillis() < idleWindowMs) {
+                missedHeartbeats = 0; // 近期有成功通信，无需心跳
+                return;
+            }
+            if (transceiver.isExchangeInProgress()) {
+                return; // 指令正在等待响应，由其自身超时反映链路故障
+            }
+
             // 发送心跳包检查连接
             if (!sendHeartbeat()) {
-                LogManager.w(TAG, "Heartbeat failed");
-                notifyConnectionError("Heartbeat timeout");
+                missedHeartbeats++;
+                LogManager.w(TAG, "Heartbeat failed (" + missedHeartbeats + " in a row)");
+                if (missedHeartbeats >= MAX_MISSED_HEARTBEATS) {
+                    notifyConnectionError("Heartbeat timeout");
+                }
+            } else {
+                missedHeartbeats = 0;
+                LogManager.d(TAG, "Heartbeat ok, rtt " + quality.getLastRttMs()
+                        + "ms, avg " + quality.getAverageRttMs() + "ms");
             }
 
         } catch (Exception e) {
@@ -128,18 +164,15 @@ public class WifiConnectionMonitor {
     }
 
     /**
-     * 发送心跳包
+     * 发送心跳包：COM_NullProc 带事务号发送，只接受事务号相同的响应
+     * @return true=收到配对的响应；false=超时
+     * @throws IOException 链路异常
      */
-    private boolean sendHeartbeat() {
+    private boolean sendHeartbeat() throws IOException {
         try {
-            // 简单的心跳实现：尝试获取输出流
-            // 实际应用中可能需要发送特定的心跳命令
-            if (wifiChannel.getOutputStream() != null) {
-                return true;
-            }
-            return false;
-
-        } catch (IOException e) {
+            transceiver.sendCorrelatedCommand(heartbeatCommand, HEARTBEAT_TIMEOUT_MS);
+            return true;
+        } catch (InterruptedIOException e) {
             LogManager.e(TAG, "Heartbeat failed: " + e.getMessage());
             return false;
         }
@@ -48,13 +48,13 @@ public class WifiLinkManager implements ConnectionStateListener {
         wifiChannel = new WifiChannel();
         wifiChannel.addConnectionStateListener(this);
 
-        // 创建连接监控器
-        connectionMonitor = new WifiConnectionMonitor(wifiChannel);
-        connectionMonitor.addConnectionStateListener(this);
-
         // 创建数据收发器
         transceiver = new WifiTransceiver(wifiChannel);
 
+        // 创建连接监控器（心跳经收发器发送，与指令收发串行）
+        connectionMonitor = new WifiConnectionMonitor(wifiChannel, transceiver);
+        connectionMonitor.addConnectionStateListener(this);
+
         LogManager.i(TAG, "WifiLinkManager initialized");
     }
 
@@ -75,6 +75,7 @@ public class WifiLinkManager implements ConnectionStateListener {
         try {
             wifiChannel.connect(config);
             reconnectAttempts = 0;
+            transceiver.getLinkQuality().reset();
 
             // 启动连接监控
             if (connectionMonitor != null) {
@@ -1,9 +1,15 @@
 package com.example.leicameasurement.device.wifi;
 
+import com.example.leicameasurement.device.connection.LinkQuality;
+import com.example.leicameasurement.device.protocol.GeoComCommandBuilder;
+import com.example.leicameasurement.device.protocol.GeoComReply;
+import com.example.leicameasurement.device.protocol.GeoComResponseParser;
+import com.example.leicameasurement.device.protocol.GeoComTimeouts;
 import com.example.leicameasurement.infrastructure.LogManager;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -11,16 +17,22 @@ import java.util.concurrent.locks.ReentrantLock;
 /**
  * WiFi 数据收发器
  * 负责数据的发送和接收，提供线程安全的数据传输
+ * 指令收发为响应驱动：写出后立即按截止时间等待响应，超时按指令类型查 GeoComTimeouts
+ * 每次收到响应都会更新链路质量统计（最近通信时间、RTT），供连接监控器判断是否需要心跳
  */
 public class WifiTransceiver {
 
     private static final String TAG = "WifiTransceiver";
     private static final int DEFAULT_BUFFER_SIZE = 1024;
-    private static final int DEFAULT_TIMEOUT_MS = 5000;
+    private static final int DEFAULT_TIMEOUT_MS = (int) GeoComTimeouts.DEFAULT_TIMEOUT_MS;
 
     private WifiChannel wifiChannel;
     private final Lock sendLock = new ReentrantLock();
-    private final Lock receiveLock = new ReentrantLock();
+    private final ReentrantLock receiveLock = new ReentrantLock();
+    private final LinkQuality linkQuality = new LinkQuality();
+    private final GeoComResponseParser replyParser = new GeoComResponseParser();
+    private final GeoComReply reply = new GeoComReply(); // 仅在 receiveLock 内使用
+    private int nextTransactionId = 1;                    // 仅在 receiveLock 内使用
 
     // ==================== 构造函数 ====================
 
@@ -40,13 +52,7 @@ public class WifiTransceiver {
 
         sendLock.lock();
         try {
-            if (!wifiChannel.isConnected()) {
-                throw new IOException("WiFi not connected");
-            }
-
-            wifiChannel.sendData(data);
-            LogManager.d(TAG, "Sent " + data.length + " bytes: " + bytesToHex(data));
-
+            writeLocked(data);
         } finally {
             sendLock.unlock();
         }
@@ -77,14 +83,9 @@ public class WifiTransceiver {
     public byte[] receiveData(int timeoutMs) throws IOException {
         receiveLock.lock();
         try {
-            if (!wifiChannel.isConnected()) {
-                throw new IOException("WiFi not connected");
-            }
-
-            byte[] data = wifiChannel.receiveData();
-            LogManager.d(TAG, "Received " + data.length + " bytes: " + bytesToHex(data));
+            byte[] data = readLocked(timeoutMs);
+            linkQuality.recordActivity();
             return data;
-
         } finally {
             receiveLock.unlock();
         }
@@ -108,42 +109,90 @@ public class WifiTransceiver {
     // ==================== 命令收发 ====================
 
     /**
-     * 发送命令并接收响应
+     * 发送命令并接收响应，超时按指令的 RPC 编号查表
      */
     public byte[] sendCommandAndReceive(byte[] command) throws IOException {
-        return sendCommandAndReceive(command, DEFAULT_TIMEOUT_MS);
+        return sendCommandAndReceive(command, (int) GeoComTimeouts.forCommand(command));
     }
 
     /**
      * 发送命令并接收响应（指定超时）
+     * 先占用接收方向保证读到的是本条指令的响应，写出后立即开始等待，不做固定延时
+     * 加锁顺序固定为 receiveLock → sendLock
      */
     public byte[] sendCommandAndReceive(byte[] command, int timeoutMs) throws IOException {
-        sendLock.lock();
+        if (command == null || command.length == 0) {
+            throw new IOException("Data is null or empty");
+        }
         receiveLock.lock();
         try {
-            // 发送命令
-            sendData(command);
-
-            // 等待响应
-            Thread.sleep(100); // 短暂延迟，等待设备处理
+            long sentNanos = System.nanoTime();
+            sendLock.lock();
+            try {
+                writeLocked(command);
+            } finally {
+                sendLock.unlock();
+            }
+            byte[] response = readLocked(timeoutMs);
+            linkQuality.recordRtt(System.nanoTime() - sentNanos);
+            return response;
+        } finally {
+            receiveLock.unlock();
+        }
+    }
 
-            // 接收响应
-            return receiveData(timeoutMs);
+    /**
+     * 发送带事务号的 GeoCOM 指令并等待事务号相同的响应
+     * 之前超时请求的迟到响应事务号不符，读到后丢弃，不会被当作本条指令的响应
+     * @param command %R1Q 指令（不含事务号）
+     * @param timeoutMs 超时时间（ms），含丢弃迟到响应的时间
+     * @return 配对的响应帧
+     * @throws InterruptedIOException 超时
+     * @throws IOException 指令无法标记事务号或链路异常
+     */
+    public byte[] sendCorrelatedCommand(byte[] command, int timeoutMs) throws IOException {
+        receiveLock.lock();
+        try {
+            int transactionId = nextTransactionId;
+            nextTransactionId = transactionId == GeoComCommandBuilder.MAX_TRANSACTION_ID ? 1 : transactionId + 1;
+            byte[] tagged = GeoComCommandBuilder.withTransactionId(command, transactionId);
+            if (tagged == null) {
+                throw new IOException("Command cannot carry a transaction id");
+            }
 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new IOException("Command interrupted: " + e.getMessage());
+            long sentNanos = System.nanoTime();
+            long deadline = sentNanos + timeoutMs * 1_000_000L;
+            sendLock.lock();
+            try {
+                writeLocked(tagged);
+            } finally {
+                sendLock.unlock();
+            }
+            while (true) {
+                long remainingMs = (deadline - System.nanoTime()) / 1_000_000L;
+                if (remainingMs <= 0) {
+                    throw new InterruptedIOException("Correlated reply timeout (trId " + transactionId + ")");
+                }
+                byte[] response = readLocked((int) remainingMs);
+                replyParser.parseReply(response, 0, response.length, reply);
+                if (reply.hasHeader() && reply.getTransactionId() == transactionId) {
+                    linkQuality.recordRtt(System.nanoTime() - sentNanos);
+                    return response;
+                }
+                linkQuality.recordActivity();
+                LogManager.w(TAG, () -> "Discarded stale reply: " + bytesToHex(response));
+            }
         } finally {
             receiveLock.unlock();
-            sendLock.unlock();
         }
     }
 
     /**
-     * 发送字符串命令并接收字符串响应
+     * 发送字符串命令并接收字符串响应，超时按指令的 RPC 编号查表
      */
     public String sendCommandAndReceiveString(String command) throws IOException {
-        return sendCommandAndReceiveString(command, DEFAULT_TIMEOUT_MS);
+        byte[] response = sendCommandAndReceive(command.getBytes("UTF-8"));
+        return new String(response, "UTF-8");
     }
 
     /**
@@ -154,6 +203,25 @@ public class WifiTransceiver {
         return new String(response, "UTF-8");
     }
 
+    // ==================== 加锁后的读写 ====================
+
+    private void writeLocked(byte[] data) throws IOException {
+        if (!wifiChannel.isConnected()) {
+            throw new IOException("WiFi not connected");
+        }
+        wifiChannel.sendData(data);
+        LogManager.d(TAG, () -> "Sent " + data.length + " bytes: " + bytesToHex(data));
+    }
+
+    private byte[] readLocked(int timeoutMs) throws IOException {
+        if (!wifiChannel.isConnected()) {
+            throw new IOException("WiFi not connected");
+        }
+        byte[] data = wifiChannel.receiveData((long) timeoutMs);
+        LogManager.d(TAG, () -> "Received " + data.length + " bytes: " + bytesToHex(data));
+        return data;
+    }
+
     // ==================== 流式操作 ====================
 
     /**
@@ -175,31 +243,16 @@ public class WifiTransceiver {
     /**
      * 字节数组转十六进制字符串
      */
-    private String bytesToHex(byte[] bytes) {
-        if (bytes == null || bytes.length == 0) {
-            return "";
-        }
-
+    private static String bytesToHex(byte[] bytes) {
         // 只显示前32字节
-        int length = Math.min(bytes.length, 32);
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < length; i++) {
-            sb.append(String.format("%02X ", bytes[i]));
-        }
-        if (bytes.length > 32) {
-            sb.append("... (").append(bytes.length).append(" bytes total)");
-        }
-        return sb.toString().trim();
+        return LogManager.toHex(bytes, 32);
     }
 
     /**
      * 清空输入缓冲区
      */
     public void clearInputBuffer() throws IOException {
-        InputStream inputStream = getInputStream();
-        while (inputStream.available() > 0) {
-            inputStream.read();
-        }
+        wifiChannel.clearReceiveBuffer();
         LogManager.d(TAG, "Input buffer cleared");
     }
 
@@ -208,4 +261,18 @@ public class WifiTransceiver {
     public WifiChannel getWifiChannel() {
         return wifiChannel;
     }
+
+    /**
+     * @return 链路质量统计（最近通信时间、RTT）
+     */
+    public LinkQuality getLinkQuality() {
+        return linkQuality;
+    }
+
+    /**
+     * @return true=有指令正在等待响应
+     */
+    public boolean isExchangeInProgress() {
+        return receiveLock.isLocked();
+    }
 }
@@ -8,19 +8,30 @@ import com.example.leicameasurement.controller.DetailPointController;
 import com.example.leicameasurement.controller.MeasurementController;
 import com.example.leicameasurement.controller.TraverseController;
 import com.example.leicameasurement.data.repository.DetailPointRepository;
+import com.example.leicameasurement.data.database.AppDatabase;
 import com.example.leicameasurement.data.repository.TraverseRepository;
+import com.example.leicameasurement.data.wal.RoomObservationStore;
+import com.example.leicameasurement.data.wal.WalConfig;
 import com.example.leicameasurement.data.wal.WalLogManager;
 import com.example.leicameasurement.device.adapter.InstrumentAdapter;
 import com.example.leicameasurement.device.adapter.InstrumentFactory;
 import com.example.leicameasurement.device.bluetooth.BluetoothLinkManager;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * 依赖注入（伪）
  */
 public class DependencyInjector {
 
+    private static final String TAG = "DependencyInjector";
+    private static final String WAL_DIR = "wal";
+
     private static BluetoothLinkManager sBluetoothLinkManager;
     private static AppStateManager sAppStateManager;
+    private static WalLogManager sWalLogManager;
+    private static DetailPointRepository sDetailPointRepository;
 
     public static MeasurementController provideMeasurementController(Context context) {
         ConfigManager configManager = new ConfigManager(context.getApplicationContext());
@@ -40,7 +51,7 @@ public class DependencyInjector {
         TraverseCalculator calculator = new TraverseCalculator();
         // These would be properly initialized in a real app with a database
         TraverseRepository repository = new TraverseRepository();
-        WalLogManager walLogManager = new WalLogManager();
+        WalLogManager walLogManager = provideWalLogManager(context);
         return new TraverseController(instrument, calculator, repository, walLogManager);
     }
 
@@ -49,10 +60,11 @@ public class DependencyInjector {
         MeasurementController measurementController = provideMeasurementController(context);
         InstrumentAdapter instrument = measurementController.getInstrument();
         DetailPointCalculator calculator = new DetailPointCalculator();
-        DetailPointRepository repository = new DetailPointRepository();
+        DetailPointRepository repository = provideDetailPointRepository(context);
         AppStateManager appStateManager = provideAppStateManager(context);
 
-        return new DetailPointController(instrument, calculator, repository, appStateManager);
+        return new DetailPointController(instrument, calculator, repository, appStateManager,
+                provideWalLogManager(context));
     }
 
     public static AppStateManager provideAppStateManager(Context context) {
@@ -87,16 +99,45 @@ public class DependencyInjector {
         return new TraverseCalculator();
     }
 
-    public static DetailPointRepository provideDetailPointRepository() {
-        return new DetailPointRepository();
+    /**
+     * 碎步点仓库（单例）：所有碎步点经同一个写入缓冲按顺序提交
+     */
+    public static synchronized DetailPointRepository provideDetailPointRepository(Context context) {
+        if (sDetailPointRepository == null) {
+            sDetailPointRepository = new DetailPointRepository(
+                    AppDatabase.getDatabase(context.getApplicationContext()));
+        }
+        return sDetailPointRepository;
     }
 
     public static TraverseRepository provideTraverseRepository() {
         return new TraverseRepository();
     }
 
-    public static WalLogManager provideWalLogManager() {
-        return new WalLogManager();
+    /**
+     * 观测 WAL（单例）：首次创建时在存储线程上打开 WAL 目录、重放崩溃前未写入数据库的观测，
+     * 并删除已全部应用的旧段；调用方（包括主线程）不做文件 I/O
+     */
+    public static synchronized WalLogManager provideWalLogManager(Context context) {
+        if (sWalLogManager == null) {
+            Context appContext = context.getApplicationContext();
+            WalLogManager manager = WalLogManager.openAsync(new File(appContext.getFilesDir(), WAL_DIR),
+                    new WalConfig(),
+                    new RoomObservationStore(AppDatabase.getDatabase(appContext),
+                            provideDetailPointRepository(appContext)),
+                    ThreadExecutor.getStorageExecutor());
+            // 移出写入缓冲的观测先记入 WAL 目录，WAL 保留它们所在的段
+            provideDetailPointRepository(appContext).setRejectionLog(manager.getRejections());
+            ThreadExecutor.getStorageExecutor().execute(() -> {
+                try {
+                    manager.recover();
+                } catch (IOException e) {
+                    LogManager.e(TAG, "WAL重放失败，将在下次写入观测时重试", e);
+                }
+            });
+            sWalLogManager = manager;
+        }
+        return sWalLogManager;
     }
 
     /**
@@ -108,5 +149,15 @@ public class DependencyInjector {
             sBluetoothLinkManager = null;
         }
         sAppStateManager = null;
+        synchronized (DependencyInjector.class) {
+            if (sDetailPointRepository != null) {
+                sDetailPointRepository.flush();
+                sDetailPointRepository = null;
+            }
+            if (sWalLogManager != null) {
+                sWalLogManager.close();
+                sWalLogManager = null;
+            }
+        }
     }
 }
\ No newline at end of file
@@ -2,26 +2,410 @@ package com.example.leicameasurement.infrastructure;
 
 import android.util.Log;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
 /**
  * 日志管理（统一日志输出）
+ * 调用线程只做级别判断并入队，格式化与写入 Logcat / 滚动日志文件由后台线程完成；
+ * 低于当前级别的日志不构造消息：Supplier 重载只在级别开启时求值（在调用线程），
+ * 参数化重载（String.format 格式）在后台线程格式化，参数入队后不应再被修改
+ * 队列有界，满时丢弃新日志并计数，调用线程从不阻塞
  */
 public class LogManager {
 
     private static final String TAG = "LeicaMeasurement";
 
-    public static void i(String tag, String msg) {
-        Log.i(TAG, "[" + tag + "] " + msg);
+    // 级别数值与 android.util.Log 一致
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int DRAIN_BATCH = 64;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private static final class Record {
+        final int level;
+        final String tag;
+        final String message;
+        final String format;
+        final Object[] args;
+        final Throwable error;
+        final long timeMillis;
+        final String threadName;
+        final CountDownLatch barrier;
+
+        Record(int level, String tag, String message, String format, Object[] args, Throwable error) {
+            this.level = level;
+            this.tag = tag;
+            this.message = message;
+            this.format = format;
+            this.args = args;
+            this.error = error;
+            this.timeMillis = System.currentTimeMillis();
+            this.threadName = Thread.currentThread().getName();
+            this.barrier = null;
+        }
+
+        Record(CountDownLatch barrier) {
+            this.level = 0;
+            this.tag = null;
+            this.message = null;
+            this.format = null;
+            this.args = null;
+            this.error = null;
+            this.timeMillis = 0;
+            this.threadName = null;
+            this.barrier = barrier;
+        }
+
+        String text() {
+            String text = message;
+            if (text == null) {
+                try {
+                    text = String.format(Locale.US, format, args);
+                } catch (RuntimeException e) {
+                    text = format + " [格式化失败: " + e + "]";
+                }
+            }
+            if (error != null) {
+                StringWriter trace = new StringWriter();
+                error.printStackTrace(new PrintWriter(trace));
+                text = text + '\n' + trace;
+            }
+            return text;
+        }
+    }
+
+    private static volatile int sLevel = DEBUG;
+    private static volatile boolean sAsync = true;
+    private static volatile RollingLogFile sFileSink;
+
+    private static final BlockingQueue<Record> sQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final AtomicLong sDropped = new AtomicLong();
+    private static final Object sWorkerLock = new Object();
+    private static Thread sWorker;
+
+    private LogManager() {
+    }
+
+    // ==================== 配置 ====================
+
+    /**
+     * 设置最低输出级别（默认 DEBUG），低于该级别的日志直接丢弃且不构造消息
+     * @param level VERBOSE / DEBUG / INFO / WARN / ERROR
+     */
+    public static void setLevel(int level) {
+        sLevel = level;
+    }
+
+    public static int getLevel() {
+        return sLevel;
+    }
+
+    public static boolean isLoggable(int level) {
+        return level >= sLevel;
+    }
+
+    public static boolean isDebugEnabled() {
+        return DEBUG >= sLevel;
+    }
+
+    /**
+     * 设置是否异步写出（默认异步）；同步模式下在调用线程直接写出，用于排查或测试
+     */
+    public static void setAsync(boolean async) {
+        if (!async) {
+            flush(1000);
+        }
+        sAsync = async;
+    }
+
+    /**
+     * 同时写入滚动日志文件
+     * @param dir 日志目录
+     * @param maxBytes 单个文件上限（字节）
+     * @param maxFiles 保留的文件数（含当前文件）
+     */
+    public static void enableFileSink(File dir, long maxBytes, int maxFiles) {
+        RollingLogFile previous;
+        synchronized (sWorkerLock) {
+            previous = sFileSink;
+            sFileSink = new RollingLogFile(dir, "app", maxBytes, maxFiles);
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * 停止写入日志文件（已入队的日志先写完）
+     */
+    public static void disableFileSink() {
+        flush(1000);
+        RollingLogFile previous;
+        synchronized (sWorkerLock) {
+            previous = sFileSink;
+            sFileSink = null;
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * @return 队列满而丢弃的日志条数
+     */
+    public static long getDroppedCount() {
+        return sDropped.get();
+    }
+
+    /**
+     * 等待此前入队的日志全部写出（含文件刷盘），用于退出或崩溃前
+     * @param timeoutMs 最长等待时间
+     * @return true=已全部写出
+     */
+    public static boolean flush(long timeoutMs) {
+        CountDownLatch barrier = new CountDownLatch(1);
+        try {
+            if (!sQueue.offer(new Record(barrier), timeoutMs, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+            ensureWorker();
+            return barrier.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // ==================== 日志接口 ====================
+
+    public static void v(String tag, String msg) {
+        log(VERBOSE, tag, msg);
     }
 
     public static void d(String tag, String msg) {
-        Log.d(TAG, "[" + tag + "] " + msg);
+        log(DEBUG, tag, msg);
+    }
+
+    public static void i(String tag, String msg) {
+        log(INFO, tag, msg);
     }
 
     public static void w(String tag, String msg) {
-        Log.w(TAG, "[" + tag + "] " + msg);
+        log(WARN, tag, msg);
     }
 
     public static void e(String tag, String msg) {
-        Log.e(TAG, "[" + tag + "] " + msg);
+        log(ERROR, tag, msg);
+    }
+
+    public static void e(String tag, String msg, Throwable error) {
+        if (isLoggable(ERROR)) {
+            enqueue(new Record(ERROR, tag, msg, null, null, error));
+        }
+    }
+
+    public static void d(String tag, Supplier<String> msg) {
+        log(DEBUG, tag, msg);
+    }
+
+    public static void i(String tag, Supplier<String> msg) {
+        log(INFO, tag, msg);
+    }
+
+    public static void w(String tag, Supplier<String> msg) {
+        log(WARN, tag, msg);
+    }
+
+    public static void d(String tag, String format, Object... args) {
+        log(DEBUG, tag, format, args);
+    }
+
+    public static void i(String tag, String format, Object... args) {
+        log(INFO, tag, format, args);
+    }
+
+    public static void w(String tag, String format, Object... args) {
+        log(WARN, tag, format, args);
+    }
+
+    public static void e(String tag, String format, Object... args) {
+        log(ERROR, tag, format, args);
+    }
+
+    public static void log(int level, String tag, String msg) {
+        if (isLoggable(level)) {
+            enqueue(new Record(level, tag, msg, null, null, null));
+        }
+    }
+
+    public static void log(int level, String tag, Supplier<String> msg) {
+        if (isLoggable(level)) {
+            enqueue(new Record(level, tag, msg.get(), null, null, null));
+        }
+    }
+
+    public static void log(int level, String tag, String format, Object... args) {
+        if (isLoggable(level)) {
+            enqueue(new Record(level, tag, null, format, args, null));
+        }
+    }
+
+    // ==================== 写出 ====================
+
+    private static void enqueue(Record record) {
+        if (!sAsync) {
+            write(record);
+            flushFile();
+            return;
+        }
+        if (!sQueue.offer(record)) {
+            sDropped.incrementAndGet();
+            return;
+        }
+        ensureWorker();
+    }
+
+    private static void ensureWorker() {
+        if (sWorker != null) {
+            return;
+        }
+        synchronized (sWorkerLock) {
+            if (sWorker == null) {
+                Thread worker = new Thread(LogManager::drainLoop, "LogWriter");
+                worker.setDaemon(true);
+                worker.start();
+                sWorker = worker;
+            }
+        }
+    }
+
+    private static void drainLoop() {
+        List<Record> batch = new ArrayList<>(DRAIN_BATCH);
+        long reportedDropped = 0;
+        while (true) {
+            try {
+                Record first = sQueue.take();
+                batch.add(first);
+                sQueue.drainTo(batch, DRAIN_BATCH - 1);
+            } catch (InterruptedException e) {
+                // 守护线程，忽略中断继续写出
+                continue;
+            }
+            long dropped = sDropped.get();
+            if (dropped != reportedDropped) {
+                write(new Record(WARN, "LogManager",
+                        "日志队列已满，累计丢弃 " + dropped + " 条", null, null, null));
+                reportedDropped = dropped;
+            }
+            for (Record record : batch) {
+                if (record.barrier != null) {
+                    flushFile();
+                    record.barrier.countDown();
+                } else {
+                    write(record);
+                }
+            }
+            batch.clear();
+            flushFile();
+        }
+    }
+
+    private static void write(Record record) {
+        String text = record.text();
+        try {
+            String msg = "[" + record.tag + "] " + text;
+            switch (record.level) {
+                case VERBOSE:
+                case DEBUG:
+                    Log.d(TAG, msg);
+                    break;
+                case INFO:
+                    Log.i(TAG, msg);
+                    break;
+                case WARN:
+                    Log.w(TAG, msg);
+                    break;
+                default:
+                    Log.e(TAG, msg);
+                    break;
+            }
+        } catch (RuntimeException e) {
+            // 写出失败不能影响后台线程
+        }
+        RollingLogFile sink = sFileSink;
+        if (sink != null) {
+            sink.append(formatLine(record, text));
+        }
+    }
+
+    private static void flushFile() {
+        RollingLogFile sink = sFileSink;
+        if (sink != null) {
+            sink.flush();
+        }
+    }
+
+    private static String formatLine(Record record, String text) {
+        SimpleDateFormat time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        return time.format(new Date(record.timeMillis)) + ' ' + levelName(record.level)
+                + '/' + record.tag + " (" + record.threadName + "): " + text;
+    }
+
+    private static char levelName(int level) {
+        switch (level) {
+            case VERBOSE: return 'V';
+            case DEBUG: return 'D';
+            case INFO: return 'I';
+            case WARN: return 'W';
+            default: return 'E';
+        }
+    }
+
+    /**
+     * 十六进制转储（用于报文日志），只应在 Supplier 中或级别判断之后调用
+     */
+    public static String toHex(byte[] bytes) {
+        return toHex(bytes, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 十六进制转储，超过 limit 字节时截断并注明总长度
+     */
+    public static String toHex(byte[] bytes, int limit) {
+        if (bytes == null || bytes.length == 0) {
+            return "";
+        }
+        int length = Math.min(bytes.length, limit);
+        StringBuilder sb = new StringBuilder(length * 3 + 24);
+        for (int i = 0; i < length; i++) {
+            int b = bytes[i] & 0xFF;
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(HEX[b >>> 4]).append(HEX[b & 0x0F]);
+        }
+        if (bytes.length > length) {
+            sb.append(" ... (").append(bytes.length).append(" bytes total)");
+        }
+        return sb.toString();
     }
 }
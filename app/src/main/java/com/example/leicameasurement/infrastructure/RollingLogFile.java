@@ -0,0 +1,132 @@
+package com.example.leicameasurement.infrastructure;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 滚动日志文件：当前文件为 <name>.log，超过上限后依次改名为 <name>.1.log、<name>.2.log …，
+ * 最多保留 maxFiles 个文件
+ * 写入失败只停用文件输出，不抛异常（日志不能影响业务）
+ */
+public class RollingLogFile {
+
+    private final File dir;
+    private final String name;
+    private final long maxBytes;
+    private final int maxFiles;
+
+    private Writer writer;
+    private long size;
+    private boolean failed = false;
+
+    /**
+     * @param dir 日志目录（不存在时创建）
+     * @param name 文件名前缀
+     * @param maxBytes 单个文件上限（字节）
+     * @param maxFiles 保留的文件数（含当前文件，至少 1）
+     */
+    public RollingLogFile(File dir, String name, long maxBytes, int maxFiles) {
+        this.dir = dir;
+        this.name = name;
+        this.maxBytes = Math.max(1024, maxBytes);
+        this.maxFiles = Math.max(1, maxFiles);
+    }
+
+    public File getCurrentFile() {
+        return fileAt(0);
+    }
+
+    /**
+     * 追加一行
+     */
+    public synchronized void append(String line) {
+        if (failed) {
+            return;
+        }
+        try {
+            if (writer == null) {
+                open();
+            } else if (size >= maxBytes) {
+                roll();
+            }
+            writer.write(line);
+            writer.write('\n');
+            // 按 UTF-8 估算，中文每字 3 字节
+            size += line.length() + 1L + countNonAscii(line) * 2L;
+        } catch (IOException e) {
+            fail();
+        }
+    }
+
+    public synchronized void flush() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            fail();
+        }
+    }
+
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            // 忽略
+        }
+        writer = null;
+    }
+
+    private void open() throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("无法创建日志目录: " + dir);
+        }
+        File file = fileAt(0);
+        size = file.length();
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+    }
+
+    private void roll() throws IOException {
+        writer.close();
+        writer = null;
+        File oldest = fileAt(maxFiles - 1);
+        if (oldest.exists() && !oldest.delete()) {
+            throw new IOException("无法删除旧日志: " + oldest);
+        }
+        for (int i = maxFiles - 2; i >= 0; i--) {
+            File file = fileAt(i);
+            if (file.exists() && !file.renameTo(fileAt(i + 1))) {
+                throw new IOException("无法滚动日志: " + file);
+            }
+        }
+        open();
+    }
+
+    private File fileAt(int index) {
+        return new File(dir, index == 0 ? name + ".log" : name + "." + index + ".log");
+    }
+
+    private void fail() {
+        failed = true;
+        close();
+    }
+
+    private static int countNonAscii(String line) {
+        int count = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) >= 0x80) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -12,6 +12,9 @@ public class ThreadExecutor {
     private static final ExecutorService communicationExecutor = Executors.newSingleThreadExecutor();
     private static final ExecutorService calculationExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
     private static final ExecutorService storageExecutor = Executors.newSingleThreadExecutor();
+    // WAL 模式下 SQLite 连接池默认 4 个连接，主连接留给存储线程写入，其余 3 个供读查询并发使用
+    private static final int DATABASE_READ_THREADS = 3;
+    private static final ExecutorService databaseReadExecutor = Executors.newFixedThreadPool(DATABASE_READ_THREADS);
     private static final ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
 
 
@@ -27,6 +30,13 @@ public class ThreadExecutor {
         return storageExecutor;
     }
 
+    /**
+     * 数据库读查询（Room 的查询线程、分页加载），不与存储线程上的批量写入排队
+     */
+    public static ExecutorService getDatabaseReadExecutor() {
+        return databaseReadExecutor;
+    }
+
     public static ScheduledExecutorService getScheduledExecutor() {
         return scheduledExecutor;
     }
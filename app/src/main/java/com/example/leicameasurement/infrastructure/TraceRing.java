@@ -0,0 +1,273 @@
+package com.example.leicameasurement.infrastructure;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 内存跟踪环：固定容量的二进制跟踪记录（时间戳、事件号、最多 4 个数值参数），
+ * 任意线程无锁写入、不分配内存，满后覆盖最旧记录
+ * 事件模板（标签、级别、文本）预先注册，只在显示或导出时才格式化为文本，
+ * 测量过程中不产生字符串开销；可按需或在崩溃时写入文件
+ *
+ * 每条记录占 8 个 long：[序号戳, 时间戳, 事件号|参数个数, 参数0..3, 保留]
+ * 写入方先把序号戳置为"写入中"，写完字段后发布序号；读取方前后两次读取序号戳一致才采用，
+ * 被并发覆盖的记录直接跳过
+ */
+public final class TraceRing {
+
+    private static final String TAG = "TraceRing";
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final int STRIDE = 8;
+    private static final int MAX_EVENTS = 1 << 16;
+    private static final int MAX_ARGS = 4;
+
+    private static final TraceRing GLOBAL = new TraceRing(DEFAULT_CAPACITY);
+
+    /**
+     * 事件模板
+     */
+    private static final class Event {
+        final String tag;
+        final int level;
+        final String template;
+
+        Event(String tag, int level, String template) {
+            this.tag = tag;
+            this.level = level;
+            this.template = template;
+        }
+    }
+
+    private static final Object sEventLock = new Object();
+    private static volatile Event[] sEvents = new Event[0];
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray slots;
+    private final AtomicLong cursor = new AtomicLong();
+
+    /**
+     * @param capacity 记录条数（向上取整为 2 的幂）
+     */
+    public TraceRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.slots = new AtomicLongArray(size * STRIDE);
+        for (int i = 0; i < size; i++) {
+            slots.set(i * STRIDE, -1);
+        }
+    }
+
+    /**
+     * @return 全局跟踪环（各模块共用，日志页面显示的即为此实例）
+     */
+    public static TraceRing global() {
+        return GLOBAL;
+    }
+
+    /**
+     * 注册事件模板，通常保存在静态常量中
+     * @param tag 模块标签
+     * @param level 级别（LogManager.DEBUG 等）
+     * @param template 文本模板，"{}" 依次替换为参数（整数值按整数显示）
+     * @return 事件号
+     */
+    public static int event(String tag, int level, String template) {
+        synchronized (sEventLock) {
+            Event[] events = sEvents;
+            if (events.length >= MAX_EVENTS) {
+                throw new IllegalStateException("跟踪事件过多");
+            }
+            Event[] grown = new Event[events.length + 1];
+            System.arraycopy(events, 0, grown, 0, events.length);
+            grown[events.length] = new Event(tag, level, template);
+            sEvents = grown;
+            return events.length;
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return 累计写入条数（含已被覆盖的）
+     */
+    public long getWrittenCount() {
+        return cursor.get();
+    }
+
+    // ==================== 写入（无锁、不分配内存） ====================
+
+    public void record(int event) {
+        write(event, 0, 0, 0, 0, 0);
+    }
+
+    public void record(int event, double a0) {
+        write(event, 1, a0, 0, 0, 0);
+    }
+
+    public void record(int event, double a0, double a1) {
+        write(event, 2, a0, a1, 0, 0);
+    }
+
+    public void record(int event, double a0, double a1, double a2) {
+        write(event, 3, a0, a1, a2, 0);
+    }
+
+    public void record(int event, double a0, double a1, double a2, double a3) {
+        write(event, 4, a0, a1, a2, a3);
+    }
+
+    private void write(int event, int argCount, double a0, double a1, double a2, double a3) {
+        long seq = cursor.getAndIncrement();
+        int base = (int) (seq & mask) * STRIDE;
+        // 写入中：读取方看到负值或序号变化即放弃该槽
+        slots.set(base, -seq - 2);
+        slots.lazySet(base + 1, System.currentTimeMillis());
+        slots.lazySet(base + 2, ((long) event << 8) | argCount);
+        slots.lazySet(base + 3, Double.doubleToRawLongBits(a0));
+        slots.lazySet(base + 4, Double.doubleToRawLongBits(a1));
+        slots.lazySet(base + 5, Double.doubleToRawLongBits(a2));
+        slots.lazySet(base + 6, Double.doubleToRawLongBits(a3));
+        slots.lazySet(base, seq);
+    }
+
+    // ==================== 读取与显示 ====================
+
+    /**
+     * 格式化最近的记录（旧的在前）
+     * @param maxLines 最多行数
+     */
+    public List<String> render(int maxLines) {
+        long end = cursor.get();
+        long start = Math.max(0, Math.max(end - capacity, end - maxLines));
+        List<String> lines = new ArrayList<>((int) (end - start));
+        SimpleDateFormat time = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+        Event[] events = sEvents;
+        double[] args = new double[MAX_ARGS];
+        StringBuilder line = new StringBuilder();
+        for (long seq = start; seq < end; seq++) {
+            int base = (int) (seq & mask) * STRIDE;
+            if (slots.get(base) != seq) {
+                continue;
+            }
+            long timeMillis = slots.get(base + 1);
+            long header = slots.get(base + 2);
+            for (int i = 0; i < MAX_ARGS; i++) {
+                args[i] = Double.longBitsToDouble(slots.get(base + 3 + i));
+            }
+            if (slots.get(base) != seq) {
+                continue; // 读取期间被覆盖
+            }
+            int eventId = (int) (header >>> 8);
+            int argCount = (int) (header & 0xFF);
+            line.setLength(0);
+            line.append(time.format(new Date(timeMillis))).append(' ');
+            if (eventId < events.length) {
+                Event event = events[eventId];
+                line.append(levelName(event.level)).append('/').append(event.tag).append(": ");
+                appendTemplate(line, event.template, args, argCount);
+            } else {
+                line.append("?/").append(TAG).append(": 未知事件 ").append(eventId);
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * 将环中全部记录以文本追加写入文件
+     * @throws IOException 写入失败
+     */
+    public void writeTo(File file) throws IOException {
+        List<String> lines = render(capacity);
+        try (Writer writer = new FileWriter(file, true)) {
+            writer.write("---- trace " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US).format(new Date())
+                    + " (" + lines.size() + " 条，累计 " + cursor.get() + " 条) ----\n");
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * 安装未捕获异常处理器：崩溃时先把全局跟踪环和排队中的日志写入 dir/trace-crash.txt，
+     * 再交给原处理器
+     */
+    public static void installCrashHandler(File dir) {
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        if (previous instanceof CrashHandler) {
+            return;
+        }
+        Thread.setDefaultUncaughtExceptionHandler(new CrashHandler(dir, previous));
+    }
+
+    private static final class CrashHandler implements Thread.UncaughtExceptionHandler {
+        private final File dir;
+        private final Thread.UncaughtExceptionHandler previous;
+
+        CrashHandler(File dir, Thread.UncaughtExceptionHandler previous) {
+            this.dir = dir;
+            this.previous = previous;
+        }
+
+        @Override
+        public void uncaughtException(Thread thread, Throwable error) {
+            try {
+                LogManager.e(TAG, "未捕获异常（线程 " + thread.getName() + "）", error);
+                LogManager.flush(500);
+                if (dir.exists() || dir.mkdirs()) {
+                    GLOBAL.writeTo(new File(dir, "trace-crash.txt"));
+                }
+            } catch (Throwable ignored) {
+                // 崩溃路径上不能再抛出
+            }
+            if (previous != null) {
+                previous.uncaughtException(thread, error);
+            }
+        }
+    }
+
+    private static void appendTemplate(StringBuilder out, String template, double[] args, int argCount) {
+        int arg = 0;
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == '{' && i + 1 < template.length() && template.charAt(i + 1) == '}' && arg < argCount) {
+                appendNumber(out, args[arg++]);
+                i++;
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    private static void appendNumber(StringBuilder out, double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(String.format(Locale.US, "%.6f", value));
+        }
+    }
+
+    private static char levelName(int level) {
+        switch (level) {
+            case LogManager.VERBOSE: return 'V';
+            case LogManager.DEBUG: return 'D';
+            case LogManager.INFO: return 'I';
+            case LogManager.WARN: return 'W';
+            default: return 'E';
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.leicameasurement.ui.adapter;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+import com.example.leicameasurement.R;
+import com.example.leicameasurement.data.entity.DetailPoint;
+import com.example.leicameasurement.data.repository.DetailPointPager;
+
+/**
+ * 碎步点列表：条目来自 DetailPointPager 的分页窗口，绑定到窗口两端时自动加载相邻页
+ */
+public class DetailPointPagingAdapter extends RecyclerView.Adapter<DetailPointPagingAdapter.ViewHolder>
+        implements DetailPointPager.Listener {
+
+    private DetailPointPager pager;
+
+    /**
+     * 切换数据来源（例如当前任务变化），旧的加载器由调用方关闭
+     */
+    public void setPager(DetailPointPager pager) {
+        this.pager = pager;
+        if (pager != null) {
+            pager.setListener(this);
+        }
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public void onItemsInserted(int position, int count) {
+        notifyItemRangeInserted(position, count);
+    }
+
+    @Override
+    public void onItemsRemoved(int position, int count) {
+        notifyItemRangeRemoved(position, count);
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item_detail_point, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        DetailPoint point = pager.getItem(position);
+        holder.pointName.setText(point.getPointName());
+        holder.pointCoordinates.setText(point.getCoordinateString());
+    }
+
+    @Override
+    public int getItemCount() {
+        return pager == null ? 0 : pager.getItemCount();
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        TextView pointName;
+        TextView pointCoordinates;
+
+        ViewHolder(@NonNull View itemView) {
+            super(itemView);
+            pointName = itemView.findViewById(R.id.point_name);
+            pointCoordinates = itemView.findViewById(R.id.point_coordinates);
+        }
+    }
+}
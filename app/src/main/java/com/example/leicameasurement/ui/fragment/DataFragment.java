@@ -4,17 +4,137 @@ import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.viewpager2.widget.ViewPager2;
 import com.example.leicameasurement.R;
+import com.example.leicameasurement.data.repository.DetailPointPager;
+import com.example.leicameasurement.data.repository.DetailPointRepository;
+import com.example.leicameasurement.infrastructure.DependencyInjector;
+import com.example.leicameasurement.ui.adapter.DetailPointPagingAdapter;
+import com.google.android.material.tabs.TabLayout;
+import com.google.android.material.tabs.TabLayoutMediator;
 
+/**
+ * 数据页面：碎步点标签页按当前任务分页显示（DetailPointPager），
+ * 大任务也只在内存中保留几页，不会一次读出整个表
+ */
 public class DataFragment extends Fragment {
 
+    private static final String[] TAB_TITLES = {"导线数据", "碎步点数据", "日志文件"};
+    private static final int TAB_DETAIL_POINTS = 1;
+
+    private DetailPointRepository repository;
+    private final DetailPointPagingAdapter detailPointAdapter = new DetailPointPagingAdapter();
+    private DetailPointPager pager;
+
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
         // Inflate the layout for this fragment
-        return inflater.inflate(R.layout.fragment_data, container, false);
+        View view = inflater.inflate(R.layout.fragment_data, container, false);
+        repository = DependencyInjector.provideDetailPointRepository(requireContext());
+
+        ViewPager2 viewPager = view.findViewById(R.id.data_viewpager);
+        TabLayout tabs = view.findViewById(R.id.data_tabs);
+        viewPager.setAdapter(new PagesAdapter());
+        new TabLayoutMediator(tabs, viewPager, (tab, position) -> tab.setText(TAB_TITLES[position])).attach();
+
+        DependencyInjector.provideAppStateManager(requireContext()).getCurrentTaskId()
+                .observe(getViewLifecycleOwner(), taskId -> showTask(taskId));
+        return view;
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        reload();
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        detailPointAdapter.setPager(null);
+        if (pager != null) {
+            pager.close();
+            pager = null;
+        }
+    }
+
+    private void showTask(Long taskId) {
+        if (pager != null && taskId != null && pager.getTaskId() == taskId) {
+            return;
+        }
+        if (pager != null) {
+            pager.close();
+            pager = null;
+        }
+        if (taskId != null && taskId > 0) {
+            pager = repository.createPager(taskId, ContextCompat.getMainExecutor(requireContext()));
+        }
+        detailPointAdapter.setPager(pager);
+        reload();
+    }
+
+    /**
+     * 先写入缓冲中的点，写完后从头加载
+     */
+    private void reload() {
+        DetailPointPager current = pager;
+        if (current == null) {
+            return;
+        }
+        repository.flush().whenCompleteAsync((ignored, error) -> {
+            // 写入失败时仍显示已提交的点；等待期间切换了任务则放弃
+            if (pager == current) {
+                current.refresh();
+            }
+        }, ContextCompat.getMainExecutor(requireContext()));
+    }
+
+    /**
+     * 三个标签页；导线数据和日志文件暂无内容
+     */
+    private class PagesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+        @Override
+        public int getItemViewType(int position) {
+            return position;
+        }
+
+        @NonNull
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            View page;
+            if (viewType == TAB_DETAIL_POINTS) {
+                RecyclerView list = new RecyclerView(parent.getContext());
+                list.setLayoutManager(new LinearLayoutManager(parent.getContext()));
+                list.setAdapter(detailPointAdapter);
+                page = list;
+            } else {
+                TextView empty = new TextView(parent.getContext());
+                empty.setText("暂无数据");
+                empty.setPadding(32, 32, 32, 32);
+                page = empty;
+            }
+            page.setLayoutParams(new ViewGroup.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+            return new RecyclerView.ViewHolder(page) {
+            };
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return TAB_TITLES.length;
+        }
     }
 }
@@ -4,16 +4,99 @@ import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import com.example.leicameasurement.R;
+import com.example.leicameasurement.device.adapter.InstrumentAdapter;
+import com.example.leicameasurement.device.connection.CommandMetrics;
+import com.example.leicameasurement.device.connection.CommandMetricsSnapshot;
+import com.example.leicameasurement.infrastructure.DependencyInjector;
+import com.example.leicameasurement.infrastructure.LogManager;
+import com.example.leicameasurement.infrastructure.TraceRing;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 日志页面：显示按 RPC 统计的指令延迟表格和最近的跟踪记录，可导出到应用文件目录
+ * 跟踪记录只在刷新时才格式化为文本
+ */
 public class LogFragment extends Fragment {
 
+    private static final String TAG = "LogFragment";
+    private static final String METRICS_FILE = "command_metrics.txt";
+    private static final String TRACE_FILE = "trace.txt";
+    private static final int TRACE_LINES = 200;
+
+    private TextView metricsText;
+
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
-        return inflater.inflate(R.layout.fragment_log, container, false);
+        View view = inflater.inflate(R.layout.fragment_log, container, false);
+        metricsText = view.findViewById(R.id.command_metrics_text);
+        Button btnRefresh = view.findViewById(R.id.btn_refresh_metrics);
+        Button btnExport = view.findViewById(R.id.btn_export_metrics);
+
+        btnRefresh.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                refresh();
+            }
+        });
+
+        btnExport.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                export();
+            }
+        });
+        return view;
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        refresh();
+    }
+
+    private void refresh() {
+        CommandMetricsSnapshot snapshot = takeSnapshot();
+        StringBuilder text = new StringBuilder(snapshot != null ? snapshot.format() : "未连接仪器，暂无指令统计\n");
+        List<String> trace = TraceRing.global().render(TRACE_LINES);
+        text.append("\n最近跟踪记录（").append(trace.size()).append(" 条）\n");
+        for (String line : trace) {
+            text.append(line).append('\n');
+        }
+        metricsText.setText(text);
+    }
+
+    private void export() {
+        CommandMetricsSnapshot snapshot = takeSnapshot();
+        File dir = requireContext().getFilesDir();
+        try {
+            if (snapshot != null) {
+                snapshot.writeTo(new File(dir, METRICS_FILE));
+            }
+            TraceRing.global().writeTo(new File(dir, TRACE_FILE));
+            Toast.makeText(requireContext(), "已导出到 " + dir.getAbsolutePath(), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            LogManager.e(TAG, "导出失败: " + e.getMessage());
+            Toast.makeText(requireContext(), "导出失败: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private CommandMetricsSnapshot takeSnapshot() {
+        InstrumentAdapter instrument = DependencyInjector.provideInstrumentAdapter(requireContext());
+        if (instrument == null) {
+            return null;
+        }
+        CommandMetrics metrics = instrument.getCommandMetrics();
+        return metrics != null ? metrics.snapshot() : null;
     }
 }
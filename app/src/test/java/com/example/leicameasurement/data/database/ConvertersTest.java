@@ -0,0 +1,87 @@
+package com.example.leicameasurement.data.database;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Converters 数值列表/数组转换单元测试
+ * 验证二进制编码往返、字节序、旧版 JSON 行的读取和错误数据的拒绝
+ */
+public class ConvertersTest {
+
+    @Test
+    public void lists_roundTripThroughBinaryBlob() {
+        List<Double> angles = Arrays.asList(0.0, Math.PI, -1.2345678901234, Double.NaN, Double.MAX_VALUE, -0.0);
+        byte[] blob = Converters.doubleListToBlob(angles);
+        assertTrue(NumericArrayCodec.isEncoded(blob));
+        assertEquals(2 + angles.size() * 8, blob.length);
+        assertEquals(angles, Converters.blobToDoubleList(blob));
+
+        List<Integer> faces = Arrays.asList(1, 2, -1, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        assertEquals(faces, Converters.blobToIntegerList(Converters.integerListToBlob(faces)));
+
+        assertEquals(Collections.emptyList(), Converters.blobToDoubleList(Converters.doubleListToBlob(Collections.emptyList())));
+        assertNull(Converters.doubleListToBlob(null));
+        assertEquals(Collections.emptyList(), Converters.blobToIntegerList(null));
+    }
+
+    @Test
+    public void primitiveArrays_areLittleEndianWithVersionHeader() {
+        double[] profile = new double[1000];
+        for (int i = 0; i < profile.length; i++) {
+            profile[i] = 100 + Math.sin(i * 0.01) * 3.21;
+        }
+        byte[] blob = Converters.doubleArrayToBlob(profile);
+        assertArrayEquals(profile, Converters.blobToDoubleArray(blob), 0);
+        // 比 JSON 文本小
+        int jsonBytes = Arrays.toString(profile).replace(" ", "").getBytes(StandardCharsets.UTF_8).length;
+        assertTrue(blob.length * 2 < jsonBytes);
+
+        byte[] ints = Converters.intArrayToBlob(new int[]{1, 0x01020304});
+        assertArrayEquals(new byte[]{NumericArrayCodec.FORMAT_VERSION, 'I', 1, 0, 0, 0, 4, 3, 2, 1}, ints);
+        assertArrayEquals(new int[]{1, 0x01020304}, Converters.blobToIntArray(ints));
+        assertNull(Converters.blobToDoubleArray(null));
+    }
+
+    @Test
+    public void legacyJsonRows_stillReadable() {
+        byte[] doubles = "[1.5,2.25,-3.0]".getBytes(StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList(1.5, 2.25, -3.0), Converters.blobToDoubleList(doubles));
+        assertArrayEquals(new double[]{1.5, 2.25, -3.0}, Converters.blobToDoubleArray(doubles), 0);
+
+        byte[] ints = "[3, 1, 4]".getBytes(StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList(3, 1, 4), Converters.blobToIntegerList(ints));
+        assertArrayEquals(new int[]{3, 1, 4}, Converters.blobToIntArray(ints));
+
+        assertEquals(Collections.emptyList(), Converters.blobToDoubleList("null".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void mismatchedOrTruncatedBlob_rejected() {
+        byte[] ints = Converters.intArrayToBlob(new int[]{1, 2});
+        try {
+            Converters.blobToDoubleArray(ints);
+            fail("int 数组不应按 double 解码");
+        } catch (IllegalArgumentException expected) {
+            // 元素类型不符
+        }
+        try {
+            Converters.blobToIntArray(Arrays.copyOf(ints, ints.length - 1));
+            fail("截断的数据应被拒绝");
+        } catch (IllegalArgumentException expected) {
+            // 长度不是完整元素
+        }
+        try {
+            Converters.doubleListToBlob(Arrays.asList(1.0, null));
+            fail("null 元素无法编码");
+        } catch (IllegalArgumentException expected) {
+            // 二进制格式不表示 null
+        }
+    }
+}
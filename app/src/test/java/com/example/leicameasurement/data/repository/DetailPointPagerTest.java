@@ -0,0 +1,175 @@
+package com.example.leicameasurement.data.repository;
+
+import com.example.leicameasurement.data.entity.DetailPoint;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * DetailPointPager 单元测试
+ * 内存中的有序数据代替 DAO，验证键集翻页覆盖全部点、窗口页数有上限、向前翻页和刷新
+ */
+public class DetailPointPagerTest {
+
+    private static final long TASK_ID = 7;
+
+    /**
+     * 按 (timestamp, pointId) 有序的点，与 DAO 查询语义一致；记录每次查询读取的行数
+     */
+    private static class ListSource implements DetailPointPager.PageSource {
+        final List<DetailPoint> points = new ArrayList<>();
+        int maxRowsPerQuery;
+        int queries;
+
+        @Override
+        public List<DetailPoint> loadAfter(long taskId, long timestamp, long pointId, int limit) {
+            queries++;
+            List<DetailPoint> page = new ArrayList<>();
+            for (DetailPoint point : points) {
+                if (point.timestamp > timestamp || (point.timestamp == timestamp && point.pointId > pointId)) {
+                    page.add(point);
+                    if (page.size() == limit) {
+                        break;
+                    }
+                }
+            }
+            maxRowsPerQuery = Math.max(maxRowsPerQuery, page.size());
+            return page;
+        }
+
+        @Override
+        public List<DetailPoint> loadBefore(long taskId, long timestamp, long pointId, int limit) {
+            queries++;
+            List<DetailPoint> page = new ArrayList<>();
+            for (int i = points.size() - 1; i >= 0; i--) {
+                DetailPoint point = points.get(i);
+                if (point.timestamp < timestamp || (point.timestamp == timestamp && point.pointId < pointId)) {
+                    page.add(point);
+                    if (page.size() == limit) {
+                        break;
+                    }
+                }
+            }
+            maxRowsPerQuery = Math.max(maxRowsPerQuery, page.size());
+            return page;
+        }
+    }
+
+    /**
+     * 模拟主线程队列：结果在 runPending() 时才合并
+     */
+    private static class QueuedExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runPending() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
+    private ListSource source;
+    private QueuedExecutor main;
+
+    @Before
+    public void setUp() {
+        source = new ListSource();
+        main = new QueuedExecutor();
+        // 每 3 个点共用一个时间戳，检验相同时间戳时按 pointId 区分
+        for (int i = 0; i < 1050; i++) {
+            DetailPoint point = new DetailPoint(TASK_ID, "P" + i, i, i, 0, 0, 0, 0, 1.5, "STANDARD", 1000 + i / 3);
+            point.pointId = i + 1;
+            source.points.add(point);
+        }
+    }
+
+    private DetailPointPager pager(int pageSize, int maxPages) {
+        return new DetailPointPager(source, TASK_ID, Runnable::run, main, pageSize, maxPages);
+    }
+
+    @Test
+    public void scrollForward_visitsEveryPointOnceWithBoundedWindow() {
+        DetailPointPager pager = pager(100, 3);
+        int[] position = {0};
+        pager.setListener(new DetailPointPager.Listener() {
+            @Override
+            public void onItemsInserted(int at, int count) {
+                assertEquals(pager.getItemCount() - count, at);
+            }
+
+            @Override
+            public void onItemsRemoved(int at, int count) {
+                // 开头的页被丢弃，当前位置随之前移
+                assertEquals(0, at);
+                position[0] -= count;
+            }
+        });
+        pager.refresh();
+        main.runPending();
+
+        // 逐个访问下一个点，模拟一直向下滚动
+        List<String> seen = new ArrayList<>();
+        while (position[0] < pager.getItemCount()) {
+            seen.add(pager.getItem(position[0]).pointName);
+            main.runPending();
+            assertTrue(pager.getLoadedPageCount() <= 3);
+            position[0]++;
+        }
+        assertTrue(pager.isEndReached());
+        assertFalse(pager.isStartReached());
+        assertEquals(1050, seen.size());
+        for (int i = 0; i < seen.size(); i++) {
+            assertEquals("P" + i, seen.get(i));
+        }
+        // 每次查询只读取一页
+        assertEquals(100, source.maxRowsPerQuery);
+        assertEquals(11, source.queries);
+    }
+
+    @Test
+    public void scrollBack_reloadsDroppedPagesInOrder() {
+        DetailPointPager pager = pager(100, 2);
+        pager.refresh();
+        main.runPending();
+        // 向下翻 5 页：窗口只保留最后 2 页
+        for (int i = 0; i < 5; i++) {
+            pager.getItem(pager.getItemCount() - 1);
+            main.runPending();
+        }
+        assertEquals(200, pager.getItemCount());
+        assertEquals("P400", pager.getItem(0).pointName);
+
+        // 访问窗口开头触发向前加载，末尾的页被丢弃
+        main.runPending();
+        assertEquals(200, pager.getItemCount());
+        assertEquals("P300", pager.getItem(0).pointName);
+        assertEquals("P499", pager.getItem(199).pointName);
+        assertFalse(pager.isStartReached());
+        assertFalse(pager.isEndReached());
+    }
+
+    @Test
+    public void refresh_discardsInFlightResultsAndStartsOver() {
+        DetailPointPager pager = pager(100, 3);
+        pager.refresh();
+        pager.refresh();  // 第一次加载的结果尚未合并
+        main.runPending();
+        assertEquals(100, pager.getItemCount());
+        assertEquals("P0", pager.getItem(0).pointName);
+
+        pager.close();
+        main.runPending();
+        assertEquals(0, pager.getItemCount());
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.leicameasurement.data.repository;
+
+import com.example.leicameasurement.data.entity.DetailPoint;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * DetailPointRepository 单元测试
+ * 验证按数量/时间触发的批量写入、屏障、失败批次保留重试和检查点推进、
+ * 约束冲突的批次逐条写入并先记录再移出坏行、暂时性错误不丢点
+ */
+public class DetailPointRepositoryTest {
+
+    /**
+     * 模拟约束冲突（行本身引起的错误）
+     */
+    private static class RowError extends IllegalStateException {
+        RowError(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 记录每个事务写入的内容，可设置暂时性失败次数和始终约束冲突的点号
+     */
+    private static class RecordingWriter implements DetailPointRepository.BatchWriter {
+        final List<String> written = new ArrayList<>();
+        final Set<String> poison = new HashSet<>();
+        long checkpoint;
+        int failures;
+
+        @Override
+        public synchronized void write(List<DetailPoint> points, long walSequence) {
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("模拟数据库写入失败");
+            }
+            for (DetailPoint point : points) {
+                if (poison.contains(point.pointName)) {
+                    throw new RowError("模拟约束冲突：" + point.pointName);
+                }
+            }
+            for (DetailPoint point : points) {
+                written.add(point.pointName);
+            }
+            if (walSequence > 0) {
+                checkpoint = walSequence;
+            }
+        }
+
+        @Override
+        public boolean isRowError(RuntimeException e) {
+            return e instanceof RowError;
+        }
+
+        synchronized int writtenCount() {
+            return written.size();
+        }
+    }
+
+    private ExecutorService storage;
+    private ScheduledExecutorService scheduler;
+    private RecordingWriter writer;
+
+    @Before
+    public void setUp() {
+        storage = Executors.newSingleThreadExecutor();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        writer = new RecordingWriter();
+    }
+
+    @After
+    public void tearDown() {
+        storage.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    private DetailPointRepository repository(int batchSize, long flushDelayMs, int capacity) {
+        return new DetailPointRepository(null, writer, storage, scheduler, batchSize, flushDelayMs, capacity);
+    }
+
+    private static DetailPoint point(int i) {
+        return new DetailPoint(1, "P" + i, i, i, 0, 0, 0, 0, 1.5, "STANDARD", i);
+    }
+
+    private void awaitWritten(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.writtenCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, writer.writtenCount());
+    }
+
+    @Test
+    public void fullBatch_writtenWithoutWaitingForDelay() throws Exception {
+        DetailPointRepository repository = repository(10, 60_000, 100);
+        for (int i = 0; i < 10; i++) {
+            repository.save(point(i), i + 1);
+        }
+        awaitWritten(10);
+        assertEquals(10, writer.checkpoint);
+
+        // 不满一批且未到时间：留在缓冲区
+        for (int i = 10; i < 15; i++) {
+            repository.save(point(i), i + 1);
+        }
+        Thread.sleep(50);
+        assertEquals(5, repository.getPendingCount());
+        assertEquals(10, writer.writtenCount());
+
+        // 任务结束时的屏障
+        repository.flushNow();
+        assertEquals(0, repository.getPendingCount());
+        assertEquals(15, writer.checkpoint);
+        assertEquals(2, repository.getBatchCount());
+        for (int i = 0; i < 15; i++) {
+            assertEquals("P" + i, writer.written.get(i));
+        }
+    }
+
+    @Test
+    public void partialBatch_writtenAfterDelay() throws Exception {
+        DetailPointRepository repository = repository(100, 30, 1000);
+        for (int i = 0; i < 3; i++) {
+            repository.save(point(i));
+        }
+        awaitWritten(3);
+        assertEquals(1, repository.getBatchCount());
+        assertEquals(0, writer.checkpoint);
+        repository.flush().get();
+        assertEquals(1, repository.getBatchCount());
+    }
+
+    @Test
+    public void failedBatch_keptAndRetriedInOrder() throws Exception {
+        DetailPointRepository repository = repository(100, 60_000, 1000);
+        writer.failures = 1;
+        repository.save(point(0), 1);
+        repository.save(null, 2);  // 没有行的 WAL 记录只推进检查点
+        repository.save(point(2), 3);
+        try {
+            repository.flushNow();
+            fail("写入失败应抛出 IOException");
+        } catch (IOException expected) {
+            // 失败批次留在缓冲区
+        }
+        assertEquals(3, repository.getPendingCount());
+        assertEquals(1, repository.getFailedBatchCount());
+
+        repository.save(point(3), 4);
+        repository.flushNow();
+        assertEquals(0, repository.getPendingCount());
+        assertEquals(4, writer.checkpoint);
+        assertEquals(3, writer.writtenCount());
+        assertEquals("P0", writer.written.get(0));
+        assertEquals("P2", writer.written.get(1));
+        assertEquals("P3", writer.written.get(2));
+    }
+
+    @Test
+    public void poisonRow_recordedThenMovedAside() throws Exception {
+        DetailPointRepository repository = repository(100, 60_000, 1000);
+        List<Long> recorded = new ArrayList<>();
+        repository.setRejectionLog((point, walSequence, cause) -> recorded.add(walSequence));
+        writer.poison.add("P1");
+        for (int i = 0; i < 3; i++) {
+            repository.save(point(i), i + 1);
+        }
+        try {
+            repository.flushNow();
+            fail("移出的点应报告给调用方");
+        } catch (IOException expected) {
+            // 约束冲突不重试整批，逐条写入后 P1 被移出
+        }
+
+        assertEquals(0, repository.getPendingCount());
+        assertEquals(2, writer.writtenCount());
+        assertEquals("P0", writer.written.get(0));
+        assertEquals("P2", writer.written.get(1));
+        assertEquals(3, writer.checkpoint);
+        assertEquals(1, repository.getRejectedPoints().size());
+        assertEquals("P1", repository.getRejectedPoints().get(0).pointName);
+        assertEquals(1, recorded.size());
+        assertEquals(2L, (long) recorded.get(0));
+
+        // 只报告一次，之后正常写入
+        repository.save(point(3), 4);
+        repository.flushNow();
+        assertEquals(3, writer.writtenCount());
+    }
+
+    @Test
+    public void poisonRow_recordFails_keptInBuffer() throws Exception {
+        DetailPointRepository repository = repository(100, 60_000, 1000);
+        boolean[] logBroken = {true};
+        repository.setRejectionLog((point, walSequence, cause) -> {
+            if (logBroken[0]) {
+                throw new IOException("模拟记录失败");
+            }
+        });
+        writer.poison.add("P1");
+        for (int i = 0; i < 3; i++) {
+            repository.save(point(i), i + 1);
+        }
+        try {
+            repository.flushNow();
+            fail("记录失败应抛出 IOException");
+        } catch (IOException expected) {
+            // 无法持久记录的点不移出，检查点停在它之前
+        }
+        assertEquals(2, repository.getPendingCount());
+        assertEquals(1, writer.checkpoint);
+        assertTrue(repository.getRejectedPoints().isEmpty());
+
+        logBroken[0] = false;
+        try {
+            repository.flushNow();
+            fail("移出的点应报告给调用方");
+        } catch (IOException expected) {
+            // 记录成功后移出
+        }
+        assertEquals(0, repository.getPendingCount());
+        assertEquals(3, writer.checkpoint);
+        assertEquals(1, repository.getRejectedPoints().size());
+    }
+
+    @Test
+    public void fullBuffer_failingWriter_saveReturnsError() throws Exception {
+        DetailPointRepository repository = repository(2, 10, 2);
+        writer.failures = Integer.MAX_VALUE;
+        repository.save(point(0), 1);
+        repository.save(point(1), 2);
+
+        // 缓冲区已满且数据库一直失败：save 在重试上限后得到错误，而不是永远阻塞
+        ExecutorService saver = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> blocked = saver.submit(() -> {
+                repository.save(point(2), 3);
+                return null;
+            });
+            try {
+                blocked.get(5, TimeUnit.SECONDS);
+                fail("连续写入失败应报告给 save 的调用方");
+            } catch (ExecutionException expected) {
+                assertTrue(expected.getCause() instanceof IOException);
+            }
+        } finally {
+            saver.shutdownNow();
+        }
+        // 暂时性错误不丢弃任何点
+        assertTrue(repository.getRejectedPoints().isEmpty());
+        assertEquals(2, repository.getPendingCount());
+
+        // 数据库恢复后全部写入
+        synchronized (writer) {
+            writer.failures = 0;
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (repository.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                repository.flushNow();
+            } catch (IOException e) {
+                // 定时重试可能仍在用旧的失败次数
+            }
+            Thread.sleep(5);
+        }
+        assertEquals(0, repository.getPendingCount());
+        assertEquals(2, writer.writtenCount());
+        assertEquals(2, writer.checkpoint);
+    }
+}
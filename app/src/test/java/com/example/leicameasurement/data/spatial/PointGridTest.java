@@ -0,0 +1,119 @@
+package com.example.leicameasurement.data.spatial;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * PointGrid 单元测试
+ * 随机点集上的范围查询和 k 近邻查询与逐点比较的结果一致，离群点不会让近邻查询逐个检查大片空格
+ */
+public class PointGridTest {
+
+    private static final int COUNT = 20000;
+
+    private double[] xs;
+    private double[] ys;
+    private PointGrid grid;
+
+    @Before
+    public void setUp() {
+        // 成片分布在约 2 km 范围内的点（坐标量级接近大地坐标）
+        Random random = new Random(42);
+        xs = new double[COUNT];
+        ys = new double[COUNT];
+        grid = new PointGrid(5.0);
+        for (int i = 0; i < COUNT; i++) {
+            double cx = 3_500_000 + (i % 7) * 300;
+            double cy = 500_000 + (i % 5) * 400;
+            xs[i] = cx + random.nextGaussian() * 60;
+            ys[i] = cy + random.nextGaussian() * 60;
+            grid.add(i + 1, xs[i], ys[i]);
+        }
+    }
+
+    @Test
+    public void queryWindow_matchesBruteForce() {
+        Random random = new Random(7);
+        for (int q = 0; q < 50; q++) {
+            double minX = 3_499_800 + random.nextDouble() * 2200;
+            double minY = 499_800 + random.nextDouble() * 2000;
+            // 小窗口逐格查表，大窗口遍历已占用网格，两条路径都覆盖
+            double width = q % 2 == 0 ? random.nextDouble() * 30 : random.nextDouble() * 3000;
+            double height = q % 2 == 0 ? random.nextDouble() * 30 : random.nextDouble() * 3000;
+            long[] actual = grid.queryWindow(minX, minY, minX + width, minY + height, Integer.MAX_VALUE);
+            Arrays.sort(actual);
+
+            long[] expected = new long[COUNT];
+            int found = 0;
+            for (int i = 0; i < COUNT; i++) {
+                if (xs[i] >= minX && xs[i] <= minX + width && ys[i] >= minY && ys[i] <= minY + height) {
+                    expected[found++] = i + 1;
+                }
+            }
+            assertArrayEquals(Arrays.copyOf(expected, found), actual);
+        }
+        assertEquals(10, grid.queryWindow(0, 0, 1e8, 1e8, 10).length);
+        assertEquals(0, grid.queryWindow(0, 0, 1, 1, 10).length);
+    }
+
+    @Test
+    public void nearest_matchesBruteForce() {
+        Random random = new Random(11);
+        for (int q = 0; q < 50; q++) {
+            // 包括远离全部点的查询位置
+            double x = q < 45 ? 3_499_900 + random.nextDouble() * 2000 : 3_000_000 + random.nextDouble() * 10_000;
+            double y = 499_900 + random.nextDouble() * 2000;
+            int k = 1 + random.nextInt(20);
+            long[] actual = grid.nearest(x, y, k, Double.POSITIVE_INFINITY);
+            assertArrayEquals(bruteForceNearest(x, y, k, Double.POSITIVE_INFINITY), actual);
+        }
+    }
+
+    @Test
+    public void nearest_respectsMaxDistance() {
+        // 重复测量检查：容差内只有自己
+        double x = xs[123] + 0.01;
+        double y = ys[123];
+        long[] within = grid.nearest(x, y, 1, 0.02);
+        assertArrayEquals(new long[]{124}, within);
+        assertArrayEquals(bruteForceNearest(x, y, 50, 3.0), grid.nearest(x, y, 50, 3.0));
+        assertEquals(0, grid.nearest(0, 0, 5, 100).length);
+        assertEquals(0, new PointGrid(1).nearest(0, 0, 1, Double.POSITIVE_INFINITY).length);
+    }
+
+    @Test(timeout = 5000)
+    public void nearest_farOutlier_scansOccupiedCells() {
+        // 误录的坐标（如 12, 8）使占用范围达到数十万个格，空格只能跳过不能逐个查表
+        PointGrid sparse = new PointGrid(1.0);
+        sparse.add(1, 500_000.0, 4_000_000.0);
+        sparse.add(2, 500_003.0, 4_000_004.0);
+        sparse.add(3, 12.0, 8.0);
+        assertArrayEquals(new long[]{3, 1}, sparse.nearest(10, 10, 10, 4_031_120));
+        assertArrayEquals(new long[]{1, 2, 3}, sparse.nearest(500_000.5, 4_000_000.5, 10, Double.POSITIVE_INFINITY));
+        assertArrayEquals(new long[]{3}, sparse.nearest(10, 10, 1, Double.POSITIVE_INFINITY));
+        assertArrayEquals(new long[]{1, 2}, sparse.nearest(250_000, 4_000_010, 2, Double.POSITIVE_INFINITY));
+    }
+
+    private long[] bruteForceNearest(double x, double y, int k, double maxDistance) {
+        Integer[] order = new Integer[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(distance(a, x, y), distance(b, x, y)));
+        long[] result = new long[k];
+        int found = 0;
+        for (int i = 0; i < k && distance(order[i], x, y) <= maxDistance; i++) {
+            result[found++] = order[i] + 1;
+        }
+        return Arrays.copyOf(result, found);
+    }
+
+    private double distance(int i, double x, double y) {
+        return Math.hypot(xs[i] - x, ys[i] - y);
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.leicameasurement.data.wal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * MappedWalReader 单元测试
+ * 验证按时间/RPC/序号查询与顺序读取结果一致、索引文件的保存与过期重建
+ */
+public class MappedWalReaderTest {
+
+    private static final long BASE_TIME = 1_700_000_000_000L;
+    private static final int[] RPCS = {2008, 2108, 17017, 5004};
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("wal").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * 第 i 条记录的时间为 BASE_TIME + i * 10，RPC 轮流取 RPCS
+     */
+    private void writeRecords(int from, int to) throws IOException {
+        WalFileWriter writer = new WalFileWriter(dir, new WalConfig().setSegmentBytes(64 * 1024));
+        for (int i = from; i < to; i++) {
+            writer.append(WalRecord.TYPE_RAW, BASE_TIME + i * 10L, RPCS[i % RPCS.length],
+                    WalRecord.encodeRaw("%R1Q," + RPCS[i % RPCS.length] + ":" + i, "%R1P,0,0:" + i), false);
+        }
+        writer.close();
+    }
+
+    private List<WalRecord> readAll() throws IOException {
+        List<WalRecord> records = new ArrayList<>();
+        try (WalReader reader = new WalReader(dir)) {
+            WalRecord record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    @Test
+    public void scanByTimeAndRpc_matchSequentialRead() throws IOException {
+        writeRecords(0, 20000);
+        List<WalRecord> all = readAll();
+        long from = BASE_TIME + 51_234;
+        long to = BASE_TIME + 97_000;
+
+        try (MappedWalReader reader = new MappedWalReader(dir, 4096)) {
+            assertTrue(reader.getSegmentCount() > 5);
+
+            List<WalRecord> byTime = reader.findByTime(from, to, Integer.MAX_VALUE);
+            List<WalRecord> expected = new ArrayList<>();
+            for (WalRecord record : all) {
+                if (record.getTimestamp() >= from && record.getTimestamp() <= to) {
+                    expected.add(record);
+                }
+            }
+            assertEquals(expected.size(), byTime.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getSequence(), byTime.get(i).getSequence());
+                assertEquals(expected.get(i).getCommand(), byTime.get(i).getCommand());
+            }
+
+            List<WalRecord> byRpc = reader.findByRpc(17017, from, to, Integer.MAX_VALUE);
+            int count = 0;
+            for (WalRecord record : expected) {
+                if (record.getRpc() == 17017) {
+                    assertEquals(record.getSequence(), byRpc.get(count++).getSequence());
+                }
+            }
+            assertEquals(count, byRpc.size());
+            assertTrue(reader.findByRpc(9999, BASE_TIME, Long.MAX_VALUE, 10).isEmpty());
+            assertEquals(3, reader.findByTime(from, to, 3).size());
+        }
+    }
+
+    @Test
+    public void get_findsRecordBySequence() throws IOException {
+        writeRecords(0, 5000);
+        try (MappedWalReader reader = new MappedWalReader(dir, 4096)) {
+            for (long sequence : new long[]{1, 2, 777, 4096, 5000}) {
+                WalRecord record = reader.get(sequence);
+                assertNotNull(record);
+                assertEquals(sequence, record.getSequence());
+                assertEquals("%R1P,0,0:" + (sequence - 1), record.getResponse());
+            }
+            assertNull(reader.get(0));
+            assertNull(reader.get(5001));
+        }
+    }
+
+    @Test
+    public void index_persistedAndRebuiltWhenSegmentGrows() throws IOException {
+        writeRecords(0, 100);
+        File segment = WalFormat.listSegments(dir)[0];
+        File indexFile = WalFormat.indexFile(segment);
+        try (MappedWalReader reader = new MappedWalReader(dir)) {
+            assertEquals(100, reader.findByTime(0, Long.MAX_VALUE, Integer.MAX_VALUE).size());
+        }
+        assertTrue(indexFile.exists());
+        assertEquals(segment.length(), WalIndex.read(indexFile).segmentLength);
+
+        // 续写后索引过期，重新打开时重建
+        writeRecords(100, 150);
+        try (MappedWalReader reader = new MappedWalReader(dir)) {
+            assertEquals(150, reader.findByTime(0, Long.MAX_VALUE, Integer.MAX_VALUE).size());
+            assertEquals(150, reader.get(150).getSequence());
+        }
+        assertEquals(segment.length(), WalIndex.read(indexFile).segmentLength);
+
+        // 损坏的索引文件被忽略并重建
+        Files.write(indexFile.toPath(), "garbage".getBytes(StandardCharsets.US_ASCII));
+        try (MappedWalReader reader = new MappedWalReader(dir)) {
+            assertEquals(50, reader.findByTime(BASE_TIME + 1000, Long.MAX_VALUE, Integer.MAX_VALUE).size());
+        }
+        assertNotNull(WalIndex.read(indexFile));
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.leicameasurement.data.wal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * WalFileWriter 单元测试
+ * 验证记录往返与段切换、写入中断尾部的截断续写、组提交和测量边界刷盘
+ */
+public class WalFileWriterTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("wal").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void records_roundTripAcrossRotatedSegments() throws IOException {
+        WalFileWriter writer = new WalFileWriter(dir, new WalConfig().setSegmentBytes(4096));
+        for (int i = 0; i < 2000; i++) {
+            writer.writeRawData("%R1Q,17008:" + i, i % 7 == 0 ? null : "%R1P,0,0:" + i);
+        }
+        writer.close();
+
+        assertTrue("应切换出多个段", WalFormat.listSegments(dir).length > 10);
+        try (WalReader reader = new WalReader(dir)) {
+            for (int i = 0; i < 2000; i++) {
+                WalRecord record = reader.next();
+                assertNotNull(record);
+                assertEquals(i + 1, record.getSequence());
+                assertEquals(WalRecord.TYPE_RAW, record.getType());
+                assertEquals(17008, record.getRpc());
+                assertEquals("%R1Q,17008:" + i, record.getCommand());
+                assertEquals(i % 7 == 0 ? null : "%R1P,0,0:" + i, record.getResponse());
+            }
+            assertNull(reader.next());
+        }
+        try (WalReader reader = new WalReader(dir, 1500)) {
+            assertEquals(1500, reader.next().getSequence());
+        }
+    }
+
+    @Test
+    public void tornTail_truncatedAndSequenceContinues() throws IOException {
+        WalFileWriter writer = new WalFileWriter(dir, new WalConfig());
+        for (int i = 0; i < 10; i++) {
+            writer.writeRawData("%R1Q,0:", "%R1P,0,0:");
+        }
+        writer.close();
+        File[] segments = WalFormat.listSegments(dir);
+        File last = segments[segments.length - 1];
+        long validLength = last.length();
+        try (FileOutputStream out = new FileOutputStream(last, true)) {
+            // 模拟写到一半断电：长度字段完整，记录体不完整
+            out.write(new byte[]{40, 0, 0, 0, 1, 2, 3, 4, 5, 6});
+        }
+
+        writer = new WalFileWriter(dir, new WalConfig());
+        assertEquals(validLength, last.length());
+        assertEquals(10, writer.getLastSequence());
+        writer.writeRawData("%R1Q,5003:", "%R1P,0,0:TS60");
+        writer.close();
+
+        int count = 0;
+        WalRecord record = null;
+        try (WalReader reader = new WalReader(dir)) {
+            WalRecord next;
+            while ((next = reader.next()) != null) {
+                record = next;
+                count++;
+            }
+        }
+        assertEquals(11, count);
+        assertEquals(11, record.getSequence());
+        assertEquals("%R1P,0,0:TS60", record.getResponse());
+    }
+
+    @Test
+    public void concurrentAppends_groupCommitted() throws Exception {
+        WalFileWriter writer = new WalFileWriter(dir,
+                new WalConfig().setDurabilityPolicy(WalConfig.DurabilityPolicy.EVERY_RECORD));
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    writer.writeRawData("%R1Q,2108:", "%R1P,0,0:1,2,3");
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writer.sync();
+
+        assertEquals(8000, writer.getDurableSequence());
+        assertTrue("多条记录应共用一次刷盘：" + writer.getForceCount(), writer.getForceCount() < 8000);
+        writer.close();
+    }
+
+    @Test
+    public void boundaryPolicy_forcesOnlyAtMeasurementBoundary() throws IOException {
+        WalFileWriter writer = new WalFileWriter(dir,
+                new WalConfig().setDurabilityPolicy(WalConfig.DurabilityPolicy.BOUNDARY));
+        long setup = writer.append(WalRecord.TYPE_RAW, 2116, WalRecord.encodeRaw("%R1Q,2116:1.8", "%R1P,0,0:"), false);
+        assertFalse(writer.awaitDurable(setup, 100));
+
+        long measure = writer.append(WalRecord.TYPE_RAW, 17008, WalRecord.encodeRaw("%R1Q,17008:", "%R1P,0,0:1,2,3"), true);
+        assertTrue(writer.awaitDurable(measure, 2000));
+        assertEquals(1, writer.getForceCount());
+        writer.close();
+    }
+
+    @Test
+    public void parseRpc_readsGeoComCommandsOnly() {
+        assertEquals(17008, WalFileWriter.parseRpc("%R1Q,17008:2"));
+        assertEquals(5003, WalFileWriter.parseRpc("%R1Q,5003,12:"));
+        assertEquals(-1, WalFileWriter.parseRpc("*IDN?"));
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.leicameasurement.data.wal;
+
+import com.example.leicameasurement.device.adapter.InstrumentAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * WalLogManager 单元测试
+ * 验证观测先落盘后应用、崩溃后只重放检查点之后的记录、大日志按批重放、
+ * 异步打开不阻塞调用方、已全部应用的旧段连同索引被删除、含有无法写入观测的段在处理前保留
+ */
+public class WalLogManagerTest {
+
+    /**
+     * 内存中的落库目标：检查点与数据一起提交，可设置在第 N 次提交时失败
+     */
+    private static class MemoryStore implements WalLogManager.ObservationStore {
+        final List<WalObservation> applied = new ArrayList<>();
+        long checkpoint;
+        int transactions;
+        int failAfter = Integer.MAX_VALUE;
+
+        @Override
+        public long getAppliedSequence() {
+            return checkpoint;
+        }
+
+        @Override
+        public void apply(List<WalObservation> observations, long appliedSequence) {
+            if (transactions >= failAfter) {
+                throw new IllegalStateException("模拟数据库写入失败");
+            }
+            transactions++;
+            applied.addAll(observations);
+            checkpoint = appliedSequence;
+        }
+    }
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("wal").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static WalObservation detail(int i) {
+        return WalObservation.of(WalObservation.Kind.DETAIL, 7, "P" + i,
+                new double[]{0.001 * i, 1.5, 10 + i}, 1.8, new double[]{100 + i, 200, 50},
+                InstrumentAdapter.MeasureMode.STANDARD);
+    }
+
+    @Test
+    public void log_appliesObservationAfterJournal() throws IOException {
+        MemoryStore store = new MemoryStore();
+        WalLogManager manager = new WalLogManager(new WalFileWriter(dir, new WalConfig()), store);
+        manager.getWriter().writeRawData("%R1Q,2008:1,1", "%R1P,0,0:0");
+        long sequence = manager.log(detail(1)).getSequence();
+        manager.close();
+
+        assertEquals(2, sequence);
+        assertEquals(1, store.applied.size());
+        assertEquals(sequence, store.checkpoint);
+        WalObservation applied = store.applied.get(0);
+        assertEquals(sequence, applied.getSequence());
+        assertEquals("P1", applied.getPointName());
+        assertEquals(WalObservation.Kind.DETAIL, applied.getKind());
+        assertEquals(7, applied.getTaskId());
+        assertEquals(11, applied.getSlopeDistance(), 0);
+        assertEquals(101, applied.getX(), 0);
+        assertEquals(InstrumentAdapter.MeasureMode.STANDARD, applied.getMeasureMode());
+        assertFalse(manager.isReplayPending());
+    }
+
+    @Test
+    public void recover_replaysOnlyUnappliedTail() throws IOException {
+        MemoryStore store = new MemoryStore();
+        WalLogManager manager = new WalLogManager(new WalFileWriter(dir, new WalConfig()), store);
+        manager.recover();
+        for (int i = 0; i < 5; i++) {
+            manager.log(detail(i));
+        }
+        // 数据库失败：观测仍已落盘
+        store.failAfter = store.transactions;
+        for (int i = 5; i < 8; i++) {
+            manager.log(detail(i));
+        }
+        assertTrue(manager.isReplayPending());
+        manager.close();
+        assertEquals(5, store.applied.size());
+
+        // 重启：只重放检查点之后的 3 条
+        store.failAfter = Integer.MAX_VALUE;
+        MemoryStore restarted = new MemoryStore();
+        restarted.checkpoint = store.checkpoint;
+        manager = new WalLogManager(new WalFileWriter(dir, new WalConfig()), restarted);
+        assertEquals(3, manager.recover());
+        assertEquals(0, manager.recover());
+        manager.close();
+
+        assertEquals(3, restarted.applied.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("P" + (i + 5), restarted.applied.get(i).getPointName());
+        }
+        assertEquals(8, restarted.checkpoint);
+    }
+
+    @Test
+    public void log_beforeRecover_replaysBacklogFirst() throws IOException {
+        WalFileWriter writer = new WalFileWriter(dir, new WalConfig());
+        for (int i = 0; i < 4; i++) {
+            writer.append(WalRecord.TYPE_OBSERVATION, -1, detail(i).encode(), false);
+        }
+        writer.close();
+
+        MemoryStore store = new MemoryStore();
+        WalLogManager manager = new WalLogManager(new WalFileWriter(dir, new WalConfig()), store);
+        manager.log(detail(4));
+        manager.close();
+
+        assertEquals(5, store.applied.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, store.applied.get(i).getSequence());
+        }
+    }
+
+    @Test
+    public void recover_largeLogInBatches() throws IOException {
+        int count = 100_000;
+        WalFileWriter writer = new WalFileWriter(dir, new WalConfig()
+                .setDurabilityPolicy(WalConfig.DurabilityPolicy.BOUNDARY));
+        byte[] payload = detail(1).encode();
+        for (int i = 0; i < count; i++) {
+            writer.append(WalRecord.TYPE_OBSERVATION, -1, payload, false);
+            if (i % 10 == 0) {
+                writer.writeRawData("%R1Q,2008:1,1", "%R1P,0,0:0");
+            }
+        }
+        writer.close();
+
+        MemoryStore store = new MemoryStore();
+        WalLogManager manager = new WalLogManager(new WalFileWriter(dir, new WalConfig()), store);
+        long start = System.nanoTime();
+        assertEquals(count, manager.recover());
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        manager.close();
+
+        assertEquals(count, store.applied.size());
+        assertEquals(count / WalLogManager.REPLAY_BATCH_SIZE, store.transactions);
+        assertTrue("重放耗时 " + elapsedMs + " ms", elapsedMs < 5000);
+    }
+
+    @Test
+    public void openAsync_opensDirectoryOnExecutor() throws IOException {
+        List<Runnable> tasks = new ArrayList<>();
+        Executor executor = tasks::add;
+        MemoryStore store = new MemoryStore();
+        WalLogManager manager = WalLogManager.openAsync(dir, new WalConfig(), store, executor);
+
+        // 打开任务尚未执行：调用线程没有创建段文件
+        assertEquals(0, WalFormat.listSegments(dir).length);
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+
+        assertEquals(0, manager.recover());
+        assertEquals(1, manager.log(detail(1)).getSequence());
+        manager.close();
+        assertEquals(1, store.applied.size());
+    }
+
+    @Test
+    public void openAsync_failureSurfacesOnLog() throws IOException {
+        File notADirectory = new File(dir, "file");
+        assertTrue(notADirectory.createNewFile());
+        WalLogManager manager = WalLogManager.openAsync(notADirectory, new WalConfig(), new MemoryStore(), Runnable::run);
+        try {
+            manager.log(detail(1));
+            fail("WAL目录无法打开时应抛出异常");
+        } catch (IOException expected) {
+            // 打开失败
+        }
+        manager.close();
+    }
+
+    @Test
+    public void recover_deletesFullyAppliedSegmentsAndIndexes() throws IOException {
+        int count = 300;
+        WalConfig config = new WalConfig().setSegmentBytes(4096);
+        WalFileWriter writer = new WalFileWriter(dir, config);
+        for (int i = 0; i < count; i++) {
+            writer.append(WalRecord.TYPE_OBSERVATION, -1, detail(i).encode(), false);
+        }
+        writer.close();
+        File[] segments = WalFormat.listSegments(dir);
+        assertTrue("应切换出多个段", segments.length > 3);
+        for (File segment : segments) {
+            assertTrue(WalFormat.indexFile(segment).createNewFile());
+        }
+
+        // 检查点之后的记录所在的段保留
+        MemoryStore store = new MemoryStore();
+        store.checkpoint = count / 2;
+        WalLogManager manager = new WalLogManager(new WalFileWriter(dir, config), store);
+        assertTrue(manager.deleteAppliedSegments() > 0);
+        File first = WalFormat.listSegments(dir)[0];
+        assertTrue(WalFormat.parseSegmentSequence(first.getName()) <= store.checkpoint + 1);
+
+        // 重放剩余的记录后只保留当前写入段
+        assertEquals(count / 2, manager.recover());
+        manager.close();
+        assertEquals(count, store.checkpoint);
+        File[] remaining = WalFormat.listSegments(dir);
+        assertEquals(1, remaining.length);
+        assertEquals(segments[segments.length - 1], remaining[0]);
+        File[] indexes = dir.listFiles((d, name) -> name.endsWith(".idx"));
+        assertEquals(1, indexes.length);
+        assertEquals(WalFormat.indexFile(remaining[0]), indexes[0]);
+    }
+
+    @Test
+    public void deleteAppliedSegments_keepsSegmentsWithRejectedObservations() throws IOException {
+        int count = 300;
+        WalConfig config = new WalConfig().setSegmentBytes(4096);
+        WalFileWriter writer = new WalFileWriter(dir, config);
+        for (int i = 0; i < count; i++) {
+            writer.append(WalRecord.TYPE_OBSERVATION, -1, detail(i).encode(), false);
+        }
+        writer.close();
+        int segmentCount = WalFormat.listSegments(dir).length;
+        assertTrue("应切换出多个段", segmentCount > 3);
+
+        // 检查点已越过第 100 条（移出缓冲），它所在的段不能删除
+        MemoryStore store = new MemoryStore();
+        store.checkpoint = count;
+        WalLogManager manager = new WalLogManager(new WalFileWriter(dir, config), store);
+        manager.getRejections().record(null, 100, new IllegalStateException("模拟约束冲突"));
+        manager.deleteAppliedSegments();
+        File[] kept = WalFormat.listSegments(dir);
+        assertTrue(kept.length > 1);
+        assertTrue(WalFormat.parseSegmentSequence(kept[0].getName()) <= 100);
+        manager.close();
+
+        // 重启后从文件读回记录，仍然保留
+        manager = new WalLogManager(new WalFileWriter(dir, config), store);
+        assertEquals(0, manager.recover());
+        assertEquals(kept.length, WalFormat.listSegments(dir).length);
+        assertEquals(100L, manager.getRejections().getFirstSequence());
+
+        // 处理之后可以删除
+        assertTrue(manager.getRejections().resolve(100));
+        assertFalse(manager.getRejections().resolve(100));
+        assertTrue(manager.deleteAppliedSegments() > 0);
+        assertEquals(1, WalFormat.listSegments(dir).length);
+        manager.close();
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.leicameasurement.device.connection;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * ByteRingBuffer 单元测试
+ * 验证回绕、溢出计数、背压水位，以及读线程/解码线程并发时 FrameDecoder 原位切帧的完整性
+ */
+public class ByteRingBufferTest {
+
+    @Test
+    public void capacity_roundsUpToPowerOfTwo() {
+        assertEquals(16, new ByteRingBuffer(10).capacity());
+        assertEquals(1024, new ByteRingBuffer(1024).capacity());
+    }
+
+    @Test
+    public void writeAndRead_wrapAroundPreservesOrder() {
+        ByteRingBuffer ring = new ByteRingBuffer(8);
+        byte[] out = new byte[8];
+        for (int round = 0; round < 20; round++) {
+            byte[] data = {(byte) round, (byte) (round + 1), (byte) (round + 2), (byte) (round + 3), (byte) (round + 4)};
+            assertEquals(5, ring.write(data, 0, data.length));
+            assertEquals(5, ring.read(out, 0, out.length));
+            for (int i = 0; i < 5; i++) {
+                assertEquals(data[i], out[i]);
+            }
+        }
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void write_countsOverflowWhenFull() {
+        ByteRingBuffer ring = new ByteRingBuffer(8);
+        assertEquals(8, ring.write(new byte[12], 0, 12));
+        assertEquals(4, ring.getOverflowBytes());
+        assertTrue(ring.isBackpressured());
+        assertEquals(0, ring.write(new byte[1], 0, 1));
+        assertEquals(5, ring.getOverflowBytes());
+    }
+
+    @Test
+    public void awaitWritable_releasedByConsumer() throws Exception {
+        ByteRingBuffer ring = new ByteRingBuffer(16);
+        ring.write(new byte[16], 0, 16);
+        Thread consumer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            ring.read(new byte[16], 0, 16);
+        });
+        consumer.start();
+        assertTrue(ring.awaitWritable(2, TimeUnit.SECONDS));
+        assertEquals(1, ring.getBackpressureEvents());
+        consumer.join();
+    }
+
+    @Test
+    public void frameDecoder_nextLeavesFollowingBytesInRing() {
+        ByteRingBuffer ring = new ByteRingBuffer(64);
+        byte[] data = "%R1P,0,1:0\r\n%R1P,0,2:".getBytes(StandardCharsets.US_ASCII);
+        ring.write(data, 0, data.length);
+        FrameDecoder decoder = new FrameDecoder();
+        assertTrue(decoder.next(ring));
+        assertEquals("%R1P,0,1:0\r\n", new String(decoder.copyFrame(), StandardCharsets.US_ASCII));
+        assertEquals(9, ring.size());
+        assertFalse(decoder.next(ring));
+        assertEquals(0, ring.size());
+        byte[] tail = "0\r\n".getBytes(StandardCharsets.US_ASCII);
+        ring.write(tail, 0, tail.length);
+        assertTrue(decoder.next(ring));
+        assertEquals("%R1P,0,2:0\r\n", new String(decoder.copyFrame(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void concurrentProducerAndDecoder_deliverEveryFrameIntact() throws Exception {
+        final int frames = 50_000;
+        StringBuilder stream = new StringBuilder();
+        for (int i = 0; i < frames; i++) {
+            stream.append("%R1P,0,").append(i % 65535 + 1).append(":0,").append(i).append("\r\n");
+        }
+        byte[] bytes = stream.toString().getBytes(StandardCharsets.US_ASCII);
+        ByteRingBuffer ring = new ByteRingBuffer(256); // 远小于数据量，强制频繁回绕和背压
+        ByteArrayInputStream input = new ByteArrayInputStream(bytes);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread producer = new Thread(() -> {
+            try {
+                while (true) {
+                    if (ring.isBackpressured()) {
+                        ring.awaitWritable(1, TimeUnit.SECONDS);
+                    }
+                    if (ring.readFrom(input) < 0) {
+                        break;
+                    }
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            } finally {
+                ring.close();
+            }
+        });
+        producer.start();
+
+        FrameDecoder decoder = new FrameDecoder();
+        int received = 0;
+        while (true) {
+            if (decoder.next(ring)) {
+                String expected = "%R1P,0," + (received % 65535 + 1) + ":0," + received + "\r\n";
+                assertEquals(expected, new String(decoder.getFrameBuffer(), 0, decoder.getFrameLength(),
+                        StandardCharsets.US_ASCII));
+                received++;
+            } else if (ring.isClosed() && ring.size() == 0) {
+                break;
+            } else {
+                ring.awaitReadable(100, TimeUnit.MILLISECONDS);
+            }
+        }
+        producer.join();
+        assertNull(failure.get());
+        assertEquals(frames, received);
+        assertEquals(0, ring.getOverflowBytes());
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.leicameasurement.device.connection;
+
+import com.example.leicameasurement.device.adapter.InstrumentAdapter;
+import com.example.leicameasurement.device.protocol.GeoComCommandBuilder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * CommandPriority 单元测试
+ * 验证测量指令（包括 TS30 的 2008 测量形式）进入测量队列，其余 2008 形式仍按参数设置处理
+ */
+public class CommandPriorityTest {
+
+    private final GeoComCommandBuilder builder = new GeoComCommandBuilder();
+
+    @Test
+    public void measurementCommands_useMeasurementLane() {
+        assertEquals(CommandPriority.MEASUREMENT, CommandPriority.forCommand(builder.buildDetailPointMeasurementCommand()));
+        assertEquals(CommandPriority.MEASUREMENT, CommandPriority.forCommand(builder.buildGetSimpleMeasurementCommand(50)));
+        for (InstrumentAdapter.MeasureMode mode : InstrumentAdapter.MeasureMode.values()) {
+            byte[] ts30Measure = builder.buildMeasureCommand(1.5, mode);
+            assertEquals(CommandPriority.MEASUREMENT, CommandPriority.forCommand(ts30Measure));
+            assertEquals(CommandPriority.MEASUREMENT,
+                    CommandPriority.forCommand(GeoComCommandBuilder.withTransactionId(ts30Measure, 9)));
+        }
+    }
+
+    @Test
+    public void otherCommands_keepTheirLanes() {
+        assertEquals(CommandPriority.CONFIGURATION, CommandPriority.forCommand(builder.buildSetPrecisionModeCommand()));
+        assertEquals(CommandPriority.CONFIGURATION, CommandPriority.forCommand(builder.buildStartTrackingCommand()));
+        assertEquals(CommandPriority.CONFIGURATION, CommandPriority.forCommand(builder.buildStopTrackingCommand()));
+        assertEquals(CommandPriority.CONFIGURATION, CommandPriority.forCommand(builder.buildSetPrismHeightCommand(1.5)));
+        assertEquals(CommandPriority.STATUS, CommandPriority.forCommand(builder.buildGetModelCommand()));
+        assertEquals(CommandPriority.STATUS, CommandPriority.forCommand(builder.buildIdentificationCommand()));
+        assertEquals(CommandPriority.ABORT, CommandPriority.forCommand(builder.buildStopMeasureCommand()));
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.leicameasurement.device.connection;
+
+import com.example.leicameasurement.device.protocol.GeoComCommandBuilder;
+import com.example.leicameasurement.device.simulator.GeoComSimulator;
+import com.example.leicameasurement.device.simulator.SimulatedChannel;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * InstrumentedConnectionChannel 与 LatencyHistogram 单元测试
+ * 通过模拟器注入固定时延和错误码，检查按 RPC 的配对、延迟分位数、错误响应与超时计数
+ */
+public class InstrumentedConnectionChannelTest {
+
+    private final GeoComCommandBuilder commandBuilder = new GeoComCommandBuilder();
+    private InstrumentedConnectionChannel channel;
+
+    @After
+    public void tearDown() {
+        if (channel != null) {
+            channel.disconnect();
+        }
+    }
+
+    @Test
+    public void histogram_bucketsCoverRangeWithBoundedError() {
+        for (long micros = 0; micros < 200_000_000L; micros = micros * 3 / 2 + 1) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            long upper = LatencyHistogram.upperBoundOf(bucket);
+            assertTrue(bucket >= 0 && bucket < LatencyHistogram.BUCKET_COUNT);
+            if (bucket < LatencyHistogram.BUCKET_COUNT - 1) {
+                assertTrue(upper >= micros);
+                assertTrue(upper - micros <= micros / 16);
+            }
+        }
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) {
+            histogram.recordNanos(ms * 1_000_000L);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(50, histogram.getPercentileMs(0.50), 50 / 16.0);
+        assertEquals(99, histogram.getPercentileMs(0.99), 99 / 16.0);
+        assertEquals(100, histogram.getMaxMs(), 1e-9);
+        assertEquals(50.5, histogram.getMeanMs(), 1e-9);
+    }
+
+    @Test
+    public void taggedAndUntaggedReplies_recordedPerRpc() throws Exception {
+        GeoComSimulator simulator = new GeoComSimulator(3L);
+        simulator.getFaults().setLatencyMs(20);
+        simulator.getFaults().setErrorCode(5004, 1284);
+        channel = connect(simulator);
+
+        for (int id = 1; id <= 5; id++) {
+            channel.sendData(GeoComCommandBuilder.withTransactionId(commandBuilder.buildGetModelCommand(), id));
+        }
+        channel.sendData(commandBuilder.buildGetSerialNumberCommand());
+        channel.sendData(commandBuilder.buildIdentificationCommand());
+        for (int i = 0; i < 7; i++) {
+            assertNotNull(channel.receiveData(2000));
+        }
+
+        CommandMetricsSnapshot snapshot = channel.getMetrics().snapshot();
+        CommandMetricsSnapshot.CommandStats model = snapshot.get(5003);
+        assertEquals(5, model.getRequests());
+        assertEquals(5, model.getReplies());
+        assertEquals(0, model.getErrorReplies());
+        assertTrue("延迟应不小于注入时延", model.getP50Ms() >= 19);
+        assertTrue(model.getBytesReceived() > 0);
+
+        CommandMetricsSnapshot.CommandStats serial = snapshot.get(5004);
+        assertEquals(1, serial.getReplies());
+        assertEquals(1, serial.getErrorReplies());
+
+        assertEquals(1, snapshot.get(CommandMetrics.OTHER_RPC).getReplies());
+        assertTrue(snapshot.format().contains("5003"));
+    }
+
+    @Test
+    public void unansweredRequests_overflowCountsTimeouts() throws Exception {
+        channel = connect(new GeoComSimulator(5L));
+
+        // 只发不收：超过在途上限的最早请求计为超时
+        for (int i = 0; i < 70; i++) {
+            channel.sendData(commandBuilder.buildNullProcCommand());
+        }
+        CommandMetricsSnapshot.CommandStats nullProc = channel.getMetrics().snapshot().get(0);
+        assertEquals(70, nullProc.getRequests());
+        assertEquals(6, nullProc.getTimeouts());
+
+        channel.getMetrics().reset();
+        assertTrue(channel.getMetrics().snapshot().getCommands().isEmpty());
+    }
+
+    @Test
+    public void callerTimeout_overridesCommandTimeout() throws Exception {
+        GeoComSimulator simulator = new GeoComSimulator(7L);
+        simulator.getFaults().setLatencyMs(200);
+        channel = connect(simulator);
+
+        // 调用方只等 20ms，远小于查询指令的默认超时
+        channel.sendData(commandBuilder.buildGetModelCommand(), 20);
+        try {
+            channel.receiveData(100);
+            fail("响应尚未到达");
+        } catch (InterruptedIOException expected) {
+            // 轮询超时
+        }
+        assertEquals(1, channel.getMetrics().snapshot().get(5003).getTimeouts());
+    }
+
+    @Test
+    public void failedSend_leavesNoPendingRequest() throws Exception {
+        channel = connect(new GeoComSimulator(9L));
+        IConnectionChannel delegate = channel.getDelegate();
+        delegate.disconnect();
+        try {
+            channel.sendData(commandBuilder.buildNullProcCommand(), 10_000);
+            fail("未连接时应发送失败");
+        } catch (IOException expected) {
+            // 通道已断开
+        }
+        // 直接重连被装饰的通道，不经过装饰器清空在途请求
+        delegate.connect(new ConnectionConfig("simulator", ConnectionConfig.ConnectionType.WIFI));
+
+        // 失败的请求若仍在途，第 64 条会把它挤出并计为超时
+        for (int i = 0; i < 64; i++) {
+            channel.sendData(commandBuilder.buildNullProcCommand(), 10_000);
+        }
+        CommandMetricsSnapshot.CommandStats nullProc = channel.getMetrics().snapshot().get(0);
+        assertEquals(64, nullProc.getRequests());
+        assertEquals(0, nullProc.getTimeouts());
+    }
+
+    @Test
+    public void parseTransactionId_readsOnlyTaggedRequests() {
+        assertEquals(42, InstrumentedConnectionChannel.parseTransactionId(
+                GeoComCommandBuilder.withTransactionId(commandBuilder.buildGetModelCommand(), 42)));
+        assertEquals(0, InstrumentedConnectionChannel.parseTransactionId(commandBuilder.buildGetModelCommand()));
+        assertEquals(0, InstrumentedConnectionChannel.parseTransactionId(commandBuilder.buildIdentificationCommand()));
+    }
+
+    private static InstrumentedConnectionChannel connect(GeoComSimulator simulator) throws ConnectionException {
+        InstrumentedConnectionChannel instrumented = new InstrumentedConnectionChannel(new SimulatedChannel(simulator));
+        instrumented.connect(new ConnectionConfig("simulator", ConnectionConfig.ConnectionType.WIFI));
+        return instrumented;
+    }
+}
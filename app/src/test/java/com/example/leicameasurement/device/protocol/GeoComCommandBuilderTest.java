@@ -0,0 +1,194 @@
+package com.example.leicameasurement.device.protocol;
+
+import com.example.leicameasurement.device.adapter.InstrumentAdapter;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * GeoComCommandBuilder 等价性测试
+ * 逐字节对比模板编码结果与原 String.format 实现的输出
+ */
+public class GeoComCommandBuilderTest {
+
+    private static final double[] EDGE_VALUES = {
+            0.0, -0.0, 1.0, -1.0, 1.5, 1.6, 0.00005, -0.00005, 0.00004999, 0.00015,
+            1.00005, 2.50005, 1.23455, 1.00015, 0.15, 123456.78905, 5000.0, 3000.0, 100.0,
+            -0.00001, 9999.99995, 99999999.99995, 12345678.12345, 1e10, -1e10, 1e11, 1e15 + 0.5,
+            Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY
+    };
+
+    private final GeoComCommandBuilder builder = new GeoComCommandBuilder();
+    private final LegacyCommandBuilder legacy = new LegacyCommandBuilder();
+
+    @Test
+    public void fixedCommands_matchLegacyOutput() {
+        assertArrayEquals(legacy.buildSetPrecisionModeCommand(), builder.buildSetPrecisionModeCommand());
+        assertArrayEquals(legacy.buildSetStandardModeCommand(), builder.buildSetStandardModeCommand());
+        assertArrayEquals(legacy.buildSetFastModeCommand(), builder.buildSetFastModeCommand());
+        assertArrayEquals(legacy.buildBacksightMeasurementCommand(), builder.buildBacksightMeasurementCommand());
+        assertArrayEquals(legacy.buildForepointMeasurementCommand(), builder.buildForepointMeasurementCommand());
+        assertArrayEquals(legacy.buildDetailPointMeasurementCommand(), builder.buildDetailPointMeasurementCommand());
+        assertArrayEquals(legacy.buildGetModelCommand(), builder.buildGetModelCommand());
+        assertArrayEquals(legacy.buildGetSerialNumberCommand(), builder.buildGetSerialNumberCommand());
+        assertArrayEquals(legacy.buildGetStatusCommand(), builder.buildGetStatusCommand());
+        assertArrayEquals(legacy.buildCloseCommand(), builder.buildCloseCommand());
+        assertArrayEquals(legacy.buildStopMeasureCommand(), builder.buildStopMeasureCommand());
+        assertArrayEquals(legacy.buildIdentificationCommand(), builder.buildIdentificationCommand());
+        assertArrayEquals(legacy.buildChangeInstrumentStateCommand(true), builder.buildChangeInstrumentStateCommand(true));
+        assertArrayEquals(legacy.buildChangeInstrumentStateCommand(false), builder.buildChangeInstrumentStateCommand(false));
+        assertArrayEquals(legacy.buildGetBatteryStatusCommand(), builder.buildGetBatteryStatusCommand());
+    }
+
+    @Test
+    public void fixedCommands_areSharedInstances() {
+        assertSame(builder.buildGetStatusCommand(), builder.buildGetStatusCommand());
+        assertSame(builder.buildDetailPointMeasurementCommand(), new GeoComCommandBuilder().buildDetailPointMeasurementCommand());
+    }
+
+    @Test
+    public void parameterizedCommands_matchLegacyOutputOnEdgeValues() {
+        for (double value : EDGE_VALUES) {
+            assertSameParameterizedOutput(value, -value, value / 3);
+        }
+    }
+
+    @Test
+    public void parameterizedCommands_matchLegacyOutputOnFourDecimalGrid() {
+        // 恰好落在 0.00005 分界点上的数值最容易出现舍入差异
+        for (long tenThousandths = -200000; tenThousandths <= 200000; tenThousandths++) {
+            double value = tenThousandths / 10000.0;
+            double halfway = (tenThousandths + 0.5) / 10000.0;
+            assertSameParameterizedOutput(value, halfway, value + 5000.0);
+        }
+    }
+
+    @Test
+    public void parameterizedCommands_matchLegacyOutputOnRandomValues() {
+        Random random = new Random(20251107L);
+        for (int i = 0; i < 200000; i++) {
+            double coordinate = (random.nextDouble() - 0.5) * 2e7;
+            double height = random.nextDouble() * 5;
+            double tiny = random.nextGaussian() * 1e-3;
+            assertSameParameterizedOutput(coordinate, height, tiny);
+        }
+    }
+
+    @Test
+    public void encode_reusesThreadBufferAndLeavesItReadable() {
+        ByteBuffer first = builder.encodeSetPrismHeightCommand(1.6);
+        byte[] expected = legacy.buildSetPrismHeightCommand(1.6);
+        assertEquals(expected.length, first.remaining());
+        byte[] actual = new byte[first.remaining()];
+        first.get(actual);
+        assertArrayEquals(expected, actual);
+
+        ByteBuffer second = builder.encodeSetInstrumentHeightCommand(1.5);
+        assertSame(first, second);
+    }
+
+    private void assertSameParameterizedOutput(double a, double b, double c) {
+        assertArrayEquals(legacy.buildSetStationCommand(a, b, c), builder.buildSetStationCommand(a, b, c));
+        assertArrayEquals(legacy.buildSetInstrumentHeightCommand(a), builder.buildSetInstrumentHeightCommand(a));
+        assertArrayEquals(legacy.buildSetPrismHeightCommand(b), builder.buildSetPrismHeightCommand(b));
+        for (InstrumentAdapter.MeasureMode mode : InstrumentAdapter.MeasureMode.values()) {
+            assertArrayEquals(legacy.buildMeasureCommand(c, mode), builder.buildMeasureCommand(c, mode));
+        }
+    }
+
+    /**
+     * 模板化之前的 String.format 实现，作为逐字节对比的基准
+     */
+    private static class LegacyCommandBuilder {
+
+        byte[] buildSetStationCommand(double stationX, double stationY, double stationH) {
+            String command = String.format(Locale.US, "%%R1Q,2114:%.4f,%.4f,%.4f",
+                    stationX, stationY, stationH);
+            return (command + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        }
+
+        byte[] buildSetInstrumentHeightCommand(double instrumentHeight) {
+            String command = String.format(Locale.US, "%%R1Q,2117:%.4f", instrumentHeight);
+            return (command + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        }
+
+        byte[] buildSetPrismHeightCommand(double prismHeight) {
+            String command = String.format(Locale.US, "%%R1Q,2116:%.4f", prismHeight);
+            return (command + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        }
+
+        byte[] buildSetPrecisionModeCommand() {
+            return ("%R1Q,2008:2,0" + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        }
+
+        byte[] buildSetStandardModeCommand() {
+            return ("%R1Q,2008:1,0" + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        }
+
+        byte[] buildSetFastModeCommand() {
+            return ("%R1Q,2008:3,0" + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        }
+
+        byte[] buildBacksightMeasurementCommand() {
+            return ("%R1Q,17008:0" + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        }
+
+        byte[] buildForepointMeasurementCommand() {
+            return ("%R1Q,17008:1" + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        }
+
+        byte[] buildDetailPointMeasurementCommand() {
+            return ("%R1Q,17008:2" + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        }
+
+        byte[] buildGetModelCommand() {
+            return ("%R1Q,5003:" + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        }
+
+        byte[] buildGetSerialNumberCommand() {
+            return ("%R1Q,5004:" + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        }
+
+        byte[] buildGetStatusCommand() {
+            return ("%R1Q,5002:" + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        }
+
+        byte[] buildCloseCommand() {
+            return ("%R1Q,9002:" + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        }
+
+        byte[] buildMeasureCommand(double prismHeight, InstrumentAdapter.MeasureMode mode) {
+            int geoComMode = 1;
+            if (mode == InstrumentAdapter.MeasureMode.PRECISION) {
+                geoComMode = 2;
+            } else if (mode == InstrumentAdapter.MeasureMode.FAST) {
+                geoComMode = 3;
+            }
+            String command = String.format(Locale.US, "%%R1Q,2008:%d,%.4f", geoComMode, prismHeight);
+            return (command + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        }
+
+        byte[] buildStopMeasureCommand() {
+            return ProtocolConstants.CMD_STOP_MEASURE.getBytes();
+        }
+
+        byte[] buildIdentificationCommand() {
+            return ("*IDN?" + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        }
+
+        byte[] buildChangeInstrumentStateCommand(boolean lock) {
+            int state = lock ? 1 : 0;
+            return (String.format("%%R1Q,9007:%d", state) + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        }
+
+        byte[] buildGetBatteryStatusCommand() {
+            return ("%R1Q,5005:" + ProtocolConstants.COMMAND_TERMINATOR).getBytes();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.leicameasurement.device.protocol;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * GeoComResponseParser 字节级解析测试
+ * 验证快速路径的数值与 Double.parseDouble 一致、错误格式被拒绝、非零返回码不视为有效测量
+ */
+public class GeoComResponseParserTest {
+
+    private final GeoComResponseParser parser = new GeoComResponseParser();
+    private final GeoComReply reply = new GeoComReply();
+
+    @Test
+    public void validReply_parsesHeaderAndValues() {
+        assertTrue(parse("%R1P,0,17:1.2345678,1.5707963,123.4567\r\n"));
+        assertTrue(reply.hasHeader());
+        assertEquals(0, reply.getReturnCode());
+        assertEquals(17, reply.getTransactionId());
+        assertEquals(3, reply.getValueCount());
+        assertEquals(1.2345678, reply.getHorizontalAngle(), 0);
+        assertEquals(1.5707963, reply.getVerticalAngle(), 0);
+        assertEquals(123.4567, reply.getSlopeDistance(), 0);
+
+        // 无报头时从首字节开始解析数值
+        assertTrue(parse(" 5000 , 0.25"));
+        assertFalse(reply.hasHeader());
+        assertEquals(2, reply.getValueCount());
+        assertEquals(5000, reply.getValue(0), 0);
+        assertEquals(0.25, reply.getValue(1), 0);
+    }
+
+    @Test
+    public void negativeAndExponentValues_matchDoubleParseDouble() {
+        String[] fields = {
+                "-0.0001", "-1.5", "+2.75", "-0", "0.000", "1e3", "1E-3", "-2.5e+2", "6.02214076e23",
+                "1.7976931348623157e308", "4.9e-324", "123456789012345678901", "0.1", "9007199254740993",
+                "1e22", "1e23", "3.14159265358979323846", ".5", "5.", "NaN"
+        };
+        for (String field : fields) {
+            assertTrue(field, parse("%R1P,0,0:" + field));
+            assertEquals(field, Double.doubleToLongBits(Double.parseDouble(field)),
+                    Double.doubleToLongBits(reply.getValue(0)));
+        }
+
+        // 随机的典型测量值（角度、距离、坐标）
+        Random random = new Random(3);
+        for (int i = 0; i < 10000; i++) {
+            double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 4);
+            String field = random.nextBoolean() ? Double.toString(value) : String.format(Locale.ROOT, "%.6f", value);
+            assertTrue(field, parse("%R1P,0,0:" + field));
+            assertEquals(field, Double.parseDouble(field), reply.getValue(0), 0);
+        }
+    }
+
+    @Test
+    public void malformedReplies_rejected() {
+        assertFalse(parse(""));
+        assertFalse(parse("   \r\n"));
+        assertFalse(parse("%R1P,0,0:1.5,abc,2"));
+        assertFalse(parse("%R1P,0,0:1.5e"));
+        assertFalse(parse("%R1P,0,0:1.2.3"));
+        assertFalse(parse("%R1P,0,0:--1"));
+        // 报头缺少事务号或分隔符
+        assertFalse(parse("%R1P,0:1.5"));
+        assertFalse(parse("%R1P,x,0:1.5"));
+        assertFalse(parse("%R1P,0,0,1.5"));
+        assertFalse(parser.parseMeasurementResponse(null, reply));
+    }
+
+    @Test
+    public void nonZeroReturnCode_notAValidMeasurement() {
+        byte[] failed = bytes("%R1P,1284,5:1.0,2.0,3.0");
+        assertTrue(parser.parseReply(failed, 0, failed.length, reply));
+        assertFalse(reply.isSuccess());
+        assertEquals(1284, reply.getReturnCode());
+        assertFalse(parser.parseMeasurementResponse(failed, reply));
+        assertNull(parser.parseMeasurementResponse(failed));
+
+        // 成功码但字段不足
+        assertFalse(parser.parseMeasurementResponse(bytes("%R1P,0,5:1.0,2.0"), reply));
+
+        byte[] ok = bytes("%R1P,0,5:1.0,2.0,3.0,10,20,30");
+        double[] out = new double[6];
+        assertTrue(parser.parseMeasurementResponse(ok, out, reply));
+        assertArrayEquals(new double[]{1, 2, 3, 10, 20, 30}, out, 0);
+
+        assertTrue(parser.isCommandSuccess("%R1P,0,42:"));
+        assertFalse(parser.isCommandSuccess("%R1P,1,26:"));
+        assertFalse(parser.isCommandSuccess(""));
+    }
+
+    private boolean parse(String text) {
+        byte[] data = bytes(text);
+        return parser.parseReply(data, 0, data.length, reply);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.leicameasurement.device.protocol;
+
+import com.example.leicameasurement.device.adapter.InstrumentAdapter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * GeoComTimeouts 单元测试
+ * 验证按 RPC 查表，以及 RPC 2008 的测量形式与模式设置、跟踪启停形式的区分
+ */
+public class GeoComTimeoutsTest {
+
+    private final GeoComCommandBuilder builder = new GeoComCommandBuilder();
+
+    @Test
+    public void ts30MeasureCommand_usesMeasurementTimeout() {
+        for (InstrumentAdapter.MeasureMode mode : InstrumentAdapter.MeasureMode.values()) {
+            for (double prismHeight : new double[]{0, 1.5, -0.25, 2.12345}) {
+                byte[] command = builder.buildMeasureCommand(prismHeight, mode);
+                assertTrue(GeoComTimeouts.isTs30Measurement(command));
+                assertEquals(GeoComTimeouts.MEASURE_TIMEOUT_MS, GeoComTimeouts.forCommand(command));
+                // 收发器插入事务号后分类不变
+                byte[] tagged = GeoComCommandBuilder.withTransactionId(command, 321);
+                assertEquals(GeoComTimeouts.MEASURE_TIMEOUT_MS, GeoComTimeouts.forCommand(tagged));
+            }
+        }
+    }
+
+    @Test
+    public void otherRpc2008Forms_remainConfiguration() {
+        byte[][] commands = {
+                builder.buildSetPrecisionModeCommand(),
+                builder.buildSetStandardModeCommand(),
+                builder.buildSetFastModeCommand(),
+                builder.buildStartTrackingCommand(),
+                builder.buildStopTrackingCommand(),
+        };
+        for (byte[] command : commands) {
+            assertFalse(GeoComTimeouts.isTs30Measurement(command));
+            assertEquals(GeoComTimeouts.CONFIG_TIMEOUT_MS, GeoComTimeouts.forCommand(command));
+        }
+    }
+
+    @Test
+    public void forCommand_looksUpRpcTable() {
+        assertEquals(GeoComTimeouts.MEASURE_TIMEOUT_MS,
+                GeoComTimeouts.forCommand(builder.buildDetailPointMeasurementCommand()));
+        assertEquals(GeoComTimeouts.QUERY_TIMEOUT_MS, GeoComTimeouts.forCommand(builder.buildGetModelCommand()));
+        assertEquals(GeoComTimeouts.QUERY_TIMEOUT_MS, GeoComTimeouts.forCommand(builder.buildIdentificationCommand()));
+        assertEquals(GeoComTimeouts.CONFIG_TIMEOUT_MS, GeoComTimeouts.forCommand(builder.buildSetPrismHeightCommand(1.5)));
+        assertEquals(GeoComTimeouts.DEFAULT_TIMEOUT_MS, GeoComTimeouts.forRpc(99999));
+        assertFalse(GeoComTimeouts.isTs30Measurement(builder.buildSetPrismHeightCommand(1.5)));
+        assertFalse(GeoComTimeouts.isTs30Measurement(null));
+    }
+}
@@ -0,0 +1,349 @@
+package com.example.leicameasurement.device.simulator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 确定性 GeoCOM 全站仪模拟器（协议核心）
+ * 支持 GeoComCommandBuilder 使用的指令子集：
+ * 0（NullProc）、2008（测距/跟踪模式）、2108（读取当前测量值）、2114/2116/2117（测站、棱镜高、仪器高）、
+ * 5002-5005（状态、型号、序列号、电量）、9002（关闭）、9007（锁定）、9013（锁定棱镜）、17008（测量）、18007（锁定跟踪开关），
+ * 以及 *IDN? 身份查询
+ *
+ * 响应格式与仪器一致：%R1P,返回码,事务号:值0,值1,...，请求带事务号时原样回显
+ * 测量值由测站、仪器高、棱镜高与目标坐标按 DetailPointCalculator 的约定反算，可叠加高斯噪声；
+ * 噪声、抖动、分片和随机错误全部取自同一个带种子的随机源，相同种子、相同指令序列下输出逐字节一致
+ *
+ * 本类只负责"请求 → 响应"，传输由 SimulatedChannel（进程内）和 SimulatorServer（本地 TCP）实现
+ */
+public class GeoComSimulator {
+
+    public static final int RC_OK = 0;
+    public static final int RC_IVPARAM = 2;          // 参数错误
+    public static final int RC_NOT_IMPL = 5;         // 未实现的 RPC
+    public static final int RC_TMC_DIST_ERROR = 1292; // 无距离测量结果（未启动测距/跟踪）
+
+    /**
+     * 一条请求的处理结果
+     */
+    public static final class Response {
+        private final byte[][] fragments;
+        private final long delayMs;
+        private final boolean disconnect;
+
+        Response(byte[][] fragments, long delayMs, boolean disconnect) {
+            this.fragments = fragments;
+            this.delayMs = delayMs;
+            this.disconnect = disconnect;
+        }
+
+        /**
+         * @return 按注入的分片规则拆分后的响应字节，不回复时为空数组
+         */
+        public byte[][] getFragments() {
+            return fragments;
+        }
+
+        /**
+         * @return 响应相对请求到达的延迟（ms）
+         */
+        public long getDelayMs() {
+            return delayMs;
+        }
+
+        /**
+         * @return true=此时应断开连接
+         */
+        public boolean isDisconnect() {
+            return disconnect;
+        }
+    }
+
+    private final Random random;
+    private final SimulatorFaults faults;
+
+    private String model = "TS60";
+    private String serialNumber = "1234567";
+    private int batteryLevel = 85;
+    private double angleSigma = 0;    // 角度噪声（rad）
+    private double distanceSigma = 0; // 距离噪声（m）
+
+    // 仪器状态
+    private double stationX, stationY, stationH;
+    private double instrumentHeight, prismHeight;
+    private double targetX = 10, targetY = 10, targetZ = 0;
+    private int measureMode = 1;
+    private boolean tracking = false;
+    private boolean locked = false;
+    private boolean userLock = false;
+
+    private int commandCount = 0;
+    private final Map<Integer, Integer> requestCounts = new HashMap<>();
+
+    /**
+     * @param seed 随机种子
+     */
+    public GeoComSimulator(long seed) {
+        this(seed, new SimulatorFaults());
+    }
+
+    /**
+     * @param seed 随机种子
+     * @param faults 故障注入配置（可在运行中修改）
+     */
+    public GeoComSimulator(long seed, SimulatorFaults faults) {
+        this.random = new Random(seed);
+        this.faults = faults;
+    }
+
+    public SimulatorFaults getFaults() {
+        return faults;
+    }
+
+    // ==================== 场景配置 ====================
+
+    public synchronized void setModel(String model) {
+        this.model = model;
+    }
+
+    public synchronized void setSerialNumber(String serialNumber) {
+        this.serialNumber = serialNumber;
+    }
+
+    public synchronized void setBatteryLevel(int batteryLevel) {
+        this.batteryLevel = batteryLevel;
+    }
+
+    /**
+     * 设置棱镜（目标点地面）坐标
+     */
+    public synchronized void setTarget(double x, double y, double z) {
+        this.targetX = x;
+        this.targetY = y;
+        this.targetZ = z;
+    }
+
+    /**
+     * @param angleSigma 角度噪声标准差（rad）
+     * @param distanceSigma 斜距噪声标准差（m）
+     */
+    public synchronized void setNoise(double angleSigma, double distanceSigma) {
+        this.angleSigma = Math.max(0, angleSigma);
+        this.distanceSigma = Math.max(0, distanceSigma);
+    }
+
+    // ==================== 状态查询 ====================
+
+    public synchronized int getCommandCount() {
+        return commandCount;
+    }
+
+    /**
+     * @return 收到的该 RPC 请求数
+     */
+    public synchronized int getRequestCount(int rpc) {
+        Integer count = requestCounts.get(rpc);
+        return count != null ? count : 0;
+    }
+
+    public synchronized int getMeasureMode() {
+        return measureMode;
+    }
+
+    public synchronized boolean isTracking() {
+        return tracking;
+    }
+
+    public synchronized boolean isLocked() {
+        return locked;
+    }
+
+    public synchronized boolean isUserLockEnabled() {
+        return userLock;
+    }
+
+    public synchronized double getInstrumentHeight() {
+        return instrumentHeight;
+    }
+
+    public synchronized double getPrismHeight() {
+        return prismHeight;
+    }
+
+    // ==================== 请求处理 ====================
+
+    /**
+     * 处理一条请求（不含或含结束符均可）
+     * @param request 请求文本
+     * @return 处理结果：响应分片、延迟及是否断线
+     */
+    public synchronized Response handle(String request) {
+        commandCount++;
+        if (faults.getDisconnectAfter() > 0 && commandCount == faults.getDisconnectAfter()) {
+            return new Response(new byte[0][], 0, true);
+        }
+        String reply = reply(request.trim());
+        long delay = faults.getLatencyMs();
+        if (faults.getJitterMs() > 0) {
+            delay += random.nextInt((int) Math.min(Integer.MAX_VALUE - 1, faults.getJitterMs()) + 1);
+        }
+        return new Response(fragment((reply + "\r\n").getBytes(StandardCharsets.US_ASCII)), delay, false);
+    }
+
+    private String reply(String request) {
+        if (request.startsWith("*IDN?")) {
+            return "*IDN LEICA," + model + "," + serialNumber;
+        }
+        if (request.startsWith("GEO::")) {
+            // 旧版 ASCII 指令，只做确认
+            return "%R1P,0,0:";
+        }
+        if (!request.startsWith("%R1Q,")) {
+            return "%R1P," + RC_IVPARAM + ",0:";
+        }
+        int colon = request.indexOf(':');
+        if (colon < 0) {
+            return "%R1P," + RC_IVPARAM + ",0:";
+        }
+        int rpc;
+        int transactionId = 0;
+        String[] header = request.substring(5, colon).split(",");
+        try {
+            rpc = Integer.parseInt(header[0]);
+            if (header.length > 1) {
+                transactionId = Integer.parseInt(header[1]);
+            }
+        } catch (NumberFormatException e) {
+            return "%R1P," + RC_IVPARAM + ",0:";
+        }
+        requestCounts.merge(rpc, 1, Integer::sum);
+
+        int injected = faults.getErrorCode(rpc);
+        if (injected == 0 && faults.getErrorRate() > 0 && random.nextDouble() < faults.getErrorRate()) {
+            injected = faults.getRandomErrorCode();
+        }
+        if (injected != 0) {
+            return header(injected, transactionId);
+        }
+
+        String body = colon + 1 < request.length() ? request.substring(colon + 1) : "";
+        String[] params = body.isEmpty() ? new String[0] : body.split(",");
+        try {
+            return execute(rpc, params, transactionId);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return header(RC_IVPARAM, transactionId);
+        }
+    }
+
+    private String execute(int rpc, String[] params, int transactionId) {
+        switch (rpc) {
+            case 0: // COM_NullProc
+            case 9002: // 关闭
+            case 9013: // AUT_LockIn
+                return header(RC_OK, transactionId);
+            case 2008: {
+                int mode = Integer.parseInt(params[0].trim());
+                if (mode == 8) {
+                    tracking = true;
+                } else if (mode == 0) {
+                    tracking = false;
+                } else if (mode >= 1 && mode <= 3) {
+                    measureMode = mode;
+                    if (params.length > 1 && params[1].indexOf('.') >= 0) {
+                        // 通用测量指令第二个参数为棱镜高
+                        prismHeight = Double.parseDouble(params[1]);
+                    }
+                } else {
+                    return header(RC_IVPARAM, transactionId);
+                }
+                return header(RC_OK, transactionId);
+            }
+            case 2108: // TMC_GetSimpleMea
+                if (!tracking) {
+                    return header(RC_TMC_DIST_ERROR, transactionId);
+                }
+                return header(RC_OK, transactionId) + measurement();
+            case 2114:
+                stationX = Double.parseDouble(params[0]);
+                stationY = Double.parseDouble(params[1]);
+                stationH = Double.parseDouble(params[2]);
+                return header(RC_OK, transactionId);
+            case 2116:
+                prismHeight = Double.parseDouble(params[0]);
+                return header(RC_OK, transactionId);
+            case 2117:
+                instrumentHeight = Double.parseDouble(params[0]);
+                return header(RC_OK, transactionId);
+            case 5002:
+                return header(RC_OK, transactionId) + "0";
+            case 5003:
+                return header(RC_OK, transactionId) + model;
+            case 5004:
+                return header(RC_OK, transactionId) + serialNumber;
+            case 5005:
+                return header(RC_OK, transactionId) + batteryLevel;
+            case 9007:
+                locked = Integer.parseInt(params[0].trim()) != 0;
+                return header(RC_OK, transactionId);
+            case 17008:
+                Integer.parseInt(params[0].trim());
+                return header(RC_OK, transactionId) + measurement();
+            case 18007:
+                userLock = Integer.parseInt(params[0].trim()) != 0;
+                return header(RC_OK, transactionId);
+            default:
+                return header(RC_NOT_IMPL, transactionId);
+        }
+    }
+
+    private String header(int returnCode, int transactionId) {
+        return "%R1P," + returnCode + "," + (faults.isEchoTransactionId() ? transactionId : 0) + ":";
+    }
+
+    /**
+     * 由测站与目标坐标反算水平角、天顶距、斜距
+     * 与 DetailPointCalculator 一致：X 方向为水平角 0，平距 = 斜距·sin(V)，高差 = 斜距·cos(V)
+     */
+    private String measurement() {
+        double dx = targetX - stationX;
+        double dy = targetY - stationY;
+        double dz = (targetZ + prismHeight) - (stationH + instrumentHeight);
+        double horizontalDistance = Math.hypot(dx, dy);
+        double hz = Math.atan2(dy, dx);
+        if (hz < 0) {
+            hz += 2 * Math.PI;
+        }
+        double v = Math.atan2(horizontalDistance, dz);
+        double sd = Math.sqrt(horizontalDistance * horizontalDistance + dz * dz);
+        if (angleSigma > 0) {
+            hz += random.nextGaussian() * angleSigma;
+            v += random.nextGaussian() * angleSigma;
+        }
+        if (distanceSigma > 0) {
+            sd += random.nextGaussian() * distanceSigma;
+        }
+        return String.format(Locale.US, "%.10f,%.10f,%.4f", hz, v, sd);
+    }
+
+    private byte[][] fragment(byte[] reply) {
+        int max = faults.getMaxFragmentSize();
+        if (max <= 0 || max >= reply.length) {
+            return new byte[][]{reply};
+        }
+        List<byte[]> fragments = new ArrayList<>();
+        int offset = 0;
+        while (offset < reply.length) {
+            int size = Math.min(reply.length - offset, 1 + random.nextInt(max));
+            byte[] part = new byte[size];
+            System.arraycopy(reply, offset, part, 0, size);
+            fragments.add(part);
+            offset += size;
+        }
+        return fragments.toArray(new byte[0][]);
+    }
+}
@@ -0,0 +1,337 @@
+package com.example.leicameasurement.device.simulator;
+
+import com.example.leicameasurement.calculation.DetailPointCalculator;
+import com.example.leicameasurement.device.adapter.InstrumentAdapter;
+import com.example.leicameasurement.device.adapter.TS60Adapter;
+import com.example.leicameasurement.device.adapter.TrackingListener;
+import com.example.leicameasurement.device.adapter.TrackingSample;
+import com.example.leicameasurement.device.connection.ConnectionConfig;
+import com.example.leicameasurement.device.connection.GeoComTransceiver;
+import com.example.leicameasurement.device.protocol.GeoComCommandBuilder;
+import com.example.leicameasurement.device.protocol.InstrumentException;
+import com.example.leicameasurement.device.wifi.WifiChannel;
+import com.example.leicameasurement.device.wifi.WifiConfig;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * GeoCOM 模拟器测试
+ * 验证模拟器本身的确定性，并通过进程内通道驱动 TS60Adapter、通过本地 TCP 驱动 WifiChannel，
+ * 在注入时延、抖动、分片、错误码和断线的情况下检查上层行为
+ */
+public class GeoComSimulatorTest {
+
+    private static final double STATION_X = 100, STATION_Y = 200, STATION_H = 10, INSTRUMENT_HEIGHT = 1.5;
+    private static final double TARGET_X = 135.25, TARGET_Y = 188.5, TARGET_Z = 12.75;
+
+    private final GeoComCommandBuilder commandBuilder = new GeoComCommandBuilder();
+    private TS60Adapter adapter;
+    private SimulatorServer server;
+    private WifiChannel wifiChannel;
+
+    @After
+    public void tearDown() throws Exception {
+        if (adapter != null) {
+            adapter.close();
+        }
+        if (wifiChannel != null) {
+            wifiChannel.disconnect();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void sameSeed_producesIdenticalResponses() {
+        String first = transcript(7L);
+        assertEquals(first, transcript(7L));
+        assertNotEquals(first, transcript(8L));
+    }
+
+    @Test
+    public void taggedRequest_echoesTransactionId() {
+        GeoComSimulator simulator = new GeoComSimulator(1L);
+        byte[] tagged = GeoComCommandBuilder.withTransactionId(commandBuilder.buildGetModelCommand(), 42);
+        assertEquals("%R1P,0,42:TS60\r\n", reply(simulator, tagged));
+        assertEquals("%R1P,1292,0:\r\n", reply(simulator, commandBuilder.buildGetSimpleMeasurementCommand(50)));
+        assertEquals("%R1P,5,0:\r\n", reply(simulator, "%R1Q,99999:\r\n".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void ts60Adapter_measuresTargetWithLatencyJitterAndFragmentation() throws Exception {
+        GeoComSimulator simulator = newSimulator();
+        simulator.getFaults().setLatencyMs(5);
+        simulator.getFaults().setJitterMs(10);
+        simulator.getFaults().setMaxFragmentSize(4);
+        adapter = connectAdapter(new SimulatedChannel(simulator));
+
+        assertTrue(adapter.setStation(STATION_X, STATION_Y, STATION_H, INSTRUMENT_HEIGHT));
+        double prismHeight = 1.8;
+        for (int i = 0; i < 3; i++) {
+            double[] result = adapter.measureDetailPoint(prismHeight, InstrumentAdapter.MeasureMode.STANDARD);
+            assertNotNull(result);
+            double[] point = DetailPointCalculator.calculateAbsoluteCoordinates(STATION_X, STATION_Y, STATION_H,
+                    result[0], result[1], result[2]);
+            assertEquals(TARGET_X, point[0], 1e-3);
+            assertEquals(TARGET_Y, point[1], 1e-3);
+            assertEquals(TARGET_Z + prismHeight - INSTRUMENT_HEIGHT, point[2], 1e-3);
+        }
+        // 棱镜高与测量模式只在第一次下发，之后由影子状态省略
+        assertEquals(1, simulator.getRequestCount(2116));
+        assertEquals(1, simulator.getRequestCount(2008));
+        assertEquals(3, simulator.getRequestCount(17008));
+        assertEquals("TS60", adapter.getInstrumentInfo().getModel());
+    }
+
+    @Test
+    public void injectedErrorCode_failsMeasurementAndInvalidatesShadowState() throws Exception {
+        GeoComSimulator simulator = newSimulator();
+        simulator.getFaults().setErrorCode(17008, 1284);
+        adapter = connectAdapter(new SimulatedChannel(simulator));
+
+        assertNull(adapter.measureDetailPoint(1.8, InstrumentAdapter.MeasureMode.STANDARD));
+
+        simulator.getFaults().setErrorCode(17008, 0);
+        assertNotNull(adapter.measureDetailPoint(1.8, InstrumentAdapter.MeasureMode.STANDARD));
+        // 失败后影子状态失效，棱镜高重新下发
+        assertEquals(2, simulator.getRequestCount(2116));
+    }
+
+    @Test
+    public void injectedDisconnect_failsPendingCommand() throws Exception {
+        GeoComSimulator simulator = newSimulator();
+        simulator.getFaults().setDisconnectAfter(2);
+        SimulatedChannel channel = new SimulatedChannel(simulator);
+        adapter = connectAdapter(channel);
+
+        try {
+            adapter.getInstrumentInfo();
+            fail("第二条指令触发断线，应抛出异常");
+        } catch (InstrumentException expected) {
+            // 断线
+        }
+        assertFalse(channel.isConnected());
+    }
+
+    @Test
+    public void ts60Adapter_close_sendsCloseCommandBeforeStopping() throws Exception {
+        GeoComSimulator simulator = newSimulator();
+        simulator.getFaults().setLatencyMs(5);
+        simulator.getFaults().setJitterMs(5);
+        for (int i = 1; i <= 10; i++) {
+            TS60Adapter ts60 = connectAdapter(new SimulatedChannel(simulator));
+            ts60.getInstrumentInfo();
+            ts60.close();
+            assertEquals("第 " + i + " 次关闭", i, simulator.getRequestCount(9002));
+        }
+    }
+
+    @Test
+    public void transceiver_keepsIdentityQueryApartFromUnechoedGeoComReply() throws Exception {
+        GeoComSimulator simulator = newSimulator();
+        simulator.getFaults().setLatencyMs(20);
+        simulator.getFaults().setEchoTransactionId(false);
+        SimulatedChannel channel = new SimulatedChannel(simulator);
+        channel.connect(new ConnectionConfig("simulator", ConnectionConfig.ConnectionType.WIFI));
+        GeoComTransceiver transceiver = new GeoComTransceiver(channel);
+        transceiver.start();
+        try {
+            // %R1Q 先发送，事务号为 0 的响应先到达，不能交给之后发送的 *IDN?
+            CompletableFuture<byte[]> model = transceiver.submit(commandBuilder.buildGetModelCommand());
+            CompletableFuture<byte[]> identity = transceiver.submit(commandBuilder.buildIdentificationCommand());
+            assertEquals("%R1P,0,0:TS60", text(model.get(2, TimeUnit.SECONDS)).trim());
+            assertTrue(text(identity.get(2, TimeUnit.SECONDS)).startsWith("*IDN LEICA,TS60"));
+        } finally {
+            transceiver.stop();
+            channel.disconnect();
+        }
+    }
+
+    @Test
+    public void ts60Adapter_tracksAgainstSimulator() throws Exception {
+        GeoComSimulator simulator = newSimulator();
+        simulator.getFaults().setLatencyMs(2);
+        simulator.setNoise(1e-5, 0.001);
+        adapter = connectAdapter(new SimulatedChannel(simulator));
+        List<TrackingSample> samples = new CopyOnWriteArrayList<>();
+        CountDownLatch received = new CountDownLatch(3);
+
+        adapter.startTracking(sample -> {
+            samples.add(sample);
+            received.countDown();
+        }, 20);
+        assertTrue(simulator.isTracking());
+        assertTrue(simulator.isUserLockEnabled());
+        assertTrue("应收到跟踪样本", received.await(5, TimeUnit.SECONDS));
+        adapter.stopTracking();
+
+        for (TrackingSample sample : samples) {
+            assertTrue(sample.getSlopeDistance() > 30);
+        }
+        awaitCondition(() -> !simulator.isTracking());
+    }
+
+    @Test
+    public void ts60Adapter_failedTrackingStart_releasesLockAndTracking() throws Exception {
+        GeoComSimulator simulator = newSimulator();
+        simulator.getFaults().setErrorCode(9013, 8710);
+        adapter = connectAdapter(new SimulatedChannel(simulator));
+
+        try {
+            adapter.startTracking(sample -> { }, 10);
+            fail("锁定棱镜失败时应抛出异常");
+        } catch (InstrumentException expected) {
+            // 锁定棱镜失败
+        }
+        assertFalse(adapter.isTracking());
+        // 已生效的锁定开关与跟踪测距被撤销
+        awaitCondition(() -> !simulator.isTracking() && !simulator.isUserLockEnabled());
+    }
+
+    @Test
+    public void ts60Adapter_abortedTrackingSession_stopsInstrument() throws Exception {
+        GeoComSimulator simulator = newSimulator();
+        adapter = connectAdapter(new SimulatedChannel(simulator));
+        CountDownLatch aborted = new CountDownLatch(1);
+
+        adapter.startTracking(new TrackingListener() {
+            @Override
+            public void onSample(TrackingSample sample) {
+            }
+
+            @Override
+            public void onTrackingError(InstrumentException error) {
+                aborted.countDown();
+            }
+        }, 20);
+        assertTrue(simulator.isTracking());
+        // 取数连续失败，会话自行终止
+        simulator.getFaults().setErrorCode(2108, 1292);
+
+        assertTrue("会话应因连续失败终止", aborted.await(5, TimeUnit.SECONDS));
+        assertFalse(adapter.isTracking());
+        // 回调前已发出停止跟踪与关闭锁定指令
+        awaitCondition(() -> !simulator.isTracking() && !simulator.isUserLockEnabled());
+    }
+
+    @Test
+    public void wifiChannel_reassemblesFragmentedRepliesFromServer() throws Exception {
+        GeoComSimulator simulator = newSimulator();
+        simulator.getFaults().setLatencyMs(1);
+        simulator.getFaults().setJitterMs(3);
+        simulator.getFaults().setMaxFragmentSize(3);
+        simulator.getFaults().setFragmentGapMs(1);
+        server = new SimulatorServer(simulator);
+        wifiChannel = new WifiChannel();
+        wifiChannel.connect(new WifiConfig("127.0.0.1", server.getPort()));
+
+        for (int id = 1; id <= 20; id++) {
+            wifiChannel.sendData(GeoComCommandBuilder.withTransactionId(commandBuilder.buildGetSerialNumberCommand(), id));
+        }
+        for (int id = 1; id <= 20; id++) {
+            assertEquals("%R1P,0," + id + ":1234567\r\n", text(wifiChannel.receiveData(2000)));
+        }
+    }
+
+    @Test
+    public void wifiChannel_failsWhenServerInjectsDisconnect() throws Exception {
+        GeoComSimulator simulator = newSimulator();
+        simulator.getFaults().setDisconnectAfter(2);
+        server = new SimulatorServer(simulator);
+        wifiChannel = new WifiChannel();
+        wifiChannel.connect(new WifiConfig("127.0.0.1", server.getPort()));
+
+        wifiChannel.sendData(commandBuilder.buildNullProcCommand());
+        assertEquals("%R1P,0,0:\r\n", text(wifiChannel.receiveData(2000)));
+        wifiChannel.sendData(commandBuilder.buildNullProcCommand());
+        try {
+            wifiChannel.receiveData(2000);
+            fail("服务端断开后应抛出异常");
+        } catch (InterruptedIOException e) {
+            fail("不应等到超时: " + e.getMessage());
+        } catch (IOException expected) {
+            // 对端关闭
+        }
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private static GeoComSimulator newSimulator() {
+        GeoComSimulator simulator = new GeoComSimulator(20240601L);
+        simulator.setTarget(TARGET_X, TARGET_Y, TARGET_Z);
+        return simulator;
+    }
+
+    /**
+     * 轮询等待条件成立，超过期限判为失败
+     */
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("等待条件超时", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static TS60Adapter connectAdapter(SimulatedChannel channel) throws Exception {
+        channel.connect(new ConnectionConfig("simulator", ConnectionConfig.ConnectionType.WIFI));
+        TS60Adapter ts60 = new TS60Adapter();
+        ts60.initialize(channel);
+        return ts60;
+    }
+
+    /**
+     * 固定指令序列在给定种子下的完整输出（响应字节、分片边界与延迟）
+     */
+    private String transcript(long seed) {
+        GeoComSimulator simulator = new GeoComSimulator(seed);
+        simulator.setTarget(TARGET_X, TARGET_Y, TARGET_Z);
+        simulator.setNoise(1e-5, 0.002);
+        simulator.getFaults().setJitterMs(20);
+        simulator.getFaults().setMaxFragmentSize(5);
+        simulator.getFaults().setErrorRate(0.1, 1284);
+        StringBuilder out = new StringBuilder();
+        byte[][] commands = {
+                commandBuilder.buildSetStationCommand(STATION_X, STATION_Y, STATION_H),
+                commandBuilder.buildSetPrismHeightCommand(1.8),
+                commandBuilder.buildDetailPointMeasurementCommand(),
+                commandBuilder.buildStartTrackingCommand(),
+                commandBuilder.buildGetSimpleMeasurementCommand(50),
+        };
+        for (int i = 0; i < 100; i++) {
+            GeoComSimulator.Response response = simulator.handle(text(commands[i % commands.length]));
+            out.append(response.getDelayMs()).append('|');
+            for (byte[] fragment : response.getFragments()) {
+                out.append(text(fragment)).append('|');
+            }
+        }
+        return out.toString();
+    }
+
+    private static String reply(GeoComSimulator simulator, byte[] command) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] fragment : simulator.handle(text(command)).getFragments()) {
+            out.write(fragment, 0, fragment.length);
+        }
+        return text(out.toByteArray());
+    }
+
+    private static String text(byte[] data) {
+        return new String(data, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.leicameasurement.device.simulator;
+
+import com.example.leicameasurement.device.connection.ByteRingBuffer;
+import com.example.leicameasurement.device.connection.ConnectionConfig;
+import com.example.leicameasurement.device.connection.ConnectionException;
+import com.example.leicameasurement.device.connection.ConnectionStateListener;
+import com.example.leicameasurement.device.connection.FrameDecoder;
+import com.example.leicameasurement.device.connection.IConnectionChannel;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内模拟通道：把 GeoComSimulator 包装成 IConnectionChannel，可直接交给 TS60Adapter.initialize()
+ * 请求在 sendData 中同步交给模拟器处理，响应分片按到期时间排入投递队列，由投递线程到期后写入环形缓冲区，
+ * receiveData 与 WifiChannel 一样用 FrameDecoder 在环形缓冲区上切帧，因此分片和粘包同样会经过解码器
+ *
+ * 与真实仪器一致，响应严格按请求顺序投递：抖动只会推迟后续响应，不会让响应乱序
+ */
+public class SimulatedChannel implements IConnectionChannel {
+
+    private static final int RECEIVE_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * 一次投递：到期后写入一个响应分片，或断开连接
+     */
+    private static final class Delivery {
+        final long dueNanos;
+        final byte[] data; // null 表示断开连接
+
+        Delivery(long dueNanos, byte[] data) {
+            this.dueNanos = dueNanos;
+            this.data = data;
+        }
+    }
+
+    private final GeoComSimulator simulator;
+    private final List<ConnectionStateListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile ConnectionState state = ConnectionState.DISCONNECTED;
+    private ConnectionConfig config;
+    private int connectionTimeout = 5000;
+    private volatile int readTimeout = 5000;
+
+    // 发送侧状态，仅在 writeLock 内访问
+    private final Object writeLock = new Object();
+    private final StringBuilder pendingRequest = new StringBuilder();
+    private BlockingQueue<Delivery> deliveries;
+    private Thread deliverer;
+    private long lastDeliveryNanos;
+
+    // 接收侧状态，仅在 readLock 内访问
+    private final Object readLock = new Object();
+    private volatile ByteRingBuffer ringBuffer;
+    private final FrameDecoder frameDecoder = new FrameDecoder();
+
+    public SimulatedChannel(GeoComSimulator simulator) {
+        this.simulator = simulator;
+    }
+
+    public GeoComSimulator getSimulator() {
+        return simulator;
+    }
+
+    @Override
+    public void connect(ConnectionConfig config) throws ConnectionException {
+        synchronized (writeLock) {
+            if (state == ConnectionState.CONNECTED) {
+                return;
+            }
+            this.config = config;
+            notifyStateChange(ConnectionState.CONNECTING, null);
+            pendingRequest.setLength(0);
+            lastDeliveryNanos = System.nanoTime();
+            ByteRingBuffer ring = new ByteRingBuffer(RECEIVE_BUFFER_SIZE);
+            BlockingQueue<Delivery> queue = new LinkedBlockingQueue<>();
+            ringBuffer = ring;
+            deliveries = queue;
+            synchronized (readLock) {
+                frameDecoder.reset();
+            }
+            notifyStateChange(ConnectionState.CONNECTED, null);
+            deliverer = new Thread(() -> deliverLoop(queue, ring), "SimulatedChannel-Deliverer");
+            deliverer.setDaemon(true);
+            deliverer.start();
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        synchronized (writeLock) {
+            if (state == ConnectionState.DISCONNECTED || state == ConnectionState.DISCONNECTING) {
+                return;
+            }
+            notifyStateChange(ConnectionState.DISCONNECTING, null);
+            shutdown();
+            notifyStateChange(ConnectionState.DISCONNECTED, "手动断开连接");
+        }
+    }
+
+    @Override
+    public boolean isConnected() {
+        return state == ConnectionState.CONNECTED;
+    }
+
+    @Override
+    public ConnectionState getConnectionState() {
+        return state;
+    }
+
+    /**
+     * 发送数据：按换行符拆出完整请求逐条交给模拟器，不完整的尾部留到下次发送
+     */
+    @Override
+    public void sendData(byte[] data) throws IOException {
+        synchronized (writeLock) {
+            if (!isConnected()) {
+                throw new IOException("模拟通道未连接，无法发送数据");
+            }
+            pendingRequest.append(new String(data, StandardCharsets.US_ASCII));
+            int newline;
+            while ((newline = pendingRequest.indexOf("\n")) >= 0) {
+                String request = pendingRequest.substring(0, newline + 1);
+                pendingRequest.delete(0, newline + 1);
+                schedule(simulator.handle(request));
+                if (!isConnected()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 按到期时间排入投递队列；到期时间单调不减，投递线程按队列顺序执行即可保证响应不乱序
+     */
+    private void schedule(GeoComSimulator.Response response) {
+        long deliverAt = Math.max(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(response.getDelayMs()),
+                lastDeliveryNanos);
+        if (response.isDisconnect()) {
+            // 先投递已排队的响应，再断开
+            deliveries.add(new Delivery(deliverAt, null));
+            lastDeliveryNanos = deliverAt;
+            return;
+        }
+        long gap = TimeUnit.MILLISECONDS.toNanos(simulator.getFaults().getFragmentGapMs());
+        for (byte[] fragment : response.getFragments()) {
+            deliveries.add(new Delivery(deliverAt, fragment));
+            lastDeliveryNanos = deliverAt;
+            deliverAt += gap;
+        }
+    }
+
+    private void deliverLoop(BlockingQueue<Delivery> queue, ByteRingBuffer ring) {
+        try {
+            while (true) {
+                Delivery delivery = queue.take();
+                long wait = delivery.dueNanos - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                if (delivery.data == null) {
+                    drop(ring);
+                    return;
+                }
+                // 接收方长期不读取时与真实链路一样丢弃溢出部分（计入环形缓冲区的溢出字节数）
+                ring.write(delivery.data, 0, delivery.data.length);
+            }
+        } catch (InterruptedException e) {
+            // 连接已关闭
+        }
+    }
+
+    /**
+     * 模拟器注入的断线：对端关闭，已投递但未读取的数据仍可读出
+     * 先切换状态再关闭环形缓冲区，读线程看到 EOF 时通道已不再是已连接状态
+     */
+    private void drop(ByteRingBuffer ring) {
+        synchronized (writeLock) {
+            if (ring != ringBuffer || state != ConnectionState.CONNECTED) {
+                return;
+            }
+            notifyStateChange(ConnectionState.ERROR, "模拟器断开连接");
+            ring.close();
+        }
+    }
+
+    private void shutdown() {
+        if (deliverer != null) {
+            deliverer.interrupt();
+            deliverer = null;
+        }
+        if (ringBuffer != null) {
+            ringBuffer.close();
+        }
+    }
+
+    @Override
+    public byte[] receiveData() throws IOException {
+        return receiveData(readTimeout);
+    }
+
+    /**
+     * 接收一帧数据：在环形缓冲区上切帧，不足一帧时等待投递线程写入
+     * @throws InterruptedIOException 超时
+     * @throws EOFException 模拟器已断开且缓冲区已读空
+     */
+    @Override
+    public byte[] receiveData(long timeoutMs) throws IOException {
+        ByteRingBuffer ring = ringBuffer;
+        if (ring == null || (state != ConnectionState.CONNECTED && state != ConnectionState.ERROR)) {
+            throw new IOException("模拟通道未连接，无法接收数据");
+        }
+        synchronized (readLock) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (true) {
+                if (frameDecoder.next(ring)) {
+                    return frameDecoder.copyFrame();
+                }
+                if (ring.isClosed() && ring.size() == 0) {
+                    throw new EOFException("模拟器已关闭连接");
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new InterruptedIOException("接收数据超时(" + timeoutMs + "ms)");
+                }
+                ring.awaitReadable(remaining, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        throw new IOException("模拟通道不支持流式读写");
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        throw new IOException("模拟通道不支持流式读写");
+    }
+
+    @Override
+    public ConnectionConfig getConnectionConfig() {
+        return config;
+    }
+
+    @Override
+    public void setConnectionTimeout(int timeoutMs) {
+        this.connectionTimeout = timeoutMs;
+    }
+
+    @Override
+    public void setReadTimeout(int timeoutMs) {
+        this.readTimeout = timeoutMs;
+    }
+
+    @Override
+    public void addConnectionStateListener(ConnectionStateListener listener) {
+        if (listener != null && !listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    @Override
+    public void removeConnectionStateListener(ConnectionStateListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyStateChange(ConnectionState newState, String error) {
+        ConnectionState oldState = state;
+        state = newState;
+        for (ConnectionStateListener listener : listeners) {
+            listener.onConnectionStateChanged(oldState, newState, error);
+            if (newState == ConnectionState.CONNECTED) {
+                listener.onConnected();
+            } else if (newState == ConnectionState.DISCONNECTED) {
+                listener.onDisconnected(error != null ? error : "正常断开");
+            } else if (newState == ConnectionState.ERROR) {
+                listener.onConnectionError(error != null ? error : "未知错误");
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.leicameasurement.device.simulator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 模拟器故障注入配置
+ * 时延、抖动、分片、错误码与断线均由模拟器的随机种子驱动，相同配置与种子下每次运行的结果完全一致
+ */
+public class SimulatorFaults {
+
+    private long latencyMs = 0;          // 每条响应的固定时延
+    private long jitterMs = 0;           // 在固定时延上叠加 [0, jitterMs] 的随机抖动
+    private int maxFragmentSize = 0;     // >0 时响应被拆成 1..maxFragmentSize 字节的随机分片
+    private long fragmentGapMs = 0;      // 相邻分片之间的间隔
+    private final Map<Integer, Integer> errorCodes = new HashMap<>(); // RPC → 固定返回码
+    private double errorRate = 0;        // 任意指令按该概率返回 randomErrorCode
+    private int randomErrorCode = 1;
+    private int disconnectAfter = 0;     // >0 时处理完第 N 条指令后断开连接（不回复第 N 条）
+    private boolean echoTransactionId = true; // false 时响应的事务号恒为 0（部分老固件不回显）
+
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    public void setLatencyMs(long latencyMs) {
+        this.latencyMs = Math.max(0, latencyMs);
+    }
+
+    public long getJitterMs() {
+        return jitterMs;
+    }
+
+    public void setJitterMs(long jitterMs) {
+        this.jitterMs = Math.max(0, jitterMs);
+    }
+
+    public int getMaxFragmentSize() {
+        return maxFragmentSize;
+    }
+
+    public void setMaxFragmentSize(int maxFragmentSize) {
+        this.maxFragmentSize = Math.max(0, maxFragmentSize);
+    }
+
+    public long getFragmentGapMs() {
+        return fragmentGapMs;
+    }
+
+    public void setFragmentGapMs(long fragmentGapMs) {
+        this.fragmentGapMs = Math.max(0, fragmentGapMs);
+    }
+
+    /**
+     * 指定 RPC 的所有请求都返回给定错误码
+     * @param rpc RPC 编号
+     * @param returnCode 返回码，0 表示取消注入
+     */
+    public void setErrorCode(int rpc, int returnCode) {
+        if (returnCode == 0) {
+            errorCodes.remove(rpc);
+        } else {
+            errorCodes.put(rpc, returnCode);
+        }
+    }
+
+    /**
+     * @return 为该 RPC 注入的返回码，未注入时返回 0
+     */
+    public int getErrorCode(int rpc) {
+        Integer code = errorCodes.get(rpc);
+        return code != null ? code : 0;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    /**
+     * @param errorRate 随机错误概率 [0, 1]
+     * @param returnCode 随机错误使用的返回码
+     */
+    public void setErrorRate(double errorRate, int returnCode) {
+        this.errorRate = Math.max(0, Math.min(1, errorRate));
+        this.randomErrorCode = returnCode;
+    }
+
+    public int getRandomErrorCode() {
+        return randomErrorCode;
+    }
+
+    public int getDisconnectAfter() {
+        return disconnectAfter;
+    }
+
+    public void setDisconnectAfter(int disconnectAfter) {
+        this.disconnectAfter = Math.max(0, disconnectAfter);
+    }
+
+    public boolean isEchoTransactionId() {
+        return echoTransactionId;
+    }
+
+    public void setEchoTransactionId(boolean echoTransactionId) {
+        this.echoTransactionId = echoTransactionId;
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.leicameasurement.device.simulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 本地 TCP 模拟仪器：在 127.0.0.1 上监听，按 GeoComSimulator 的结果回复，供 WifiChannel / WifiLinkManager 连接
+ * 每个连接由独立线程串行处理请求：等待注入的时延后逐个分片写出（每片单独 flush，关闭 Nagle），
+ * 注入断线时直接关闭套接字，客户端读到 EOF
+ *
+ * 也可单独运行作为 CI 上的长期桩服务：java ... SimulatorServer [端口] [种子]
+ */
+public class SimulatorServer implements AutoCloseable {
+
+    private final GeoComSimulator simulator;
+    private final ServerSocket serverSocket;
+    private final List<Socket> clients = new CopyOnWriteArrayList<>();
+    private final Thread acceptThread;
+    private volatile boolean running = true;
+    private volatile int connectionCount = 0;
+
+    /**
+     * 在随机空闲端口上启动
+     */
+    public SimulatorServer(GeoComSimulator simulator) throws IOException {
+        this(simulator, 0);
+    }
+
+    /**
+     * @param port 监听端口，0 表示随机空闲端口
+     */
+    public SimulatorServer(GeoComSimulator simulator, int port) throws IOException {
+        this.simulator = simulator;
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.acceptThread = new Thread(this::acceptLoop, "SimulatorServer-Accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public GeoComSimulator getSimulator() {
+        return simulator;
+    }
+
+    /**
+     * @return 累计接受的连接数
+     */
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                clients.add(socket);
+                connectionCount++;
+                Thread worker = new Thread(() -> serve(socket), "SimulatorServer-Client-" + connectionCount);
+                worker.setDaemon(true);
+                worker.start();
+            } catch (IOException e) {
+                // 关闭服务时 accept 抛出异常，正常退出
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        StringBuilder pending = new StringBuilder();
+        byte[] chunk = new byte[1024];
+        try (Socket s = socket) {
+            InputStream in = s.getInputStream();
+            OutputStream out = s.getOutputStream();
+            int n;
+            while (running && (n = in.read(chunk)) >= 0) {
+                pending.append(new String(chunk, 0, n, StandardCharsets.US_ASCII));
+                int newline;
+                while ((newline = pending.indexOf("\n")) >= 0) {
+                    String request = pending.substring(0, newline + 1);
+                    pending.delete(0, newline + 1);
+                    GeoComSimulator.Response response = simulator.handle(request);
+                    sleep(response.getDelayMs());
+                    if (response.isDisconnect()) {
+                        return;
+                    }
+                    byte[][] fragments = response.getFragments();
+                    for (int i = 0; i < fragments.length; i++) {
+                        if (i > 0) {
+                            sleep(simulator.getFaults().getFragmentGapMs());
+                        }
+                        out.write(fragments[i]);
+                        out.flush();
+                    }
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // 客户端断开或服务关闭
+        } finally {
+            clients.remove(socket);
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedException {
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        for (Socket client : clients) {
+            client.close();
+        }
+        clients.clear();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 1212;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 0L;
+        SimulatorServer server = new SimulatorServer(new GeoComSimulator(seed), port);
+        System.out.println("GeoCOM simulator listening on 127.0.0.1:" + server.getPort() + " (seed " + seed + ")");
+        server.acceptThread.join();
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.leicameasurement.device.wifi;
+
+import com.example.leicameasurement.device.connection.FrameDecoder;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * WifiChannel 单元测试
+ * 使用本地 TCP 服务模拟全站仪，验证切帧、超时和对端关闭
+ * （与原逐字节读取实现的性能对比见 benchmarks 模块的 WifiChannelBenchmark）
+ */
+public class WifiChannelTest {
+
+    private StandInServer server;
+    private WifiChannel channel;
+
+    @After
+    public void tearDown() throws Exception {
+        if (channel != null) {
+            channel.disconnect();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void receiveData_reassemblesFragmentedAndCoalescedFrames() throws Exception {
+        server = new StandInServer(socket -> {
+            OutputStream out = socket.getOutputStream();
+            // 一帧拆成三段发送
+            out.write(ascii("%R1P,0,0"));
+            out.flush();
+            Thread.sleep(20);
+            out.write(ascii(":0,1.5\r"));
+            out.flush();
+            Thread.sleep(20);
+            out.write(ascii("\n"));
+            // 两帧合并为一次发送
+            out.write(ascii("%R1P,0,0:1\r\n%R1P,0,0:2\r\n"));
+            out.flush();
+            socket.getInputStream().read();
+        });
+        channel = connect(new WifiConfig("127.0.0.1", server.getPort()));
+
+        assertEquals("%R1P,0,0:0,1.5\r\n", text(channel.receiveData()));
+        assertEquals("%R1P,0,0:1\r\n", text(channel.receiveData()));
+        assertEquals("%R1P,0,0:2\r\n", text(channel.receiveData()));
+    }
+
+    @Test
+    public void receiveData_honoursConfiguredTerminators() throws Exception {
+        server = new StandInServer(socket -> {
+            OutputStream out = socket.getOutputStream();
+            out.write(ascii("A\r\nB\u0003C\r\n"));
+            out.flush();
+            socket.getInputStream().read();
+        });
+        WifiConfig config = new WifiConfig("127.0.0.1", server.getPort());
+        config.setFrameTerminators(FrameDecoder.TERMINATOR_ETX);
+        channel = connect(config);
+
+        assertEquals("A\r\nB\u0003", text(channel.receiveData()));
+    }
+
+    @Test
+    public void receiveData_timesOutWithoutDroppingConnection() throws Exception {
+        server = new StandInServer(socket -> socket.getInputStream().read());
+        channel = connect(new WifiConfig("127.0.0.1", server.getPort()));
+
+        long start = System.currentTimeMillis();
+        try {
+            channel.receiveData(100);
+            fail("应当超时");
+        } catch (InterruptedIOException expected) {
+            // 超时
+        }
+        assertTrue(System.currentTimeMillis() - start >= 100);
+        assertTrue(channel.isConnected());
+    }
+
+    @Test
+    public void receiveData_failsWhenPeerCloses() throws Exception {
+        server = new StandInServer(socket -> {
+            socket.getOutputStream().write(ascii("%R1P,0,0:"));
+            socket.close();
+        });
+        channel = connect(new WifiConfig("127.0.0.1", server.getPort()));
+
+        try {
+            channel.receiveData(2000);
+            fail("对端关闭后应抛出异常");
+        } catch (InterruptedIOException e) {
+            fail("不应等到超时: " + e.getMessage());
+        } catch (IOException expected) {
+            // 对端关闭
+        }
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private static WifiChannel connect(WifiConfig config) throws Exception {
+        WifiChannel wifiChannel = new WifiChannel();
+        wifiChannel.connect(config);
+        return wifiChannel;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String text(byte[] data) {
+        return new String(data, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 本地 TCP 替身服务：只接受一个连接，在后台线程中运行处理逻辑
+     */
+    private static class StandInServer implements AutoCloseable {
+
+        interface Handler {
+            void handle(Socket socket) throws Exception;
+        }
+
+        private final ServerSocket serverSocket;
+        private final Thread thread;
+
+        StandInServer(Handler handler) throws IOException {
+            serverSocket = new ServerSocket(0);
+            thread = new Thread(() -> {
+                try (Socket socket = serverSocket.accept()) {
+                    handler.handle(socket);
+                } catch (Exception e) {
+                    // 客户端断开或服务关闭
+                }
+            }, "WifiChannelTest-Server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        @Override
+        public void close() throws Exception {
+            serverSocket.close();
+            thread.join(2000);
+        }
+    }
+}
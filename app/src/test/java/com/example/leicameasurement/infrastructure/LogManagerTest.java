@@ -0,0 +1,92 @@
+package com.example.leicameasurement.infrastructure;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * LogManager / RollingLogFile 单元测试
+ * 验证级别过滤时不构造消息、后台线程格式化并写入文件，以及日志文件按大小滚动
+ */
+public class LogManagerTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("logmanager").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        LogManager.disableFileSink();
+        LogManager.setLevel(LogManager.DEBUG);
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void belowLevel_supplierNotEvaluated() {
+        AtomicInteger evaluations = new AtomicInteger();
+        LogManager.setLevel(LogManager.INFO);
+        LogManager.d("Test", () -> "debug " + evaluations.incrementAndGet());
+        assertEquals(0, evaluations.get());
+        assertFalse(LogManager.isDebugEnabled());
+
+        LogManager.i("Test", () -> "info " + evaluations.incrementAndGet());
+        assertEquals(1, evaluations.get());
+    }
+
+    @Test
+    public void parameterizedMessage_formattedIntoFileSink() throws IOException {
+        LogManager.enableFileSink(dir, 64 * 1024, 2);
+        LogManager.d("Parser", "Hz=%.6f, SD=%.4f", 1.2345678, 35.25);
+        LogManager.setLevel(LogManager.WARN);
+        LogManager.i("Parser", "filtered %d", 1);
+        assertTrue(LogManager.flush(2000));
+
+        String content = new String(Files.readAllBytes(new File(dir, "app.log").toPath()), StandardCharsets.UTF_8);
+        assertTrue(content, content.contains("D/Parser"));
+        assertTrue(content, content.contains("Hz=1.234568, SD=35.2500"));
+        assertFalse(content.contains("filtered"));
+    }
+
+    @Test
+    public void rollingFile_keepsAtMostMaxFiles() {
+        RollingLogFile file = new RollingLogFile(dir, "trace", 1024, 3);
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            line.append('x');
+        }
+        for (int i = 0; i < 200; i++) {
+            file.append(i + " " + line);
+        }
+        file.close();
+
+        assertTrue(new File(dir, "trace.log").exists());
+        assertTrue(new File(dir, "trace.1.log").exists());
+        assertTrue(new File(dir, "trace.2.log").exists());
+        assertFalse(new File(dir, "trace.3.log").exists());
+        assertTrue(new File(dir, "trace.1.log").length() <= 1024 + 64);
+    }
+
+    @Test
+    public void toHex_truncatesLongPayloads() {
+        assertEquals("25 52 0D 0A", LogManager.toHex(new byte[]{'%', 'R', '\r', '\n'}));
+        assertEquals("00 FF ... (3 bytes total)", LogManager.toHex(new byte[]{0, (byte) 0xFF, 1}, 2));
+        assertEquals("", LogManager.toHex(null));
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.leicameasurement.infrastructure;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * TraceRing 单元测试
+ * 验证模板渲染、满后覆盖最旧记录，以及多线程并发写入时不出现撕裂的记录
+ */
+public class TraceRingTest {
+
+    private static final int MEASURED = TraceRing.event("Test", LogManager.DEBUG, "Hz={} SD={}");
+    private static final int PAIR = TraceRing.event("Test", LogManager.WARN, "writer {} seq {} check {}");
+
+    @Test
+    public void render_formatsTemplateLazily() {
+        TraceRing ring = new TraceRing(16);
+        ring.record(MEASURED, 123.456789, 35);
+
+        List<String> lines = ring.render(10);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0), lines.get(0).endsWith("D/Test: Hz=123.456789 SD=35"));
+    }
+
+    @Test
+    public void wrapAround_keepsNewestRecords() {
+        TraceRing ring = new TraceRing(10);
+        assertEquals(16, ring.capacity());
+        for (int i = 0; i < 100; i++) {
+            ring.record(PAIR, 0, i, i);
+        }
+        List<String> lines = ring.render(1000);
+        assertEquals(16, lines.size());
+        assertTrue(lines.get(0).endsWith("seq 84 check 84"));
+        assertTrue(lines.get(15).endsWith("seq 99 check 99"));
+        assertEquals(100, ring.getWrittenCount());
+        assertEquals(5, ring.render(5).size());
+    }
+
+    @Test
+    public void concurrentWriters_neverProduceTornRecords() throws Exception {
+        TraceRing ring = new TraceRing(256);
+        Thread[] writers = new Thread[4];
+        for (int w = 0; w < writers.length; w++) {
+            final int writer = w;
+            writers[w] = new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    ring.record(PAIR, writer, i, writer * 1_000_000 + i);
+                }
+            });
+            writers[w].start();
+        }
+        int checked = 0;
+        while (isAlive(writers)) {
+            checked += checkConsistent(ring.render(256));
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        checked += checkConsistent(ring.render(256));
+        assertTrue(checked > 0);
+        assertEquals(200_000, ring.getWrittenCount());
+    }
+
+    @Test
+    public void writeTo_appendsRenderedRecords() throws IOException {
+        TraceRing ring = new TraceRing(8);
+        ring.record(MEASURED, 1.5, 2);
+        File file = File.createTempFile("trace", ".txt");
+        try {
+            ring.writeTo(file);
+            String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            assertTrue(content, content.contains("Hz=1.500000 SD=2"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static boolean isAlive(Thread[] threads) {
+        for (Thread thread : threads) {
+            if (thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int checkConsistent(List<String> lines) {
+        for (String line : lines) {
+            String[] parts = line.substring(line.indexOf("writer ")).split(" ");
+            long writer = Long.parseLong(parts[1]);
+            long seq = Long.parseLong(parts[3]);
+            assertEquals(line, writer * 1_000_000 + seq, Long.parseLong(parts[5]));
+        }
+        return lines.size();
+    }
+}
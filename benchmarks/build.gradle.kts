@@ -0,0 +1,83 @@
+// 基准测试模块：纯 JVM，不依赖 Android 插件，可在普通 Linux CI 机器上运行
+// 运行：./gradlew :benchmarks:jmh
+// 只运行部分基准：./gradlew :benchmarks:jmh -PjmhIncludes=ProtocolBenchmark
+// 结果：benchmarks/build/reports/jmh/results.json（JSON，便于与历史结果对比）
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+// 直接编译 app 模块中与 Android 运行时无关的源码，避免为基准测试复制代码；
+// 这些源码用到的 android.util.Log、android.os.Environment 由 src/stubs 下的最小桩代替
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            srcDir("src/stubs/java")
+            include(
+                "android/**",
+                "com/example/leicameasurement/calculation/**",
+                "com/example/leicameasurement/data/database/Converters.java",
+                "com/example/leicameasurement/data/database/NumericArrayCodec.java",
+                "com/example/leicameasurement/data/entity/**",
+                "com/example/leicameasurement/data/exporter/**",
+                "com/example/leicameasurement/data/wal/WalConfig.java",
+                "com/example/leicameasurement/data/wal/WalFileWriter.java",
+                "com/example/leicameasurement/data/wal/WalFormat.java",
+                "com/example/leicameasurement/data/wal/WalReader.java",
+                "com/example/leicameasurement/data/wal/WalRecord.java",
+                "com/example/leicameasurement/device/protocol/**",
+                "com/example/leicameasurement/device/adapter/InstrumentAdapter.java",
+                "com/example/leicameasurement/device/adapter/InstrumentInfo.java",
+                "com/example/leicameasurement/device/adapter/InstrumentStatus.java",
+                "com/example/leicameasurement/device/adapter/TrackingListener.java",
+                "com/example/leicameasurement/device/adapter/TrackingSample.java",
+                "com/example/leicameasurement/device/wifi/WifiChannel.java",
+                "com/example/leicameasurement/device/wifi/WifiConfig.java",
+                "com/example/leicameasurement/device/connection/ByteRingBuffer.java",
+                "com/example/leicameasurement/device/connection/FrameDecoder.java",
+                "com/example/leicameasurement/device/connection/CommandMetrics.java",
+                "com/example/leicameasurement/device/connection/CommandMetricsSnapshot.java",
+                "com/example/leicameasurement/device/connection/LatencyHistogram.java",
+                "com/example/leicameasurement/device/connection/IConnectionChannel.java",
+                "com/example/leicameasurement/device/connection/ConnectionConfig.java",
+                "com/example/leicameasurement/device/connection/ConnectionException.java",
+                "com/example/leicameasurement/device/connection/ConnectionState.java",
+                "com/example/leicameasurement/device/connection/ConnectionStateListener.java",
+                "com/example/leicameasurement/device/connection/ConnectionType.java",
+                "com/example/leicameasurement/infrastructure/LogManager.java",
+                "com/example/leicameasurement/infrastructure/RollingLogFile.java"
+            )
+        }
+    }
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+dependencies {
+    // 实体类上的 Room 注解（纯 JVM 构件）
+    implementation(libs.room.common)
+    // Converters 读取旧版 JSON 行，与 app 模块使用同一版本
+    implementation("com.google.code.gson:gson:2.10.1")
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    // gc 分析器输出每次操作的分配字节数（gc.alloc.rate.norm）
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("reports/jmh/results.json"))
+    fork.set(1)
+    warmupIterations.set(3)
+    warmup.set("1s")
+    iterations.set(5)
+    timeOnIteration.set("1s")
+    providers.gradleProperty("jmhIncludes").orNull?.let { includes.add(it) }
+}
@@ -0,0 +1,25 @@
+package com.example.leicameasurement.benchmark;
+
+import java.io.File;
+
+/**
+ * 基准测试临时文件工具
+ */
+final class BenchmarkFiles {
+
+    private BenchmarkFiles() {
+    }
+
+    static void deleteRecursively(File file) {
+        if (file == null) {
+            return;
+        }
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.leicameasurement.benchmark;
+
+import com.example.leicameasurement.calculation.AdjustmentCalculator;
+import com.example.leicameasurement.calculation.DetailPointCalculator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 碎步点坐标计算与导线平差基准
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class CalculationBenchmark {
+
+    private double horizontalAngle = 0.7853981634;
+    private double verticalAngle = 1.5533430343;
+    private double slopeDistance = 123.4567;
+
+    /**
+     * 导线观测数据，测站数由 stations 参数决定
+     */
+    @State(Scope.Benchmark)
+    public static class Traverse {
+
+        @Param({"10", "100", "1000"})
+        public int stations;
+
+        double[] angles;
+        double[][] coordinates;
+        final double[] coordinateClosure = {0.012, -0.008};
+
+        @Setup
+        public void setUp() {
+            Random random = new Random(42);
+            angles = new double[stations];
+            coordinates = new double[stations][2];
+            double x = 0, y = 0;
+            for (int i = 0; i < stations; i++) {
+                angles[i] = Math.PI + (random.nextDouble() - 0.5) * 0.1;
+                x += 80 + random.nextDouble() * 40;
+                y += (random.nextDouble() - 0.5) * 60;
+                coordinates[i][0] = x;
+                coordinates[i][1] = y;
+            }
+        }
+    }
+
+    @Benchmark
+    public double[] detailPointCoordinates() {
+        horizontalAngle += 1e-6;
+        return DetailPointCalculator.calculateAbsoluteCoordinates(4523871.2345, 512345.6789, 45.321,
+                horizontalAngle, verticalAngle, slopeDistance);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double[] adjustAngles(Traverse traverse) {
+        return AdjustmentCalculator.adjustAngles(traverse.angles, 0.00012);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double[][] adjustCoordinates(Traverse traverse) {
+        return AdjustmentCalculator.adjustCoordinates(traverse.coordinates, traverse.coordinateClosure);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.leicameasurement.benchmark;
+
+import com.example.leicameasurement.data.database.Converters;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数值列表的数据库列编码基准：旧版 Gson JSON 文本对比二进制 BLOB（Converters）
+ * size=24 相当于一组多测回角度，size=2000 相当于一条扫描断面
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class ConvertersBenchmark {
+
+    private static final Type DOUBLE_LIST = new TypeToken<List<Double>>() {}.getType();
+
+    @Param({"24", "2000"})
+    public int size;
+
+    private final Gson gson = new Gson();
+    private List<Double> values;
+    private double[] primitive;
+    private byte[] json;
+    private byte[] blob;
+
+    @Setup
+    public void setUp() {
+        values = new ArrayList<>(size);
+        primitive = new double[size];
+        for (int i = 0; i < size; i++) {
+            primitive[i] = 1.5707963268 + Math.sin(i * 0.37) * 0.0123456789;
+            values.add(primitive[i]);
+        }
+        json = gson.toJson(values).getBytes(StandardCharsets.UTF_8);
+        blob = Converters.doubleListToBlob(values);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() {
+        return gson.toJson(values).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] encodeBlob() {
+        return Converters.doubleListToBlob(values);
+    }
+
+    @Benchmark
+    public byte[] encodePrimitiveBlob() {
+        return Converters.doubleArrayToBlob(primitive);
+    }
+
+    @Benchmark
+    public List<Double> decodeJson() {
+        return gson.fromJson(new String(json, StandardCharsets.UTF_8), DOUBLE_LIST);
+    }
+
+    @Benchmark
+    public List<Double> decodeBlob() {
+        return Converters.blobToDoubleList(blob);
+    }
+
+    @Benchmark
+    public double[] decodePrimitiveBlob() {
+        return Converters.blobToDoubleArray(blob);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.leicameasurement.benchmark;
+
+import com.example.leicameasurement.data.entity.DetailPoint;
+import com.example.leicameasurement.data.exporter.CsvExporter;
+import com.example.leicameasurement.data.exporter.DxfExporter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CSV / DXF 导出基准：每次操作把整批碎步点写入临时文件
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ExportBenchmark {
+
+    @Param({"100", "10000"})
+    public int points;
+
+    private final CsvExporter csvExporter = new CsvExporter();
+    private final DxfExporter dxfExporter = new DxfExporter();
+    private List<DetailPoint> detailPoints;
+    private File directory;
+    private String csvPath;
+    private String dxfPath;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        detailPoints = new ArrayList<>(points);
+        for (int i = 0; i < points; i++) {
+            detailPoints.add(new DetailPoint("P" + i,
+                    4523871.2345 + random.nextDouble() * 500,
+                    512345.6789 + random.nextDouble() * 500,
+                    45.321 + random.nextDouble() * 20, 1L));
+        }
+        directory = Files.createTempDirectory("export-benchmark").toFile();
+        csvPath = new File(directory, "points.csv").getAbsolutePath();
+        dxfPath = new File(directory, "points.dxf").getAbsolutePath();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkFiles.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public boolean exportCsv() {
+        return csvExporter.exportCsv(detailPoints, csvPath);
+    }
+
+    @Benchmark
+    public boolean exportDxf() {
+        return dxfExporter.exportDxf(detailPoints, dxfPath);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.leicameasurement.benchmark;
+
+import com.example.leicameasurement.calculation.DetailPointCalculator;
+import com.example.leicameasurement.data.wal.WalFileWriter;
+import com.example.leicameasurement.device.protocol.GeoComCommandBuilder;
+import com.example.leicameasurement.device.protocol.GeoComReply;
+import com.example.leicameasurement.device.protocol.GeoComResponseParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个碎步点在手机端的完整处理周期（不含链路往返）：
+ * 编码棱镜高与测量指令 → 解析测量响应 → 计算绝对坐标 → 写入 WAL
+ * 用于判断某项改动对每点耗时与分配的总体影响
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class PointCycleBenchmark {
+
+    private final GeoComCommandBuilder commandBuilder = new GeoComCommandBuilder();
+    private final GeoComResponseParser responseParser = new GeoComResponseParser();
+    private final GeoComReply reply = new GeoComReply();
+    private final double[] values = new double[6];
+
+    private byte[] measurementResponse;
+    private File directory;
+    private WalFileWriter walWriter;
+    private double prismHeight = 1.5;
+
+    @Setup
+    public void setUp() throws IOException {
+        measurementResponse = "%R1P,0,17:1.5707963268,1.2345678901,123.4567\r\n".getBytes(StandardCharsets.US_ASCII);
+        directory = Files.createTempDirectory("cycle-benchmark").toFile();
+        System.setProperty("benchmark.storage", directory.getAbsolutePath());
+        walWriter = new WalFileWriter();
+    }
+
+    @TearDown
+    public void tearDown() {
+        walWriter.close();
+        BenchmarkFiles.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public double[] detailPointCycle() {
+        prismHeight = prismHeight > 2.5 ? 1.5 : prismHeight + 0.001;
+        byte[] prismCommand = commandBuilder.buildSetPrismHeightCommand(prismHeight);
+        byte[] measureCommand = commandBuilder.buildDetailPointMeasurementCommand();
+        if (!responseParser.parseMeasurementResponse(measurementResponse, values, reply)) {
+            return null;
+        }
+        double[] point = DetailPointCalculator.calculateAbsoluteCoordinates(4523871.2345, 512345.6789, 45.321,
+                values[0], values[1], values[2]);
+        walWriter.writeRawData(new String(measureCommand, StandardCharsets.US_ASCII),
+                new String(measurementResponse, StandardCharsets.US_ASCII));
+        return prismCommand.length > 0 ? point : null;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.leicameasurement.benchmark;
+
+import com.example.leicameasurement.device.adapter.InstrumentAdapter;
+import com.example.leicameasurement.device.protocol.GeoComCommandBuilder;
+import com.example.leicameasurement.device.protocol.GeoComReply;
+import com.example.leicameasurement.device.protocol.GeoComResponseParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GeoCOM 指令编码与响应解析基准
+ * 对比分配数组的 build/parse 接口与复用缓冲区、复用解析容器的零分配接口
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ProtocolBenchmark {
+
+    private final GeoComCommandBuilder commandBuilder = new GeoComCommandBuilder();
+    private final GeoComResponseParser responseParser = new GeoComResponseParser();
+    private final GeoComReply reply = new GeoComReply();
+    private final double[] values = new double[6];
+
+    private byte[] measurementResponse;
+    private byte[] modelResponse;
+    private byte[] detailPointCommand;
+    private double offset = 0;
+
+    @Setup
+    public void setUp() {
+        measurementResponse = ascii("%R1P,0,17:1.5707963268,1.2345678901,123.4567\r\n");
+        modelResponse = ascii("%R1P,0,0:TS60\r\n");
+        detailPointCommand = commandBuilder.buildDetailPointMeasurementCommand();
+    }
+
+    /**
+     * 每次调用改变坐标，防止 JIT 把编码结果当作常量
+     */
+    private double next() {
+        offset += 0.001;
+        if (offset > 1000) {
+            offset = 0;
+        }
+        return offset;
+    }
+
+    @Benchmark
+    public byte[] buildSetStationCommand() {
+        double d = next();
+        return commandBuilder.buildSetStationCommand(4523871.2345 + d, 512345.6789 + d, 45.321 + d);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeSetStationCommand() {
+        double d = next();
+        return commandBuilder.encodeSetStationCommand(4523871.2345 + d, 512345.6789 + d, 45.321 + d);
+    }
+
+    @Benchmark
+    public byte[] buildMeasureCommand() {
+        return commandBuilder.buildMeasureCommand(1.5 + next(), InstrumentAdapter.MeasureMode.PRECISION);
+    }
+
+    @Benchmark
+    public byte[] withTransactionId() {
+        return GeoComCommandBuilder.withTransactionId(detailPointCommand, 4711);
+    }
+
+    @Benchmark
+    public double[] parseMeasurementResponse() {
+        return responseParser.parseMeasurementResponse(measurementResponse);
+    }
+
+    @Benchmark
+    public double parseMeasurementResponseReusingReply() {
+        responseParser.parseMeasurementResponse(measurementResponse, values, reply);
+        return values[2];
+    }
+
+    @Benchmark
+    public String parseModelResponse() {
+        return responseParser.parseModelResponse(modelResponse);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.leicameasurement.benchmark;
+
+import com.example.leicameasurement.data.wal.WalFileWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WAL 原始数据写入基准：每次操作追加一条"指令|响应"记录
+ * WAL 目录经 Environment 桩重定向到临时目录
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class WalWriterBenchmark {
+
+    private static final String COMMAND = "%R1Q,17008:2\r\n";
+    private static final String RESPONSE = "%R1P,0,17:1.5707963268,1.2345678901,123.4567\r\n";
+
+    private File directory;
+    private WalFileWriter walWriter;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("wal-benchmark").toFile();
+        System.setProperty("benchmark.storage", directory.getAbsolutePath());
+        walWriter = new WalFileWriter();
+    }
+
+    @TearDown
+    public void tearDown() {
+        walWriter.close();
+        BenchmarkFiles.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public void writeRawData() {
+        walWriter.writeRawData(COMMAND, RESPONSE);
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.leicameasurement.benchmark;
+
+import com.example.leicameasurement.device.wifi.WifiChannel;
+import com.example.leicameasurement.device.wifi.WifiConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WifiChannel 读取基准：本地 TCP 替身服务模拟全站仪
+ * 对比 NIO 切帧实现与原逐字节读取实现的往返时延（每条指令回复一帧）
+ * 和连续推送时的每帧读取时间
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class WifiChannelBenchmark {
+
+    private static final byte[] COMMAND = ascii("%R1Q,17008:2\r\n");
+    private static final byte[] REPLY = ascii("%R1P,0,0:0,1.5707963268,1.2345678901,123.4567\r\n");
+
+    private LoopbackServer echoServer;
+    private LoopbackServer streamServer;
+    private WifiChannel echoChannel;
+    private WifiChannel streamChannel;
+    private Socket legacyEchoSocket;
+    private Socket legacyStreamSocket;
+
+    @Setup
+    public void setUp() throws Exception {
+        echoServer = new LoopbackServer(WifiChannelBenchmark::echoReplies);
+        streamServer = new LoopbackServer(WifiChannelBenchmark::streamReplies);
+        echoChannel = connect(echoServer);
+        streamChannel = connect(streamServer);
+        legacyEchoSocket = connectLegacy(echoServer);
+        legacyStreamSocket = connectLegacy(streamServer);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        echoChannel.disconnect();
+        streamChannel.disconnect();
+        legacyEchoSocket.close();
+        legacyStreamSocket.close();
+        echoServer.close();
+        streamServer.close();
+    }
+
+    @Benchmark
+    public byte[] roundTripWifiChannel() throws IOException {
+        echoChannel.sendData(COMMAND);
+        return echoChannel.receiveData();
+    }
+
+    @Benchmark
+    public byte[] roundTripLegacyReader() throws IOException {
+        OutputStream out = legacyEchoSocket.getOutputStream();
+        out.write(COMMAND);
+        out.flush();
+        return legacyReceive(legacyEchoSocket.getInputStream());
+    }
+
+    @Benchmark
+    public byte[] streamWifiChannel() throws IOException {
+        return streamChannel.receiveData();
+    }
+
+    @Benchmark
+    public byte[] streamLegacyReader() throws IOException {
+        return legacyReceive(legacyStreamSocket.getInputStream());
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private static WifiChannel connect(LoopbackServer server) throws Exception {
+        WifiChannel channel = new WifiChannel();
+        channel.connect(new WifiConfig("127.0.0.1", server.getPort()));
+        return channel;
+    }
+
+    private static Socket connectLegacy(LoopbackServer server) throws IOException {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress("127.0.0.1", server.getPort()), 2000);
+        socket.setSoTimeout(2000);
+        socket.setTcpNoDelay(true);
+        return socket;
+    }
+
+    /**
+     * 原 WifiChannel.receiveData 的读取方式：逐字节读取并装箱到 List
+     * 原实现以 ETX 结束，这里改为 LF 以便与 NIO 实现读取同一数据流
+     */
+    private static byte[] legacyReceive(InputStream inputStream) throws IOException {
+        List<Byte> byteList = new ArrayList<>();
+        int data;
+        while ((data = inputStream.read()) != -1) {
+            byteList.add((byte) data);
+            if (data == '\n') {
+                break;
+            }
+        }
+        byte[] result = new byte[byteList.size()];
+        for (int i = 0; i < byteList.size(); i++) {
+            result[i] = byteList.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * 每收到一条指令回复一帧
+     */
+    private static void echoReplies(Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        OutputStream out = socket.getOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                out.write(REPLY);
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * 连续推送测量帧，直到客户端断开
+     */
+    private static void streamReplies(Socket socket) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        byte[] burst = new byte[REPLY.length * 64];
+        for (int i = 0; i < 64; i++) {
+            System.arraycopy(REPLY, 0, burst, i * REPLY.length, REPLY.length);
+        }
+        while (true) {
+            out.write(burst);
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 本地 TCP 替身服务：每个连接在独立的后台线程中处理
+     */
+    private static final class LoopbackServer {
+
+        interface Handler {
+            void handle(Socket socket) throws IOException;
+        }
+
+        private final ServerSocket serverSocket;
+
+        LoopbackServer(Handler handler) throws IOException {
+            serverSocket = new ServerSocket(0);
+            Thread acceptor = new Thread(() -> {
+                while (!serverSocket.isClosed()) {
+                    Socket socket;
+                    try {
+                        socket = serverSocket.accept();
+                        socket.setTcpNoDelay(true);
+                    } catch (IOException e) {
+                        return;
+                    }
+                    Thread worker = new Thread(() -> {
+                        try (Socket s = socket) {
+                            handler.handle(s);
+                        } catch (IOException e) {
+                            // 客户端断开
+                        }
+                    }, "WifiChannelBenchmark-Connection");
+                    worker.setDaemon(true);
+                    worker.start();
+                }
+            }, "WifiChannelBenchmark-Server");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
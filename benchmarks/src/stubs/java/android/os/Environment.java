@@ -0,0 +1,17 @@
+package android.os;
+
+import java.io.File;
+
+/**
+ * 基准测试用的 android.os.Environment 桩
+ * 外部存储目录取系统属性 benchmark.storage，未设置时使用临时目录
+ */
+public final class Environment {
+
+    private Environment() {
+    }
+
+    public static File getExternalStorageDirectory() {
+        return new File(System.getProperty("benchmark.storage", System.getProperty("java.io.tmpdir")));
+    }
+}